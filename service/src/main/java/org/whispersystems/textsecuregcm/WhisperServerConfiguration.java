@@ -54,8 +54,10 @@ import org.whispersystems.textsecuregcm.configuration.StripeConfiguration;
 import org.whispersystems.textsecuregcm.configuration.SubscriptionConfiguration;
 import org.whispersystems.textsecuregcm.configuration.TurnSecretConfiguration;
 import org.whispersystems.textsecuregcm.configuration.UnidentifiedDeliveryConfiguration;
+import org.whispersystems.textsecuregcm.configuration.VirtualThreadConfiguration;
 import org.whispersystems.textsecuregcm.configuration.ZkConfig;
 import org.whispersystems.textsecuregcm.limits.RateLimiterConfig;
+import org.whispersystems.textsecuregcm.push.ClientEventNotificationMode;
 import org.whispersystems.websocket.configuration.WebSocketConfiguration;
 
 /** @noinspection MismatchedQueryAndUpdateOfCollection, WeakerAccess */
@@ -305,6 +307,15 @@ public class WhisperServerConfiguration extends Configuration {
   @JsonProperty
   private LinkDeviceSecretConfiguration linkDevice;
 
+  @Valid
+  @NotNull
+  @JsonProperty
+  private VirtualThreadConfiguration virtualThreads = new VirtualThreadConfiguration(false, Duration.ofMillis(20));
+
+  @NotNull
+  @JsonProperty
+  private ClientEventNotificationMode clientEventNotificationMode = ClientEventNotificationMode.KEYSPACE;
+
   public AdminEventLoggingConfiguration getAdminEventLoggingConfiguration() {
     return adminEventLoggingConfiguration;
   }
@@ -507,4 +518,12 @@ public class WhisperServerConfiguration extends Configuration {
   public LinkDeviceSecretConfiguration getLinkDeviceSecretConfiguration() {
     return linkDevice;
   }
+
+  public VirtualThreadConfiguration getVirtualThreadConfiguration() {
+    return virtualThreads;
+  }
+
+  public ClientEventNotificationMode getClientEventNotificationMode() {
+    return clientEventNotificationMode;
+  }
 }
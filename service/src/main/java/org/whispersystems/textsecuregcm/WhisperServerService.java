@@ -21,6 +21,7 @@ import io.dropwizard.auth.PolymorphicAuthDynamicFeature;
 import io.dropwizard.auth.PolymorphicAuthValueFactoryProvider;
 import io.dropwizard.auth.basic.BasicCredentialAuthFilter;
 import io.dropwizard.auth.basic.BasicCredentials;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.grpc.ServerBuilder;
@@ -40,7 +41,6 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.ServiceLoader;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -155,6 +155,7 @@ import org.whispersystems.textsecuregcm.metrics.MetricsApplicationEventListener;
 import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
 import org.whispersystems.textsecuregcm.metrics.ReportedMessageMetricsListener;
 import org.whispersystems.textsecuregcm.metrics.TrafficSource;
+import org.whispersystems.textsecuregcm.metrics.VirtualThreadPinnedEventMonitor;
 import org.whispersystems.textsecuregcm.providers.MultiRecipientMessageProvider;
 import org.whispersystems.textsecuregcm.providers.RedisClusterHealthCheck;
 import org.whispersystems.textsecuregcm.push.APNSender;
@@ -168,6 +169,7 @@ import org.whispersystems.textsecuregcm.push.PushNotificationManager;
 import org.whispersystems.textsecuregcm.push.ReceiptSender;
 import org.whispersystems.textsecuregcm.redis.ConnectionEventLogger;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.registration.RegistrationServiceClient;
 import org.whispersystems.textsecuregcm.s3.PolicySigner;
 import org.whispersystems.textsecuregcm.s3.PostPolicyGenerator;
@@ -188,6 +190,7 @@ import org.whispersystems.textsecuregcm.storage.ClientReleases;
 import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.IssuedReceiptsManager;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
+import org.whispersystems.textsecuregcm.storage.LocalAccountCache;
 import org.whispersystems.textsecuregcm.storage.MessagesCache;
 import org.whispersystems.textsecuregcm.storage.MessagesDynamoDb;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
@@ -211,6 +214,7 @@ import org.whispersystems.textsecuregcm.subscriptions.StripeManager;
 import org.whispersystems.textsecuregcm.util.DynamoDbFromConfig;
 import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.UsernameHashZkProofVerifier;
+import org.whispersystems.textsecuregcm.util.VirtualThreads;
 import org.whispersystems.textsecuregcm.util.logging.LoggingUnhandledExceptionMapper;
 import org.whispersystems.textsecuregcm.util.logging.UncaughtExceptionHandler;
 import org.whispersystems.textsecuregcm.websocket.AuthenticatedConnectListener;
@@ -341,13 +345,6 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         config.getDynamoDbTables().getPhoneNumberIdentifiers().getTableName());
     Profiles profiles = new Profiles(dynamoDbClient, dynamoDbAsyncClient,
         config.getDynamoDbTables().getProfiles().getTableName());
-    KeysManager keys = new KeysManager(
-            dynamoDbAsyncClient,
-        config.getDynamoDbTables().getEcKeys().getTableName(),
-        config.getDynamoDbTables().getKemKeys().getTableName(),
-        config.getDynamoDbTables().getEcSignedPreKeys().getTableName(),
-        config.getDynamoDbTables().getKemLastResortKeys().getTableName(),
-        dynamicConfigurationManager);
     MessagesDynamoDb messagesDynamoDb = new MessagesDynamoDb(dynamoDbClient, dynamoDbAsyncClient,
         config.getDynamoDbTables().getMessages().getTableName(),
         config.getDynamoDbTables().getMessages().getExpiration(),
@@ -382,9 +379,15 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     FaultTolerantRedisCluster pushSchedulerCluster     = new FaultTolerantRedisCluster("push_scheduler", config.getPushSchedulerCluster(), redisClientResources);
     FaultTolerantRedisCluster rateLimitersCluster      = new FaultTolerantRedisCluster("rate_limiters", config.getRateLimitersCluster(), redisClientResources);
 
-    final BlockingQueue<Runnable> keyspaceNotificationDispatchQueue = new ArrayBlockingQueue<>(100_000);
-    Metrics.gaugeCollectionSize(name(getClass(), "keyspaceNotificationDispatchQueueSize"), Collections.emptyList(),
-        keyspaceNotificationDispatchQueue);
+    KeysManager keys = new KeysManager(
+            dynamoDbAsyncClient,
+        config.getDynamoDbTables().getEcKeys().getTableName(),
+        config.getDynamoDbTables().getKemKeys().getTableName(),
+        config.getDynamoDbTables().getEcSignedPreKeys().getTableName(),
+        config.getDynamoDbTables().getKemLastResortKeys().getTableName(),
+        cacheCluster,
+        dynamicConfigurationManager);
+
     final BlockingQueue<Runnable> receiptSenderQueue = new LinkedBlockingQueue<>();
     Metrics.gaugeCollectionSize(name(getClass(), "receiptSenderQueue"), Collections.emptyList(), receiptSenderQueue);
     final BlockingQueue<Runnable> fcmSenderQueue = new LinkedBlockingQueue<>();
@@ -397,14 +400,9 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         .scheduledExecutorService(name(getClass(), "recurringJob-%d")).threads(6).build();
     ScheduledExecutorService websocketScheduledExecutor = environment.lifecycle()
         .scheduledExecutorService(name(getClass(), "websocket-%d")).threads(8).build();
-    ExecutorService keyspaceNotificationDispatchExecutor = ExecutorServiceMetrics.monitor(Metrics.globalRegistry,
-        environment.lifecycle()
-            .executorService(name(getClass(), "keyspaceNotification-%d"))
-            .maxThreads(16)
-            .workQueue(keyspaceNotificationDispatchQueue)
-            .build(),
-        MetricsUtil.name(getClass(), "keyspaceNotificationExecutor"),
-        MetricsUtil.PREFIX);
+    KeyspaceNotificationDispatcher keyspaceNotificationDispatcher =
+        new KeyspaceNotificationDispatcher(name(getClass(), "keyspaceNotification"), 16, 6_250);
+    environment.lifecycle().manage(keyspaceNotificationDispatcher);
     ExecutorService apnSenderExecutor = environment.lifecycle().executorService(name(getClass(), "apnSender-%d"))
         .maxThreads(1).minThreads(1).build();
     ExecutorService fcmSenderExecutor = environment.lifecycle().executorService(name(getClass(), "fcmSender-%d"))
@@ -430,23 +428,36 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
             MetricsUtil.name(getClass(), "messageDeliveryExecutor"), MetricsUtil.PREFIX),
         "messageDelivery");
 
+    // Executors that mostly wait on blocking calls may run on virtual threads instead of hand-sized pools
+    final boolean useVirtualThreads = config.getVirtualThreadConfiguration().enabled() && VirtualThreads.isSupported();
+
+    if (config.getVirtualThreadConfiguration().enabled() && !useVirtualThreads) {
+      log.warn("Virtual threads are enabled, but not supported by this runtime; using platform threads instead");
+    }
+
     // TODO: generally speaking this is a DynamoDB I/O executor for the accounts table; we should eventually have a general executor for speaking to the accounts table, but most of the server is still synchronous so this isn't widely useful yet
-    ExecutorService batchIdentityCheckExecutor = environment.lifecycle().executorService(name(getClass(), "batchIdentityCheck-%d")).minThreads(32).maxThreads(32).build();
-    ExecutorService multiRecipientMessageExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "multiRecipientMessage-%d")).minThreads(64).maxThreads(64).build();
+    ExecutorService batchIdentityCheckExecutor = monitorBlockingExecutor("batchIdentityCheckExecutor", useVirtualThreads
+        ? virtualThreadExecutor(environment, "batchIdentityCheck")
+        : environment.lifecycle().executorService(name(getClass(), "batchIdentityCheck-%d")).minThreads(32).maxThreads(32).build());
+    ExecutorService multiRecipientMessageExecutor = monitorBlockingExecutor("multiRecipientMessageExecutor", useVirtualThreads
+        ? virtualThreadExecutor(environment, "multiRecipientMessage")
+        : environment.lifecycle()
+            .executorService(name(getClass(), "multiRecipientMessage-%d")).minThreads(64).maxThreads(64).build());
     ExecutorService subscriptionProcessorExecutor = environment.lifecycle()
         .executorService(name(getClass(), "subscriptionProcessor-%d"))
         .maxThreads(availableProcessors)  // mostly this is IO bound so tying to number of processors is tenuous at best
         .minThreads(availableProcessors)  // mostly this is IO bound so tying to number of processors is tenuous at best
         .allowCoreThreadTimeOut(true).
         build();
-    ExecutorService receiptSenderExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "receiptSender-%d"))
-        .maxThreads(2)
-        .minThreads(2)
-        .workQueue(receiptSenderQueue)
-        .rejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy())
-        .build();
+    ExecutorService receiptSenderExecutor = monitorBlockingExecutor("receiptSenderExecutor", useVirtualThreads
+        ? virtualThreadExecutor(environment, "receiptSender")
+        : environment.lifecycle()
+            .executorService(name(getClass(), "receiptSender-%d"))
+            .maxThreads(2)
+            .minThreads(2)
+            .workQueue(receiptSenderQueue)
+            .rejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy())
+            .build());
     ExecutorService registrationCallbackExecutor = environment.lifecycle()
         .executorService(name(getClass(), "registration-%d"))
         .maxThreads(2)
@@ -508,23 +519,27 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     SecureStorageClient secureStorageClient = new SecureStorageClient(storageCredentialsGenerator,
         storageServiceExecutor, storageServiceRetryExecutor, config.getSecureStorageServiceConfiguration());
     ClientPresenceManager clientPresenceManager = new ClientPresenceManager(clientPresenceCluster, recurringJobExecutor,
-        keyspaceNotificationDispatchExecutor);
+        keyspaceNotificationDispatcher, config.getClientEventNotificationMode());
     ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
     MessagesCache messagesCache = new MessagesCache(messagesCluster, messagesCluster,
-        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionAsyncExecutor, clock);
+        keyspaceNotificationDispatcher, messageDeliveryScheduler, messageDeletionAsyncExecutor, clock,
+        config.getClientEventNotificationMode());
+    clientPresenceManager.addClientEventListener(messagesCache);
     ClientReleaseManager clientReleaseManager = new ClientReleaseManager(clientReleases,
         recurringJobExecutor,
         config.getClientReleaseConfiguration().refreshInterval(),
         Clock.systemUTC());
-    PushLatencyManager pushLatencyManager = new PushLatencyManager(metricsCluster, clientReleaseManager);
+    PushLatencyManager pushLatencyManager = new PushLatencyManager(metricsCluster, clientReleaseManager,
+        dynamicConfigurationManager);
     ReportMessageManager reportMessageManager = new ReportMessageManager(reportMessageDynamoDb, rateLimitersCluster,
         config.getReportMessageConfiguration().getCounterTtl());
     MessagesManager messagesManager = new MessagesManager(messagesDynamoDb, messagesCache, reportMessageManager,
         messageDeletionAsyncExecutor);
     AccountLockManager accountLockManager = new AccountLockManager(dynamoDbClient,
         config.getDynamoDbTables().getDeletedAccountsLock().getTableName());
+    LocalAccountCache localAccountCache = new LocalAccountCache(cacheCluster);
     AccountsManager accountsManager = new AccountsManager(accounts, phoneNumberIdentifiers, cacheCluster,
-        accountLockManager, keys, messagesManager, profilesManager,
+        localAccountCache, accountLockManager, keys, messagesManager, profilesManager,
         secureStorageClient, secureValueRecovery2Client,
         clientPresenceManager,
         experimentEnrollmentManager, registrationRecoveryPasswordsManager, accountLockExecutor, clock);
@@ -610,6 +625,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     environment.lifecycle().manage(provisioningManager);
     environment.lifecycle().manage(messagesCache);
     environment.lifecycle().manage(clientPresenceManager);
+    environment.lifecycle().manage(localAccountCache);
     environment.lifecycle().manage(currencyManager);
     environment.lifecycle().manage(registrationServiceClient);
     environment.lifecycle().manage(clientReleaseManager);
@@ -715,6 +731,14 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         .register(new WebsocketRefreshApplicationEventListener(accountsManager, clientPresenceManager));
     webSocketEnvironment.jersey().register(new RequestStatisticsFilter(TrafficSource.WEBSOCKET));
     webSocketEnvironment.jersey().register(MultiRecipientMessageProvider.class);
+
+    if (useVirtualThreads) {
+      // Dispatch websocket requests to (mostly blocking) resource methods on virtual threads rather than on the Jetty
+      // thread that read the request
+      webSocketEnvironment.setRequestExecutor(virtualThreadExecutor(environment, "websocketRequest"));
+      environment.lifecycle().manage(
+          new VirtualThreadPinnedEventMonitor(config.getVirtualThreadConfiguration().pinnedThreadReportThreshold()));
+    }
     webSocketEnvironment.jersey().register(new MetricsApplicationEventListener(TrafficSource.WEBSOCKET, clientReleaseManager));
     webSocketEnvironment.jersey().register(new KeepAliveController(clientPresenceManager));
 
@@ -862,6 +886,21 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
   }
 
 
+  private ExecutorService virtualThreadExecutor(final Environment environment, final String poolName) {
+    final ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor(name(getClass(), poolName + "-"));
+    environment.lifecycle().manage(new ExecutorServiceManager(executor, io.dropwizard.util.Duration.seconds(5), poolName));
+
+    return executor;
+  }
+
+  /**
+   * Reports activity and queue depth (for platform thread pools) so pool exhaustion is visible.
+   */
+  private ExecutorService monitorBlockingExecutor(final String executorName, final ExecutorService executor) {
+    return ExecutorServiceMetrics.monitor(Metrics.globalRegistry, executor, MetricsUtil.name(getClass(), executorName),
+        MetricsUtil.PREFIX);
+  }
+
   private void registerProviders(Environment environment,
       WebSocketEnvironment<AuthenticatedAccount> webSocketEnvironment,
       WebSocketEnvironment<AuthenticatedAccount> provisioningEnvironment) {
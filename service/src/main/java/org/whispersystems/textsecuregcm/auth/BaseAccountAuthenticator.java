@@ -41,6 +41,7 @@ public class BaseAccountAuthenticator {
 
   private final AccountsManager accountsManager;
   private final Clock           clock;
+  private final VerifiedCredentialsCache verifiedCredentialsCache;
 
   public BaseAccountAuthenticator(AccountsManager accountsManager) {
     this(accountsManager, Clock.systemUTC());
@@ -50,6 +51,7 @@ public class BaseAccountAuthenticator {
   public BaseAccountAuthenticator(AccountsManager accountsManager, Clock clock) {
     this.accountsManager   = accountsManager;
     this.clock             = clock;
+    this.verifiedCredentialsCache = new VerifiedCredentialsCache();
   }
 
   static Pair<String, Byte> getIdentifierAndDeviceId(final String basicUsername) {
@@ -118,7 +120,7 @@ public class BaseAccountAuthenticator {
       }
 
       SaltedTokenHash deviceSaltedTokenHash = device.get().getAuthTokenHash();
-      if (deviceSaltedTokenHash.verify(basicCredentials.getPassword())) {
+      if (verifiedCredentialsCache.verify(accountUuid, deviceId, deviceSaltedTokenHash, basicCredentials.getPassword())) {
         succeeded = true;
         Account authenticatedAccount = updateLastSeen(account.get(), device.get());
         if (deviceSaltedTokenHash.getVersion() != SaltedTokenHash.CURRENT_VERSION) {
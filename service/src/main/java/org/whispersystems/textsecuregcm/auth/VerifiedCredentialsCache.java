@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.auth;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A short-lived, bounded cache of successful credential verifications. Verifying a {@link SaltedTokenHash} requires a
+ * full HKDF (or SHA-1 for legacy hashes) computation; clients that reconnect or make many requests in quick succession
+ * present the same credentials repeatedly, and this cache allows the authenticator to skip that computation.
+ * <p>
+ * Entries are keyed by account, device, and the device's stored token hash, so changing a device's credentials
+ * invalidates its entry immediately. Presented tokens are never stored; entries hold a keyed digest of the token
+ * instead, using a key that is generated at random for each instance and never leaves the process.
+ */
+class VerifiedCredentialsCache {
+
+  private final Cache<CacheKey, VerifiedCredentials> verifiedCredentials;
+
+  private final byte[] digestKey = new byte[32];
+
+  private static final int DEFAULT_MAX_SIZE = 100_000;
+  private static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+  private static final Counter CACHE_HIT_COUNTER =
+      Metrics.counter(name(VerifiedCredentialsCache.class, "verify"), "hit", "true");
+  private static final Counter CACHE_MISS_COUNTER =
+      Metrics.counter(name(VerifiedCredentialsCache.class, "verify"), "hit", "false");
+  private static final Timer TIME_SAVED_TIMER = Timer.builder(name(VerifiedCredentialsCache.class, "timeSaved"))
+      .publishPercentiles(0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
+
+  private record CacheKey(UUID accountIdentifier, byte deviceId, SaltedTokenHash saltedTokenHash) {
+  }
+
+  private record VerifiedCredentials(byte[] tokenDigest, long verificationNanos) {
+  }
+
+  VerifiedCredentialsCache() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+  }
+
+  @VisibleForTesting
+  VerifiedCredentialsCache(final int maxSize, final Duration ttl) {
+    this.verifiedCredentials = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+        .build();
+
+    new SecureRandom().nextBytes(digestKey);
+  }
+
+  /**
+   * Checks whether the given token matches the given device's stored token hash, consulting and populating this cache
+   * as appropriate.
+   *
+   * @param accountIdentifier the identifier of the account to which the device belongs
+   * @param deviceId the identifier of the device
+   * @param saltedTokenHash the device's stored token hash
+   * @param token the token presented by the client
+   *
+   * @return {@code true} if the token matches the stored token hash or {@code false} otherwise
+   */
+  boolean verify(final UUID accountIdentifier,
+      final byte deviceId,
+      final SaltedTokenHash saltedTokenHash,
+      final String token) {
+
+    final long start = System.nanoTime();
+
+    final CacheKey cacheKey = new CacheKey(accountIdentifier, deviceId, saltedTokenHash);
+    final byte[] tokenDigest = digest(token);
+    final VerifiedCredentials cached = verifiedCredentials.getIfPresent(cacheKey);
+
+    if (cached != null && MessageDigest.isEqual(cached.tokenDigest(), tokenDigest)) {
+      CACHE_HIT_COUNTER.increment();
+      TIME_SAVED_TIMER.record(Math.max(0, cached.verificationNanos() - (System.nanoTime() - start)),
+          TimeUnit.NANOSECONDS);
+
+      return true;
+    }
+
+    CACHE_MISS_COUNTER.increment();
+
+    final long verificationStart = System.nanoTime();
+    final boolean verified = saltedTokenHash.verify(token);
+
+    if (verified) {
+      verifiedCredentials.put(cacheKey, new VerifiedCredentials(tokenDigest, System.nanoTime() - verificationStart));
+    }
+
+    return verified;
+  }
+
+  private byte[] digest(final String token) {
+    try {
+      final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+      messageDigest.update(digestKey);
+      messageDigest.update(token.getBytes(StandardCharsets.UTF_8));
+
+      return messageDigest.digest();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration;
+
+import java.time.Duration;
+
+/**
+ * @param enabled whether to dispatch websocket requests and run executors for blocking calls on virtual threads; has no
+ * effect if the runtime does not support virtual threads
+ * @param pinnedThreadReportThreshold the minimum time a virtual thread must be pinned to its carrier thread before the
+ * event is reported
+ */
+public record VirtualThreadConfiguration(boolean enabled, Duration pinnedThreadReportThreshold) {
+
+  public VirtualThreadConfiguration {
+    if (pinnedThreadReportThreshold == null) {
+      pinnedThreadReportThreshold = Duration.ofMillis(20);
+    }
+  }
+}
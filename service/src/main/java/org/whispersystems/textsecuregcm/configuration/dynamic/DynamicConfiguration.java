@@ -59,6 +59,14 @@ public class DynamicConfiguration {
   @Valid
   DynamicInboundMessageByteLimitConfiguration inboundMessageByteLimit = new DynamicInboundMessageByteLimitConfiguration(true);
 
+  @JsonProperty
+  @Valid
+  DynamicPushLatencyConfiguration pushLatency = new DynamicPushLatencyConfiguration();
+
+  @JsonProperty
+  @Valid
+  DynamicPreKeyPoolConfiguration preKeyPool = new DynamicPreKeyPoolConfiguration();
+
   public Optional<DynamicExperimentEnrollmentConfiguration> getExperimentEnrollmentConfiguration(
       final String experimentName) {
     return Optional.ofNullable(experiments.get(experimentName));
@@ -104,4 +112,12 @@ public class DynamicConfiguration {
   public DynamicInboundMessageByteLimitConfiguration getInboundMessageByteLimitConfiguration() {
     return inboundMessageByteLimit;
   }
+
+  public DynamicPushLatencyConfiguration getPushLatencyConfiguration() {
+    return pushLatency;
+  }
+
+  public DynamicPreKeyPoolConfiguration getPreKeyPoolConfiguration() {
+    return preKeyPool;
+  }
 }
@@ -6,13 +6,25 @@
 package org.whispersystems.textsecuregcm.configuration.dynamic;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.Min;
 
 public class DynamicMessagePersisterConfiguration {
 
   @JsonProperty
   private boolean persistenceEnabled = true;
 
+  /**
+   * The maximum number of queues each persister worker may have in flight at once
+   */
+  @JsonProperty
+  @Min(1)
+  private int persistQueueConcurrency = 8;
+
   public boolean isPersistenceEnabled() {
     return persistenceEnabled;
   }
+
+  public int getPersistQueueConcurrency() {
+    return persistQueueConcurrency;
+  }
 }
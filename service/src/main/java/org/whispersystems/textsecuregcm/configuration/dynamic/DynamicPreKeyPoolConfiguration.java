@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration.dynamic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class DynamicPreKeyPoolConfiguration {
+
+  /**
+   * If true, single-use pre-keys are taken from a Redis pool of key IDs that is refilled from DynamoDB in batches
+   */
+  @JsonProperty
+  private boolean enabled = false;
+
+  /**
+   * The maximum number of key IDs to read from DynamoDB when refilling an empty pool
+   */
+  @JsonProperty
+  @Min(1)
+  @Max(1000)
+  private int refillBatchSize = 100;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getRefillBatchSize() {
+    return refillBatchSize;
+  }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.configuration.dynamic;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+
+public class DynamicPushLatencyConfiguration {
+
+  /**
+   * The fraction of devices, between 0 and 1, for which push latency should be measured
+   */
+  @JsonProperty
+  @DecimalMin("0")
+  @DecimalMax("1")
+  private double sampleRate = 1.0;
+
+  public double getSampleRate() {
+    return sampleRate;
+  }
+}
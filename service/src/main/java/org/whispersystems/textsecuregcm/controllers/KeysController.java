@@ -5,7 +5,9 @@
 package org.whispersystems.textsecuregcm.controllers;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static org.whispersystems.textsecuregcm.storage.AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.HttpHeaders;
 import io.dropwizard.auth.Auth;
 import io.micrometer.core.instrument.Metrics;
@@ -20,18 +22,25 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -51,6 +60,8 @@ import org.whispersystems.textsecuregcm.auth.OptionalAccess;
 import org.whispersystems.textsecuregcm.entities.ECPreKey;
 import org.whispersystems.textsecuregcm.entities.ECSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
+import org.whispersystems.textsecuregcm.entities.PreKeyBatchRequest;
+import org.whispersystems.textsecuregcm.entities.PreKeyBatchResponse;
 import org.whispersystems.textsecuregcm.entities.PreKeyCount;
 import org.whispersystems.textsecuregcm.entities.PreKeyResponse;
 import org.whispersystems.textsecuregcm.entities.PreKeyResponseItem;
@@ -64,7 +75,9 @@ import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
-import org.whispersystems.textsecuregcm.util.Util;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 @Path("/v2/keys")
@@ -75,6 +88,7 @@ public class KeysController {
   private final KeysManager keys;
   private final AccountsManager accounts;
   private final Experiment compareSignedEcPreKeysExperiment = new Experiment("compareSignedEcPreKeys");
+  private final double compareSignedEcPreKeysSampleRate;
 
   private static final String IDENTITY_KEY_CHANGE_COUNTER_NAME = name(KeysController.class, "identityKeyChange");
   private static final String IDENTITY_KEY_CHANGE_FORBIDDEN_COUNTER_NAME = name(KeysController.class, "identityKeyChangeForbidden");
@@ -82,12 +96,24 @@ public class KeysController {
   private static final String IDENTITY_TYPE_TAG_NAME = "identityType";
   private static final String HAS_IDENTITY_KEY_TAG_NAME = "hasIdentityKey";
 
+  private static final double COMPARE_SIGNED_EC_PRE_KEYS_SAMPLE_RATE = 0.01;
+
   private static final Logger logger = LoggerFactory.getLogger(KeysController.class);
 
   public KeysController(RateLimiters rateLimiters, KeysManager keys, AccountsManager accounts) {
+    this(rateLimiters, keys, accounts, COMPARE_SIGNED_EC_PRE_KEYS_SAMPLE_RATE);
+  }
+
+  @VisibleForTesting
+  KeysController(final RateLimiters rateLimiters,
+      final KeysManager keys,
+      final AccountsManager accounts,
+      final double compareSignedEcPreKeysSampleRate) {
+
     this.rateLimiters = rateLimiters;
     this.keys = keys;
     this.accounts = accounts;
+    this.compareSignedEcPreKeysSampleRate = compareSignedEcPreKeysSampleRate;
   }
 
   @GET
@@ -203,7 +229,7 @@ public class KeysController {
   @ApiResponse(responseCode = "429", description = "Rate limit exceeded.", headers = @Header(
       name = "Retry-After",
       description = "If present, a positive integer indicating the number of seconds before a subsequent attempt could succeed"))
-  public PreKeyResponse getDeviceKeys(@Auth Optional<AuthenticatedAccount> auth,
+  public CompletableFuture<PreKeyResponse> getDeviceKeys(@Auth Optional<AuthenticatedAccount> auth,
       @HeaderParam(OptionalAccess.UNIDENTIFIED) Optional<Anonymous> accessKey,
 
       @Parameter(description="the account or phone-number identifier to retrieve keys for")
@@ -216,8 +242,7 @@ public class KeysController {
       @Schema(defaultValue="false")
       @QueryParam("pq") boolean returnPqKey,
 
-      @HeaderParam(HttpHeaders.USER_AGENT) String userAgent)
-      throws RateLimitExceededException {
+      @HeaderParam(HttpHeaders.USER_AGENT) String userAgent) {
 
     if (auth.isEmpty() && accessKey.isEmpty()) {
       throw new WebApplicationException(Response.Status.UNAUTHORIZED);
@@ -225,67 +250,168 @@ public class KeysController {
 
     final Optional<Account> account = auth.map(AuthenticatedAccount::getAccount);
 
-    final Account target;
-    {
-      final Optional<Account> maybeTarget = accounts.getByServiceIdentifier(targetIdentifier);
+    return accounts.getByServiceIdentifierAsync(targetIdentifier)
+        .thenApply(maybeTarget -> {
+          OptionalAccess.verify(account, accessKey, maybeTarget, deviceId);
 
-      OptionalAccess.verify(account, accessKey, maybeTarget, deviceId);
+          return maybeTarget.orElseThrow();
+        })
+        .thenCompose(target -> {
+          final CompletionStage<Void> rateLimitFuture = account.isPresent()
+              ? rateLimiters.getPreKeysLimiter().validateAsync(
+                  getPreKeysRateLimitKey(account.get().getUuid() + "." + auth.get().getAuthenticatedDevice().getId(),
+                      targetIdentifier, deviceId))
+              : CompletableFuture.completedFuture(null);
+
+          return rateLimitFuture.thenCompose(ignored -> {
+            final List<CompletableFuture<Optional<PreKeyResponseItem>>> responseItemFutures =
+                parseDeviceId(deviceId, target).stream()
+                    .map(device -> getPreKeyResponseItem(targetIdentifier, device, returnPqKey))
+                    .toList();
+
+            return CompletableFuture.allOf(responseItemFutures.toArray(new CompletableFuture[0]))
+                .thenApply(unused -> {
+                  final List<PreKeyResponseItem> responseItems = responseItemFutures.stream()
+                      .map(CompletableFuture::join)
+                      .flatMap(Optional::stream)
+                      .toList();
+
+                  if (responseItems.isEmpty()) {
+                    throw new WebApplicationException(Response.Status.NOT_FOUND);
+                  }
+
+                  return new PreKeyResponse(target.getIdentityKey(targetIdentifier.identityType()), responseItems);
+                });
+          });
+        });
+  }
 
-      target = maybeTarget.orElseThrow();
-    }
+  @POST
+  @Path("/batch")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  @Operation(summary = "Fetch public keys for many users",
+      description = """
+          Retrieves the public identity keys and available device prekeys for many accounts or phone-number identities
+          at once. Identities that do not exist or have no active devices with prekeys are omitted from the response.
+          """)
+  @ApiResponse(responseCode = "200", description = "Body contains prekeys for each requested identity for which prekeys were available.", useReturnTypeSchema = true)
+  @ApiResponse(responseCode = "401", description = "Account authentication check failed.")
+  @ApiResponse(responseCode = "422", description = "Invalid request format.")
+  @ApiResponse(responseCode = "429", description = "Rate limit exceeded.", headers = @Header(
+      name = "Retry-After",
+      description = "If present, a positive integer indicating the number of seconds before a subsequent attempt could succeed"))
+  public CompletableFuture<PreKeyBatchResponse> getDeviceKeysBatch(@Auth final AuthenticatedAccount auth,
 
-    if (account.isPresent()) {
-      rateLimiters.getPreKeysLimiter().validate(
-          account.get().getUuid() + "." + auth.get().getAuthenticatedDevice().getId() + "__" + targetIdentifier.uuid()
-              + "." + deviceId);
-    }
+      @Parameter(allowEmptyValue=true, description="whether to retrieve post-quantum prekeys")
+      @Schema(defaultValue="false")
+      @QueryParam("pq") final boolean returnPqKey,
 
-    final List<Device> devices = parseDeviceId(deviceId, target);
-    final List<PreKeyResponseItem> responseItems = new ArrayList<>(devices.size());
+      @NotNull @Valid final PreKeyBatchRequest request) {
 
-    final List<CompletableFuture<Void>> tasks = devices.stream().map(device -> {
+    // Collapse requests for the same identity into a single set of device IDs; an empty set means "all devices"
+    final Map<ServiceIdentifier, Set<Byte>> deviceIdsByTargetIdentifier = new LinkedHashMap<>();
 
-          ECSignedPreKey signedECPreKey = device.getSignedPreKey(targetIdentifier.identityType());
+    for (final PreKeyBatchRequest.Target target : request.targets()) {
+      final Set<Byte> deviceIds = deviceIdsByTargetIdentifier.get(target.identifier());
 
-          final CompletableFuture<Optional<ECPreKey>> unsignedEcPreKeyFuture = keys.takeEC(targetIdentifier.uuid(),
-              device.getId());
-          final CompletableFuture<Optional<KEMSignedPreKey>> pqPreKeyFuture = returnPqKey
-              ? keys.takePQ(targetIdentifier.uuid(), device.getId())
-              : CompletableFuture.completedFuture(Optional.empty());
+      if (deviceIds == null) {
+        deviceIdsByTargetIdentifier.put(target.identifier(),
+            target.deviceId() == null ? Collections.emptySet() : new HashSet<>(Set.of(target.deviceId())));
+      } else if (target.deviceId() == null) {
+        deviceIdsByTargetIdentifier.put(target.identifier(), Collections.emptySet());
+      } else if (!deviceIds.isEmpty()) {
+        deviceIds.add(target.deviceId());
+      }
+    }
 
-          return pqPreKeyFuture.thenCombine(unsignedEcPreKeyFuture,
-              (maybePqPreKey, maybeUnsignedEcPreKey) -> {
+    final String requesterKey = auth.getAccount().getUuid() + "." + auth.getAuthenticatedDevice().getId();
 
-                KEMSignedPreKey pqPreKey = pqPreKeyFuture.join().orElse(null);
-                ECPreKey unsignedECPreKey = unsignedEcPreKeyFuture.join().orElse(null);
+    // Each target device is also charged against the same per-target limit as single-target fetches (using the same
+    // "*" device ID for "all devices") so batches can't be used to drain a target's keys faster than individual fetches.
+    // All of a requester's per-target keys share a slot, so they're checked and charged together in a single call.
+    final List<String> preKeysRateLimitKeys = new ArrayList<>();
 
-                compareSignedEcPreKeysExperiment.compareFutureResult(Optional.ofNullable(signedECPreKey),
-                    keys.getEcSignedPreKey(targetIdentifier.uuid(), device.getId()));
+    deviceIdsByTargetIdentifier.forEach((targetIdentifier, deviceIds) -> {
+      if (deviceIds.isEmpty()) {
+        preKeysRateLimitKeys.add(getPreKeysRateLimitKey(requesterKey, targetIdentifier, "*"));
+      } else {
+        deviceIds.forEach(deviceId ->
+            preKeysRateLimitKeys.add(getPreKeysRateLimitKey(requesterKey, targetIdentifier, String.valueOf(deviceId))));
+      }
+    });
 
-                if (signedECPreKey != null || unsignedECPreKey != null || pqPreKey != null) {
-                  final int registrationId = switch (targetIdentifier.identityType()) {
-                    case ACI -> device.getRegistrationId();
-                    case PNI -> device.getPhoneNumberIdentityRegistrationId().orElse(device.getRegistrationId());
-                  };
+    return rateLimiters.getPreKeysBatchLimiter().validateAsync(requesterKey, deviceIdsByTargetIdentifier.size())
+        .thenCompose(ignored -> rateLimiters.getPreKeysLimiter().validateAllAsync(preKeysRateLimitKeys))
+        .thenCompose(ignored -> accounts.getByServiceIdentifiersAsync(deviceIdsByTargetIdentifier.keySet()))
+        // Flatten every target device into one stream so only a bounded number of devices have takes in flight at once
+        .thenCompose(accountsByTargetIdentifier -> Flux.fromIterable(deviceIdsByTargetIdentifier.entrySet())
+            .filter(entry -> accountsByTargetIdentifier.containsKey(entry.getKey()))
+            .concatMap(entry -> Flux.fromStream(accountsByTargetIdentifier.get(entry.getKey()).getDevices().stream()
+                    .filter(Device::isEnabled)
+                    .filter(device -> entry.getValue().isEmpty() || entry.getValue().contains(device.getId())))
+                .map(device -> Tuples.of(entry.getKey(), device)))
+            .flatMapSequential(targetAndDevice ->
+                    Mono.fromFuture(() -> getPreKeyResponseItem(targetAndDevice.getT1(), targetAndDevice.getT2(), returnPqKey))
+                        .flatMap(Mono::justOrEmpty)
+                        .map(responseItem -> Tuples.of(targetAndDevice.getT1(), responseItem)),
+                DYNAMO_DB_MAX_BATCH_SIZE)
+            .collect(LinkedHashMap<ServiceIdentifier, List<PreKeyResponseItem>>::new,
+                (responseItemsByTargetIdentifier, targetAndResponseItem) -> responseItemsByTargetIdentifier
+                    .computeIfAbsent(targetAndResponseItem.getT1(), ignored -> new ArrayList<>())
+                    .add(targetAndResponseItem.getT2()))
+            .map(responseItemsByTargetIdentifier -> new PreKeyBatchResponse(responseItemsByTargetIdentifier.entrySet()
+                .stream()
+                .map(entry -> new PreKeyBatchResponse.Element(entry.getKey(),
+                    accountsByTargetIdentifier.get(entry.getKey()).getIdentityKey(entry.getKey().identityType()),
+                    entry.getValue()))
+                .toList()))
+            .toFuture())
+        .toCompletableFuture();
+  }
 
-                  responseItems.add(
-                      new PreKeyResponseItem(device.getId(), registrationId, signedECPreKey, unsignedECPreKey,
-                          pqPreKey));
-                }
+  /**
+   * Returns the key for the per-target pre-key rate limit. The requester's portion of the key is hash-tagged so that all
+   * of a requester's per-target keys can be checked and charged together.
+   */
+  private static String getPreKeysRateLimitKey(final String requesterKey,
+      final ServiceIdentifier targetIdentifier,
+      final String deviceId) {
 
-                return null;
-              }).thenRun(Util.NOOP);
-        })
-        .toList();
+    return "{" + requesterKey + "}__" + targetIdentifier.uuid() + "." + deviceId;
+  }
+
+  private CompletableFuture<Optional<PreKeyResponseItem>> getPreKeyResponseItem(
+      final ServiceIdentifier targetIdentifier, final Device device, final boolean returnPqKey) {
 
-    CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+    final ECSignedPreKey signedECPreKey = device.getSignedPreKey(targetIdentifier.identityType());
 
-    final IdentityKey identityKey = target.getIdentityKey(targetIdentifier.identityType());
+    final CompletableFuture<Optional<ECPreKey>> unsignedEcPreKeyFuture =
+        keys.takeEC(targetIdentifier.uuid(), device.getId());
 
-    if (responseItems.isEmpty()) {
-      throw new WebApplicationException(Response.Status.NOT_FOUND);
+    final CompletableFuture<Optional<KEMSignedPreKey>> pqPreKeyFuture = returnPqKey
+        ? keys.takePQ(targetIdentifier.uuid(), device.getId())
+        : CompletableFuture.completedFuture(Optional.empty());
+
+    // The signed pre-key comparison costs an extra read per device, so only compare a sample of fetches
+    if (ThreadLocalRandom.current().nextDouble() < compareSignedEcPreKeysSampleRate) {
+      compareSignedEcPreKeysExperiment.compareFutureResult(Optional.ofNullable(signedECPreKey),
+          keys.getEcSignedPreKey(targetIdentifier.uuid(), device.getId()));
     }
-    return new PreKeyResponse(identityKey, responseItems);
+
+    return unsignedEcPreKeyFuture.thenCombine(pqPreKeyFuture, (maybeUnsignedEcPreKey, maybePqPreKey) -> {
+      if (signedECPreKey == null && maybeUnsignedEcPreKey.isEmpty() && maybePqPreKey.isEmpty()) {
+        return Optional.empty();
+      }
+
+      final int registrationId = switch (targetIdentifier.identityType()) {
+        case ACI -> device.getRegistrationId();
+        case PNI -> device.getPhoneNumberIdentityRegistrationId().orElse(device.getRegistrationId());
+      };
+
+      return Optional.of(new PreKeyResponseItem(device.getId(), registrationId, signedECPreKey,
+          maybeUnsignedEcPreKey.orElse(null), maybePqPreKey.orElse(null)));
+    });
   }
 
   @PUT
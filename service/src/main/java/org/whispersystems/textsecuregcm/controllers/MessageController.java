@@ -10,6 +10,7 @@ import com.codahale.metrics.annotation.Timed;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.HttpHeaders;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.dropwizard.auth.Auth;
 import io.dropwizard.util.DataSize;
 import io.micrometer.core.instrument.Counter;
@@ -25,6 +26,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +34,6 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -106,6 +107,7 @@ import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
 import org.whispersystems.textsecuregcm.storage.ReportMessageManager;
 import org.whispersystems.textsecuregcm.util.DestinationDeviceValidator;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Pair;
 import org.whispersystems.textsecuregcm.util.Util;
 import org.whispersystems.textsecuregcm.websocket.WebSocketConnection;
@@ -372,7 +374,7 @@ public class MessageController {
   @Consumes(MultiRecipientMessageProvider.MEDIA_TYPE)
   @Produces(MediaType.APPLICATION_JSON)
   @FilterSpam
-  public Response sendMultiRecipientMessage(
+  public CompletableFuture<Response> sendMultiRecipientMessage(
       @HeaderParam(OptionalAccess.UNIDENTIFIED) @Nullable CombinedUnidentifiedSenderAccessKeys accessKeys,
       @HeaderParam(HttpHeaders.USER_AGENT) String userAgent,
       @HeaderParam(HttpHeaders.X_FORWARDED_FOR) String forwardedFor,
@@ -382,22 +384,45 @@ public class MessageController {
       @QueryParam("story") boolean isStory,
       @NotNull @Valid MultiRecipientMessage multiRecipientMessage) {
 
-    final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new HashMap<>();
+    // Resolve all distinct recipient accounts in parallel
+    final Map<ServiceIdentifier, CompletableFuture<Optional<Account>>> accountFuturesByServiceIdentifier =
+        new HashMap<>();
 
     for (final Recipient recipient : multiRecipientMessage.recipients()) {
-      if (!accountsByServiceIdentifier.containsKey(recipient.uuid())) {
-        final Optional<Account> maybeAccount = accountsManager.getByServiceIdentifier(recipient.uuid());
-
-        if (maybeAccount.isPresent()) {
-          accountsByServiceIdentifier.put(recipient.uuid(), maybeAccount.get());
-        } else {
-          if (!isStory) {
-            throw new NotFoundException();
-          }
-        }
-      }
+      accountFuturesByServiceIdentifier.computeIfAbsent(recipient.uuid(), accountsManager::getByServiceIdentifierAsync);
     }
 
+    return CompletableFuture.allOf(accountFuturesByServiceIdentifier.values().toArray(new CompletableFuture[0]))
+        .thenComposeAsync(ignored -> {
+          final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new HashMap<>();
+
+          accountFuturesByServiceIdentifier.forEach((serviceIdentifier, accountFuture) -> {
+            final Optional<Account> maybeAccount = accountFuture.join();
+
+            if (maybeAccount.isPresent()) {
+              accountsByServiceIdentifier.put(serviceIdentifier, maybeAccount.get());
+            } else {
+              if (!isStory) {
+                throw new NotFoundException();
+              }
+            }
+          });
+
+          return sendMultiRecipientMessage(accessKeys, userAgent, online, timestamp, isUrgent, isStory,
+              multiRecipientMessage, accountsByServiceIdentifier);
+        }, multiRecipientMessageExecutor);
+  }
+
+  private CompletableFuture<Response> sendMultiRecipientMessage(
+      @Nullable final CombinedUnidentifiedSenderAccessKeys accessKeys,
+      final String userAgent,
+      final boolean online,
+      final long timestamp,
+      final boolean isUrgent,
+      final boolean isStory,
+      final MultiRecipientMessage multiRecipientMessage,
+      final Map<ServiceIdentifier, Account> accountsByServiceIdentifier) {
+
     // Stories will be checked by the client; we bypass access checks here for stories.
     if (!isStory) {
       checkAccessKeys(accessKeys, accountsByServiceIdentifier.values());
@@ -409,7 +434,8 @@ public class MessageController {
     // We might filter out all the recipients of a story (if none have enabled stories).
     // In this case there is no error so we should just return 200 now.
     if (isStory && accountToDeviceIdAndRegistrationIdMap.isEmpty()) {
-      return Response.ok(new SendMultiRecipientMessageResponse(new LinkedList<>())).build();
+      return CompletableFuture.completedFuture(
+          Response.ok(new SendMultiRecipientMessageResponse(new LinkedList<>())).build());
     }
 
     Collection<AccountMismatchedDevices> accountMismatchedDevices = new ArrayList<>();
@@ -443,49 +469,73 @@ public class MessageController {
       }
     });
     if (!accountMismatchedDevices.isEmpty()) {
-      return Response
+      return CompletableFuture.completedFuture(Response
           .status(409)
           .type(MediaType.APPLICATION_JSON_TYPE)
           .entity(accountMismatchedDevices)
-          .build();
+          .build());
     }
     if (!accountStaleDevices.isEmpty()) {
-      return Response
+      return CompletableFuture.completedFuture(Response
           .status(410)
           .type(MediaType.APPLICATION_JSON)
           .entity(accountStaleDevices)
-          .build();
+          .build());
     }
 
-    List<ServiceIdentifier> uuids404 = Collections.synchronizedList(new ArrayList<>());
+    final Counter sentMessageCounter = Metrics.counter(SENT_MESSAGE_COUNTER_NAME, Tags.of(
+        UserAgentTagUtil.getPlatformTag(userAgent),
+        Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(online)),
+        Tag.of(SENDER_TYPE_TAG_NAME, SENDER_TYPE_UNIDENTIFIED)));
+
+    // Everything but the content and destination of each envelope is the same for every recipient, and the common
+    // payload (which may be large) can be shared by every recipient's envelope content rather than copied
+    final long serverTimestamp = System.currentTimeMillis();
+    final Envelope sharedEnvelope = Envelope.newBuilder()
+        .setType(Type.UNIDENTIFIED_SENDER)
+        .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
+        .setServerTimestamp(serverTimestamp)
+        .setStory(isStory)
+        .setUrgent(isUrgent)
+        .build();
 
-    try {
-      final Counter sentMessageCounter = Metrics.counter(SENT_MESSAGE_COUNTER_NAME, Tags.of(
-          UserAgentTagUtil.getPlatformTag(userAgent),
-          Tag.of(EPHEMERAL_TAG_NAME, String.valueOf(online)),
-          Tag.of(SENDER_TYPE_TAG_NAME, SENDER_TYPE_UNIDENTIFIED)));
-
-      multiRecipientMessageExecutor.invokeAll(Arrays.stream(multiRecipientMessage.recipients())
-          .map(recipient -> (Callable<Void>) () -> {
-            Account destinationAccount = accountsByServiceIdentifier.get(recipient.uuid());
-
-            // we asserted this must exist in validateCompleteDeviceList
-            Device destinationDevice = destinationAccount.getDevice(recipient.deviceId()).orElseThrow();
-            sentMessageCounter.increment();
-            try {
-              sendCommonPayloadMessage(destinationAccount, destinationDevice, timestamp, online, isStory, isUrgent,
-                  recipient, multiRecipientMessage.commonPayload());
-            } catch (NoSuchUserException e) {
-              uuids404.add(recipient.uuid());
-            }
-            return null;
-          })
-          .collect(Collectors.toList()));
-    } catch (InterruptedException e) {
-      logger.error("interrupted while delivering multi-recipient messages", e);
-      return Response.serverError().entity("interrupted during delivery").build();
+    final ByteString commonPayload = multiRecipientMessage.commonPayload();
+
+    final Map<MessageSender.OutgoingMessage, ServiceIdentifier> serviceIdentifiersByOutgoingMessage =
+        new IdentityHashMap<>();
+
+    for (final Recipient recipient : multiRecipientMessage.recipients()) {
+      final Account destinationAccount = accountsByServiceIdentifier.get(recipient.uuid());
+
+      // story recipients without an account have already been filtered from the map
+      if (destinationAccount == null) {
+        continue;
+      }
+
+      // we asserted this must exist in validateCompleteDeviceList
+      final Device destinationDevice = destinationAccount.getDevice(recipient.deviceId()).orElseThrow();
+
+      serviceIdentifiersByOutgoingMessage.put(new MessageSender.OutgoingMessage(destinationAccount, destinationDevice,
+              buildCommonPayloadEnvelope(sharedEnvelope, destinationAccount, recipient, commonPayload)),
+          recipient.uuid());
     }
-    return Response.ok(new SendMultiRecipientMessageResponse(uuids404)).build();
+
+    sentMessageCounter.increment(serviceIdentifiersByOutgoingMessage.size());
+
+    return messageSender.sendMessages(new ArrayList<>(serviceIdentifiersByOutgoingMessage.keySet()), online)
+        .thenApply(undeliverableMessages -> {
+          final List<ServiceIdentifier> uuids404 = new ArrayList<>();
+
+          for (final MessageSender.OutgoingMessage undeliverableMessage : undeliverableMessages) {
+            if (undeliverableMessage.destinationDevice().isPrimary()) {
+              uuids404.add(serviceIdentifiersByOutgoingMessage.get(undeliverableMessage));
+            } else {
+              logger.debug("Not registered");
+            }
+          }
+
+          return Response.ok(new SendMultiRecipientMessageResponse(uuids404)).build();
+        });
   }
 
   private void checkAccessKeys(final CombinedUnidentifiedSenderAccessKeys accessKeys, final Collection<Account> destinationAccounts) {
@@ -699,49 +749,32 @@ public class MessageController {
     }
   }
 
-  private void sendCommonPayloadMessage(Account destinationAccount,
-      Device destinationDevice,
-      long timestamp,
-      boolean online,
-      boolean story,
-      boolean urgent,
+  private static Envelope buildCommonPayloadEnvelope(Envelope sharedEnvelope,
+      Account destinationAccount,
       Recipient recipient,
-      byte[] commonPayload) throws NoSuchUserException {
-    try {
-      Envelope.Builder messageBuilder = Envelope.newBuilder();
-      long serverTimestamp = System.currentTimeMillis();
-      byte[] recipientKeyMaterial = recipient.perRecipientKeyMaterial();
-
-      byte[] payload = new byte[1 + recipientKeyMaterial.length + commonPayload.length];
-      payload[0] = MultiRecipientMessageProvider.AMBIGUOUS_ID_VERSION_IDENTIFIER;
-      System.arraycopy(recipientKeyMaterial, 0, payload, 1, recipientKeyMaterial.length);
-      System.arraycopy(commonPayload, 0, payload, 1 + recipientKeyMaterial.length, commonPayload.length);
-
-      messageBuilder
-          .setType(Type.UNIDENTIFIED_SENDER)
-          .setTimestamp(timestamp == 0 ? serverTimestamp : timestamp)
-          .setServerTimestamp(serverTimestamp)
-          .setContent(ByteString.copyFrom(payload))
-          .setStory(story)
-          .setUrgent(urgent)
-          .setDestinationUuid(new AciServiceIdentifier(destinationAccount.getUuid()).toServiceIdentifierString());
-
-      messageSender.sendMessage(destinationAccount, destinationDevice, messageBuilder.build(), online);
-    } catch (NotPushRegisteredException e) {
-      if (destinationDevice.isPrimary()) {
-        throw new NoSuchUserException(e);
-      } else {
-        logger.debug("Not registered", e);
-      }
-    }
+      ByteString commonPayload) {
+
+    byte[] recipientKeyMaterial = recipient.perRecipientKeyMaterial();
+
+    byte[] payloadPrefix = new byte[1 + recipientKeyMaterial.length];
+    payloadPrefix[0] = MultiRecipientMessageProvider.AMBIGUOUS_ID_VERSION_IDENTIFIER;
+    System.arraycopy(recipientKeyMaterial, 0, payloadPrefix, 1, recipientKeyMaterial.length);
+
+    return sharedEnvelope.toBuilder()
+        .setContent(UnsafeByteOperations.unsafeWrap(payloadPrefix).concat(commonPayload))
+        .setDestinationUuid(new AciServiceIdentifier(destinationAccount.getUuid()).toServiceIdentifierString())
+        .build();
   }
 
   private void checkStoryRateLimit(Account destination, String userAgent) {
-    try {
-      rateLimiters.getStoriesLimiter().validate(destination.getUuid());
-    } catch (final RateLimitExceededException e) {
-      Metrics.counter(RATE_LIMITED_STORIES_COUNTER_NAME, Tags.of(UserAgentTagUtil.getPlatformTag(userAgent))).increment();
-    }
+    // Story rate limits are only measured, not enforced, so there's no need to wait for the result
+    rateLimiters.getStoriesLimiter().validateAsync(destination.getUuid())
+        .whenComplete((ignored, throwable) -> {
+          if (ExceptionUtils.unwrap(throwable) instanceof RateLimitExceededException) {
+            Metrics.counter(RATE_LIMITED_STORIES_COUNTER_NAME, Tags.of(UserAgentTagUtil.getPlatformTag(userAgent)))
+                .increment();
+          }
+        });
   }
 
   private void checkMessageRateLimit(AuthenticatedAccount source, Account destination, String userAgent)
@@ -18,6 +18,7 @@ import javax.validation.constraints.Size;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.protobuf.ByteString;
 import org.whispersystems.textsecuregcm.controllers.MessageController;
 import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.providers.MultiRecipientMessageProvider;
@@ -29,7 +30,7 @@ import org.whispersystems.textsecuregcm.util.ServiceIdentifierAdapter;
 
 public record MultiRecipientMessage(
     @NotNull @Size(min = 1, max = MultiRecipientMessageProvider.MAX_RECIPIENT_COUNT) @Valid Recipient[] recipients,
-    @NotNull @Size(min = 32) byte[] commonPayload) {
+    @NotNull ByteString commonPayload) {
 
   private static final Counter REJECT_DUPLICATE_RECIPIENT_COUNTER =
       Metrics.counter(
@@ -63,7 +64,7 @@ public record MultiRecipientMessage(
     }
   }
 
-  public MultiRecipientMessage(Recipient[] recipients, byte[] commonPayload) {
+  public MultiRecipientMessage(Recipient[] recipients, ByteString commonPayload) {
     this.recipients = recipients;
     this.commonPayload = commonPayload;
   }
@@ -78,6 +79,11 @@ public record MultiRecipientMessage(
     return valid;
   }
 
+  @AssertTrue
+  public boolean hasValidCommonPayloadSize() {
+    return commonPayload.size() >= 32;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o)
@@ -85,13 +91,13 @@ public record MultiRecipientMessage(
     if (o == null || getClass() != o.getClass())
       return false;
     MultiRecipientMessage that = (MultiRecipientMessage) o;
-    return Arrays.equals(recipients, that.recipients) && Arrays.equals(commonPayload, that.commonPayload);
+    return Arrays.equals(recipients, that.recipients) && commonPayload.equals(that.commonPayload);
   }
 
   @Override
   public int hashCode() {
     int result = Arrays.hashCode(recipients);
-    result = 31 * result + Arrays.hashCode(commonPayload);
+    result = 31 * result + commonPayload.hashCode();
     return result;
   }
 }
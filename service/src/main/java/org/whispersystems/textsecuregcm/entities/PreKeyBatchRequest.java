@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.entities;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
+import org.whispersystems.textsecuregcm.util.ServiceIdentifierAdapter;
+
+public record PreKeyBatchRequest(
+    @Schema(description = "the accounts and devices for which to retrieve prekeys")
+    @Valid @NotNull @Size(min = 1, max = 1000) List<Target> targets) {
+
+  public record Target(
+      @Schema(description = "the account or phone-number identifier to retrieve keys for")
+      @NotNull
+      @JsonSerialize(using = ServiceIdentifierAdapter.ServiceIdentifierSerializer.class)
+      @JsonDeserialize(using = ServiceIdentifierAdapter.ServiceIdentifierDeserializer.class)
+      ServiceIdentifier identifier,
+
+      @Schema(description = "the device id of a single device to retrieve prekeys for; if absent, prekeys are retrieved for all enabled devices")
+      @Nullable
+      Byte deviceId) {
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.entities;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import org.signal.libsignal.protocol.IdentityKey;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
+import org.whispersystems.textsecuregcm.util.IdentityKeyAdapter;
+import org.whispersystems.textsecuregcm.util.ServiceIdentifierAdapter;
+
+public record PreKeyBatchResponse(
+    @Schema(description = "prekeys for each requested identity that exists and has at least one device with prekeys available; other identities are omitted")
+    List<Element> elements) {
+
+  public record Element(
+      @Schema(description = "the account or phone-number identifier to which these keys belong")
+      @JsonSerialize(using = ServiceIdentifierAdapter.ServiceIdentifierSerializer.class)
+      @JsonDeserialize(using = ServiceIdentifierAdapter.ServiceIdentifierDeserializer.class)
+      ServiceIdentifier identifier,
+
+      @Schema(description = "the public identity key for the requested identity")
+      @JsonSerialize(using = IdentityKeyAdapter.Serializer.class)
+      @JsonDeserialize(using = IdentityKeyAdapter.Deserializer.class)
+      IdentityKey identityKey,
+
+      @Schema(description = "information about each requested device")
+      List<PreKeyResponseItem> devices) {
+  }
+}
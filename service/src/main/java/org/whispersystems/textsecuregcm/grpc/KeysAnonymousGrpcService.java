@@ -10,14 +10,20 @@ import io.grpc.Status;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.signal.chat.keys.CheckIdentityKeyRequest;
 import org.signal.chat.keys.CheckIdentityKeyResponse;
+import org.signal.chat.keys.GetPreKeysAnonymousBatchRequest;
 import org.signal.chat.keys.GetPreKeysAnonymousRequest;
+import org.signal.chat.keys.GetPreKeysBatchResponse;
 import org.signal.chat.keys.GetPreKeysResponse;
 import org.signal.chat.keys.ReactorKeysAnonymousGrpc;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.whispersystems.textsecuregcm.auth.UnidentifiedAccessUtil;
 import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
+import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
 import reactor.core.publisher.Flux;
@@ -50,6 +56,35 @@ public class KeysAnonymousGrpcService extends ReactorKeysAnonymousGrpc.KeysAnony
                 : Mono.error(Status.UNAUTHENTICATED.asException()));
   }
 
+  @Override
+  public Mono<GetPreKeysBatchResponse> getPreKeysBatch(final GetPreKeysAnonymousBatchRequest request) {
+    KeysGrpcHelper.validateBatchSize(request.getRequestsCount());
+
+    final Set<ServiceIdentifier> targetIdentifiers = request.getRequestsList().stream()
+        .map(anonymousRequest -> {
+          DeviceIdUtil.validate(anonymousRequest.getRequest().getDeviceId());
+          return ServiceIdentifierUtil.fromGrpcServiceIdentifier(anonymousRequest.getRequest().getTargetIdentifier());
+        })
+        .collect(Collectors.toSet());
+
+    return Mono.fromFuture(() -> accountsManager.getByServiceIdentifiersAsync(targetIdentifiers))
+        .flatMap(accountsByTargetIdentifier -> {
+          // Drop any targets for which the caller didn't present a valid unidentified access key
+          final Map<ServiceIdentifier, Set<Byte>> deviceIdsByTargetIdentifier =
+              KeysGrpcHelper.getDeviceIdsByTargetIdentifier(request.getRequestsList().stream()
+                  .filter(anonymousRequest -> {
+                    final Account targetAccount = accountsByTargetIdentifier.get(
+                        ServiceIdentifierUtil.fromGrpcServiceIdentifier(anonymousRequest.getRequest().getTargetIdentifier()));
+
+                    return targetAccount != null && UnidentifiedAccessUtil.checkUnidentifiedAccess(targetAccount,
+                        anonymousRequest.getUnidentifiedAccessKey().toByteArray());
+                  })
+                  .map(GetPreKeysAnonymousRequest::getRequest));
+
+          return KeysGrpcHelper.getPreKeysBatch(deviceIdsByTargetIdentifier, accountsByTargetIdentifier, keysManager);
+        });
+  }
+
   @Override
   public Flux<CheckIdentityKeyResponse> checkIdentityKeys(final Flux<CheckIdentityKeyRequest> requests) {
     return requests
@@ -5,17 +5,29 @@
 
 package org.whispersystems.textsecuregcm.grpc;
 
+import static org.whispersystems.textsecuregcm.storage.AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 import org.signal.chat.common.EcPreKey;
 import org.signal.chat.common.EcSignedPreKey;
 import org.signal.chat.common.KemSignedPreKey;
+import org.signal.chat.keys.GetPreKeysBatchResponse;
+import org.signal.chat.keys.GetPreKeysRequest;
 import org.signal.chat.keys.GetPreKeysResponse;
 import org.whispersystems.textsecuregcm.entities.ECPreKey;
 import org.whispersystems.textsecuregcm.entities.ECSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
 import org.whispersystems.textsecuregcm.identity.IdentityType;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
@@ -29,57 +41,158 @@ class KeysGrpcHelper {
   @VisibleForTesting
   static final byte ALL_DEVICES = 0;
 
+  static final int MAX_BATCH_SIZE = 1_000;
+
   static Mono<GetPreKeysResponse> getPreKeys(final Account targetAccount,
       final IdentityType identityType,
       final byte targetDeviceId,
       final KeysManager keysManager) {
 
-    final Flux<Device> devices = targetDeviceId == ALL_DEVICES
-        ? Flux.fromIterable(targetAccount.getDevices())
-        : Flux.from(Mono.justOrEmpty(targetAccount.getDevice(targetDeviceId)));
-
-    return devices
-        .filter(Device::isEnabled)
-        .switchIfEmpty(Mono.error(Status.NOT_FOUND.asException()))
-        .flatMap(device -> {
-          final ECSignedPreKey ecSignedPreKey = device.getSignedPreKey(identityType);
-
-          final GetPreKeysResponse.PreKeyBundle.Builder preKeyBundleBuilder = GetPreKeysResponse.PreKeyBundle.newBuilder()
-              .setEcSignedPreKey(EcSignedPreKey.newBuilder()
-                  .setKeyId(ecSignedPreKey.keyId())
-                  .setPublicKey(ByteString.copyFrom(ecSignedPreKey.serializedPublicKey()))
-                  .setSignature(ByteString.copyFrom(ecSignedPreKey.signature()))
-                  .build());
-
-          return Flux.merge(
-                  Mono.fromFuture(() -> keysManager.takeEC(targetAccount.getIdentifier(identityType), device.getId())),
-                  Mono.fromFuture(() -> keysManager.takePQ(targetAccount.getIdentifier(identityType), device.getId())))
-              .flatMap(Mono::justOrEmpty)
-              .reduce(preKeyBundleBuilder, (builder, preKey) -> {
-                if (preKey instanceof ECPreKey ecPreKey) {
-                  builder.setEcOneTimePreKey(EcPreKey.newBuilder()
-                      .setKeyId(ecPreKey.keyId())
-                      .setPublicKey(ByteString.copyFrom(ecPreKey.serializedPublicKey()))
-                      .build());
-                } else if (preKey instanceof KEMSignedPreKey kemSignedPreKey) {
-                  preKeyBundleBuilder.setKemOneTimePreKey(KemSignedPreKey.newBuilder()
-                      .setKeyId(kemSignedPreKey.keyId())
-                      .setPublicKey(ByteString.copyFrom(kemSignedPreKey.serializedPublicKey()))
-                      .setSignature(ByteString.copyFrom(kemSignedPreKey.signature()))
-                      .build());
-                } else {
-                  throw new AssertionError("Unexpected pre-key type: " + preKey.getClass());
-                }
-
-                return builder;
-              })
-              // Cast device IDs to `int` to match data types in the response object’s protobuf definition
-              .map(builder -> Tuples.of((int) device.getId(), builder.build()));
-            })
+    return getPreKeys(targetAccount, identityType,
+        targetDeviceId == ALL_DEVICES ? Collections.emptySet() : Set.of(targetDeviceId), keysManager)
+        .switchIfEmpty(Mono.error(Status.NOT_FOUND.asException()));
+  }
+
+  /**
+   * Collapses requests for the same target identity into a single set of device IDs per identity, preserving the order
+   * in which identities were first requested. An empty set of device IDs means "all devices."
+   */
+  static Map<ServiceIdentifier, Set<Byte>> getDeviceIdsByTargetIdentifier(final Stream<GetPreKeysRequest> requests) {
+    final Map<ServiceIdentifier, Set<Byte>> deviceIdsByTargetIdentifier = new LinkedHashMap<>();
+
+    requests.forEach(request -> {
+      final ServiceIdentifier targetIdentifier =
+          ServiceIdentifierUtil.fromGrpcServiceIdentifier(request.getTargetIdentifier());
+
+      final byte deviceId = DeviceIdUtil.validate(request.getDeviceId());
+      final Set<Byte> deviceIds = deviceIdsByTargetIdentifier.get(targetIdentifier);
+
+      if (deviceIds == null) {
+        deviceIdsByTargetIdentifier.put(targetIdentifier,
+            deviceId == ALL_DEVICES ? Collections.emptySet() : new HashSet<>(Set.of(deviceId)));
+      } else if (deviceId == ALL_DEVICES) {
+        deviceIdsByTargetIdentifier.put(targetIdentifier, Collections.emptySet());
+      } else if (!deviceIds.isEmpty()) {
+        deviceIds.add(deviceId);
+      }
+    });
+
+    return deviceIdsByTargetIdentifier;
+  }
+
+  static void validateBatchSize(final int batchSize) {
+    if (batchSize == 0 || batchSize > MAX_BATCH_SIZE) {
+      throw Status.INVALID_ARGUMENT
+          .withDescription("Batch must contain between 1 and " + MAX_BATCH_SIZE + " targets")
+          .asRuntimeException();
+    }
+  }
+
+  /**
+   * Retrieves pre-keys for each of the given targets. Target devices from every target are flattened into one stream and
+   * only a bounded number of devices have takes in flight at once, so a large batch doesn't issue an unbounded burst of
+   * concurrent reads and deletes.
+   */
+  static Mono<GetPreKeysBatchResponse> getPreKeysBatch(final Map<ServiceIdentifier, Set<Byte>> deviceIdsByTargetIdentifier,
+      final Map<ServiceIdentifier, Account> accountsByTargetIdentifier,
+      final KeysManager keysManager) {
+
+    return Flux.fromIterable(deviceIdsByTargetIdentifier.entrySet())
+        .filter(entry -> accountsByTargetIdentifier.containsKey(entry.getKey()))
+        .concatMap(entry -> getEnabledDevices(accountsByTargetIdentifier.get(entry.getKey()), entry.getValue())
+            .map(device -> Tuples.of(entry.getKey(), device)))
+        .flatMapSequential(targetAndDevice -> getPreKeyBundle(
+                accountsByTargetIdentifier.get(targetAndDevice.getT1()), targetAndDevice.getT1().identityType(),
+                targetAndDevice.getT2(), keysManager)
+                .map(preKeyBundle -> Tuples.of(targetAndDevice.getT1(), preKeyBundle)),
+            DYNAMO_DB_MAX_BATCH_SIZE)
+        .collect(LinkedHashMap<ServiceIdentifier, Map<Integer, GetPreKeysResponse.PreKeyBundle>>::new,
+            (preKeyBundlesByTargetIdentifier, targetAndPreKeyBundle) -> preKeyBundlesByTargetIdentifier
+                .computeIfAbsent(targetAndPreKeyBundle.getT1(), ignored -> new HashMap<>())
+                .put(targetAndPreKeyBundle.getT2().getT1(), targetAndPreKeyBundle.getT2().getT2()))
+        .map(preKeyBundlesByTargetIdentifier -> {
+          final GetPreKeysBatchResponse.Builder responseBuilder = GetPreKeysBatchResponse.newBuilder();
+
+          preKeyBundlesByTargetIdentifier.forEach((targetIdentifier, preKeyBundles) ->
+              responseBuilder.addPreKeys(GetPreKeysBatchResponse.TargetPreKeys.newBuilder()
+                  .setTargetIdentifier(ServiceIdentifierUtil.toGrpcServiceIdentifier(targetIdentifier))
+                  .setPreKeys(GetPreKeysResponse.newBuilder()
+                      .setIdentityKey(ByteString.copyFrom(accountsByTargetIdentifier.get(targetIdentifier)
+                          .getIdentityKey(targetIdentifier.identityType()).serialize()))
+                      .putAllPreKeys(preKeyBundles))
+                  .build()));
+
+          return responseBuilder.build();
+        });
+  }
+
+  /**
+   * Retrieves pre-keys for the given devices on the given account, or for all devices if the set of device IDs is
+   * empty. The returned {@code Mono} is empty if none of the requested devices exist and are enabled.
+   */
+  private static Mono<GetPreKeysResponse> getPreKeys(final Account targetAccount,
+      final IdentityType identityType,
+      final Set<Byte> targetDeviceIds,
+      final KeysManager keysManager) {
+
+    return getEnabledDevices(targetAccount, targetDeviceIds)
+        .flatMap(device -> getPreKeyBundle(targetAccount, identityType, device, keysManager))
         .collectMap(Tuple2::getT1, Tuple2::getT2)
+        .filter(preKeyBundles -> !preKeyBundles.isEmpty())
         .map(preKeyBundles -> GetPreKeysResponse.newBuilder()
             .setIdentityKey(ByteString.copyFrom(targetAccount.getIdentityKey(identityType).serialize()))
             .putAllPreKeys(preKeyBundles)
             .build());
   }
+
+  private static Flux<Device> getEnabledDevices(final Account targetAccount, final Set<Byte> targetDeviceIds) {
+    final Flux<Device> devices = targetDeviceIds.isEmpty()
+        ? Flux.fromIterable(targetAccount.getDevices())
+        : Flux.fromIterable(targetDeviceIds).flatMap(deviceId -> Mono.justOrEmpty(targetAccount.getDevice(deviceId)));
+
+    return devices.filter(Device::isEnabled);
+  }
+
+  /**
+   * Takes one-time pre-keys for the given device and returns its pre-key bundle, keyed by device ID.
+   */
+  private static Mono<Tuple2<Integer, GetPreKeysResponse.PreKeyBundle>> getPreKeyBundle(final Account targetAccount,
+      final IdentityType identityType,
+      final Device device,
+      final KeysManager keysManager) {
+
+    final ECSignedPreKey ecSignedPreKey = device.getSignedPreKey(identityType);
+
+    final GetPreKeysResponse.PreKeyBundle.Builder preKeyBundleBuilder = GetPreKeysResponse.PreKeyBundle.newBuilder()
+        .setEcSignedPreKey(EcSignedPreKey.newBuilder()
+            .setKeyId(ecSignedPreKey.keyId())
+            .setPublicKey(ByteString.copyFrom(ecSignedPreKey.serializedPublicKey()))
+            .setSignature(ByteString.copyFrom(ecSignedPreKey.signature()))
+            .build());
+
+    return Flux.merge(
+            Mono.fromFuture(() -> keysManager.takeEC(targetAccount.getIdentifier(identityType), device.getId())),
+            Mono.fromFuture(() -> keysManager.takePQ(targetAccount.getIdentifier(identityType), device.getId())))
+        .flatMap(Mono::justOrEmpty)
+        .reduce(preKeyBundleBuilder, (builder, preKey) -> {
+          if (preKey instanceof ECPreKey ecPreKey) {
+            builder.setEcOneTimePreKey(EcPreKey.newBuilder()
+                .setKeyId(ecPreKey.keyId())
+                .setPublicKey(ByteString.copyFrom(ecPreKey.serializedPublicKey()))
+                .build());
+          } else if (preKey instanceof KEMSignedPreKey kemSignedPreKey) {
+            preKeyBundleBuilder.setKemOneTimePreKey(KemSignedPreKey.newBuilder()
+                .setKeyId(kemSignedPreKey.keyId())
+                .setPublicKey(ByteString.copyFrom(kemSignedPreKey.serializedPublicKey()))
+                .setSignature(ByteString.copyFrom(kemSignedPreKey.signature()))
+                .build());
+          } else {
+            throw new AssertionError("Unexpected pre-key type: " + preKey.getClass());
+          }
+
+          return builder;
+        })
+        // Cast device IDs to `int` to match data types in the response object’s protobuf definition
+        .map(builder -> Tuples.of((int) device.getId(), builder.build()));
+  }
 }
@@ -9,6 +9,7 @@ import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
@@ -18,6 +19,8 @@ import org.signal.chat.common.EcSignedPreKey;
 import org.signal.chat.common.KemSignedPreKey;
 import org.signal.chat.keys.GetPreKeyCountRequest;
 import org.signal.chat.keys.GetPreKeyCountResponse;
+import org.signal.chat.keys.GetPreKeysBatchRequest;
+import org.signal.chat.keys.GetPreKeysBatchResponse;
 import org.signal.chat.keys.GetPreKeysRequest;
 import org.signal.chat.keys.GetPreKeysResponse;
 import org.signal.chat.keys.ReactorKeysGrpc;
@@ -126,10 +129,7 @@ public class KeysGrpcService extends ReactorKeysGrpc.KeysImplBase {
 
     final byte deviceId = DeviceIdUtil.validate(request.getDeviceId());
 
-    final String rateLimitKey = authenticatedDevice.accountIdentifier() + "." +
-        authenticatedDevice.deviceId() + "__" +
-        targetIdentifier.uuid() + "." +
-        deviceId;
+    final String rateLimitKey = getPreKeysRateLimitKey(authenticatedDevice, targetIdentifier, deviceId);
 
     return rateLimiters.getPreKeysLimiter().validateReactive(rateLimitKey)
         .then(Mono.fromFuture(() -> accountsManager.getByServiceIdentifierAsync(targetIdentifier))
@@ -139,6 +139,43 @@ public class KeysGrpcService extends ReactorKeysGrpc.KeysImplBase {
             KeysGrpcHelper.getPreKeys(targetAccount, targetIdentifier.identityType(), deviceId, keysManager));
   }
 
+  @Override
+  public Mono<GetPreKeysBatchResponse> getPreKeysBatch(final GetPreKeysBatchRequest request) {
+    final AuthenticatedDevice authenticatedDevice = AuthenticationUtil.requireAuthenticatedDevice();
+
+    KeysGrpcHelper.validateBatchSize(request.getRequestsCount());
+
+    final Map<ServiceIdentifier, Set<Byte>> deviceIdsByTargetIdentifier =
+        KeysGrpcHelper.getDeviceIdsByTargetIdentifier(request.getRequestsList().stream());
+
+    final String requesterKey = authenticatedDevice.accountIdentifier() + "." + authenticatedDevice.deviceId();
+
+    // Charge each target device against the same per-target limit as single-target fetches, too; all of a requester's
+    // per-target keys share a slot, so they're checked and charged together in a single call
+    final List<String> preKeysRateLimitKeys = deviceIdsByTargetIdentifier.entrySet().stream()
+        .flatMap(entry -> (entry.getValue().isEmpty() ? Set.of(KeysGrpcHelper.ALL_DEVICES) : entry.getValue()).stream()
+            .map(deviceId -> getPreKeysRateLimitKey(authenticatedDevice, entry.getKey(), deviceId)))
+        .toList();
+
+    return Mono.fromFuture(() -> rateLimiters.getPreKeysBatchLimiter()
+            .validateAsync(requesterKey, deviceIdsByTargetIdentifier.size())
+            .toCompletableFuture())
+        .then(rateLimiters.getPreKeysLimiter().validateAllReactive(preKeysRateLimitKeys))
+        .then(Mono.fromFuture(() -> accountsManager.getByServiceIdentifiersAsync(deviceIdsByTargetIdentifier.keySet())))
+        .flatMap(accountsByTargetIdentifier ->
+            KeysGrpcHelper.getPreKeysBatch(deviceIdsByTargetIdentifier, accountsByTargetIdentifier, keysManager));
+  }
+
+  private static String getPreKeysRateLimitKey(final AuthenticatedDevice authenticatedDevice,
+      final ServiceIdentifier targetIdentifier,
+      final byte deviceId) {
+
+    // The requester's portion of the key is hash-tagged so all of a requester's keys can be checked together
+    return "{" + authenticatedDevice.accountIdentifier() + "." + authenticatedDevice.deviceId() + "}__" +
+        targetIdentifier.uuid() + "." +
+        deviceId;
+  }
+
   @Override
   public Mono<SetPreKeyResponse> setOneTimeEcPreKeys(final SetOneTimeEcPreKeysRequest request) {
     return Mono.fromSupplier(AuthenticationUtil::requireAuthenticatedDevice)
@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.limits;
 import static java.util.Objects.requireNonNull;
 
 import java.time.Clock;
+import java.util.Collection;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
@@ -58,6 +59,11 @@ public class DynamicRateLimiter implements RateLimiter {
     return current().getRight().validateAsync(key, amount);
   }
 
+  @Override
+  public CompletionStage<Void> validateAllAsync(final Collection<String> keys, final int amount) {
+    return current().getRight().validateAllAsync(keys, amount);
+  }
+
   @Override
   public boolean hasAvailablePermits(final String key, final int permits) {
     return current().getRight().hasAvailablePermits(key, permits);
@@ -5,6 +5,7 @@
 
 package org.whispersystems.textsecuregcm.limits;
 
+import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 import org.whispersystems.textsecuregcm.controllers.RateLimitExceededException;
@@ -16,6 +17,19 @@ public interface RateLimiter {
 
   CompletionStage<Void> validateAsync(String key, int amount);
 
+  /**
+   * Checks whether every given key has at least the given number of permits available and, if and only if all of them
+   * do, uses those permits from every key. All keys are checked and charged with a single call to the rate limit
+   * store, so all keys must map to the same cluster slot (for example, by sharing a {@code {hash tag}}).
+   *
+   * @param keys the keys to check and charge
+   * @param amount the number of permits to use from each key
+   *
+   * @return a future that completes when permits have been used from every key, or that fails with a
+   * {@link RateLimitExceededException} (and uses no permits from any key) if any key has too few permits available
+   */
+  CompletionStage<Void> validateAllAsync(Collection<String> keys, int amount);
+
   boolean hasAvailablePermits(String key, int permits);
 
   CompletionStage<Boolean> hasAvailablePermitsAsync(String key, int amount);
@@ -46,6 +60,10 @@ public interface RateLimiter {
     return validateAsync(key, 1);
   }
 
+  default CompletionStage<Void> validateAllAsync(final Collection<String> keys) {
+    return validateAllAsync(keys, 1);
+  }
+
   default CompletionStage<Void> validateAsync(final UUID accountUuid) {
     return validateAsync(accountUuid.toString());
   }
@@ -62,6 +80,10 @@ public interface RateLimiter {
     return validateReactive(accountUuid.toString());
   }
 
+  default Mono<Void> validateAllReactive(final Collection<String> keys) {
+    return Mono.fromFuture(() -> validateAllAsync(keys).toCompletableFuture());
+  }
+
   default boolean hasAvailablePermits(final UUID accountUuid, final int permits) {
     return hasAvailablePermits(accountUuid.toString(), permits);
   }
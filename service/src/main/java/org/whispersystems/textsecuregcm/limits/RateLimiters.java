@@ -27,6 +27,7 @@ public class RateLimiters extends BaseRateLimiters<RateLimiters.For> {
     PIN("pin", false, new RateLimiterConfig(10, Duration.ofDays(1))),
     ATTACHMENT("attachmentCreate", false, new RateLimiterConfig(50, Duration.ofMillis(1200))),
     PRE_KEYS("prekeys", false, new RateLimiterConfig(6, Duration.ofMinutes(10))),
+    PRE_KEYS_BATCH("prekeysBatch", false, new RateLimiterConfig(1_000, Duration.ofMillis(600))),
     MESSAGES("messages", false, new RateLimiterConfig(60, Duration.ofSeconds(1))),
     STORIES("stories", false, new RateLimiterConfig(5_000, Duration.ofSeconds(8))),
     ALLOCATE_DEVICE("allocateDevice", false, new RateLimiterConfig(2, Duration.ofMinutes(2))),
@@ -116,6 +117,10 @@ public class RateLimiters extends BaseRateLimiters<RateLimiters.For> {
     return forDescriptor(For.PRE_KEYS);
   }
 
+  public RateLimiter getPreKeysBatchLimiter() {
+    return forDescriptor(For.PRE_KEYS_BATCH);
+  }
+
   public RateLimiter getAttachmentLimiter() {
     return forDescriptor(For.ATTACHMENT);
   }
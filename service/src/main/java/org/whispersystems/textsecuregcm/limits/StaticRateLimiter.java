@@ -10,10 +10,12 @@ import static java.util.concurrent.CompletableFuture.failedFuture;
 
 import com.google.common.annotations.VisibleForTesting;
 import io.lettuce.core.RedisException;
+import io.lettuce.core.cluster.SlotHash;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletionStage;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
@@ -76,7 +78,16 @@ public class StaticRateLimiter implements RateLimiter {
 
   @Override
   public CompletionStage<Void> validateAsync(final String key, final int amount) {
-    return executeValidateScriptAsync(key, amount, true)
+    return validateAllAsync(List.of(key), amount);
+  }
+
+  @Override
+  public CompletionStage<Void> validateAllAsync(final Collection<String> keys, final int amount) {
+    if (keys.isEmpty()) {
+      return completedFuture(null);
+    }
+
+    return executeValidateScriptAsync(keys, amount, true)
         .thenCompose(deficitPermitsAmount -> {
           if (deficitPermitsAmount == 0) {
             return completedFuture((Void) null);
@@ -110,7 +121,7 @@ public class StaticRateLimiter implements RateLimiter {
 
   @Override
   public CompletionStage<Boolean> hasAvailablePermitsAsync(final String key, final int amount) {
-    return executeValidateScriptAsync(key, amount, false)
+    return executeValidateScriptAsync(List.of(key), amount, false)
         .thenApply(deficitPermitsAmount -> deficitPermitsAmount == 0)
         .exceptionally(throwable -> {
           if (ExceptionUtils.unwrap(throwable) instanceof RedisException && failOpen()) {
@@ -152,8 +163,20 @@ public class StaticRateLimiter implements RateLimiter {
     return (Long) validateScript.execute(keys, arguments);
   }
 
-  private CompletionStage<Long> executeValidateScriptAsync(final String key, final int amount, final boolean applyChanges) {
-    final List<String> keys = List.of(bucketName(name, key));
+  private CompletionStage<Long> executeValidateScriptAsync(final Collection<String> keys,
+      final int amount,
+      final boolean applyChanges) {
+
+    final List<String> bucketNames = keys.stream().map(key -> bucketName(name, key)).toList();
+
+    if (bucketNames.size() > 1) {
+      final int slot = SlotHash.getSlot(bucketNames.get(0));
+
+      if (bucketNames.stream().anyMatch(bucketName -> SlotHash.getSlot(bucketName) != slot)) {
+        throw new IllegalArgumentException("Rate limit keys must all map to the same slot");
+      }
+    }
+
     final List<String> arguments = List.of(
         String.valueOf(config.bucketSize()),
         String.valueOf(config.leakRatePerMillis()),
@@ -161,7 +184,7 @@ public class StaticRateLimiter implements RateLimiter {
         String.valueOf(amount),
         String.valueOf(applyChanges)
     );
-    return validateScript.executeAsync(keys, arguments).thenApply(o -> (Long) o);
+    return validateScript.executeAsync(bucketNames, arguments).thenApply(o -> (Long) o);
   }
 
   @VisibleForTesting
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.metrics;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import io.dropwizard.lifecycle.Managed;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import javax.annotation.Nullable;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier thread (for example, by blocking inside a
+ * {@code synchronized} block), which prevents the carrier from running other virtual threads and can exhaust the
+ * carrier pool under load. Pinning events are read from the JVM's flight recorder and reported as a timer; the stack
+ * frame that blocked is logged at debug level to help find the offending code.
+ */
+public class VirtualThreadPinnedEventMonitor implements Managed {
+
+  private final Duration threshold;
+
+  @Nullable
+  private RecordingStream recordingStream;
+
+  private static final String PINNED_EVENT_NAME = "jdk.VirtualThreadPinned";
+
+  private static final Timer PINNED_TIMER = Timer.builder(name(VirtualThreadPinnedEventMonitor.class, "pinned"))
+      .publishPercentiles(0.5, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinnedEventMonitor.class);
+
+  /**
+   * @param threshold the minimum duration for which a virtual thread must be pinned to be reported
+   */
+  public VirtualThreadPinnedEventMonitor(final Duration threshold) {
+    this.threshold = threshold;
+  }
+
+  @Override
+  public synchronized void start() {
+    recordingStream = new RecordingStream();
+    recordingStream.enable(PINNED_EVENT_NAME).withThreshold(threshold).withStackTrace();
+    recordingStream.onEvent(PINNED_EVENT_NAME, VirtualThreadPinnedEventMonitor::handlePinnedEvent);
+    recordingStream.startAsync();
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (recordingStream != null) {
+      recordingStream.close();
+      recordingStream = null;
+    }
+  }
+
+  private static void handlePinnedEvent(final RecordedEvent event) {
+    PINNED_TIMER.record(event.getDuration());
+
+    if (logger.isDebugEnabled() && event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()) {
+      final RecordedFrame frame = event.getStackTrace().getFrames().get(0);
+
+      logger.debug("Virtual thread pinned for {} at {}.{}:{}", event.getDuration(),
+          frame.getMethod().getType().getName(), frame.getMethod().getName(), frame.getLineNumber());
+    }
+  }
+}
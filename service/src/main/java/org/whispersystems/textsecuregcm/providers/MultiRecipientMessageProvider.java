@@ -6,11 +6,14 @@
 package org.whispersystems.textsecuregcm.providers;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.dropwizard.util.DataSizeUnit;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
@@ -30,6 +33,13 @@ public class MultiRecipientMessageProvider implements MessageBodyReader<MultiRec
   public static final int MAX_RECIPIENT_COUNT = 5000;
   public static final int MAX_MESSAGE_SIZE = Math.toIntExact(32 + DataSizeUnit.KIBIBYTES.toBytes(256));
 
+  // version byte, recipient count, then at most MAX_RECIPIENT_COUNT recipients, each with a 17-byte service
+  // identifier, a varint device ID, a two-byte registration ID, and 48 bytes of key material, then the common payload
+  private static final int MAX_VARINT_SIZE = 10;
+  private static final int MAX_BODY_SIZE = 1 + MAX_VARINT_SIZE
+      + MAX_RECIPIENT_COUNT * (17 + MAX_VARINT_SIZE + 2 + 48)
+      + MAX_MESSAGE_SIZE;
+
   public static final byte AMBIGUOUS_ID_VERSION_IDENTIFIER = 0x22;
   public static final byte EXPLICIT_ID_VERSION_IDENTIFIER = 0x23;
 
@@ -63,71 +73,88 @@ public class MultiRecipientMessageProvider implements MessageBodyReader<MultiRec
   public MultiRecipientMessage readFrom(Class<MultiRecipientMessage> type, Type genericType, Annotation[] annotations,
       MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream)
       throws IOException, WebApplicationException {
-    int versionByte = entityStream.read();
-    if (versionByte == -1) {
+
+    // Read the whole body into a single buffer up front and parse it in place rather than reading from the entity
+    // stream a byte at a time. The caller is responsible for checking that the entity stream is at EOF when we return;
+    // if there are more bytes than this it'll return an error back. We just need to limit how many we'll accept here.
+    final ByteBuffer body = ByteBuffer.wrap(entityStream.readNBytes(MAX_BODY_SIZE));
+
+    if (!body.hasRemaining()) {
       throw new NoContentException("Empty body not allowed");
     }
 
     final Version version;
 
     try {
-      version = Version.forVersionByte((byte) versionByte);
+      version = Version.forVersionByte(body.get());
     } catch (final IllegalArgumentException e) {
       throw new BadRequestException("Unsupported version");
     }
 
-    long count = readVarint(entityStream);
+    long count = readVarint(body);
     if (count > MAX_RECIPIENT_COUNT) {
       throw new BadRequestException("Maximum recipient count exceeded");
     }
     MultiRecipientMessage.Recipient[] recipients = new MultiRecipientMessage.Recipient[Math.toIntExact(count)];
     for (int i = 0; i < Math.toIntExact(count); i++) {
-      ServiceIdentifier identifier = readIdentifier(entityStream, version);
+      ServiceIdentifier identifier = readIdentifier(body, version);
       final byte deviceId;
       {
-        long deviceIdLong = readVarint(entityStream);
+        long deviceIdLong = readVarint(body);
         if (deviceIdLong > Byte.MAX_VALUE) {
           throw new BadRequestException("Invalid device ID");
         }
         deviceId = (byte) deviceIdLong;
       }
-      int registrationId = readU16(entityStream);
-      byte[] perRecipientKeyMaterial = entityStream.readNBytes(48);
-      if (perRecipientKeyMaterial.length != 48) {
+      int registrationId = readU16(body);
+      if (body.remaining() < 48) {
         throw new IOException("Failed to read expected number of key material bytes for a recipient");
       }
+      byte[] perRecipientKeyMaterial = new byte[48];
+      body.get(perRecipientKeyMaterial);
       recipients[i] = new MultiRecipientMessage.Recipient(identifier, deviceId, registrationId, perRecipientKeyMaterial);
     }
 
-    // caller is responsible for checking that the entity stream is at EOF when we return; if there are more bytes than
-    // this it'll return an error back. We just need to limit how many we'll accept here.
-    byte[] commonPayload = entityStream.readNBytes(MAX_MESSAGE_SIZE);
-    if (commonPayload.length < 32) {
+    if (body.remaining() < 32) {
       throw new IOException("Failed to read expected number of common key material bytes");
     }
+    if (body.remaining() > MAX_MESSAGE_SIZE) {
+      throw new BadRequestException("Maximum message size exceeded");
+    }
+
+    // The common payload is shared by every recipient's envelope, so expose it as a view of the body rather than a copy
+    final ByteString commonPayload =
+        UnsafeByteOperations.unsafeWrap(body.array(), body.arrayOffset() + body.position(), body.remaining());
+
     return new MultiRecipientMessage(recipients, commonPayload);
   }
 
   /**
-   * Reads a service identifier from the given stream.
+   * Reads a service identifier from the given buffer.
    */
-  private ServiceIdentifier readIdentifier(final InputStream stream, final Version version) throws IOException {
+  private ServiceIdentifier readIdentifier(final ByteBuffer buffer, final Version version) throws IOException {
     final byte[] uuidBytes = switch (version) {
-      case AMBIGUOUS_ID -> stream.readNBytes(16);
-      case EXPLICIT_ID -> stream.readNBytes(17);
+      case AMBIGUOUS_ID -> new byte[16];
+      case EXPLICIT_ID -> new byte[17];
     };
 
+    if (buffer.remaining() < uuidBytes.length) {
+      throw new IOException("Failed to read expected number of identifier bytes for a recipient");
+    }
+
+    buffer.get(uuidBytes);
+
     return ServiceIdentifier.fromBytes(uuidBytes);
   }
 
   /**
    * Reads a varint. A varint larger than 64 bits is rejected with a {@code WebApplicationException}. An
-   * {@code IOException} is thrown if the stream ends before we finish reading the varint.
+   * {@code IOException} is thrown if the buffer ends before we finish reading the varint.
    *
    * @return the varint value
    */
   @VisibleForTesting
-  public static long readVarint(InputStream stream) throws IOException, WebApplicationException {
+  public static long readVarint(ByteBuffer buffer) throws IOException, WebApplicationException {
     boolean hasMore = true;
     int currentOffset = 0;
     long result = 0;
@@ -135,10 +162,10 @@ public class MultiRecipientMessageProvider implements MessageBodyReader<MultiRec
       if (currentOffset >= 64) {
         throw new BadRequestException("varint is too large");
       }
-      int b = stream.read();
-      if (b == -1) {
+      if (!buffer.hasRemaining()) {
         throw new IOException("Missing byte " + (currentOffset / 7) + " of varint");
       }
+      int b = buffer.get() & 0xFF;
       if (currentOffset == 63 && (b & 0xFE) != 0) {
         throw new BadRequestException("varint is too large");
       }
@@ -154,15 +181,10 @@ public class MultiRecipientMessageProvider implements MessageBodyReader<MultiRec
    * {@code [0, 65535]}.
    */
   @VisibleForTesting
-  static int readU16(InputStream stream) throws IOException {
-    int b1 = stream.read();
-    if (b1 == -1) {
-      throw new IOException("Missing byte 1 of U16");
-    }
-    int b2 = stream.read();
-    if (b2 == -1) {
-      throw new IOException("Missing byte 2 of U16");
+  static int readU16(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 2) {
+      throw new IOException("Missing byte " + (buffer.remaining() + 1) + " of U16");
     }
-    return (b1 << 8) | b2;
+    return buffer.getShort() & 0xFFFF;
   }
 }
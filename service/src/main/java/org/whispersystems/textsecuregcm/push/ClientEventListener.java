@@ -0,0 +1,20 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.push;
+
+import java.util.UUID;
+
+/**
+ * A client event listener is notified when a node channel event arrives for a client connected to this server.
+ *
+ * @see ClientEventNotificationMode
+ */
+public interface ClientEventListener {
+
+  void handleNewMessagesAvailable(UUID accountUuid, byte deviceId);
+
+  void handleMessagesPersisted(UUID accountUuid, byte deviceId);
+}
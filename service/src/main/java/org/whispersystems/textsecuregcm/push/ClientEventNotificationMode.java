@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.push;
+
+/**
+ * Controls how a server learns that something has happened to one of the clients connected to it (new messages have
+ * arrived, its messages have been persisted, or it has connected elsewhere).
+ * <p>
+ * With Redis keyspace notifications, each server subscribes to the keyspace channels for the message queue and
+ * presence key of every connected client. With node channels, the server that causes an event looks up the server
+ * hosting the affected client via its presence key and publishes a compact event to that server's single presence
+ * manager channel, so the number of subscriptions doesn't grow with the number of connected clients.
+ * <p>
+ * Servers in {@link #NODE_CHANNEL} mode only hear about events published by other servers, so a fleet should move
+ * through {@link #KEYSPACE_AND_NODE_CHANNEL} (in which servers both publish node channel events and subscribe to
+ * keyspace notifications) before any server stops subscribing to keyspace notifications.
+ */
+public enum ClientEventNotificationMode {
+  KEYSPACE,
+  KEYSPACE_AND_NODE_CHANNEL,
+  NODE_CHANNEL;
+
+  public boolean subscribeToKeyspaceNotifications() {
+    return this != NODE_CHANNEL;
+  }
+
+  public boolean publishNodeChannelEvents() {
+    return this != KEYSPACE;
+  }
+}
@@ -25,23 +25,31 @@ import io.micrometer.core.instrument.Metrics;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.redis.ClusterLuaScript;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.storage.Device;
 import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 /**
  * The client presence manager keeps track of which clients are actively connected and "present" to receive messages.
@@ -60,24 +68,49 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   private final FaultTolerantPubSubConnection<String, String> pubSubConnection;
 
   private final ClusterLuaScript clearPresenceScript;
+  private final ClusterLuaScript clearPresencesScript;
   private final ClusterLuaScript renewPresenceScript;
+  private final ClusterLuaScript setPresenceScript;
+  private final ClusterLuaScript publishPresenceEventScript;
 
-  private final ExecutorService keyspaceNotificationExecutorService;
+  private final ClientEventNotificationMode clientEventNotificationMode;
+  private final List<ClientEventListener> clientEventListeners = new CopyOnWriteArrayList<>();
+
+  private final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
   private final ScheduledExecutorService scheduledExecutorService;
   private ScheduledFuture<?> pruneMissingPeersFuture;
 
   private final Map<String, DisplacedPresenceListener> displacementListenersByPresenceKey = new ConcurrentHashMap<>();
 
+  private final PresenceLookupBatcher presenceLookupBatcher;
+
   private final Timer checkPresenceTimer;
+  private final Timer checkPresenceBatchTimer;
   private final Timer setPresenceTimer;
   private final Timer clearPresenceTimer;
   private final Timer prunePeersTimer;
+  private final Meter localPresenceMeter;
   private final Meter pruneClientMeter;
   private final Meter remoteDisplacementMeter;
   private final Meter pubSubMessageMeter;
   private final Counter displacementListenerAlreadyRemovedCounter;
 
+  private static final String PRUNE_PEER_TIMER_NAME = name(ClientPresenceManager.class, "prunePeer");
+  private static final String PUBLISH_CLIENT_EVENT_COUNTER_NAME = name(ClientPresenceManager.class, "publishClientEvent");
+  private static final String RECEIVE_CLIENT_EVENT_COUNTER_NAME = name(ClientPresenceManager.class, "receiveClientEvent");
+
+  private static final String MANAGER_PRESENCE_CHANNEL_PREFIX = "presence::manager::";
+
+  private static final String PING_EVENT = "ping";
+  private static final String NEW_MESSAGES_EVENT = "messages";
+  private static final String MESSAGES_PERSISTED_EVENT = "persisted";
+  private static final String DISPLACED_EVENT = "displaced";
+  private static final String DISCONNECTED_EVENT = "disconnected";
+
   private static final int PRUNE_PEERS_INTERVAL_SECONDS = (int) Duration.ofSeconds(30).toSeconds();
+
+  @VisibleForTesting
+  static final int PRUNE_CLIENTS_BATCH_SIZE = 1_000;
   private static final int PRESENCE_EXPIRATION_SECONDS = (int) Duration.ofMinutes(11).toSeconds();
 
   static final String MANAGER_SET_KEY = "presence::managers";
@@ -86,23 +119,41 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
 
   public ClientPresenceManager(final FaultTolerantRedisCluster presenceCluster,
       final ScheduledExecutorService scheduledExecutorService,
-      final ExecutorService keyspaceNotificationExecutorService) throws IOException {
+      final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher) throws IOException {
+
+    this(presenceCluster, scheduledExecutorService, keyspaceNotificationDispatcher, ClientEventNotificationMode.KEYSPACE);
+  }
+
+  public ClientPresenceManager(final FaultTolerantRedisCluster presenceCluster,
+      final ScheduledExecutorService scheduledExecutorService,
+      final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher,
+      final ClientEventNotificationMode clientEventNotificationMode) throws IOException {
     this.presenceCluster = presenceCluster;
     this.pubSubConnection = this.presenceCluster.createPubSubConnection();
     this.clearPresenceScript = ClusterLuaScript.fromResource(presenceCluster, "lua/clear_presence.lua",
         ScriptOutputType.INTEGER);
+    this.clearPresencesScript = ClusterLuaScript.fromResource(presenceCluster, "lua/clear_presences.lua",
+        ScriptOutputType.INTEGER);
     this.renewPresenceScript = ClusterLuaScript.fromResource(presenceCluster, "lua/renew_presence.lua",
         ScriptOutputType.VALUE);
+    this.setPresenceScript = ClusterLuaScript.fromResource(presenceCluster, "lua/set_presence.lua",
+        ScriptOutputType.VALUE);
+    this.publishPresenceEventScript = ClusterLuaScript.fromResource(presenceCluster, "lua/publish_presence_event.lua",
+        ScriptOutputType.INTEGER);
+    this.clientEventNotificationMode = clientEventNotificationMode;
     this.scheduledExecutorService = scheduledExecutorService;
-    this.keyspaceNotificationExecutorService = keyspaceNotificationExecutorService;
+    this.keyspaceNotificationDispatcher = keyspaceNotificationDispatcher;
+    this.presenceLookupBatcher = new PresenceLookupBatcher(this::getPresentKeys);
 
     final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
     metricRegistry.gauge(name(getClass(), "localClientCount"), () -> displacementListenersByPresenceKey::size);
 
     this.checkPresenceTimer = metricRegistry.timer(name(getClass(), "checkPresence"));
+    this.checkPresenceBatchTimer = metricRegistry.timer(name(getClass(), "checkPresenceBatch"));
     this.setPresenceTimer = metricRegistry.timer(name(getClass(), "setPresence"));
     this.clearPresenceTimer = metricRegistry.timer(name(getClass(), "clearPresence"));
     this.prunePeersTimer = metricRegistry.timer(name(getClass(), "prunePeers"));
+    this.localPresenceMeter = metricRegistry.meter(name(getClass(), "localPresence"));
     this.pruneClientMeter = metricRegistry.meter(name(getClass(), "pruneClient"));
     this.remoteDisplacementMeter = metricRegistry.meter(name(getClass(), "remoteDisplacement"));
     this.pubSubMessageMeter = metricRegistry.meter(name(getClass(), "pubSubMessage"));
@@ -115,18 +166,19 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     return pubSubConnection;
   }
 
+  /**
+   * Registers a listener to be notified of node channel events for clients connected to this server.
+   *
+   * @see ClientEventNotificationMode
+   */
+  public void addClientEventListener(final ClientEventListener listener) {
+    clientEventListeners.add(listener);
+  }
+
   @Override
   public void start() {
-    pubSubConnection.usePubSubConnection(connection -> {
-      connection.addListener(this);
-
-      final String presenceChannel = getManagerPresenceChannel(managerId);
-      final int slot = SlotHash.getSlot(presenceChannel);
-
-      connection.sync().nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
-          .commands()
-          .subscribe(presenceChannel);
-    });
+    pubSubConnection.usePubSubConnection(connection -> connection.addListener(this));
+    subscribeToManagerPresenceChannel();
 
     pubSubConnection.subscribeToClusterTopologyChangedEvents(this::resubscribeAll);
 
@@ -176,10 +228,21 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
         final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
 
         commands.sadd(connectedClientSetKey, presenceKey);
-        commands.setex(presenceKey, PRESENCE_EXPIRATION_SECONDS, managerId);
+
+        if (clientEventNotificationMode.publishNodeChannelEvents()) {
+          // Tell the previous holder of this presence key (if any) that its client has connected elsewhere
+          setPresenceScript.execute(List.of(presenceKey), List.of(managerId,
+              String.valueOf(PRESENCE_EXPIRATION_SECONDS),
+              MANAGER_PRESENCE_CHANNEL_PREFIX,
+              encodeClientEvent(DISPLACED_EVENT, accountUuid, deviceId)));
+        } else {
+          commands.setex(presenceKey, PRESENCE_EXPIRATION_SECONDS, managerId);
+        }
       });
 
-      subscribeForRemotePresenceChanges(presenceKey);
+      if (clientEventNotificationMode.subscribeToKeyspaceNotifications()) {
+        subscribeForRemotePresenceChanges(presenceKey);
+      }
     }
   }
 
@@ -191,14 +254,22 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   public void disconnectAllPresences(final UUID accountUuid, final List<Byte> deviceIds) {
 
     List<String> presenceKeys = new ArrayList<>();
+    List<Pair<List<String>, List<String>>> remoteDisconnections = new ArrayList<>();
     deviceIds.forEach(deviceId -> {
       String presenceKey = getPresenceKey(accountUuid, deviceId);
       if (isLocallyPresent(accountUuid, deviceId)) {
         displacePresence(presenceKey, false);
+      } else if (clientEventNotificationMode.publishNodeChannelEvents()) {
+        remoteDisconnections.add(new Pair<>(List.of(presenceKey),
+            List.of(MANAGER_PRESENCE_CHANNEL_PREFIX, encodeClientEvent(DISCONNECTED_EVENT, accountUuid, deviceId))));
       }
       presenceKeys.add(presenceKey);
     });
 
+    if (!remoteDisconnections.isEmpty()) {
+      publishPresenceEventScript.executePipelinedAsync(remoteDisconnections).join();
+    }
+
     presenceCluster.useCluster(connection -> {
       List<RedisFuture<Long>> futures = presenceKeys.stream().map(key -> connection.async().del(key)).toList();
       LettuceFutures.awaitAll(connection.getTimeout(), futures.toArray(new RedisFuture[0]));
@@ -223,10 +294,188 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
     clearPresence(presenceKey);
   }
 
+  /**
+   * Checks whether a client is present for the given account/device pair. Clients connected to this node are found
+   * without a round trip to the presence cluster; a locally-held client's presence key is removed from the local map
+   * before it's cleared from the cluster, and a client displaced by a connection elsewhere is still present, so the
+   * local answer is never less accurate than the cluster's.
+   *
+   * @param accountUuid the account identifier of the client to check
+   * @param deviceId the device ID of the client to check
+   *
+   * @return {@code true} if a client is present for the given account/device pair or {@code false} otherwise
+   */
   public boolean isPresent(final UUID accountUuid, final byte deviceId) {
     try (final Timer.Context ignored = checkPresenceTimer.time()) {
-      return presenceCluster.withCluster(connection ->
-          connection.sync().exists(getPresenceKey(accountUuid, deviceId))) == 1;
+      final String presenceKey = getPresenceKey(accountUuid, deviceId);
+
+      if (displacementListenersByPresenceKey.containsKey(presenceKey)) {
+        localPresenceMeter.mark();
+        return true;
+      }
+
+      return presenceCluster.withCluster(connection -> connection.sync().exists(presenceKey)) == 1;
+    }
+  }
+
+  /**
+   * Asynchronously checks whether a client is present for the given account/device pair. As with
+   * {@link #isPresent(UUID, byte)}, clients connected to this node are found without a round trip to the presence
+   * cluster. Other lookups are coalesced with concurrent lookups into pipelined batches.
+   *
+   * @param accountUuid the account identifier of the client to check
+   * @param deviceId the device ID of the client to check
+   *
+   * @return a future that yields {@code true} if a client is present for the given account/device pair or
+   * {@code false} otherwise
+   */
+  public CompletableFuture<Boolean> isPresentAsync(final UUID accountUuid, final byte deviceId) {
+    final Timer.Context timerContext = checkPresenceTimer.time();
+    final String presenceKey = getPresenceKey(accountUuid, deviceId);
+
+    if (displacementListenersByPresenceKey.containsKey(presenceKey)) {
+      localPresenceMeter.mark();
+      timerContext.stop();
+
+      return CompletableFuture.completedFuture(true);
+    }
+
+    return presenceLookupBatcher.isPresent(presenceKey)
+        .whenComplete((ignored, throwable) -> timerContext.stop());
+  }
+
+  /**
+   * Checks whether clients for many account/device pairs are present at once. Clients connected to this node are found
+   * locally, and all remaining presence checks are pipelined, so the time to check a batch of clients depends on the
+   * number of nodes involved rather than the number of clients.
+   *
+   * @param accountAndDeviceIds the account identifiers and device IDs of the clients to check
+   *
+   * @return a future that yields the subset of the given account/device pairs for which a client is present
+   */
+  public CompletableFuture<Set<Pair<UUID, Byte>>> getPresentClients(
+      final Collection<Pair<UUID, Byte>> accountAndDeviceIds) {
+
+    final Set<Pair<UUID, Byte>> presentClients = new HashSet<>();
+    final Map<String, Pair<UUID, Byte>> accountAndDeviceIdsByPresenceKey = new HashMap<>();
+
+    for (final Pair<UUID, Byte> accountAndDeviceId : accountAndDeviceIds) {
+      final String presenceKey = getPresenceKey(accountAndDeviceId.first(), accountAndDeviceId.second());
+
+      if (displacementListenersByPresenceKey.containsKey(presenceKey)) {
+        localPresenceMeter.mark();
+        presentClients.add(accountAndDeviceId);
+      } else {
+        accountAndDeviceIdsByPresenceKey.put(presenceKey, accountAndDeviceId);
+      }
+    }
+
+    if (accountAndDeviceIdsByPresenceKey.isEmpty()) {
+      return CompletableFuture.completedFuture(presentClients);
+    }
+
+    return getPresentKeys(accountAndDeviceIdsByPresenceKey.keySet())
+        .thenApply(presentKeys -> {
+          presentKeys.forEach(presenceKey -> presentClients.add(accountAndDeviceIdsByPresenceKey.get(presenceKey)));
+          return presentClients;
+        });
+  }
+
+  /**
+   * Checks the presence cluster for many presence keys at once in a single pipeline.
+   *
+   * @param presenceKeys the presence keys to check
+   *
+   * @return a future that yields the subset of the given presence keys that exist
+   */
+  private CompletableFuture<Set<String>> getPresentKeys(final Collection<String> presenceKeys) {
+    final Timer.Context timerContext = checkPresenceBatchTimer.time();
+
+    return presenceCluster.withCluster(connection -> {
+          final Map<String, CompletableFuture<Long>> futures = new HashMap<>();
+
+          for (final String presenceKey : presenceKeys) {
+            futures.computeIfAbsent(presenceKey,
+                ignored -> connection.async().exists(presenceKey).toCompletableFuture());
+          }
+
+          return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+              .thenApply(ignored -> futures.entrySet().stream()
+                  .filter(entry -> entry.getValue().join() == 1)
+                  .map(Map.Entry::getKey)
+                  .collect(Collectors.toSet()));
+        })
+        .whenComplete((ignored, throwable) -> timerContext.stop());
+  }
+
+  /**
+   * Tells the server hosting the given client, if any, that new messages are available for the client. Does nothing
+   * unless this presence manager publishes node channel events.
+   *
+   * @param accountUuid the account identifier of the destination client
+   * @param deviceId the device ID of the destination client
+   *
+   * @see ClientEventNotificationMode
+   */
+  public void notifyNewMessagesAvailable(final UUID accountUuid, final byte deviceId) {
+    publishClientEvents(List.of(new Pair<>(accountUuid, deviceId)), NEW_MESSAGES_EVENT);
+  }
+
+  /**
+   * Tells the servers hosting the given clients, if any, that new messages are available for those clients. Events
+   * for clients connected to other servers are published in a single pipeline. Does nothing unless this presence
+   * manager publishes node channel events.
+   *
+   * @param accountAndDeviceIds the account identifiers and device IDs of the destination clients
+   *
+   * @see ClientEventNotificationMode
+   */
+  public void notifyNewMessagesAvailable(final Collection<Pair<UUID, Byte>> accountAndDeviceIds) {
+    publishClientEvents(accountAndDeviceIds, NEW_MESSAGES_EVENT);
+  }
+
+  /**
+   * Tells the server hosting the given client, if any, that the client's messages have been moved from the message
+   * cache to long-term storage. Does nothing unless this presence manager publishes node channel events.
+   *
+   * @param accountUuid the account identifier of the client
+   * @param deviceId the device ID of the client
+   *
+   * @see ClientEventNotificationMode
+   */
+  public void notifyMessagesPersisted(final UUID accountUuid, final byte deviceId) {
+    publishClientEvents(List.of(new Pair<>(accountUuid, deviceId)), MESSAGES_PERSISTED_EVENT);
+  }
+
+  private void publishClientEvents(final Collection<Pair<UUID, Byte>> accountAndDeviceIds, final String eventType) {
+    if (!clientEventNotificationMode.publishNodeChannelEvents()) {
+      return;
+    }
+
+    final List<Pair<List<String>, List<String>>> remoteEvents = new ArrayList<>();
+
+    for (final Pair<UUID, Byte> accountAndDeviceId : accountAndDeviceIds) {
+      final UUID accountUuid = accountAndDeviceId.first();
+      final byte deviceId = accountAndDeviceId.second();
+
+      if (isLocallyPresent(accountUuid, deviceId)) {
+        // No need for a round trip through Redis if the client is connected to this server
+        Metrics.counter(PUBLISH_CLIENT_EVENT_COUNTER_NAME, "type", eventType, "local", "true").increment();
+        handleClientEvent(eventType, accountUuid, deviceId);
+      } else {
+        Metrics.counter(PUBLISH_CLIENT_EVENT_COUNTER_NAME, "type", eventType, "local", "false").increment();
+        remoteEvents.add(new Pair<>(List.of(getPresenceKey(accountUuid, deviceId)),
+            List.of(MANAGER_PRESENCE_CHANNEL_PREFIX, encodeClientEvent(eventType, accountUuid, deviceId))));
+      }
+    }
+
+    if (!remoteEvents.isEmpty()) {
+      publishPresenceEventScript.executePipelinedAsync(remoteEvents)
+          .whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+              log.warn("Failed to publish client events", throwable);
+            }
+          });
     }
   }
 
@@ -247,7 +496,10 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
   private boolean clearPresence(final String presenceKey) {
     try (final Timer.Context ignored = clearPresenceTimer.time()) {
       displacementListenersByPresenceKey.remove(presenceKey);
-      unsubscribeFromRemotePresenceChanges(presenceKey);
+
+      if (clientEventNotificationMode.subscribeToKeyspaceNotifications()) {
+        unsubscribeFromRemotePresenceChanges(presenceKey);
+      }
 
       final boolean removed = clearPresenceScript.execute(List.of(presenceKey), List.of(managerId)) != null;
       presenceCluster.useCluster(connection -> connection.sync().srem(connectedClientSetKey, presenceKey));
@@ -265,9 +517,24 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
             .subscribe(getKeyspaceNotificationChannel(presenceKey)));
   }
 
+  private void subscribeToManagerPresenceChannel() {
+    final String presenceChannel = getManagerPresenceChannel(managerId);
+    final int slot = SlotHash.getSlot(presenceChannel);
+
+    pubSubConnection.usePubSubConnection(
+        connection -> connection.sync().nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
+            .commands()
+            .subscribe(presenceChannel));
+  }
+
   private void resubscribeAll() {
-    for (final String presenceKey : displacementListenersByPresenceKey.keySet()) {
-      subscribeForRemotePresenceChanges(presenceKey);
+    // Node channel events all arrive via the manager presence channel, which may have moved to a different node
+    subscribeToManagerPresenceChannel();
+
+    if (clientEventNotificationMode.subscribeToKeyspaceNotifications()) {
+      for (final String presenceKey : displacementListenersByPresenceKey.keySet()) {
+        subscribeForRemotePresenceChanges(presenceKey);
+      }
     }
   }
 
@@ -282,30 +549,68 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
           connection -> connection.sync().smembers(MANAGER_SET_KEY));
       peerIds.remove(managerId);
 
-      for (final String peerId : peerIds) {
-        final boolean peerMissing = presenceCluster.withCluster(
-            connection -> connection.sync().publish(getManagerPresenceChannel(peerId), "ping") == 0);
+      // Ping all peers at once rather than waiting for each peer to respond in turn
+      final Map<String, CompletableFuture<Long>> subscriberCountsByPeerId = presenceCluster.withCluster(connection -> {
+        final Map<String, CompletableFuture<Long>> futures = new HashMap<>();
+
+        for (final String peerId : peerIds) {
+          futures.put(peerId,
+              connection.async().publish(getManagerPresenceChannel(peerId), PING_EVENT).toCompletableFuture());
+        }
+
+        return futures;
+      });
+
+      subscriberCountsByPeerId.forEach((peerId, subscriberCountFuture) -> {
+        final boolean peerMissing;
+
+        try {
+          peerMissing = subscriberCountFuture.join() == 0;
+        } catch (final CompletionException e) {
+          log.warn("Failed to ping presence manager {}", peerId, e);
+          return;
+        }
 
         if (peerMissing) {
           log.debug("Presence manager {} did not respond to ping", peerId);
+          pruneMissingPeer(peerId);
+        }
+      });
+    }
+  }
 
-          final String connectedClientsKey = getConnectedClientSetKey(peerId);
+  private void pruneMissingPeer(final String peerId) {
+    final long start = System.nanoTime();
+    final String connectedClientsKey = getConnectedClientSetKey(peerId);
 
-          String presenceKey;
+    Set<String> presenceKeys;
 
-          while ((presenceKey = presenceCluster.withCluster(connection -> connection.sync().spop(connectedClientsKey)))
-              != null) {
-            clearPresenceScript.execute(List.of(presenceKey), List.of(peerId));
-            pruneClientMeter.mark();
-          }
+    while (!(presenceKeys = presenceCluster.withCluster(
+        connection -> connection.sync().spop(connectedClientsKey, PRUNE_CLIENTS_BATCH_SIZE))).isEmpty()) {
 
-          presenceCluster.useCluster(connection -> {
-            connection.sync().del(connectedClientsKey);
-            connection.sync().srem(MANAGER_SET_KEY, peerId);
-          });
-        }
-      }
+      clearPresences(presenceKeys, peerId).join();
+      pruneClientMeter.mark(presenceKeys.size());
     }
+
+    presenceCluster.useCluster(connection -> {
+      connection.sync().del(connectedClientsKey);
+      connection.sync().srem(MANAGER_SET_KEY, peerId);
+    });
+
+    Metrics.timer(PRUNE_PEER_TIMER_NAME).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Clears the given presence keys if they're still held by the given presence manager. Keys that hash to the same slot
+   * are cleared by a single script execution, and executions for different slots are pipelined.
+   */
+  private CompletableFuture<List<Object>> clearPresences(final Collection<String> presenceKeys, final String managerId) {
+    final Map<Integer, List<String>> presenceKeysBySlot = presenceKeys.stream()
+        .collect(Collectors.groupingBy(SlotHash::getSlot));
+
+    return clearPresencesScript.executePipelinedAsync(presenceKeysBySlot.values().stream()
+        .map(slotPresenceKeys -> new Pair<>(slotPresenceKeys, List.of(managerId)))
+        .toList());
   }
 
   @Override
@@ -320,15 +625,70 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
 
         // At this point, we're on a Lettuce IO thread and need to dispatch to a separate thread before making
         // synchronous Lettuce calls to avoid deadlocking.
-        keyspaceNotificationExecutorService.execute(() -> {
+        final String presenceKey = channel.substring("__keyspace@0__:".length());
+
+        keyspaceNotificationDispatcher.dispatch(presenceKey, () -> {
+          try {
+            displacePresence(presenceKey, connectedElsewhere);
+            remoteDisplacementMeter.mark();
+          } catch (final Exception e) {
+            log.warn("Error displacing presence", e);
+          }
+        });
+      }
+    } else if (channel.equals(getManagerPresenceChannel(managerId)) && !PING_EVENT.equals(message)) {
+      handleClientEvent(message);
+    }
+  }
+
+  private void handleClientEvent(final String event) {
+    final String[] pieces = event.split(":", 3);
+
+    if (pieces.length != 3) {
+      log.debug("Ignoring unrecognized client event: {}", event);
+      return;
+    }
+
+    final UUID accountUuid;
+    final byte deviceId;
+
+    try {
+      accountUuid = UUID.fromString(pieces[1]);
+      deviceId = Byte.parseByte(pieces[2]);
+    } catch (final IllegalArgumentException e) {
+      log.debug("Ignoring client event with malformed client identifier: {}", event);
+      return;
+    }
+
+    Metrics.counter(RECEIVE_CLIENT_EVENT_COUNTER_NAME, "type", pieces[0]).increment();
+    handleClientEvent(pieces[0], accountUuid, deviceId);
+  }
+
+  private void handleClientEvent(final String eventType, final UUID accountUuid, final byte deviceId) {
+    switch (eventType) {
+      case NEW_MESSAGES_EVENT -> clientEventListeners.forEach(listener ->
+          listener.handleNewMessagesAvailable(accountUuid, deviceId));
+
+      case MESSAGES_PERSISTED_EVENT -> clientEventListeners.forEach(listener ->
+          listener.handleMessagesPersisted(accountUuid, deviceId));
+
+      case DISPLACED_EVENT, DISCONNECTED_EVENT -> {
+        final String presenceKey = getPresenceKey(accountUuid, deviceId);
+        final boolean connectedElsewhere = DISPLACED_EVENT.equals(eventType);
+
+        // As with keyspace notifications, we may be on a Lettuce IO thread and need to dispatch to a separate thread
+        // before making synchronous Lettuce calls
+        keyspaceNotificationDispatcher.dispatch(presenceKey, () -> {
           try {
-            displacePresence(channel.substring("__keyspace@0__:".length()), connectedElsewhere);
+            displacePresence(presenceKey, connectedElsewhere);
             remoteDisplacementMeter.mark();
           } catch (final Exception e) {
             log.warn("Error displacing presence", e);
           }
         });
       }
+
+      default -> log.debug("Ignoring unrecognized client event type: {}", eventType);
     }
   }
 
@@ -353,6 +713,10 @@ public class ClientPresenceManager extends RedisClusterPubSubAdapter<String, Str
 
   @VisibleForTesting
   static String getManagerPresenceChannel(final String managerId) {
-    return "presence::manager::" + managerId;
+    return MANAGER_PRESENCE_CHANNEL_PREFIX + managerId;
+  }
+
+  private static String encodeClientEvent(final String eventType, final UUID accountUuid, final byte deviceId) {
+    return eventType + ":" + accountUuid + ":" + deviceId;
   }
 }
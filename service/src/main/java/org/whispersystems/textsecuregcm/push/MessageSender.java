@@ -8,11 +8,18 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
 
 import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.StringUtils;
 import org.whispersystems.textsecuregcm.redis.RedisOperation;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DeviceMessage;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 /**
  * A MessageSender sends Signal messages to destination devices. Messages may be "normal" user-to-user messages,
@@ -53,20 +60,20 @@ public class MessageSender {
     this.pushLatencyManager = pushLatencyManager;
   }
 
+  /**
+   * A message addressed to a specific destination device.
+   *
+   * @param destination the destination account
+   * @param destinationDevice the destination device
+   * @param message the message to send
+   */
+  public record OutgoingMessage(Account destination, Device destinationDevice, Envelope message) {
+  }
+
   public void sendMessage(final Account account, final Device device, final Envelope message, final boolean online)
       throws NotPushRegisteredException {
 
-    final String channel;
-
-    if (device.getGcmId() != null) {
-      channel = "gcm";
-    } else if (device.getApnId() != null) {
-      channel = "apn";
-    } else if (device.getFetchesMessages()) {
-      channel = "websocket";
-    } else {
-      throw new AssertionError();
-    }
+    final String channel = getChannel(device);
 
     final boolean clientPresent;
 
@@ -75,6 +82,7 @@ public class MessageSender {
 
       if (clientPresent) {
         messagesManager.insert(account.getUuid(), device.getId(), message.toBuilder().setEphemeral(true).build());
+        clientPresenceManager.notifyNewMessagesAvailable(account.getUuid(), device.getId());
       }
     } else {
       messagesManager.insert(account.getUuid(), device.getId(), message);
@@ -84,19 +92,102 @@ public class MessageSender {
       // but disconnected before the message was delivered, we should send a notification.
       clientPresent = clientPresenceManager.isPresent(account.getUuid(), device.getId());
 
-      if (!clientPresent) {
-        try {
-          pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
+      if (clientPresent) {
+        clientPresenceManager.notifyNewMessagesAvailable(account.getUuid(), device.getId());
+      } else {
+        sendNewMessageNotification(account, device, message);
+      }
+    }
+
+    incrementSendCounter(channel, online, clientPresent, message);
+  }
+
+  /**
+   * Sends messages to many destination devices at once. Messages are inserted and destination clients' presence is
+   * checked in pipelined batches rather than one destination at a time, but each message is otherwise handled as if it
+   * had been sent via {@link #sendMessage(Account, Device, Envelope, boolean)}. Callers are never blocked while
+   * messages are sent.
+   *
+   * @param messages the messages to send
+   * @param online whether the messages are ephemeral ("online") messages
+   *
+   * @return a future that yields the messages that could not be delivered because their destination devices are
+   * neither registered for push notifications nor able to fetch messages
+   */
+  public CompletableFuture<List<OutgoingMessage>> sendMessages(final List<OutgoingMessage> messages,
+      final boolean online) {
+
+    final List<Pair<UUID, Byte>> destinations = messages.stream()
+        .map(outgoingMessage ->
+            new Pair<>(outgoingMessage.destination().getUuid(), outgoingMessage.destinationDevice().getId()))
+        .toList();
+
+    final CompletableFuture<Set<Pair<UUID, Byte>>> presentClientsFuture;
+
+    if (online) {
+      presentClientsFuture = clientPresenceManager.getPresentClients(destinations)
+          .thenCompose(presentClients -> messagesManager.insert(messages.stream()
+                  .filter(outgoingMessage -> presentClients.contains(new Pair<>(outgoingMessage.destination().getUuid(),
+                      outgoingMessage.destinationDevice().getId())))
+                  .map(outgoingMessage -> new DeviceMessage(outgoingMessage.destination().getUuid(),
+                      outgoingMessage.destinationDevice().getId(),
+                      outgoingMessage.message().toBuilder().setEphemeral(true).build()))
+                  .toList())
+              .thenApply(ignored -> presentClients));
+    } else {
+      presentClientsFuture = messagesManager.insert(messages.stream()
+              .map(outgoingMessage -> new DeviceMessage(outgoingMessage.destination().getUuid(),
+                  outgoingMessage.destinationDevice().getId(),
+                  outgoingMessage.message()))
+              .toList())
+          // As with individual messages, we check for presence only after inserting messages
+          .thenCompose(ignored -> clientPresenceManager.getPresentClients(destinations));
+    }
+
+    return presentClientsFuture.thenApply(presentClients -> {
+      clientPresenceManager.notifyNewMessagesAvailable(presentClients);
 
-          final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
-          RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
-        } catch (final NotPushRegisteredException e) {
-          if (!device.getFetchesMessages()) {
-            throw e;
+      final List<OutgoingMessage> undeliverableMessages = new ArrayList<>();
+
+      for (final OutgoingMessage outgoingMessage : messages) {
+        final Account account = outgoingMessage.destination();
+        final Device device = outgoingMessage.destinationDevice();
+        final boolean clientPresent = presentClients.contains(new Pair<>(account.getUuid(), device.getId()));
+
+        if (!online && !clientPresent) {
+          try {
+            sendNewMessageNotification(account, device, outgoingMessage.message());
+          } catch (final NotPushRegisteredException e) {
+            undeliverableMessages.add(outgoingMessage);
           }
         }
+
+        incrementSendCounter(getChannel(device), online, clientPresent, outgoingMessage.message());
+      }
+
+      return undeliverableMessages;
+    });
+  }
+
+  private void sendNewMessageNotification(final Account account, final Device device, final Envelope message)
+      throws NotPushRegisteredException {
+
+    try {
+      pushNotificationManager.sendNewMessageNotification(account, device.getId(), message.getUrgent());
+
+      final boolean useVoip = StringUtils.isNotBlank(device.getVoipApnId());
+      RedisOperation.unchecked(() -> pushLatencyManager.recordPushSent(account.getUuid(), device.getId(), useVoip, message.getUrgent()));
+    } catch (final NotPushRegisteredException e) {
+      if (!device.getFetchesMessages()) {
+        throw e;
       }
     }
+  }
+
+  private static void incrementSendCounter(final String channel,
+      final boolean online,
+      final boolean clientPresent,
+      final Envelope message) {
 
     Metrics.counter(SEND_COUNTER_NAME,
             CHANNEL_TAG_NAME, channel,
@@ -108,4 +199,16 @@ public class MessageSender {
             HAS_SPAM_REPORTING_TOKEN_TAG_NAME, String.valueOf(message.getReportSpamToken() != null && !message.getReportSpamToken().isEmpty()))
         .increment();
   }
+
+  private static String getChannel(final Device device) {
+    if (device.getGcmId() != null) {
+      return "gcm";
+    } else if (device.getApnId() != null) {
+      return "apn";
+    } else if (device.getFetchesMessages()) {
+      return "websocket";
+    } else {
+      throw new AssertionError();
+    }
+  }
 }
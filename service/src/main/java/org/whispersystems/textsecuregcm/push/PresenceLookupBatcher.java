@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.push;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Coalesces individual presence lookups into batches. At most one batch is in flight at a time; lookups requested
+ * while a batch is in flight are queued and sent together as soon as that batch completes. Under light load, each lookup
+ * is sent immediately as a batch of one, and under heavy load batches grow to match the rate of lookups without adding
+ * a fixed delay to any individual lookup.
+ */
+class PresenceLookupBatcher {
+
+  private final Function<Set<String>, CompletableFuture<Set<String>>> batchLookupFunction;
+
+  private Map<String, CompletableFuture<Boolean>> pendingLookups = new HashMap<>();
+  private boolean batchInFlight = false;
+
+  private static final DistributionSummary BATCH_SIZE_DISTRIBUTION_SUMMARY = DistributionSummary
+      .builder(name(PresenceLookupBatcher.class, "batchSize"))
+      .publishPercentiles(0.5, 0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
+
+  /**
+   * @param batchLookupFunction a function that, given a set of presence keys, yields the subset of those keys for which
+   * a client is present
+   */
+  PresenceLookupBatcher(final Function<Set<String>, CompletableFuture<Set<String>>> batchLookupFunction) {
+    this.batchLookupFunction = batchLookupFunction;
+  }
+
+  /**
+   * Checks whether a client is present for the given presence key.
+   *
+   * @param presenceKey the presence key to check
+   *
+   * @return a future that yields {@code true} if a client is present for the given key or {@code false} otherwise
+   */
+  CompletableFuture<Boolean> isPresent(final String presenceKey) {
+    final CompletableFuture<Boolean> presenceFuture;
+    final Map<String, CompletableFuture<Boolean>> batch;
+
+    synchronized (this) {
+      final CompletableFuture<Boolean> pendingLookup = pendingLookups.get(presenceKey);
+
+      if (pendingLookup != null) {
+        return pendingLookup;
+      }
+
+      presenceFuture = new CompletableFuture<>();
+      pendingLookups.put(presenceKey, presenceFuture);
+
+      if (batchInFlight) {
+        return presenceFuture;
+      }
+
+      batchInFlight = true;
+      batch = takePendingLookups();
+    }
+
+    sendBatch(batch);
+
+    return presenceFuture;
+  }
+
+  private void sendBatch(final Map<String, CompletableFuture<Boolean>> batch) {
+    BATCH_SIZE_DISTRIBUTION_SUMMARY.record(batch.size());
+
+    CompletableFuture<Set<String>> batchFuture;
+
+    try {
+      batchFuture = batchLookupFunction.apply(batch.keySet());
+    } catch (final RuntimeException e) {
+      batchFuture = CompletableFuture.failedFuture(e);
+    }
+
+    batchFuture.whenComplete((presentKeys, throwable) -> {
+      batch.forEach((presenceKey, presenceFuture) -> {
+        if (throwable != null) {
+          presenceFuture.completeExceptionally(throwable);
+        } else {
+          presenceFuture.complete(presentKeys.contains(presenceKey));
+        }
+      });
+
+      final Map<String, CompletableFuture<Boolean>> nextBatch;
+
+      synchronized (this) {
+        if (pendingLookups.isEmpty()) {
+          batchInFlight = false;
+          return;
+        }
+
+        nextBatch = takePendingLookups();
+      }
+
+      sendBatch(nextBatch);
+    });
+  }
+
+  private Map<String, CompletableFuture<Boolean>> takePendingLookups() {
+    final Map<String, CompletableFuture<Boolean>> batch = pendingLookups;
+    pendingLookups = new HashMap<>();
+
+    return batch;
+  }
+}
@@ -6,27 +6,27 @@
 package org.whispersystems.textsecuregcm.push;
 
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.annotations.VisibleForTesting;
 import io.lettuce.core.SetArgs;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.metrics.UserAgentTagUtil;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
-import org.whispersystems.textsecuregcm.util.SystemMapper;
+import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 
 /**
  * Measures and records the latency between sending a push notification to a device and that device draining its queue
@@ -36,18 +36,32 @@ import org.whispersystems.textsecuregcm.util.SystemMapper;
  * mapping the current timestamp to the given device if such a mapping doesn't already exist. When a client connects and
  * clears its message queue, the push latency manager gets and clears the time of the initial push notification to that
  * device and records the time elapsed since the push notification timestamp as a latency observation.
+ * <p/>
+ * Latency is measured for a configurable fraction of devices. Whether a device is sampled depends only on its identity,
+ * so devices that aren't sampled don't generate any Redis traffic when pushes are sent or when their queues are read.
  */
 public class PushLatencyManager {
 
   private final FaultTolerantRedisCluster redisCluster;
   private final ClientReleaseManager clientReleaseManager;
+  private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
   private final Clock clock;
 
+  private final Map<TimerKey, Timer> latencyTimers = new ConcurrentHashMap<>();
+
   public static final String TIMER_NAME = MetricRegistry.name(PushLatencyManager.class, "latency");
   private static final int TTL = (int) Duration.ofDays(1).toSeconds();
 
-  private static final Logger log = LoggerFactory.getLogger(PushLatencyManager.class);
+  /**
+   * The length of an encoded push record: an 8-byte timestamp in milliseconds since the epoch and a 1-byte set of flags
+   */
+  private static final int PUSH_RECORD_LENGTH = Long.BYTES + 1;
+
+  private static final byte VOIP_FLAG = 0x01;
+  private static final byte URGENT_FLAG = 0x02;
+
+  private static final long SAMPLE_RESOLUTION = 1_000_000;
 
   @VisibleForTesting
   enum PushType {
@@ -55,93 +69,135 @@ public class PushLatencyManager {
     VOIP
   }
 
-  record PushRecord(Instant timestamp, PushType pushType, Optional<Boolean> urgent) {
+  record PushRecord(Instant timestamp, PushType pushType, boolean urgent) {
+  }
+
+  private record TimerKey(Tag platformTag, PushType pushType, boolean urgent, @Nullable Tag clientVersionTag) {
   }
 
   public PushLatencyManager(final FaultTolerantRedisCluster redisCluster,
-      final ClientReleaseManager clientReleaseManager) {
+      final ClientReleaseManager clientReleaseManager,
+      final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager) {
 
-    this(redisCluster, clientReleaseManager, Clock.systemUTC());
+    this(redisCluster, clientReleaseManager, dynamicConfigurationManager, Clock.systemUTC());
   }
 
   @VisibleForTesting
   PushLatencyManager(final FaultTolerantRedisCluster redisCluster,
       final ClientReleaseManager clientReleaseManager,
+      final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager,
       final Clock clock) {
 
     this.redisCluster = redisCluster;
     this.clientReleaseManager = clientReleaseManager;
+    this.dynamicConfigurationManager = dynamicConfigurationManager;
     this.clock = clock;
   }
 
   void recordPushSent(final UUID accountUuid, final byte deviceId, final boolean isVoip, final boolean isUrgent) {
-    try {
-      final String recordJson = SystemMapper.jsonMapper().writeValueAsString(
-          new PushRecord(Instant.now(clock), isVoip ? PushType.VOIP : PushType.STANDARD, Optional.of(isUrgent)));
-
-      redisCluster.useCluster(connection ->
-          connection.async().set(getFirstUnacknowledgedPushKey(accountUuid, deviceId),
-              recordJson,
-              SetArgs.Builder.nx().ex(TTL)));
-    } catch (final JsonProcessingException e) {
-      // This should never happen
-      log.error("Failed to write push latency record JSON", e);
+    if (!isSampled(accountUuid, deviceId)) {
+      return;
     }
+
+    final byte[] encodedRecord =
+        encodePushRecord(new PushRecord(clock.instant(), isVoip ? PushType.VOIP : PushType.STANDARD, isUrgent));
+
+    redisCluster.useBinaryCluster(connection ->
+        connection.async().set(getFirstUnacknowledgedPushKey(accountUuid, deviceId),
+            encodedRecord,
+            SetArgs.Builder.nx().ex(TTL)));
   }
 
   void recordQueueRead(final UUID accountUuid, final byte deviceId, final String userAgentString) {
+    if (!isSampled(accountUuid, deviceId)) {
+      return;
+    }
+
     takePushRecord(accountUuid, deviceId).thenAccept(pushRecord -> {
       if (pushRecord != null) {
-        final Duration latency = Duration.between(pushRecord.timestamp(), Instant.now());
+        final TimerKey timerKey = new TimerKey(UserAgentTagUtil.getPlatformTag(userAgentString),
+            pushRecord.pushType(),
+            pushRecord.urgent(),
+            UserAgentTagUtil.getClientVersionTag(userAgentString, clientReleaseManager).orElse(null));
 
-        final List<Tag> tags = new ArrayList<>(3);
+        latencyTimers.computeIfAbsent(timerKey, PushLatencyManager::buildTimer)
+            .record(Duration.between(pushRecord.timestamp(), clock.instant()));
+      }
+    });
+  }
 
-        tags.add(UserAgentTagUtil.getPlatformTag(userAgentString));
-        tags.add(Tag.of("pushType", pushRecord.pushType().name().toLowerCase()));
+  @VisibleForTesting
+  CompletableFuture<PushRecord> takePushRecord(final UUID accountUuid, final byte deviceId) {
+    return redisCluster.withBinaryCluster(connection ->
+        connection.async().getdel(getFirstUnacknowledgedPushKey(accountUuid, deviceId))
+            .thenApply(PushLatencyManager::decodePushRecord)
+            .toCompletableFuture());
+  }
 
-        UserAgentTagUtil.getClientVersionTag(userAgentString, clientReleaseManager)
-            .ifPresent(tags::add);
+  @VisibleForTesting
+  boolean isSampled(final UUID accountUuid, final byte deviceId) {
+    final double sampleRate = dynamicConfigurationManager.getConfiguration().getPushLatencyConfiguration().getSampleRate();
 
-        pushRecord.urgent().ifPresent(urgent -> tags.add(Tag.of("urgent", String.valueOf(urgent))));
+    if (sampleRate >= 1) {
+      return true;
+    } else if (sampleRate <= 0) {
+      return false;
+    }
 
-        Timer.builder(TIMER_NAME)
-            .publishPercentileHistogram(true)
-            .tags(tags)
-            .register(Metrics.globalRegistry)
-            .record(latency);
-      }
-    });
+    final long hash = (accountUuid.getLeastSignificantBits() ^ accountUuid.getMostSignificantBits()) * 31 + deviceId;
+    return (hash & Long.MAX_VALUE) % SAMPLE_RESOLUTION < sampleRate * SAMPLE_RESOLUTION;
+  }
+
+  private static Timer buildTimer(final TimerKey timerKey) {
+    Tags tags = Tags.of(timerKey.platformTag(),
+        Tag.of("pushType", timerKey.pushType().name().toLowerCase()),
+        Tag.of("urgent", String.valueOf(timerKey.urgent())));
+
+    if (timerKey.clientVersionTag() != null) {
+      tags = tags.and(timerKey.clientVersionTag());
+    }
+
+    return Timer.builder(TIMER_NAME)
+        .publishPercentileHistogram(true)
+        .tags(tags)
+        .register(Metrics.globalRegistry);
   }
 
   @VisibleForTesting
-  CompletableFuture<PushRecord> takePushRecord(final UUID accountUuid, final byte deviceId) {
-    final String key = getFirstUnacknowledgedPushKey(accountUuid, deviceId);
-
-    return redisCluster.withCluster(connection -> {
-      final CompletableFuture<PushRecord> getFuture = connection.async().get(key).toCompletableFuture()
-          .thenApply(recordJson -> {
-            if (StringUtils.isNotEmpty(recordJson)) {
-              try {
-                return SystemMapper.jsonMapper().readValue(recordJson, PushRecord.class);
-              } catch (JsonProcessingException e) {
-                return null;
-              }
-            } else {
-              return null;
-            }
-          });
-
-      getFuture.whenComplete((record, cause) -> {
-        if (cause == null) {
-          connection.async().del(key);
-        }
-      });
-
-      return getFuture;
-    });
+  static byte[] encodePushRecord(final PushRecord pushRecord) {
+    byte flags = 0;
+
+    if (pushRecord.pushType() == PushType.VOIP) {
+      flags |= VOIP_FLAG;
+    }
+
+    if (pushRecord.urgent()) {
+      flags |= URGENT_FLAG;
+    }
+
+    return ByteBuffer.allocate(PUSH_RECORD_LENGTH)
+        .putLong(pushRecord.timestamp().toEpochMilli())
+        .put(flags)
+        .array();
+  }
+
+  @VisibleForTesting
+  @Nullable
+  static PushRecord decodePushRecord(@Nullable final byte[] encodedRecord) {
+    if (encodedRecord == null || encodedRecord.length != PUSH_RECORD_LENGTH) {
+      return null;
+    }
+
+    final ByteBuffer buffer = ByteBuffer.wrap(encodedRecord);
+    final Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+    final byte flags = buffer.get();
+
+    return new PushRecord(timestamp,
+        (flags & VOIP_FLAG) != 0 ? PushType.VOIP : PushType.STANDARD,
+        (flags & URGENT_FLAG) != 0);
   }
 
-  private static String getFirstUnacknowledgedPushKey(final UUID accountUuid, final byte deviceId) {
-    return "push_latency::v2::" + accountUuid.toString() + "::" + deviceId;
+  private static byte[] getFirstUnacknowledgedPushKey(final UUID accountUuid, final byte deviceId) {
+    return ("push_latency::v3::" + accountUuid.toString() + "::" + deviceId).getBytes(StandardCharsets.UTF_8);
   }
 }
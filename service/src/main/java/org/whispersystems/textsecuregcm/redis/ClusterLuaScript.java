@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.Pair;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -102,6 +103,48 @@ public class ClusterLuaScript {
         executeReactive(connection, keys.toArray(BYTE_ARRAY_ARRAY), args.toArray(BYTE_ARRAY_ARRAY)));
   }
 
+  /**
+   * Executes this script once for each of the given pairs of keys and arguments. All executions are issued before any
+   * response is awaited, and so are pipelined to the nodes that own the given keys.
+   *
+   * @param keysAndArgs the keys and arguments for each execution of this script
+   *
+   * @return a future that yields the results of each execution in the order in which executions were given
+   */
+  public CompletableFuture<List<Object>> executePipelinedAsync(final List<Pair<List<String>, List<String>>> keysAndArgs) {
+    return redisCluster.withCluster(connection -> {
+      final List<CompletableFuture<Object>> futures = keysAndArgs.stream()
+          .map(keysAndArg -> executeAsync(connection,
+              keysAndArg.first().toArray(STRING_ARRAY),
+              keysAndArg.second().toArray(STRING_ARRAY)))
+          .toList();
+
+      return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+          .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    });
+  }
+
+  /**
+   * Executes this script once for each of the given pairs of keys and arguments. All executions are issued before any
+   * response is awaited, and so are pipelined to the nodes that own the given keys.
+   *
+   * @param keysAndArgs the keys and arguments for each execution of this script
+   *
+   * @return a future that yields the results of each execution in the order in which executions were given
+   */
+  public CompletableFuture<List<Object>> executeBinaryPipelinedAsync(final List<Pair<List<byte[]>, List<byte[]>>> keysAndArgs) {
+    return redisCluster.withBinaryCluster(connection -> {
+      final List<CompletableFuture<Object>> futures = keysAndArgs.stream()
+          .map(keysAndArg -> executeAsync(connection,
+              keysAndArg.first().toArray(BYTE_ARRAY_ARRAY),
+              keysAndArg.second().toArray(BYTE_ARRAY_ARRAY)))
+          .toList();
+
+      return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+          .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    });
+  }
+
   private <T> Object execute(final StatefulRedisClusterConnection<T, T> connection, final T[] keys, final T[] args) {
     try {
       try {
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.redis;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches keyspace notifications to handlers off of Redis client IO threads. Notifications are assigned to one of a
+ * fixed number of shards by key, and each shard handles its notifications in order on a single thread. Notifications for
+ * the same key (a message queue or presence key, for example) are therefore handled in the order they arrived, while
+ * notifications for different keys can be handled in parallel without contending for a single shared work queue.
+ */
+public class KeyspaceNotificationDispatcher implements Managed {
+
+  private final ThreadPoolExecutor[] shards;
+  private final Timer[] dispatchLatencyTimers;
+
+  private static final String QUEUE_DEPTH_GAUGE_NAME = name(KeyspaceNotificationDispatcher.class, "queueDepth");
+  private static final String DISPATCH_LATENCY_TIMER_NAME =
+      name(KeyspaceNotificationDispatcher.class, "dispatchLatency");
+
+  private static final String DISPATCHER_TAG_NAME = "dispatcher";
+  private static final String SHARD_TAG_NAME = "shard";
+
+  private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+  /**
+   * @param name a name for this dispatcher, used to name its threads and to tag its metrics
+   * @param shardCount the number of shards (and threads) across which to distribute notifications
+   * @param maxQueueDepth the maximum number of notifications that may wait in each shard's queue; notifications
+   * dispatched to a full shard are rejected
+   */
+  public KeyspaceNotificationDispatcher(final String name, final int shardCount, final int maxQueueDepth) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Dispatcher must have at least one shard");
+    }
+
+    this.shards = new ThreadPoolExecutor[shardCount];
+    this.dispatchLatencyTimers = new Timer[shardCount];
+
+    for (int i = 0; i < shardCount; i++) {
+      final Tags tags = Tags.of(DISPATCHER_TAG_NAME, name, SHARD_TAG_NAME, String.valueOf(i));
+      final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(maxQueueDepth);
+
+      shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue,
+          new ThreadFactoryBuilder().setNameFormat(name + "-" + i).build());
+
+      Metrics.gaugeCollectionSize(QUEUE_DEPTH_GAUGE_NAME, tags, queue);
+
+      dispatchLatencyTimers[i] = Timer.builder(DISPATCH_LATENCY_TIMER_NAME)
+          .tags(tags)
+          .publishPercentiles(0.5, 0.99, 0.999)
+          .distributionStatisticExpiry(Duration.ofMinutes(5))
+          .register(Metrics.globalRegistry);
+    }
+  }
+
+  /**
+   * Dispatches a notification handler to the shard for the given key. Handlers dispatched with equal keys run in the
+   * order in which they were dispatched.
+   *
+   * @param key the key (typically a Redis key or a value derived from one) to which the notification applies
+   * @param handler the action to take in response to the notification
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the shard for the given key has reached its maximum
+   * queue depth or if this dispatcher has been stopped
+   */
+  public void dispatch(final String key, final Runnable handler) {
+    final int shard = Math.floorMod(key.hashCode(), shards.length);
+    final long dispatchNanos = System.nanoTime();
+
+    shards[shard].execute(() -> {
+      dispatchLatencyTimers[shard].record(System.nanoTime() - dispatchNanos, TimeUnit.NANOSECONDS);
+      handler.run();
+    });
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    for (final ThreadPoolExecutor shard : shards) {
+      shard.shutdown();
+    }
+
+    for (final ThreadPoolExecutor shard : shards) {
+      shard.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -9,16 +9,22 @@ import static com.codahale.metrics.MetricRegistry.name;
 import static io.micrometer.core.instrument.Metrics.counter;
 import static io.micrometer.core.instrument.Metrics.timer;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
@@ -35,6 +41,9 @@ public abstract class AbstractDynamoDbStore {
 
   public static final int RESULT_SET_CHUNK_SIZE = 100;
 
+  private static final Duration BASE_BATCH_WRITE_RETRY_DELAY = Duration.ofMillis(25);
+  private static final Duration MAX_BATCH_WRITE_RETRY_DELAY = Duration.ofSeconds(1);
+
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   private final Timer batchWriteItemsFirstPass = timer(name(getClass(), "batchWriteItems"), "firstAttempt", "true");
@@ -71,6 +80,72 @@ public abstract class AbstractDynamoDbStore {
     }
   }
 
+  protected CompletableFuture<Void> executeTableWriteItemsUntilCompleteAsync(
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final Map<String, ? extends Collection<WriteRequest>> items) {
+
+    return executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient, items, 0);
+  }
+
+  private CompletableFuture<Void> executeTableWriteItemsUntilCompleteAsync(
+      final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final Map<String, ? extends Collection<WriteRequest>> items,
+      final int attemptCount) {
+
+    final Timer.Sample sample = Timer.start();
+
+    return dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder().requestItems(items).build())
+        .thenCompose(response -> {
+          sample.stop(attemptCount == 0 ? batchWriteItemsFirstPass : batchWriteItemsRetryPass);
+
+          if (response.unprocessedItems().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+          }
+
+          if (attemptCount < MAX_ATTEMPTS_TO_SAVE_BATCH_WRITE) {
+            return delayBatchWriteRetry(attemptCount)
+                .thenCompose(ignored -> executeTableWriteItemsUntilCompleteAsync(dynamoDbAsyncClient,
+                    response.unprocessedItems(), attemptCount + 1));
+          }
+
+          final int totalItems = response.unprocessedItems().values().stream().mapToInt(List::size).sum();
+          logger.error(
+              "Attempt count ({}) reached max ({}}) before applying all batch writes to dynamo. {} unprocessed items remain.",
+              attemptCount, MAX_ATTEMPTS_TO_SAVE_BATCH_WRITE, totalItems);
+          batchWriteItemsUnprocessed.increment(totalItems);
+
+          // Unlike the synchronous variant, callers of the asynchronous variant generally act on completion (e.g. by
+          // trimming a source queue), so report incomplete writes as a failure
+          return CompletableFuture.failedFuture(
+              new IllegalStateException(totalItems + " unprocessed items remain after " + attemptCount + " retries"));
+        });
+  }
+
+  /**
+   * Returns a future that completes after a delay chosen by {@link #getBatchWriteRetryDelay(int)}, for callers to wait
+   * on before retrying unprocessed batch write items.
+   *
+   * @param attempt the number of the attempt that left items unprocessed, starting from zero
+   */
+  static CompletableFuture<Void> delayBatchWriteRetry(final int attempt) {
+    return CompletableFuture.runAsync(() -> {},
+        CompletableFuture.delayedExecutor(getBatchWriteRetryDelay(attempt).toMillis(), TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Chooses a delay before retrying unprocessed batch write items using "full jitter" (a random delay between zero and
+   * an exponentially-increasing cap) so retries from concurrent writers don't arrive in lockstep.
+   *
+   * @param attempt the number of the attempt that left items unprocessed, starting from zero
+   */
+  @VisibleForTesting
+  static Duration getBatchWriteRetryDelay(final int attempt) {
+    final long maxDelayMillis = Math.min(MAX_BATCH_WRITE_RETRY_DELAY.toMillis(),
+        BASE_BATCH_WRITE_RETRY_DELAY.toMillis() << Math.min(attempt, 16));
+
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxDelayMillis + 1));
+  }
+
   @Nonnull
   protected List<Map<String, AttributeValue>> scan(final ScanRequest scanRequest, final int max) {
     return db().scanPaginator(scanRequest)
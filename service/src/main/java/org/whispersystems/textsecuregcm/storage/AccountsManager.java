@@ -12,22 +12,24 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import io.lettuce.core.RedisException;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
-import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -35,6 +37,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -46,7 +49,6 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.lang3.ObjectUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,7 +68,6 @@ import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2
 import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.DestinationDeviceValidator;
 import org.whispersystems.textsecuregcm.util.ExceptionUtils;
-import org.whispersystems.textsecuregcm.util.SystemMapper;
 import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.publisher.ParallelFlux;
 import reactor.core.scheduler.Scheduler;
@@ -80,6 +81,7 @@ public class AccountsManager {
   private static final Timer getByUsernameHashTimer = metricRegistry.timer(name(AccountsManager.class, "getByUsernameHash"));
   private static final Timer getByUsernameLinkHandleTimer = metricRegistry.timer(name(AccountsManager.class, "getByUsernameLinkHandle"));
   private static final Timer getByUuidTimer = metricRegistry.timer(name(AccountsManager.class, "getByUuid"));
+  private static final Timer getByServiceIdentifiersTimer = metricRegistry.timer(name(AccountsManager.class, "getByServiceIdentifiers"));
   private static final Timer deleteTimer = metricRegistry.timer(name(AccountsManager.class, "delete"));
 
   private static final Timer redisSetTimer = metricRegistry.timer(name(AccountsManager.class, "redisSet"));
@@ -88,6 +90,8 @@ public class AccountsManager {
   private static final Timer redisUsernameLinkHandleGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisUsernameLinkHandleGet"));
   private static final Timer redisPniGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisPniGet"));
   private static final Timer redisUuidGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisUuidGet"));
+  private static final Timer redisPniMultiGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisPniMultiGet"));
+  private static final Timer redisUuidMultiGetTimer = metricRegistry.timer(name(AccountsManager.class, "redisUuidMultiGet"));
   private static final Timer redisDeleteTimer = metricRegistry.timer(name(AccountsManager.class, "redisDelete"));
 
   private static final String CREATE_COUNTER_NAME       = name(AccountsManager.class, "createCounter");
@@ -98,11 +102,17 @@ public class AccountsManager {
   @VisibleForTesting
   public static final String USERNAME_EXPERIMENT_NAME  = "usernames";
 
+  // Accounts enrolled in this experiment are written to the shared account cache in the compact binary form; all
+  // servers can read both forms
+  @VisibleForTesting
+  static final String BINARY_ACCOUNT_CACHE_EXPERIMENT_NAME = "binaryAccountCache";
+
   private static final Logger logger = LoggerFactory.getLogger(AccountsManager.class);
 
   private final Accounts accounts;
   private final PhoneNumberIdentifiers phoneNumberIdentifiers;
   private final FaultTolerantRedisCluster cacheCluster;
+  private final LocalAccountCache localAccountCache;
   private final AccountLockManager accountLockManager;
   private final KeysManager keysManager;
   private final MessagesManager messagesManager;
@@ -115,9 +125,6 @@ public class AccountsManager {
   private final Executor accountLockExecutor;
   private final Clock clock;
 
-  private static final ObjectWriter ACCOUNT_REDIS_JSON_WRITER = SystemMapper.jsonMapper()
-      .writer(SystemMapper.excludingField(Account.class, List.of("uuid")));
-
   // An account that's used at least daily will get reset in the cache at least once per day when its "last seen"
   // timestamp updates; expiring entries after two days will help clear out "zombie" cache entries that are read
   // frequently (e.g. the account is in an active group and receives messages frequently), but aren't actively used by
@@ -148,6 +155,7 @@ public class AccountsManager {
   public AccountsManager(final Accounts accounts,
       final PhoneNumberIdentifiers phoneNumberIdentifiers,
       final FaultTolerantRedisCluster cacheCluster,
+      final LocalAccountCache localAccountCache,
       final AccountLockManager accountLockManager,
       final KeysManager keysManager,
       final MessagesManager messagesManager,
@@ -162,6 +170,7 @@ public class AccountsManager {
     this.accounts = accounts;
     this.phoneNumberIdentifiers = phoneNumberIdentifiers;
     this.cacheCluster = cacheCluster;
+    this.localAccountCache = localAccountCache;
     this.accountLockManager = accountLockManager;
     this.keysManager = keysManager;
     this.messagesManager = messagesManager;
@@ -820,6 +829,66 @@ public class AccountsManager {
     };
   }
 
+  /**
+   * Resolves many service identifiers at once. Accounts are read from the cache with a single multi-key read for all
+   * phone number identifiers and another for all account identifiers; only identifiers that miss the cache are looked
+   * up individually.
+   *
+   * @param serviceIdentifiers the service identifiers to resolve
+   *
+   * @return a future that yields a map of service identifiers to the accounts they identify; identifiers that do not
+   * identify any account are absent from the map
+   */
+  public CompletableFuture<Map<ServiceIdentifier, Account>> getByServiceIdentifiersAsync(
+      final Collection<ServiceIdentifier> serviceIdentifiers) {
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = getByServiceIdentifiersTimer.time();
+
+    final Set<ServiceIdentifier> distinctServiceIdentifiers = new HashSet<>(serviceIdentifiers);
+
+    final List<UUID> phoneNumberIdentifiers = distinctServiceIdentifiers.stream()
+        .filter(serviceIdentifier -> serviceIdentifier.identityType() == IdentityType.PNI)
+        .map(ServiceIdentifier::uuid)
+        .toList();
+
+    return redisGetAccountIdentifiersByPhoneNumberIdentifiersAsync(phoneNumberIdentifiers)
+        .thenCompose(accountIdentifiersByPhoneNumberIdentifier -> {
+          final Set<UUID> accountIdentifiers = new HashSet<>(accountIdentifiersByPhoneNumberIdentifier.values());
+
+          distinctServiceIdentifiers.stream()
+              .filter(serviceIdentifier -> serviceIdentifier.identityType() == IdentityType.ACI)
+              .forEach(serviceIdentifier -> accountIdentifiers.add(serviceIdentifier.uuid()));
+
+          return getByAccountIdentifiersAsync(accountIdentifiers).thenCompose(accountsByAccountIdentifier -> {
+            final Map<ServiceIdentifier, CompletableFuture<Optional<Account>>> accountFutures = new HashMap<>();
+
+            for (final ServiceIdentifier serviceIdentifier : distinctServiceIdentifiers) {
+              accountFutures.put(serviceIdentifier, switch (serviceIdentifier.identityType()) {
+                case ACI -> CompletableFuture.completedFuture(
+                    Optional.ofNullable(accountsByAccountIdentifier.get(serviceIdentifier.uuid())));
+
+                case PNI -> Optional.ofNullable(
+                        accountIdentifiersByPhoneNumberIdentifier.get(serviceIdentifier.uuid()))
+                    .map(accountsByAccountIdentifier::get)
+                    .map(account -> CompletableFuture.completedFuture(Optional.of(account)))
+                    .orElseGet(() -> getByPhoneNumberIdentifierAsync(serviceIdentifier.uuid()));
+              });
+            }
+
+            return CompletableFuture.allOf(accountFutures.values().toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                  final Map<ServiceIdentifier, Account> accountsByServiceIdentifier = new HashMap<>();
+
+                  accountFutures.forEach((serviceIdentifier, accountFuture) -> accountFuture.join()
+                      .ifPresent(account -> accountsByServiceIdentifier.put(serviceIdentifier, account)));
+
+                  return accountsByServiceIdentifier;
+                });
+          });
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close());
+  }
+
   public Optional<Account> getByAccountIdentifier(final UUID uuid) {
     return checkRedisThenAccounts(
         getByUuidTimer,
@@ -898,30 +967,38 @@ public class AccountsManager {
     return "Account3::" + uuid.toString();
   }
 
+  private byte[] getAccountEntityKeyBytes(final UUID uuid) {
+    return getAccountEntityKey(uuid).getBytes(StandardCharsets.UTF_8);
+  }
+
   private void redisSet(Account account) {
     try (Timer.Context ignored = redisSetTimer.time()) {
-      final String accountJson = writeRedisAccountJson(account);
+      final byte[] encodedAccount = writeRedisAccount(account);
 
       cacheCluster.useCluster(connection -> {
         final RedisAdvancedClusterCommands<String, String> commands = connection.sync();
 
         commands.setex(getAccountMapKey(account.getPhoneNumberIdentifier().toString()), CACHE_TTL_SECONDS, account.getUuid().toString());
         commands.setex(getAccountMapKey(account.getNumber()), CACHE_TTL_SECONDS, account.getUuid().toString());
-        commands.setex(getAccountEntityKey(account.getUuid()), CACHE_TTL_SECONDS, accountJson);
 
         account.getUsernameHash().ifPresent(usernameHash ->
             commands.setex(getUsernameHashAccountMapKey(usernameHash), CACHE_TTL_SECONDS, account.getUuid().toString()));
       });
+
+      cacheCluster.useBinaryCluster(connection ->
+          connection.sync().setex(getAccountEntityKeyBytes(account.getUuid()), CACHE_TTL_SECONDS, encodedAccount));
+
+      localAccountCache.invalidate(account.getUuid());
     } catch (JsonProcessingException e) {
       throw new IllegalStateException(e);
     }
   }
 
   private CompletableFuture<Void> redisSetAsync(final Account account) {
-    final String accountJson;
+    final byte[] encodedAccount;
 
     try {
-      accountJson = writeRedisAccountJson(account);
+      encodedAccount = writeRedisAccount(account);
     } catch (final JsonProcessingException e) {
       throw new UncheckedIOException(e);
     }
@@ -936,7 +1013,8 @@ public class AccountsManager {
             .setex(getAccountMapKey(account.getNumber()), CACHE_TTL_SECONDS, account.getUuid().toString())
             .toCompletableFuture(),
 
-        connection.async().setex(getAccountEntityKey(account.getUuid()), CACHE_TTL_SECONDS, accountJson)
+        cacheCluster.withBinaryCluster(binaryConnection -> binaryConnection.async()
+                .setex(getAccountEntityKeyBytes(account.getUuid()), CACHE_TTL_SECONDS, encodedAccount))
             .toCompletableFuture(),
 
         account.getUsernameHash()
@@ -944,7 +1022,7 @@ public class AccountsManager {
                 .setex(getUsernameHashAccountMapKey(usernameHash), CACHE_TTL_SECONDS, account.getUuid().toString())
                 .toCompletableFuture())
             .orElseGet(() -> CompletableFuture.completedFuture(null))
-    ));
+    )).thenRun(() -> localAccountCache.invalidate(account.getUuid()));
   }
 
   private Optional<Account> checkRedisThenAccounts(
@@ -1012,10 +1090,21 @@ public class AccountsManager {
   }
 
   private Optional<Account> redisGetByAccountIdentifier(UUID uuid) {
+    final Optional<byte[]> maybeLocalAccount = localAccountCache.get(uuid);
+
+    if (maybeLocalAccount.isPresent()) {
+      return CachedAccountEncoding.read(maybeLocalAccount.get(), uuid);
+    }
+
     try (Timer.Context ignored = redisUuidGetTimer.time()) {
-      final String json = cacheCluster.withCluster(connection -> connection.sync().get(getAccountEntityKey(uuid)));
+      final long generation = localAccountCache.getGeneration(uuid);
+      final byte[] encodedAccount =
+          cacheCluster.withBinaryCluster(connection -> connection.sync().get(getAccountEntityKeyBytes(uuid)));
+
+      final Optional<Account> maybeAccount = CachedAccountEncoding.read(encodedAccount, uuid);
+      maybeAccount.ifPresent(account -> localAccountCache.put(uuid, encodedAccount, generation));
 
-      return parseAccountJson(json, uuid);
+      return maybeAccount;
     } catch (final RedisException e) {
       logger.warn("Redis failure", e);
       return Optional.empty();
@@ -1023,8 +1112,21 @@ public class AccountsManager {
   }
 
   private CompletableFuture<Optional<Account>> redisGetByAccountIdentifierAsync(final UUID uuid) {
-    return cacheCluster.withCluster(connection -> connection.async().get(getAccountEntityKey(uuid)))
-        .thenApply(accountJson -> parseAccountJson(accountJson, uuid))
+    final Optional<byte[]> maybeLocalAccount = localAccountCache.get(uuid);
+
+    if (maybeLocalAccount.isPresent()) {
+      return CompletableFuture.completedFuture(CachedAccountEncoding.read(maybeLocalAccount.get(), uuid));
+    }
+
+    final long generation = localAccountCache.getGeneration(uuid);
+
+    return cacheCluster.withBinaryCluster(connection -> connection.async().get(getAccountEntityKeyBytes(uuid)))
+        .thenApply(encodedAccount -> {
+          final Optional<Account> maybeAccount = CachedAccountEncoding.read(encodedAccount, uuid);
+          maybeAccount.ifPresent(account -> localAccountCache.put(uuid, encodedAccount, generation));
+
+          return maybeAccount;
+        })
         .exceptionally(throwable -> {
           logger.warn("Failed to retrieve account from Redis", throwable);
           return Optional.empty();
@@ -1032,30 +1134,124 @@ public class AccountsManager {
         .toCompletableFuture();
   }
 
-  @VisibleForTesting
-  static Optional<Account> parseAccountJson(@Nullable final String accountJson, final UUID uuid) {
-    try {
-      if (StringUtils.isNotBlank(accountJson)) {
-        Account account = SystemMapper.jsonMapper().readValue(accountJson, Account.class);
-        account.setUuid(uuid);
+  /**
+   * Resolves the given account identifiers, checking the local cache, then Redis (with a single multi-key read), and
+   * finally DynamoDB for any identifiers that weren't found in either cache.
+   */
+  private CompletableFuture<Map<UUID, Account>> getByAccountIdentifiersAsync(final Set<UUID> accountIdentifiers) {
+    final Map<UUID, Account> accountsByAccountIdentifier = new HashMap<>();
+    final List<UUID> uncachedAccountIdentifiers = new ArrayList<>();
+
+    for (final UUID uuid : accountIdentifiers) {
+      localAccountCache.get(uuid)
+          .flatMap(encodedAccount -> CachedAccountEncoding.read(encodedAccount, uuid))
+          .ifPresentOrElse(account -> accountsByAccountIdentifier.put(uuid, account),
+              () -> uncachedAccountIdentifiers.add(uuid));
+    }
 
-        if (account.getPhoneNumberIdentifier() == null) {
-          logger.warn("Account {} loaded from Redis is missing a PNI", uuid);
-        }
+    if (uncachedAccountIdentifiers.isEmpty()) {
+      return CompletableFuture.completedFuture(accountsByAccountIdentifier);
+    }
 
-        return Optional.of(account);
-      }
+    final long[] generations = new long[uncachedAccountIdentifiers.size()];
+    final byte[][] keys = new byte[uncachedAccountIdentifiers.size()][];
 
-      return Optional.empty();
-    } catch (final IOException e) {
-      logger.warn("Deserialization error", e);
-      return Optional.empty();
+    for (int i = 0; i < uncachedAccountIdentifiers.size(); i++) {
+      generations[i] = localAccountCache.getGeneration(uncachedAccountIdentifiers.get(i));
+      keys[i] = getAccountEntityKeyBytes(uncachedAccountIdentifiers.get(i));
     }
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = redisUuidMultiGetTimer.time();
+
+    return cacheCluster.withBinaryCluster(connection -> connection.async().mget(keys))
+        .toCompletableFuture()
+        .exceptionally(throwable -> {
+          logger.warn("Failed to retrieve accounts from Redis", throwable);
+          return Collections.emptyList();
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close())
+        .thenCompose(keyValues -> {
+          final Map<UUID, CompletableFuture<Optional<Account>>> accountsFromDynamoDb = new HashMap<>();
+
+          for (int i = 0; i < uncachedAccountIdentifiers.size(); i++) {
+            final UUID uuid = uncachedAccountIdentifiers.get(i);
+
+            final byte[] encodedAccount = i < keyValues.size() ? keyValues.get(i).getValueOrElse(null) : null;
+            final Optional<Account> maybeAccount = CachedAccountEncoding.read(encodedAccount, uuid);
+
+            if (maybeAccount.isPresent()) {
+              localAccountCache.put(uuid, encodedAccount, generations[i]);
+              accountsByAccountIdentifier.put(uuid, maybeAccount.get());
+            } else {
+              accountsFromDynamoDb.put(uuid, accounts.getByAccountIdentifierAsync(uuid)
+                  .thenCompose(maybeAccountFromDynamoDb -> maybeAccountFromDynamoDb
+                      .map(account -> redisSetAsync(account).thenApply(ignored -> maybeAccountFromDynamoDb))
+                      .orElseGet(() -> CompletableFuture.completedFuture(maybeAccountFromDynamoDb))));
+            }
+          }
+
+          return CompletableFuture.allOf(accountsFromDynamoDb.values().toArray(new CompletableFuture[0]))
+              .thenApply(ignored -> {
+                accountsFromDynamoDb.forEach((uuid, accountFuture) -> accountFuture.join()
+                    .ifPresent(account -> accountsByAccountIdentifier.put(uuid, account)));
+
+                return accountsByAccountIdentifier;
+              });
+        });
+  }
+
+  /**
+   * Maps phone number identifiers to account identifiers using cached mappings only. Phone number identifiers without
+   * a cached mapping are absent from the returned map.
+   */
+  private CompletableFuture<Map<UUID, UUID>> redisGetAccountIdentifiersByPhoneNumberIdentifiersAsync(
+      final List<UUID> phoneNumberIdentifiers) {
+
+    if (phoneNumberIdentifiers.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+
+    final String[] keys = phoneNumberIdentifiers.stream()
+        .map(pni -> getAccountMapKey(pni.toString()))
+        .toArray(String[]::new);
+
+    @SuppressWarnings("resource") final Timer.Context timerContext = redisPniMultiGetTimer.time();
+
+    return cacheCluster.withCluster(connection -> connection.async().mget(keys))
+        .thenApply(keyValues -> {
+          final Map<UUID, UUID> accountIdentifiersByPhoneNumberIdentifier = new HashMap<>();
+
+          for (int i = 0; i < keyValues.size(); i++) {
+            if (keyValues.get(i).hasValue()) {
+              accountIdentifiersByPhoneNumberIdentifier.put(phoneNumberIdentifiers.get(i),
+                  UUID.fromString(keyValues.get(i).getValue()));
+            }
+          }
+
+          return accountIdentifiersByPhoneNumberIdentifier;
+        })
+        .exceptionally(throwable -> {
+          logger.warn("Failed to retrieve account identifiers from Redis", throwable);
+          return Collections.emptyMap();
+        })
+        .whenComplete((ignored, throwable) -> timerContext.close())
+        .toCompletableFuture();
+  }
+
+  @VisibleForTesting
+  static Optional<Account> parseAccountJson(@Nullable final String accountJson, final UUID uuid) {
+    return CachedAccountEncoding.read(accountJson != null ? accountJson.getBytes(StandardCharsets.UTF_8) : null, uuid);
   }
 
   @VisibleForTesting
   static String writeRedisAccountJson(final Account account) throws JsonProcessingException {
-    return ACCOUNT_REDIS_JSON_WRITER.writeValueAsString(account);
+    return CachedAccountEncoding.writeJson(account);
+  }
+
+  private byte[] writeRedisAccount(final Account account) throws JsonProcessingException {
+    return experimentEnrollmentManager.isEnrolled(account.getUuid(), BINARY_ACCOUNT_CACHE_EXPERIMENT_NAME)
+        ? CachedAccountEncoding.writeBinary(account)
+        : writeRedisAccountJson(account).getBytes(StandardCharsets.UTF_8);
   }
 
   private void redisDelete(final Account account) {
@@ -1068,6 +1264,8 @@ public class AccountsManager {
 
         account.getUsernameHash().ifPresent(usernameHash -> connection.sync().del(getUsernameHashAccountMapKey(usernameHash)));
       });
+
+      localAccountCache.invalidate(account.getUuid());
     }
   }
 
@@ -1083,6 +1281,7 @@ public class AccountsManager {
 
     return cacheCluster.withCluster(connection -> connection.async().del(keysToDelete.toArray(new String[0])))
         .toCompletableFuture()
+        .thenRun(() -> localAccountCache.invalidate(account.getUuid()))
         .thenRun(timerContext::close);
   }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.SystemMapper;
+
+/**
+ * Encodes and decodes accounts stored in the shared account cache. Cached accounts may be stored either as JSON or in a
+ * versioned binary form; the binary form is a single version byte followed by the account encoded as CBOR using the
+ * same data model as the JSON form. Because JSON-encoded accounts always start with {@code '{'}, the two forms can be
+ * read side by side while servers migrate from one to the other.
+ */
+final class CachedAccountEncoding {
+
+  /**
+   * Identifies version 1 of the binary encoding: a CBOR-encoded account.
+   */
+  static final byte BINARY_VERSION_CBOR = 0x01;
+
+  private static final byte JSON_OBJECT_START = '{';
+
+  private static final ObjectWriter JSON_WRITER = SystemMapper.jsonMapper()
+      .writer(SystemMapper.excludingField(Account.class, List.of("uuid")));
+
+  private static final ObjectWriter CBOR_WRITER = SystemMapper.cborMapper()
+      .writer(SystemMapper.excludingField(Account.class, List.of("uuid")));
+
+  private static final ObjectReader JSON_READER = SystemMapper.jsonMapper().readerFor(Account.class);
+  private static final ObjectReader CBOR_READER = SystemMapper.cborMapper().readerFor(Account.class);
+
+  private static final Logger logger = LoggerFactory.getLogger(CachedAccountEncoding.class);
+
+  private CachedAccountEncoding() {
+  }
+
+  static String writeJson(final Account account) throws JsonProcessingException {
+    return JSON_WRITER.writeValueAsString(account);
+  }
+
+  static byte[] writeBinary(final Account account) throws JsonProcessingException {
+    final byte[] cbor = CBOR_WRITER.writeValueAsBytes(account);
+    final byte[] encoded = new byte[cbor.length + 1];
+
+    encoded[0] = BINARY_VERSION_CBOR;
+    System.arraycopy(cbor, 0, encoded, 1, cbor.length);
+
+    return encoded;
+  }
+
+  /**
+   * Decodes a cached account in either the JSON or binary form.
+   *
+   * @param encodedAccount the encoded account; may be {@code null} or empty
+   * @param uuid the identifier of the encoded account, which is not included in the encoded form
+   *
+   * @return the decoded account, or empty if the given account was absent or could not be decoded
+   */
+  static Optional<Account> read(@Nullable final byte[] encodedAccount, final UUID uuid) {
+    if (encodedAccount == null || encodedAccount.length == 0) {
+      return Optional.empty();
+    }
+
+    try {
+      final Account account = switch (encodedAccount[0]) {
+        case JSON_OBJECT_START -> JSON_READER.readValue(encodedAccount);
+        case BINARY_VERSION_CBOR -> CBOR_READER.readValue(encodedAccount, 1, encodedAccount.length - 1);
+        default -> throw new IOException("Unrecognized account encoding: " + encodedAccount[0]);
+      };
+
+      account.setUuid(uuid);
+
+      if (account.getPhoneNumberIdentifier() == null) {
+        logger.warn("Account {} loaded from Redis is missing a PNI", uuid);
+      }
+
+      return Optional.of(account);
+    } catch (final IOException e) {
+      logger.warn("Deserialization error", e);
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import java.util.UUID;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+
+/**
+ * A message addressed to a single destination device.
+ *
+ * @param destinationUuid the account identifier of the destination account
+ * @param destinationDeviceId the ID of the destination device
+ * @param message the message to deliver
+ */
+public record DeviceMessage(UUID destinationUuid, byte destinationDeviceId, Envelope message) {
+}
@@ -17,6 +17,7 @@ import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfigurati
 import org.whispersystems.textsecuregcm.entities.ECPreKey;
 import org.whispersystems.textsecuregcm.entities.ECSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 
 public class KeysManager {
@@ -34,9 +35,12 @@ public class KeysManager {
       final String pqTableName,
       final String ecSignedPreKeysTableName,
       final String pqLastResortTableName,
+      final FaultTolerantRedisCluster preKeyPoolCluster,
       final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager) {
-    this.ecPreKeys = new SingleUseECPreKeyStore(dynamoDbAsyncClient, ecTableName);
-    this.pqPreKeys = new SingleUseKEMPreKeyStore(dynamoDbAsyncClient, pqTableName);
+    this.ecPreKeys = new SingleUseECPreKeyStore(dynamoDbAsyncClient, ecTableName,
+        new SingleUsePreKeyPool(preKeyPoolCluster, dynamicConfigurationManager, "ec"));
+    this.pqPreKeys = new SingleUseKEMPreKeyStore(dynamoDbAsyncClient, pqTableName,
+        new SingleUsePreKeyPool(preKeyPoolCluster, dynamicConfigurationManager, "kem"));
     this.ecSignedPreKeys = new RepeatedUseECSignedPreKeyStore(dynamoDbAsyncClient, ecSignedPreKeysTableName);
     this.pqLastResortKeys = new RepeatedUseKEMSignedPreKeyStore(dynamoDbAsyncClient, pqLastResortTableName);
     this.dynamicConfigurationManager = dynamicConfigurationManager;
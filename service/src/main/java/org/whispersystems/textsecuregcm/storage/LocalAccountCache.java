@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+
+/**
+ * A bounded, in-process cache of serialized accounts that sits in front of the shared Redis account cache. Entries are
+ * invalidated on every server via a Redis pub/sub channel whenever an account's shared cache entry changes, and expire
+ * after a short, fixed interval regardless in case an invalidation message is lost.
+ * <p>
+ * Because {@link Account} instances are mutable and may be marked stale by updates, this cache holds accounts in their
+ * serialized form and callers must deserialize a fresh instance on every hit. Callers must not modify cached arrays.
+ */
+public class LocalAccountCache extends RedisClusterPubSubAdapter<String, String> implements Managed {
+
+  private final FaultTolerantRedisCluster cacheCluster;
+  private final FaultTolerantPubSubConnection<String, String> pubSubConnection;
+  private final Clock clock;
+
+  private final Cache<UUID, byte[]> serializedAccountsByUuid;
+
+  // Each element counts the invalidations seen for the accounts that hash to that stripe; callers snapshot the
+  // generation before reading from Redis and only populate the cache if no invalidation arrived in the meantime.
+  private final AtomicLongArray invalidationGenerations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+  private static final int INVALIDATION_STRIPES = 1024;
+
+  // Serialized accounts are typically a few kilobytes, so this bounds the cache to tens of megabytes
+  private static final int DEFAULT_MAX_SIZE = 10_000;
+  private static final Duration DEFAULT_MAX_STALENESS = Duration.ofSeconds(5);
+
+  @VisibleForTesting
+  static final String INVALIDATION_CHANNEL = "account_cache_invalidation";
+
+  private static final Counter GET_HIT_COUNTER =
+      Metrics.counter(name(LocalAccountCache.class, "get"), "hit", "true");
+  private static final Counter GET_MISS_COUNTER =
+      Metrics.counter(name(LocalAccountCache.class, "get"), "hit", "false");
+  private static final Counter DISCARDED_POPULATION_COUNTER =
+      Metrics.counter(name(LocalAccountCache.class, "discardedPopulation"));
+  private static final Counter MALFORMED_INVALIDATION_COUNTER =
+      Metrics.counter(name(LocalAccountCache.class, "malformedInvalidation"));
+  private static final Timer INVALIDATION_LAG_TIMER = Timer.builder(name(LocalAccountCache.class, "invalidationLag"))
+      .publishPercentiles(0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalAccountCache.class);
+
+  public LocalAccountCache(final FaultTolerantRedisCluster cacheCluster) {
+    this(cacheCluster, DEFAULT_MAX_SIZE, DEFAULT_MAX_STALENESS, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  LocalAccountCache(final FaultTolerantRedisCluster cacheCluster,
+      final int maxSize,
+      final Duration maxStaleness,
+      final Clock clock) {
+
+    this.cacheCluster = cacheCluster;
+    this.pubSubConnection = cacheCluster.createPubSubConnection();
+    this.clock = clock;
+
+    this.serializedAccountsByUuid = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(maxStaleness.toMillis(), TimeUnit.MILLISECONDS)
+        .build();
+
+    Metrics.gauge(name(LocalAccountCache.class, "size"), serializedAccountsByUuid, Cache::size);
+  }
+
+  @Override
+  public void start() {
+    pubSubConnection.usePubSubConnection(connection -> connection.addListener(this));
+    subscribeToInvalidations();
+    pubSubConnection.subscribeToClusterTopologyChangedEvents(this::subscribeToInvalidations);
+  }
+
+  @Override
+  public void stop() {
+    pubSubConnection.usePubSubConnection(connection -> {
+      connection.removeListener(this);
+      connection.sync().upstream().commands().unsubscribe(INVALIDATION_CHANNEL);
+    });
+
+    serializedAccountsByUuid.invalidateAll();
+  }
+
+  private void subscribeToInvalidations() {
+    final int slot = SlotHash.getSlot(INVALIDATION_CHANNEL);
+
+    pubSubConnection.usePubSubConnection(connection -> connection.sync()
+        .nodes(node -> node.is(RedisClusterNode.NodeFlag.UPSTREAM) && node.hasSlot(slot))
+        .commands()
+        .subscribe(INVALIDATION_CHANNEL));
+  }
+
+  /**
+   * Returns the serialized form of the given account if present in this cache.
+   */
+  public Optional<byte[]> get(final UUID uuid) {
+    final Optional<byte[]> maybeSerializedAccount = Optional.ofNullable(serializedAccountsByUuid.getIfPresent(uuid));
+    (maybeSerializedAccount.isPresent() ? GET_HIT_COUNTER : GET_MISS_COUNTER).increment();
+
+    return maybeSerializedAccount;
+  }
+
+  /**
+   * Returns the current invalidation generation for the given account. Callers must retrieve the generation before
+   * reading a serialized account from the shared cache and pass it to {@link #put(UUID, byte[], long)}.
+   */
+  public long getGeneration(final UUID uuid) {
+    return invalidationGenerations.get(getStripe(uuid));
+  }
+
+  /**
+   * Stores the serialized form of the given account unless the account (or another account in the same stripe) has been
+   * invalidated since {@code generation} was retrieved.
+   */
+  public void put(final UUID uuid, final byte[] serializedAccount, final long generation) {
+    // This is a best-effort check; an invalidation may arrive between this check and the write, but the write will
+    // still expire after the maximum staleness interval
+    if (invalidationGenerations.get(getStripe(uuid)) == generation) {
+      serializedAccountsByUuid.put(uuid, serializedAccount);
+    } else {
+      DISCARDED_POPULATION_COUNTER.increment();
+    }
+  }
+
+  /**
+   * Removes the given account from this cache and from the local caches of all other servers.
+   */
+  public void invalidate(final UUID uuid) {
+    invalidateLocally(uuid);
+
+    cacheCluster.withCluster(connection -> connection.async()
+            .publish(INVALIDATION_CHANNEL, uuid + ":" + clock.millis()))
+        .whenComplete((ignored, throwable) -> {
+          if (throwable != null) {
+            logger.warn("Failed to publish account cache invalidation", throwable);
+          }
+        });
+  }
+
+  private void invalidateLocally(final UUID uuid) {
+    invalidationGenerations.incrementAndGet(getStripe(uuid));
+    serializedAccountsByUuid.invalidate(uuid);
+  }
+
+  @Override
+  public void message(final RedisClusterNode node, final String channel, final String message) {
+    if (!INVALIDATION_CHANNEL.equals(channel)) {
+      return;
+    }
+
+    final int separatorIndex = message.indexOf(':');
+
+    try {
+      invalidateLocally(UUID.fromString(message.substring(0, separatorIndex)));
+
+      INVALIDATION_LAG_TIMER.record(
+          Math.max(0, clock.millis() - Long.parseLong(message.substring(separatorIndex + 1))), TimeUnit.MILLISECONDS);
+    } catch (final IllegalArgumentException | IndexOutOfBoundsException e) {
+      MALFORMED_INVALIDATION_COUNTER.increment();
+      logger.warn("Malformed account cache invalidation: {}", message);
+    }
+  }
+
+  private static int getStripe(final UUID uuid) {
+    return Math.floorMod(uuid.hashCode(), INVALIDATION_STRIPES);
+  }
+}
@@ -16,27 +16,38 @@ import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.lifecycle.Managed;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import software.amazon.awssdk.services.dynamodb.model.ItemCollectionSizeLimitExceededException;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.ExceptionUtils;
 import org.whispersystems.textsecuregcm.util.Util;
+import reactor.core.publisher.Mono;
 
 public class MessagePersister implements Managed {
 
   private final MessagesCache messagesCache;
   private final MessagesManager messagesManager;
   private final AccountsManager accountsManager;
+  private final ClientPresenceManager clientPresenceManager;
+  private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
 
   private final Duration persistDelay;
+  private final MessagePersisterSlotScheduler slotScheduler;
 
   private final boolean dedicatedProcess;
   private final Thread[] workerThreads;
@@ -50,6 +61,10 @@ public class MessagePersister implements Managed {
   private final Counter oversizedQueueCounter = counter(name(MessagePersister.class, "persistQueueOversized"));
   private final Histogram queueCountHistogram = metricRegistry.histogram(name(MessagePersister.class, "queueCount"));
   private final Histogram queueSizeHistogram = metricRegistry.histogram(name(MessagePersister.class, "queueSize"));
+  private final AtomicInteger queuesInFlight =
+      Metrics.gauge(name(MessagePersister.class, "queuesInFlight"), new AtomicInteger(0));
+  private final io.micrometer.core.instrument.Timer slotDrainLagTimer =
+      Metrics.timer(name(MessagePersister.class, "slotDrainLag"));
 
   static final int QUEUE_BATCH_LIMIT = 100;
   static final int MESSAGE_BATCH_LIMIT = 100;
@@ -62,27 +77,31 @@ public class MessagePersister implements Managed {
 
   public MessagePersister(final MessagesCache messagesCache, final MessagesManager messagesManager,
       final AccountsManager accountsManager,
+      final ClientPresenceManager clientPresenceManager,
       final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager,
       final Duration persistDelay,
       final int dedicatedProcessWorkerThreadCount) {
     this.messagesCache = messagesCache;
     this.messagesManager = messagesManager;
     this.accountsManager = accountsManager;
+    this.clientPresenceManager = clientPresenceManager;
+    this.dynamicConfigurationManager = dynamicConfigurationManager;
     this.persistDelay = persistDelay;
     this.workerThreads = new Thread[dedicatedProcessWorkerThreadCount];
     this.dedicatedProcess = true;
 
+    this.slotScheduler = new MessagePersisterSlotScheduler(messagesCache, persistDelay, Clock.systemUTC());
+
     for (int i = 0; i < workerThreads.length; i++) {
       workerThreads[i] = new Thread(() -> {
         while (running) {
           if (dynamicConfigurationManager.getConfiguration().getMessagePersisterConfiguration()
               .isPersistenceEnabled()) {
             try {
-              final int queuesPersisted = persistNextQueues(Instant.now());
-              queueCountHistogram.update(queuesPersisted);
+              final OptionalInt maybeSlot = slotScheduler.claimNextSlot();
 
-              if (queuesPersisted == 0) {
-                Util.sleep(100);
+              if (maybeSlot.isEmpty() || persistSlot(maybeSlot.getAsInt()) == 0) {
+                Util.sleep(slotScheduler.getPollInterval().toMillis());
               }
             } catch (final Throwable t) {
               logger.warn("Failed to persist queues", t);
@@ -123,83 +142,139 @@ public class MessagePersister implements Managed {
     }
   }
 
+  /**
+   * Persists all due queues in a slot claimed from the slot scheduler, then releases the slot. If any queue in the
+   * slot could not be persisted, the slot (and only the slot) is backed off.
+   *
+   * @return the number of queues persisted
+   */
+  private int persistSlot(final int slot) {
+    boolean failed = true;
+
+    try {
+      final SlotPersistenceResult result = persistQueues(slot, Instant.now());
+      queueCountHistogram.update(result.queuesPersisted());
+      failed = result.queuesFailed() > 0;
+
+      return result.queuesPersisted();
+    } catch (final Exception e) {
+      logger.warn("Failed to persist queues in slot {}", slot, e);
+      return 0;
+    } finally {
+      slotScheduler.releaseSlot(slot, failed);
+    }
+  }
+
+  @VisibleForTesting
+  record SlotPersistenceResult(int queuesPersisted, int queuesFailed) {
+  }
+
   @VisibleForTesting
-  int persistNextQueues(final Instant currentTime) {
-    final int slot = messagesCache.getNextSlotToPersist();
+  SlotPersistenceResult persistQueues(final int slot, final Instant currentTime) {
+    final Instant maxTime = currentTime.minus(persistDelay);
+    final int concurrency = dynamicConfigurationManager.getConfiguration().getMessagePersisterConfiguration()
+        .getPersistQueueConcurrency();
+
+    final AtomicInteger queuesPersisted = new AtomicInteger();
+    final AtomicInteger queuesFailed = new AtomicInteger();
+
+    // Pages of queues are only fetched as in-flight queues complete, and each queue's Redis reads and DynamoDB writes
+    // are non-blocking, so reads for some queues naturally overlap writes for others
+    final Optional<Long> oldestPersistedMessageTimestamp = getQueuesToPersist(slot, maxTime)
+        .expand(queues -> queues.size() >= QUEUE_BATCH_LIMIT ? getQueuesToPersist(slot, maxTime) : Mono.empty())
+        .flatMapIterable(Function.identity())
+        .doOnNext(ignored -> queuesPersisted.incrementAndGet())
+        .flatMap(queue -> persistQueueOrReschedule(queue, queuesFailed), concurrency)
+        .reduce(Math::min)
+        .blockOptional();
+
+    oldestPersistedMessageTimestamp.ifPresent(timestamp ->
+        slotDrainLagTimer.record(Duration.between(Instant.ofEpochMilli(timestamp), Instant.now())));
+
+    return new SlotPersistenceResult(queuesPersisted.get(), queuesFailed.get());
+  }
 
-    List<String> queuesToPersist;
-    int queuesPersisted = 0;
+  private Mono<List<byte[]>> getQueuesToPersist(final int slot, final Instant maxTime) {
+    return Mono.defer(() -> {
+      final Timer.Context timerContext = getQueuesTimer.time();
 
-    do {
-      try (final Timer.Context ignored = getQueuesTimer.time()) {
-        queuesToPersist = messagesCache.getQueuesToPersist(slot, currentTime.minus(persistDelay), QUEUE_BATCH_LIMIT);
-      }
+      return messagesCache.getQueuesToPersist(slot, maxTime, QUEUE_BATCH_LIMIT)
+          .doFinally(ignored -> timerContext.stop());
+    });
+  }
 
-      for (final String queue : queuesToPersist) {
-        final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queue);
-        final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queue);
+  private Mono<Long> persistQueueOrReschedule(final byte[] queue, final AtomicInteger queuesFailed) {
+    final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queue);
+    final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queue);
 
-        try {
-          persistQueue(accountUuid, deviceId);
-        } catch (final Exception e) {
-          if (e instanceof ItemCollectionSizeLimitExceededException) {
+    return persistQueue(accountUuid, deviceId)
+        .doOnSubscribe(ignored -> queuesInFlight.incrementAndGet())
+        .doFinally(ignored -> queuesInFlight.decrementAndGet())
+        .onErrorResume(e -> {
+          if (ExceptionUtils.unwrap(e) instanceof ItemCollectionSizeLimitExceededException) {
             oversizedQueueCounter.increment();
           }
           persistQueueExceptionMeter.mark();
+          queuesFailed.incrementAndGet();
           logger.warn("Failed to persist queue {}::{}; will schedule for retry", accountUuid, deviceId, e);
 
-          messagesCache.addQueueToPersist(accountUuid, deviceId);
-
-          Util.sleep(EXCEPTION_PAUSE_MILLIS);
-        }
-      }
-
-      queuesPersisted += queuesToPersist.size();
-    } while (queuesToPersist.size() >= QUEUE_BATCH_LIMIT);
-
-    return queuesPersisted;
+          return messagesCache.addQueueToPersist(accountUuid, deviceId).then(Mono.empty());
+        });
   }
 
+  /**
+   * Moves all messages in the given queue from the message cache to DynamoDB.
+   *
+   * @return the server timestamp of the oldest message persisted, or an empty {@code Mono} if no messages were
+   * persisted
+   */
   @VisibleForTesting
-  void persistQueue(final UUID accountUuid, final byte deviceId) throws MessagePersistenceException {
-    final Optional<Account> maybeAccount = accountsManager.getByAccountIdentifier(accountUuid);
-
-    if (maybeAccount.isEmpty()) {
-      logger.error("No account record found for account {}", accountUuid);
-      return;
-    }
-
-    try (final Timer.Context ignored = persistQueueTimer.time()) {
-      messagesCache.lockQueueForPersistence(accountUuid, deviceId);
-
-      try {
-        int messageCount = 0;
-        List<MessageProtos.Envelope> messages;
-
-        int consecutiveEmptyCacheRemovals = 0;
+  Mono<Long> persistQueue(final UUID accountUuid, final byte deviceId) {
+    return Mono.fromFuture(() -> accountsManager.getByAccountIdentifierAsync(accountUuid))
+        .flatMap(maybeAccount -> {
+          if (maybeAccount.isEmpty()) {
+            logger.error("No account record found for account {}", accountUuid);
+            return Mono.empty();
+          }
 
-        do {
-          messages = messagesCache.getMessagesToPersist(accountUuid, deviceId, MESSAGE_BATCH_LIMIT);
+          return Mono.defer(() -> {
+            final Timer.Context timerContext = persistQueueTimer.time();
+
+            return Mono.usingWhen(messagesCache.lockQueueForPersistence(accountUuid, deviceId).thenReturn(true),
+                    ignored -> persistQueuePages(accountUuid, deviceId, 0, Long.MAX_VALUE, 0),
+                    ignored -> messagesCache.unlockQueueForPersistence(accountUuid, deviceId))
+                .doOnTerminate(() -> clientPresenceManager.notifyMessagesPersisted(accountUuid, deviceId))
+                .doFinally(ignored -> timerContext.stop());
+          });
+        })
+        .filter(oldestMessageTimestamp -> oldestMessageTimestamp != Long.MAX_VALUE);
+  }
 
-          int messagesRemovedFromCache = messagesManager.persistMessages(accountUuid, deviceId, messages);
-          messageCount += messages.size();
+  private Mono<Long> persistQueuePages(final UUID accountUuid, final byte deviceId, final int messageCount,
+      final long oldestMessageTimestamp, final int consecutiveEmptyCacheRemovals) {
 
-          if (messagesRemovedFromCache == 0) {
-            consecutiveEmptyCacheRemovals += 1;
-          } else {
-            consecutiveEmptyCacheRemovals = 0;
+    return messagesCache.getMessagesToPersist(accountUuid, deviceId, MESSAGE_BATCH_LIMIT)
+        .flatMap(messages -> {
+          if (messages.isEmpty()) {
+            queueSizeHistogram.update(messageCount);
+            return Mono.just(oldestMessageTimestamp);
           }
 
-          if (consecutiveEmptyCacheRemovals > CONSECUTIVE_EMPTY_CACHE_REMOVAL_LIMIT) {
-            throw new MessagePersistenceException("persistence failure loop detected");
-          }
+          return Mono.fromFuture(() -> messagesManager.persistMessages(accountUuid, deviceId, messages))
+              .flatMap(messagesRemovedFromCache -> {
+                final int updatedConsecutiveEmptyCacheRemovals =
+                    messagesRemovedFromCache == 0 ? consecutiveEmptyCacheRemovals + 1 : 0;
 
-        } while (!messages.isEmpty());
+                if (updatedConsecutiveEmptyCacheRemovals > CONSECUTIVE_EMPTY_CACHE_REMOVAL_LIMIT) {
+                  return Mono.error(new MessagePersistenceException("persistence failure loop detected"));
+                }
 
-        queueSizeHistogram.update(messageCount);
-      } finally {
-        messagesCache.unlockQueueForPersistence(accountUuid, deviceId);
-      }
-    }
+                final long updatedOldestMessageTimestamp = Math.min(oldestMessageTimestamp,
+                    messages.stream().mapToLong(MessageProtos.Envelope::getServerTimestamp).min().orElseThrow());
+
+                return persistQueuePages(accountUuid, deviceId, messageCount + messages.size(),
+                    updatedOldestMessageTimestamp, updatedConsecutiveEmptyCacheRemovals);
+              });
+        });
   }
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.lettuce.core.cluster.SlotHash;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.OptionalInt;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Chooses the cluster slot a message persister worker should drain next. The scheduler samples the size and oldest
+ * score of every slot's persistence index and hands out one of the most-behind slots, chosen at random so that
+ * schedulers on different nodes (which all see the same backlog) spread out across the most-behind slots instead of
+ * converging on the same one. Slots that fail are backed off individually so that workers can keep making progress
+ * elsewhere.
+ * <p>
+ * After an initial sample of every slot, each periodic refresh re-samples only one segment of the slot space, so a
+ * complete sweep is spread over several refresh intervals; slots are also re-sampled whenever a worker releases them.
+ * Until the first backlog sample completes (or if sampling fails), the scheduler falls back to visiting slots
+ * round-robin.
+ */
+class MessagePersisterSlotScheduler {
+
+  private final MessagesCache messagesCache;
+  private final Duration persistDelay;
+  private final Clock clock;
+  private final int claimCandidates;
+
+  // All of these are guarded by `this`
+  private final long[] queueCounts = new long[SlotHash.SLOT_COUNT];
+  private final long[] oldestQueueTimestamps = new long[SlotHash.SLOT_COUNT];
+  private final long[] backoffUntilTimestamps = new long[SlotHash.SLOT_COUNT];
+  private final int[] consecutiveFailures = new int[SlotHash.SLOT_COUNT];
+  private final BitSet claimedSlots = new BitSet(SlotHash.SLOT_COUNT);
+  private boolean backlogKnown = false;
+
+  private final AtomicBoolean refreshInProgress = new AtomicBoolean(false);
+  private volatile long lastRefreshTimestamp = 0;
+
+  // Only accessed by the thread that holds `refreshInProgress`
+  private int nextRefreshSegment = 0;
+
+  @VisibleForTesting
+  static final Duration REFRESH_INTERVAL = Duration.ofSeconds(10);
+
+  @VisibleForTesting
+  static final Duration MIN_POLL_INTERVAL = Duration.ofMillis(100);
+
+  @VisibleForTesting
+  static final Duration MAX_POLL_INTERVAL = Duration.ofSeconds(5);
+
+  @VisibleForTesting
+  static final Duration MIN_BACKOFF = Duration.ofSeconds(3);
+
+  @VisibleForTesting
+  static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+  @VisibleForTesting
+  static final int REFRESH_SEGMENTS = 8;
+
+  private static final int REFRESH_CONCURRENCY = 32;
+
+  private static final int DEFAULT_CLAIM_CANDIDATES = 16;
+
+  private static final Logger logger = LoggerFactory.getLogger(MessagePersisterSlotScheduler.class);
+
+  MessagePersisterSlotScheduler(final MessagesCache messagesCache, final Duration persistDelay, final Clock clock) {
+    this(messagesCache, persistDelay, clock, DEFAULT_CLAIM_CANDIDATES);
+  }
+
+  @VisibleForTesting
+  MessagePersisterSlotScheduler(final MessagesCache messagesCache,
+      final Duration persistDelay,
+      final Clock clock,
+      final int claimCandidates) {
+
+    this.messagesCache = messagesCache;
+    this.persistDelay = persistDelay;
+    this.clock = clock;
+    this.claimCandidates = claimCandidates;
+
+    Arrays.fill(oldestQueueTimestamps, Long.MAX_VALUE);
+
+    // Tagging gauges by slot would produce 16,384 time series, so we report aggregates across all slots instead
+    Metrics.gauge(name(MessagePersisterSlotScheduler.class, "queueBacklog"), this,
+        MessagePersisterSlotScheduler::getTotalQueueBacklog);
+    Metrics.gauge(name(MessagePersisterSlotScheduler.class, "slotsWithDueQueues"), this,
+        MessagePersisterSlotScheduler::getSlotsWithDueQueues);
+    Metrics.gauge(name(MessagePersisterSlotScheduler.class, "oldestDueQueueAgeSeconds"), this,
+        MessagePersisterSlotScheduler::getOldestDueQueueAgeSeconds);
+    Metrics.gauge(name(MessagePersisterSlotScheduler.class, "slotsBackingOff"), this,
+        MessagePersisterSlotScheduler::getSlotsBackingOff);
+  }
+
+  /**
+   * Claims a slot that has queues due for persistence and isn't already claimed or backing off, chosen at random from
+   * among the most-behind such slots. Callers must release claimed slots via {@link #releaseSlot(int, boolean)}.
+   *
+   * @return the claimed slot, or empty if no slot currently has queues due for persistence
+   */
+  OptionalInt claimNextSlot() {
+    refreshBacklogIfStale();
+
+    synchronized (this) {
+      if (backlogKnown) {
+        final long now = clock.millis();
+        final long maxDueTimestamp = now - persistDelay.toMillis();
+
+        // The most-behind eligible slots, ordered from most to least behind
+        final int[] candidates = new int[claimCandidates];
+        int candidateCount = 0;
+
+        for (int slot = 0; slot < SlotHash.SLOT_COUNT; slot++) {
+          if (oldestQueueTimestamps[slot] <= maxDueTimestamp
+              && backoffUntilTimestamps[slot] <= now
+              && !claimedSlots.get(slot)
+              && (candidateCount < claimCandidates
+              || oldestQueueTimestamps[slot] < oldestQueueTimestamps[candidates[candidateCount - 1]])) {
+
+            int i = Math.min(candidateCount, claimCandidates - 1);
+
+            while (i > 0 && oldestQueueTimestamps[candidates[i - 1]] > oldestQueueTimestamps[slot]) {
+              candidates[i] = candidates[i - 1];
+              i -= 1;
+            }
+
+            candidates[i] = slot;
+            candidateCount = Math.min(candidateCount + 1, claimCandidates);
+          }
+        }
+
+        if (candidateCount == 0) {
+          return OptionalInt.empty();
+        }
+
+        final int claimedSlot = candidates[ThreadLocalRandom.current().nextInt(candidateCount)];
+
+        claimedSlots.set(claimedSlot);
+        return OptionalInt.of(claimedSlot);
+      }
+    }
+
+    return OptionalInt.of(messagesCache.getNextSlotToPersist());
+  }
+
+  /**
+   * Releases a slot previously claimed via {@link #claimNextSlot()}, re-sampling its backlog and, if persisting the
+   * slot failed, backing off the slot exponentially.
+   *
+   * @param slot the slot to release
+   * @param failed {@code true} if any queue in the slot could not be persisted
+   */
+  void releaseSlot(final int slot, final boolean failed) {
+    try {
+      messagesCache.getQueueIndexBacklog(slot).blockOptional().ifPresent(this::updateBacklog);
+    } catch (final Exception e) {
+      logger.debug("Failed to update backlog for slot {}", slot, e);
+    }
+
+    synchronized (this) {
+      claimedSlots.clear(slot);
+
+      if (failed) {
+        consecutiveFailures[slot] += 1;
+        backoffUntilTimestamps[slot] = clock.millis() + getBackoff(consecutiveFailures[slot]).toMillis();
+      } else {
+        consecutiveFailures[slot] = 0;
+        backoffUntilTimestamps[slot] = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the time a worker should wait before trying to claim another slot after failing to claim one. Workers
+   * wait until the next queue is expected to become due (or the next failing slot leaves backoff), bounded by
+   * {@link #MIN_POLL_INTERVAL} and {@link #MAX_POLL_INTERVAL}.
+   */
+  Duration getPollInterval() {
+    final long now = clock.millis();
+
+    synchronized (this) {
+      if (!backlogKnown) {
+        return MIN_POLL_INTERVAL;
+      }
+
+      long nextDueTimestamp = Long.MAX_VALUE;
+
+      for (int slot = 0; slot < SlotHash.SLOT_COUNT; slot++) {
+        if (queueCounts[slot] > 0 && !claimedSlots.get(slot)) {
+          nextDueTimestamp = Math.min(nextDueTimestamp,
+              Math.max(oldestQueueTimestamps[slot] + persistDelay.toMillis(), backoffUntilTimestamps[slot]));
+        }
+      }
+
+      if (nextDueTimestamp == Long.MAX_VALUE) {
+        return MAX_POLL_INTERVAL;
+      }
+
+      return Duration.ofMillis(
+          Math.max(MIN_POLL_INTERVAL.toMillis(), Math.min(MAX_POLL_INTERVAL.toMillis(), nextDueTimestamp - now)));
+    }
+  }
+
+  @VisibleForTesting
+  static Duration getBackoff(final int consecutiveFailures) {
+    final long backoffMillis = MIN_BACKOFF.toMillis() << Math.min(consecutiveFailures - 1, 16);
+    return Duration.ofMillis(Math.min(backoffMillis, MAX_BACKOFF.toMillis()));
+  }
+
+  private void refreshBacklogIfStale() {
+    if (clock.millis() - lastRefreshTimestamp >= REFRESH_INTERVAL.toMillis()
+        && refreshInProgress.compareAndSet(false, true)) {
+
+      try {
+        final boolean refreshAllSlots;
+
+        synchronized (this) {
+          refreshAllSlots = !backlogKnown;
+        }
+
+        if (refreshAllSlots) {
+          refreshBacklog();
+        } else {
+          final int slotsPerSegment = SlotHash.SLOT_COUNT / REFRESH_SEGMENTS;
+
+          refreshBacklog(nextRefreshSegment * slotsPerSegment, slotsPerSegment);
+          nextRefreshSegment = (nextRefreshSegment + 1) % REFRESH_SEGMENTS;
+        }
+      } finally {
+        lastRefreshTimestamp = clock.millis();
+        refreshInProgress.set(false);
+      }
+    }
+  }
+
+  /**
+   * Re-samples the backlog of every slot.
+   */
+  @VisibleForTesting
+  void refreshBacklog() {
+    refreshBacklog(0, SlotHash.SLOT_COUNT);
+  }
+
+  private void refreshBacklog(final int firstSlot, final int slotCount) {
+    try {
+      Flux.range(firstSlot, slotCount)
+          .flatMap(messagesCache::getQueueIndexBacklog, REFRESH_CONCURRENCY)
+          .doOnNext(this::updateBacklog)
+          .then()
+          .block();
+
+      synchronized (this) {
+        backlogKnown = true;
+      }
+    } catch (final Exception e) {
+      logger.warn("Failed to refresh message persistence backlog", e);
+    }
+  }
+
+  private synchronized void updateBacklog(final MessagesCache.QueueIndexBacklog backlog) {
+    queueCounts[backlog.slot()] = backlog.queueCount();
+    oldestQueueTimestamps[backlog.slot()] = backlog.oldestQueueTimestamp()
+        .map(Instant::toEpochMilli)
+        .orElse(Long.MAX_VALUE);
+  }
+
+  private synchronized double getTotalQueueBacklog() {
+    return Arrays.stream(queueCounts).sum();
+  }
+
+  private synchronized double getSlotsWithDueQueues() {
+    final long maxDueTimestamp = clock.millis() - persistDelay.toMillis();
+    return Arrays.stream(oldestQueueTimestamps).filter(timestamp -> timestamp <= maxDueTimestamp).count();
+  }
+
+  private synchronized double getOldestDueQueueAgeSeconds() {
+    final long oldestQueueTimestamp = Arrays.stream(oldestQueueTimestamps).min().orElse(Long.MAX_VALUE);
+
+    if (oldestQueueTimestamp == Long.MAX_VALUE) {
+      return 0;
+    }
+
+    return Math.max(0, clock.millis() - persistDelay.toMillis() - oldestQueueTimestamp) / 1000.0;
+  }
+
+  private synchronized double getSlotsBackingOff() {
+    final long now = clock.millis();
+    return Arrays.stream(backoffUntilTimestamps).filter(timestamp -> timestamp > now).count();
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import io.lettuce.core.cluster.SlotHash;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import org.whispersystems.textsecuregcm.util.RedisClusterUtil;
+
+/**
+ * The binary Redis keys for a single device's message queue. The queue name is encoded once, directly into a byte
+ * array, and each key is built from it only when requested, so callers that issue several commands against a queue
+ * don't re-render the account identifier as a string for each key, and callers that need only one key don't pay for the
+ * others. The queue's slot is likewise only computed if requested.
+ * <p>
+ * Queue keys have the form {@code user_queue::{<account UUID>::<device ID>}}; the queue "name" is the hash-tagged
+ * portion in braces. Queue index key arrays returned by this class are shared, and callers must not modify them.
+ */
+final class MessageQueueKeys {
+
+  private final byte[] queueName;
+
+  // Lazily computed; as with String#hashCode, racing threads will at worst compute the same value more than once
+  private int slot = -1;
+
+  private static final byte[] QUEUE_KEY_PREFIX = "user_queue::{".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] QUEUE_METADATA_KEY_PREFIX = "user_queue_metadata::{".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PERSIST_IN_PROGRESS_KEY_PREFIX = "user_queue_persisting::{".getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[][] QUEUE_INDEX_KEYS_BY_SLOT = new byte[SlotHash.SLOT_COUNT][];
+
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+  // "xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx"
+  private static final int UUID_LENGTH = 36;
+
+  static {
+    for (int slot = 0; slot < SlotHash.SLOT_COUNT; slot++) {
+      QUEUE_INDEX_KEYS_BY_SLOT[slot] = ("user_queue_index::{" + RedisClusterUtil.getMinimalHashTag(slot) + "}")
+          .getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  private MessageQueueKeys(final UUID accountUuid, final byte deviceId) {
+    this.queueName = encodeQueueName(accountUuid, deviceId);
+  }
+
+  static MessageQueueKeys forDevice(final UUID accountUuid, final byte deviceId) {
+    return new MessageQueueKeys(accountUuid, deviceId);
+  }
+
+  int slot() {
+    if (slot < 0) {
+      slot = SlotHash.getSlot(queueName);
+    }
+
+    return slot;
+  }
+
+  byte[] queueKey() {
+    return wrap(QUEUE_KEY_PREFIX, queueName);
+  }
+
+  byte[] queueMetadataKey() {
+    return wrap(QUEUE_METADATA_KEY_PREFIX, queueName);
+  }
+
+  byte[] queueIndexKey() {
+    return getQueueIndexKey(slot());
+  }
+
+  byte[] persistInProgressKey() {
+    return wrap(PERSIST_IN_PROGRESS_KEY_PREFIX, queueName);
+  }
+
+  /**
+   * Returns the key of the sorted set that tracks queues awaiting persistence in the given slot.
+   */
+  static byte[] getQueueIndexKey(final int slot) {
+    return QUEUE_INDEX_KEYS_BY_SLOT[slot];
+  }
+
+  /**
+   * Decodes the account identifier from a queue key (or any key or channel containing a hash-tagged queue name)
+   * without intermediate strings.
+   *
+   * @throws IllegalArgumentException if the given bytes do not contain a well-formed queue name
+   */
+  static UUID getAccountUuid(final byte[] queueKey) {
+    final int start = indexOf(queueKey, (byte) '{', 0) + 1;
+
+    if (start == 0 || start + UUID_LENGTH > queueKey.length) {
+      throw new IllegalArgumentException("Not a queue key");
+    }
+
+    long mostSignificantBits = 0;
+    long leastSignificantBits = 0;
+    int digits = 0;
+
+    for (int i = start; i < start + UUID_LENGTH; i++) {
+      if (i - start == 8 || i - start == 13 || i - start == 18 || i - start == 23) {
+        if (queueKey[i] != '-') {
+          throw new IllegalArgumentException("Not a queue key");
+        }
+
+        continue;
+      }
+
+      final long nibble = hexValue(queueKey[i]);
+
+      if (digits++ < 16) {
+        mostSignificantBits = (mostSignificantBits << 4) | nibble;
+      } else {
+        leastSignificantBits = (leastSignificantBits << 4) | nibble;
+      }
+    }
+
+    return new UUID(mostSignificantBits, leastSignificantBits);
+  }
+
+  /**
+   * Decodes the device ID from a queue key (or any key or channel containing a hash-tagged queue name) without
+   * intermediate strings.
+   *
+   * @throws IllegalArgumentException if the given bytes do not contain a well-formed queue name
+   */
+  static byte getDeviceId(final byte[] queueKey) {
+    final int startOfHashTag = indexOf(queueKey, (byte) '{', 0);
+    final int start = startOfHashTag + 1 + UUID_LENGTH + 2;
+    final int end = startOfHashTag >= 0 && start < queueKey.length ? indexOf(queueKey, (byte) '}', start) : -1;
+
+    if (end <= start || queueKey[start - 2] != ':' || queueKey[start - 1] != ':') {
+      throw new IllegalArgumentException("Not a queue key");
+    }
+
+    final boolean negative = queueKey[start] == '-';
+    int deviceId = 0;
+
+    for (int i = negative ? start + 1 : start; i < end; i++) {
+      if (queueKey[i] < '0' || queueKey[i] > '9') {
+        throw new IllegalArgumentException("Not a queue key");
+      }
+
+      deviceId = deviceId * 10 + (queueKey[i] - '0');
+
+      if (deviceId > (negative ? -Byte.MIN_VALUE : Byte.MAX_VALUE)) {
+        throw new IllegalArgumentException("Device ID out of range");
+      }
+    }
+
+    return (byte) (negative ? -deviceId : deviceId);
+  }
+
+  private static byte[] encodeQueueName(final UUID accountUuid, final byte deviceId) {
+    final byte[] encodedDeviceId = Byte.toString(deviceId).getBytes(StandardCharsets.UTF_8);
+    final byte[] encoded = new byte[UUID_LENGTH + 2 + encodedDeviceId.length];
+
+    writeHex(encoded, 0, accountUuid.getMostSignificantBits() >>> 32, 8);
+    encoded[8] = '-';
+    writeHex(encoded, 9, accountUuid.getMostSignificantBits() >>> 16, 4);
+    encoded[13] = '-';
+    writeHex(encoded, 14, accountUuid.getMostSignificantBits(), 4);
+    encoded[18] = '-';
+    writeHex(encoded, 19, accountUuid.getLeastSignificantBits() >>> 48, 4);
+    encoded[23] = '-';
+    writeHex(encoded, 24, accountUuid.getLeastSignificantBits(), 12);
+
+    encoded[UUID_LENGTH] = ':';
+    encoded[UUID_LENGTH + 1] = ':';
+    System.arraycopy(encodedDeviceId, 0, encoded, UUID_LENGTH + 2, encodedDeviceId.length);
+
+    return encoded;
+  }
+
+  private static void writeHex(final byte[] destination, final int offset, long value, final int digits) {
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      destination[i] = HEX_DIGITS[(int) (value & 0xf)];
+      value >>>= 4;
+    }
+  }
+
+  private static long hexValue(final byte b) {
+    if (b >= '0' && b <= '9') {
+      return b - '0';
+    } else if (b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    } else if (b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    }
+
+    throw new IllegalArgumentException("Not a queue key");
+  }
+
+  private static byte[] wrap(final byte[] prefix, final byte[] queueName) {
+    final byte[] key = new byte[prefix.length + queueName.length + 1];
+
+    System.arraycopy(prefix, 0, key, 0, prefix.length);
+    System.arraycopy(queueName, 0, key, prefix.length, queueName.length);
+    key[key.length - 1] = '}';
+
+    return key;
+  }
+
+  private static int indexOf(final byte[] bytes, final byte b, final int fromIndex) {
+    for (int i = fromIndex; i < bytes.length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+}
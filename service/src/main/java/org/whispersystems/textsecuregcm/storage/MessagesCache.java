@@ -10,13 +10,13 @@ import static com.codahale.metrics.MetricRegistry.name;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.dropwizard.lifecycle.Managed;
-import io.lettuce.core.ScoredValue;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.ZAddArgs;
 import io.lettuce.core.cluster.SlotHash;
 import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
@@ -28,14 +28,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -44,11 +45,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.metrics.MetricsUtil;
+import org.whispersystems.textsecuregcm.push.ClientEventListener;
+import org.whispersystems.textsecuregcm.push.ClientEventNotificationMode;
 import org.whispersystems.textsecuregcm.redis.ClusterLuaScript;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantPubSubConnection;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.util.Pair;
-import org.whispersystems.textsecuregcm.util.RedisClusterUtil;
 import org.whispersystems.textsecuregcm.util.Util;
 import reactor.core.observability.micrometer.Micrometer;
 import reactor.core.publisher.Flux;
@@ -56,13 +59,14 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
-public class MessagesCache extends RedisClusterPubSubAdapter<String, String> implements Managed {
+public class MessagesCache extends RedisClusterPubSubAdapter<String, String> implements Managed, ClientEventListener {
 
   private final FaultTolerantRedisCluster readDeleteCluster;
   private final FaultTolerantPubSubConnection<String, String> pubSubConnection;
   private final Clock clock;
 
-  private final ExecutorService notificationExecutorService;
+  private final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
+  private final ClientEventNotificationMode clientEventNotificationMode;
   private final Scheduler messageDeliveryScheduler;
   private final ExecutorService messageDeletionExecutorService;
   // messageDeletionExecutorService wrapped into a reactor Scheduler
@@ -74,10 +78,16 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private final ClusterLuaScript removeQueueScript;
   private final ClusterLuaScript getQueuesToPersistScript;
 
-  private final Map<String, MessageAvailabilityListener> messageListenersByQueueName = new HashMap<>();
-  private final Map<MessageAvailabilityListener, String> queueNamesByMessageListener = new IdentityHashMap<>();
+  private final Map<String, MessageAvailabilityListener> messageListenersByQueueName = new ConcurrentHashMap<>();
+  private final Map<MessageAvailabilityListener, String> queueNamesByMessageListener = new ConcurrentHashMap<>();
 
   private final Timer insertTimer = Metrics.timer(name(MessagesCache.class, "insert"));
+  private final Timer insertBatchTimer = Metrics.timer(name(MessagesCache.class, "insertBatch"));
+  private final DistributionSummary insertBatchSlotCount = DistributionSummary.builder(
+          name(MessagesCache.class, "insertBatchSlotCount"))
+      .publishPercentiles(0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(5))
+      .register(Metrics.globalRegistry);
   private final Timer getMessagesTimer = Metrics.timer(name(MessagesCache.class, "get"));
   private final Timer getQueuesToPersistTimer = Metrics.timer(name(MessagesCache.class, "getQueuesToPersist"));
   private final Timer clearQueueTimer = Metrics.timer(name(MessagesCache.class, "clear"));
@@ -108,14 +118,24 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   private static final Logger logger = LoggerFactory.getLogger(MessagesCache.class);
 
   public MessagesCache(final FaultTolerantRedisCluster insertCluster, final FaultTolerantRedisCluster readDeleteCluster,
-      final ExecutorService notificationExecutorService, final Scheduler messageDeliveryScheduler,
+      final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher, final Scheduler messageDeliveryScheduler,
       final ExecutorService messageDeletionExecutorService, final Clock clock) throws IOException {
 
+    this(insertCluster, readDeleteCluster, keyspaceNotificationDispatcher, messageDeliveryScheduler,
+        messageDeletionExecutorService, clock, ClientEventNotificationMode.KEYSPACE);
+  }
+
+  public MessagesCache(final FaultTolerantRedisCluster insertCluster, final FaultTolerantRedisCluster readDeleteCluster,
+      final KeyspaceNotificationDispatcher keyspaceNotificationDispatcher, final Scheduler messageDeliveryScheduler,
+      final ExecutorService messageDeletionExecutorService, final Clock clock,
+      final ClientEventNotificationMode clientEventNotificationMode) throws IOException {
+
     this.readDeleteCluster = readDeleteCluster;
     this.pubSubConnection = readDeleteCluster.createPubSubConnection();
     this.clock = clock;
 
-    this.notificationExecutorService = notificationExecutorService;
+    this.keyspaceNotificationDispatcher = keyspaceNotificationDispatcher;
+    this.clientEventNotificationMode = clientEventNotificationMode;
     this.messageDeliveryScheduler = messageDeliveryScheduler;
     this.messageDeletionExecutorService = messageDeletionExecutorService;
     this.messageDeletionScheduler = Schedulers.fromExecutorService(messageDeletionExecutorService, "messageDeletion");
@@ -142,12 +162,12 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   }
 
   private void resubscribeAll() {
+    if (!clientEventNotificationMode.subscribeToKeyspaceNotifications()) {
+      return;
+    }
 
-    final Set<String> queueNames;
 
-    synchronized (messageListenersByQueueName) {
-      queueNames = new HashSet<>(messageListenersByQueueName.keySet());
-    }
+    final Set<String> queueNames = new HashSet<>(messageListenersByQueueName.keySet());
 
     for (final String queueName : queueNames) {
       // avoid overwhelming a newly recovered node by processing synchronously, rather than using CompletableFuture.allOf()
@@ -158,15 +178,48 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   public long insert(final UUID guid, final UUID destinationUuid, final byte destinationDevice,
       final MessageProtos.Envelope message) {
     final MessageProtos.Envelope messageWithGuid = message.toBuilder().setServerGuid(guid.toString()).build();
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(destinationUuid, destinationDevice);
+
     return (long) insertTimer.record(() ->
-        insertScript.executeBinary(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                getQueueIndexKey(destinationUuid, destinationDevice)),
+        insertScript.executeBinary(List.of(keys.queueKey(), keys.queueMetadataKey(), keys.queueIndexKey()),
             List.of(messageWithGuid.toByteArray(),
                 String.valueOf(message.getServerTimestamp()).getBytes(StandardCharsets.UTF_8),
                 guid.toString().getBytes(StandardCharsets.UTF_8))));
   }
 
+  /**
+   * Inserts messages for many destination devices at once. Each message must already have a server GUID.
+   * <p>
+   * Insertions are grouped by cluster slot and all insertions are pipelined, so the time to insert a batch of messages
+   * depends on the number of distinct slots (and nodes) involved rather than the number of destination devices.
+   *
+   * @param messages the messages to insert
+   *
+   * @return a future that completes when all messages have been inserted
+   */
+  public CompletableFuture<Void> insert(final List<DeviceMessage> messages) {
+    final Timer.Sample sample = Timer.start();
+    final Map<Integer, List<Pair<List<byte[]>, List<byte[]>>>> insertionsBySlot = new HashMap<>();
+
+    for (final DeviceMessage deviceMessage : messages) {
+      final MessageQueueKeys keys =
+          MessageQueueKeys.forDevice(deviceMessage.destinationUuid(), deviceMessage.destinationDeviceId());
+
+      insertionsBySlot.computeIfAbsent(keys.slot(), ignored -> new ArrayList<>())
+          .add(new Pair<>(List.of(keys.queueKey(), keys.queueMetadataKey(), keys.queueIndexKey()),
+              List.of(deviceMessage.message().toByteArray(),
+                  String.valueOf(deviceMessage.message().getServerTimestamp()).getBytes(StandardCharsets.UTF_8),
+                  deviceMessage.message().getServerGuid().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    insertBatchSlotCount.record(insertionsBySlot.size());
+
+    return CompletableFuture.allOf(insertionsBySlot.values().stream()
+            .map(insertScript::executeBinaryPipelinedAsync)
+            .toArray(CompletableFuture[]::new))
+        .whenComplete((ignored, throwable) -> sample.stop(insertBatchTimer));
+  }
+
   public CompletableFuture<Optional<MessageProtos.Envelope>> remove(final UUID destinationUuid,
       final byte destinationDevice,
       final UUID messageGuid) {
@@ -180,9 +233,10 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
       final byte destinationDevice,
       final List<UUID> messageGuids) {
 
-    return removeByGuidScript.executeBinaryAsync(List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                getMessageQueueMetadataKey(destinationUuid, destinationDevice),
-                getQueueIndexKey(destinationUuid, destinationDevice)),
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(destinationUuid, destinationDevice);
+
+    return removeByGuidScript.executeBinaryAsync(
+            List.of(keys.queueKey(), keys.queueMetadataKey(), keys.queueIndexKey()),
             messageGuids.stream().map(guid -> guid.toString().getBytes(StandardCharsets.UTF_8))
                 .collect(Collectors.toList()))
         .thenApplyAsync(result -> {
@@ -204,7 +258,7 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
   public boolean hasMessages(final UUID destinationUuid, final byte destinationDevice) {
     return readDeleteCluster.withBinaryCluster(
-        connection -> connection.sync().zcard(getMessageQueueKey(destinationUuid, destinationDevice)) > 0);
+        connection -> connection.sync().zcard(MessageQueueKeys.forDevice(destinationUuid, destinationDevice).queueKey()) > 0);
   }
 
   public Publisher<MessageProtos.Envelope> get(final UUID destinationUuid, final byte destinationDevice) {
@@ -253,15 +307,17 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   @VisibleForTesting
   Flux<MessageProtos.Envelope> getAllMessages(final UUID destinationUuid, final byte destinationDevice) {
 
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(destinationUuid, destinationDevice);
+
     // fetch messages by page
-    return getNextMessagePage(destinationUuid, destinationDevice, -1)
+    return getNextMessagePage(keys, -1)
         .expand(queueItemsAndLastMessageId -> {
           // expand() is breadth-first, so each page will be published in order
           if (queueItemsAndLastMessageId.first().isEmpty()) {
             return Mono.empty();
           }
 
-          return getNextMessagePage(destinationUuid, destinationDevice, queueItemsAndLastMessageId.second());
+          return getNextMessagePage(keys, queueItemsAndLastMessageId.second());
         })
         .limitRate(1)
         // we want to ensure we don’t accidentally block the Lettuce/netty i/o executors
@@ -284,12 +340,10 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         });
   }
 
-  private Flux<Pair<List<byte[]>, Long>> getNextMessagePage(final UUID destinationUuid, final byte destinationDevice,
-      long messageId) {
+  private Flux<Pair<List<byte[]>, Long>> getNextMessagePage(final MessageQueueKeys keys, long messageId) {
 
     return getItemsScript.executeBinaryReactive(
-            List.of(getMessageQueueKey(destinationUuid, destinationDevice),
-                getPersistInProgressKey(destinationUuid, destinationDevice)),
+            List.of(keys.queueKey(), keys.persistInProgressKey()),
             List.of(String.valueOf(PAGE_SIZE).getBytes(StandardCharsets.UTF_8),
                 String.valueOf(messageId).getBytes(StandardCharsets.UTF_8)))
         .map(result -> {
@@ -315,24 +369,23 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   }
 
   @VisibleForTesting
-  List<MessageProtos.Envelope> getMessagesToPersist(final UUID accountUuid, final byte destinationDevice,
+  Mono<List<MessageProtos.Envelope>> getMessagesToPersist(final UUID accountUuid, final byte destinationDevice,
       final int limit) {
-    return getMessagesTimer.record(() -> {
-      final List<ScoredValue<byte[]>> scoredMessages = readDeleteCluster.withBinaryCluster(
-          connection -> connection.sync()
-              .zrangeWithScores(getMessageQueueKey(accountUuid, destinationDevice), 0, limit));
-      final List<MessageProtos.Envelope> envelopes = new ArrayList<>(scoredMessages.size());
-
-      for (final ScoredValue<byte[]> scoredMessage : scoredMessages) {
-        try {
-          envelopes.add(MessageProtos.Envelope.parseFrom(scoredMessage.getValue()));
-        } catch (InvalidProtocolBufferException e) {
-          logger.warn("Failed to parse envelope", e);
-        }
-      }
 
-      return envelopes;
-    });
+    final Timer.Sample sample = Timer.start();
+
+    return Flux.from(readDeleteCluster.withBinaryClusterReactive(connection -> connection.reactive()
+            .zrangeWithScores(MessageQueueKeys.forDevice(accountUuid, destinationDevice).queueKey(), 0, limit)))
+        .mapNotNull(scoredMessage -> {
+          try {
+            return MessageProtos.Envelope.parseFrom(scoredMessage.getValue());
+          } catch (InvalidProtocolBufferException e) {
+            logger.warn("Failed to parse envelope", e);
+            return null;
+          }
+        })
+        .collectList()
+        .doOnTerminate(() -> sample.stop(getMessagesTimer));
   }
 
   public CompletableFuture<Void> clear(final UUID destinationUuid) {
@@ -346,9 +399,10 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
   public CompletableFuture<Void> clear(final UUID destinationUuid, final byte deviceId) {
     final Timer.Sample sample = Timer.start();
 
-    return removeQueueScript.executeBinaryAsync(List.of(getMessageQueueKey(destinationUuid, deviceId),
-                getMessageQueueMetadataKey(destinationUuid, deviceId),
-                getQueueIndexKey(destinationUuid, deviceId)),
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(destinationUuid, deviceId);
+
+    return removeQueueScript.executeBinaryAsync(
+            List.of(keys.queueKey(), keys.queueMetadataKey(), keys.queueIndexKey()),
             Collections.emptyList())
         .thenRun(() -> sample.stop(clearQueueTimer));
   }
@@ -358,71 +412,118 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
         % SlotHash.SLOT_COUNT);
   }
 
-  List<String> getQueuesToPersist(final int slot, final Instant maxTime, final int limit) {
+  /**
+   * Returns the number of queues awaiting persistence in the given slot and the time at which the oldest of those
+   * queues was added to the slot's persistence index.
+   */
+  Mono<QueueIndexBacklog> getQueueIndexBacklog(final int slot) {
+    final byte[] queueIndexKey = MessageQueueKeys.getQueueIndexKey(slot);
+
+    return Mono.zip(
+            Mono.from(readDeleteCluster.withBinaryClusterReactive(connection -> connection.reactive()
+                .zcard(queueIndexKey))),
+            Flux.from(readDeleteCluster.withBinaryClusterReactive(connection -> connection.reactive()
+                    .zrangeWithScores(queueIndexKey, 0, 0)))
+                .next()
+                .map(oldestQueue -> Optional.of(Instant.ofEpochMilli((long) oldestQueue.getScore())))
+                .defaultIfEmpty(Optional.empty()))
+        .map(countAndOldestQueue -> new QueueIndexBacklog(slot, countAndOldestQueue.getT1(),
+            countAndOldestQueue.getT2()));
+  }
+
+  record QueueIndexBacklog(int slot, long queueCount, Optional<Instant> oldestQueueTimestamp) {
+  }
+
+  /**
+   * Returns the keys of up to {@code limit} queues in the given slot that were added to the slot's persistence index at
+   * or before {@code maxTime}. Account identifiers and device IDs may be decoded from the returned keys via
+   * {@link #getAccountUuidFromQueueName(byte[])} and {@link #getDeviceIdFromQueueName(byte[])}.
+   */
+  Mono<List<byte[]>> getQueuesToPersist(final int slot, final Instant maxTime, final int limit) {
+    final Timer.Sample sample = Timer.start();
+
     //noinspection unchecked
-    return getQueuesToPersistTimer.record(() -> (List<String>) getQueuesToPersistScript.execute(
-        List.of(new String(getQueueIndexKey(slot), StandardCharsets.UTF_8)),
-        List.of(String.valueOf(maxTime.toEpochMilli()),
-            String.valueOf(limit))));
+    return getQueuesToPersistScript.executeBinaryReactive(
+            List.of(MessageQueueKeys.getQueueIndexKey(slot)),
+            List.of(String.valueOf(maxTime.toEpochMilli()).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(limit).getBytes(StandardCharsets.UTF_8)))
+        .next()
+        .map(result -> (List<byte[]>) result)
+        .defaultIfEmpty(Collections.emptyList())
+        .doOnTerminate(() -> sample.stop(getQueuesToPersistTimer));
   }
 
-  void addQueueToPersist(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(connection -> connection.sync()
-        .zadd(getQueueIndexKey(accountUuid, deviceId), ZAddArgs.Builder.nx(), System.currentTimeMillis(),
-            getMessageQueueKey(accountUuid, deviceId)));
+  Mono<Void> addQueueToPersist(final UUID accountUuid, final byte deviceId) {
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(accountUuid, deviceId);
+
+    return Mono.from(readDeleteCluster.withBinaryClusterReactive(connection -> connection.reactive()
+            .zadd(keys.queueIndexKey(), ZAddArgs.Builder.nx(), System.currentTimeMillis(), keys.queueKey())))
+        .then();
   }
 
-  void lockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(
-        connection -> connection.sync().setex(getPersistInProgressKey(accountUuid, deviceId), 30, LOCK_VALUE));
+  Mono<Void> lockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
+    final byte[] persistInProgressKey = MessageQueueKeys.forDevice(accountUuid, deviceId).persistInProgressKey();
+
+    return Mono.from(readDeleteCluster.withBinaryClusterReactive(
+            connection -> connection.reactive().setex(persistInProgressKey, 30, LOCK_VALUE)))
+        .then();
   }
 
-  void unlockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
-    readDeleteCluster.useBinaryCluster(
-        connection -> connection.sync().del(getPersistInProgressKey(accountUuid, deviceId)));
+  Mono<Void> unlockQueueForPersistence(final UUID accountUuid, final byte deviceId) {
+    final byte[] persistInProgressKey = MessageQueueKeys.forDevice(accountUuid, deviceId).persistInProgressKey();
+
+    return Mono.from(readDeleteCluster.withBinaryClusterReactive(
+            connection -> connection.reactive().del(persistInProgressKey)))
+        .then();
   }
 
   public void addMessageAvailabilityListener(final UUID destinationUuid, final byte deviceId,
       final MessageAvailabilityListener listener) {
     final String queueName = getQueueName(destinationUuid, deviceId);
 
-    final CompletableFuture<Void> subscribeFuture;
-    synchronized (messageListenersByQueueName) {
-      messageListenersByQueueName.put(queueName, listener);
+    final AtomicReference<CompletableFuture<Void>> subscribeFuture = new AtomicReference<>();
+
+    messageListenersByQueueName.compute(queueName, (ignored, previousListener) -> {
       queueNamesByMessageListener.put(listener, queueName);
-      // Submit to the Redis queue within the synchronized block, but don’t wait until exiting
-      subscribeFuture = subscribeForKeyspaceNotifications(queueName);
-    }
+      // Submit to the Redis queue while holding the lock for this queue name, but don’t wait until releasing it
+      subscribeFuture.set(clientEventNotificationMode.subscribeToKeyspaceNotifications()
+          ? subscribeForKeyspaceNotifications(queueName)
+          : CompletableFuture.completedFuture(null));
+
+      return listener;
+    });
 
-    subscribeFuture.join();
+    subscribeFuture.get().join();
   }
 
   public void removeMessageAvailabilityListener(final MessageAvailabilityListener listener) {
-    @Nullable final String queueName;
-    synchronized (messageListenersByQueueName) {
-      queueName = queueNamesByMessageListener.get(listener);
-    }
+    @Nullable final String queueName = queueNamesByMessageListener.remove(listener);
 
     if (queueName != null) {
-
-      final CompletableFuture<Void> unsubscribeFuture;
-      synchronized (messageListenersByQueueName) {
-        queueNamesByMessageListener.remove(listener);
-        if (messageListenersByQueueName.remove(queueName, listener)) {
-          // Submit to the Redis queue within the synchronized block, but don’t wait until exiting
-          unsubscribeFuture = unsubscribeFromKeyspaceNotifications(queueName);
-        } else {
-          messageAvailabilityListenerRemovedAfterAddCounter.increment();
-          unsubscribeFuture = CompletableFuture.completedFuture(null);
+      final AtomicReference<CompletableFuture<Void>> unsubscribeFuture = new AtomicReference<>();
+
+      messageListenersByQueueName.computeIfPresent(queueName, (ignored, currentListener) -> {
+        if (currentListener == listener) {
+          // Submit to the Redis queue while holding the lock for this queue name, but don’t wait until releasing it
+          unsubscribeFuture.set(clientEventNotificationMode.subscribeToKeyspaceNotifications()
+              ? unsubscribeFromKeyspaceNotifications(queueName)
+              : CompletableFuture.completedFuture(null));
+          return null;
         }
-      }
 
-      unsubscribeFuture.join();
+        return currentListener;
+      });
+
+      if (unsubscribeFuture.get() != null) {
+        unsubscribeFuture.get().join();
+      } else {
+        messageAvailabilityListenerRemovedAfterAddCounter.increment();
+      }
     }
   }
 
-  private void pruneStaleSubscription(final String channel) {
-    unsubscribeFromKeyspaceNotifications(getQueueNameFromKeyspaceChannel(channel))
+  private void pruneStaleSubscription(final String queueName) {
+    unsubscribeFromKeyspaceNotifications(queueName)
         .thenRun(prunedStaleSubscriptionCounter::increment);
   }
 
@@ -461,40 +562,57 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
     pubSubMessageCounter.increment();
 
     if (channel.startsWith(QUEUE_KEYSPACE_PREFIX) && "zadd".equals(message)) {
-      newMessageNotificationCounter.increment();
-      notificationExecutorService.execute(() -> {
-        try {
-          findListener(channel).ifPresentOrElse(listener -> {
-            if (!listener.handleNewMessagesAvailable()) {
-              removeMessageAvailabilityListener(listener);
-            }
-          }, () -> pruneStaleSubscription(channel));
-        } catch (final Exception e) {
-          logger.warn("Unexpected error handling new message", e);
-        }
-      });
+      final String queueName = getQueueNameFromKeyspaceChannel(channel);
+      dispatchNewMessagesAvailable(queueName, () -> pruneStaleSubscription(queueName));
     } else if (channel.startsWith(PERSISTING_KEYSPACE_PREFIX) && "del".equals(message)) {
-      queuePersistedNotificationCounter.increment();
-      notificationExecutorService.execute(() -> {
-        try {
-          findListener(channel).ifPresentOrElse(listener -> {
-            if (!listener.handleMessagesPersisted()) {
-              removeMessageAvailabilityListener(listener);
-            }
-          }, () -> pruneStaleSubscription(channel));
-        } catch (final Exception e) {
-          logger.warn("Unexpected error handling messages persisted", e);
-        }
-      });
+      final String queueName = getQueueNameFromKeyspaceChannel(channel);
+      dispatchMessagesPersisted(queueName, () -> pruneStaleSubscription(queueName));
     }
   }
 
-  private Optional<MessageAvailabilityListener> findListener(final String keyspaceChannel) {
-    final String queueName = getQueueNameFromKeyspaceChannel(keyspaceChannel);
+  @Override
+  public void handleNewMessagesAvailable(final UUID accountUuid, final byte deviceId) {
+    // Node channel events aren't tied to a subscription, so there's nothing to prune if the listener is gone
+    dispatchNewMessagesAvailable(getQueueName(accountUuid, deviceId), Util.NOOP);
+  }
 
-    synchronized (messageListenersByQueueName) {
-      return Optional.ofNullable(messageListenersByQueueName.get(queueName));
-    }
+  @Override
+  public void handleMessagesPersisted(final UUID accountUuid, final byte deviceId) {
+    dispatchMessagesPersisted(getQueueName(accountUuid, deviceId), Util.NOOP);
+  }
+
+  private void dispatchNewMessagesAvailable(final String queueName, final Runnable listenerMissingAction) {
+    newMessageNotificationCounter.increment();
+    keyspaceNotificationDispatcher.dispatch(queueName, () -> {
+      try {
+        findListener(queueName).ifPresentOrElse(listener -> {
+          if (!listener.handleNewMessagesAvailable()) {
+            removeMessageAvailabilityListener(listener);
+          }
+        }, listenerMissingAction);
+      } catch (final Exception e) {
+        logger.warn("Unexpected error handling new message", e);
+      }
+    });
+  }
+
+  private void dispatchMessagesPersisted(final String queueName, final Runnable listenerMissingAction) {
+    queuePersistedNotificationCounter.increment();
+    keyspaceNotificationDispatcher.dispatch(queueName, () -> {
+      try {
+        findListener(queueName).ifPresentOrElse(listener -> {
+          if (!listener.handleMessagesPersisted()) {
+            removeMessageAvailabilityListener(listener);
+          }
+        }, listenerMissingAction);
+      } catch (final Exception e) {
+        logger.warn("Unexpected error handling messages persisted", e);
+      }
+    });
+  }
+
+  private Optional<MessageAvailabilityListener> findListener(final String queueName) {
+    return Optional.ofNullable(messageListenersByQueueName.get(queueName));
   }
 
   @VisibleForTesting
@@ -512,32 +630,14 @@ public class MessagesCache extends RedisClusterPubSubAdapter<String, String> imp
 
   @VisibleForTesting
   static byte[] getMessageQueueKey(final UUID accountUuid, final byte deviceId) {
-    return ("user_queue::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
+    return MessageQueueKeys.forDevice(accountUuid, deviceId).queueKey();
   }
 
-  private static byte[] getMessageQueueMetadataKey(final UUID accountUuid, final byte deviceId) {
-    return ("user_queue_metadata::{" + accountUuid.toString() + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
-  }
-
-  private static byte[] getQueueIndexKey(final UUID accountUuid, final byte deviceId) {
-    return getQueueIndexKey(SlotHash.getSlot(accountUuid.toString() + "::" + deviceId));
-  }
-
-  private static byte[] getQueueIndexKey(final int slot) {
-    return ("user_queue_index::{" + RedisClusterUtil.getMinimalHashTag(slot) + "}").getBytes(StandardCharsets.UTF_8);
-  }
-
-  private static byte[] getPersistInProgressKey(final UUID accountUuid, final byte deviceId) {
-    return ("user_queue_persisting::{" + accountUuid + "::" + deviceId + "}").getBytes(StandardCharsets.UTF_8);
-  }
-
-  static UUID getAccountUuidFromQueueName(final String queueName) {
-    final int startOfHashTag = queueName.indexOf('{');
-
-    return UUID.fromString(queueName.substring(startOfHashTag + 1, queueName.indexOf("::", startOfHashTag)));
+  static UUID getAccountUuidFromQueueName(final byte[] queueName) {
+    return MessageQueueKeys.getAccountUuid(queueName);
   }
 
-  static byte getDeviceIdFromQueueName(final String queueName) {
-    return Byte.parseByte(queueName.substring(queueName.lastIndexOf("::") + 2, queueName.lastIndexOf('}')));
+  static byte getDeviceIdFromQueueName(final byte[] queueName) {
+    return MessageQueueKeys.getDeviceId(queueName);
   }
 }
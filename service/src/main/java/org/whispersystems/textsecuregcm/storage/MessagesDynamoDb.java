@@ -6,23 +6,31 @@
 package org.whispersystems.textsecuregcm.storage;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static io.micrometer.core.instrument.Metrics.counter;
 import static io.micrometer.core.instrument.Metrics.timer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +45,7 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
@@ -59,9 +68,19 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
   private static final String KEY_TTL = "E";
   private static final String KEY_ENVELOPE_BYTES = "EB";
 
+  @VisibleForTesting
+  static final Duration MAX_WRITE_BATCH_LINGER = Duration.ofMillis(10);
+
   private final Timer storeTimer = timer(name(getClass(), "store"));
   private final Timer deleteByAccount = timer(name(getClass(), "delete", "account"));
   private final Timer deleteByDevice = timer(name(getClass(), "delete", "device"));
+  private final Timer deleteBatch = timer(name(getClass(), "delete", "batch"));
+  private final DistributionSummary coalescedBatchSizeDistributionSummary = DistributionSummary
+      .builder(name(getClass(), "coalescedBatchSize"))
+      .publishPercentiles(0.5, 0.75, 0.95)
+      .distributionStatisticExpiry(Duration.ofMinutes(10))
+      .register(Metrics.globalRegistry);
+  private final Counter coalescedBatchFallbackCounter = counter(name(getClass(), "coalescedBatchFallback"));
 
   private final DynamoDbAsyncClient dbAsyncClient;
   private final String tableName;
@@ -69,6 +88,13 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
   private final ExecutorService messageDeletionExecutor;
   private final Scheduler messageDeletionScheduler;
 
+  private final Object pendingWriteBatchLock = new Object();
+  @Nullable
+  private PendingWriteBatch pendingWriteBatch;
+
+  private record PendingWriteBatch(List<WriteRequest> writeRequests, CompletableFuture<Void> future) {
+  }
+
   private static final Logger logger = LoggerFactory.getLogger(MessagesDynamoDb.class);
 
   public MessagesDynamoDb(DynamoDbClient dynamoDb, DynamoDbAsyncClient dynamoDbAsyncClient, String tableName,
@@ -88,14 +114,102 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
     storeTimer.record(() -> writeInBatches(messages, (messageBatch) -> storeBatch(messageBatch, destinationAccountUuid, destinationDeviceId)));
   }
 
+  /**
+   * Stores the given messages, packing them into batch writes together with messages stored concurrently for other
+   * destinations. Because most persisted queues contain only a few messages, this substantially reduces the number of
+   * {@code BatchWriteItem} requests compared to writing each destination's messages separately.
+   *
+   * @return a future that completes once all of the given messages have been written
+   */
+  public CompletableFuture<Void> storeAsync(final List<MessageProtos.Envelope> messages,
+      final UUID destinationAccountUuid, final byte destinationDeviceId) {
+
+    final Timer.Sample sample = Timer.start();
+    final List<WriteRequest> writeRequests = buildWriteRequests(messages, destinationAccountUuid, destinationDeviceId);
+
+    final Set<CompletableFuture<Void>> batchFutures = new HashSet<>();
+    final List<PendingWriteBatch> fullBatches = new ArrayList<>();
+
+    synchronized (pendingWriteBatchLock) {
+      for (final WriteRequest writeRequest : writeRequests) {
+        if (pendingWriteBatch == null) {
+          final PendingWriteBatch batch = new PendingWriteBatch(new ArrayList<>(DYNAMO_DB_MAX_BATCH_SIZE),
+              new CompletableFuture<>());
+
+          pendingWriteBatch = batch;
+
+          CompletableFuture.delayedExecutor(MAX_WRITE_BATCH_LINGER.toMillis(), TimeUnit.MILLISECONDS)
+              .execute(() -> flushPendingWriteBatch(batch));
+        }
+
+        pendingWriteBatch.writeRequests().add(writeRequest);
+        batchFutures.add(pendingWriteBatch.future());
+
+        if (pendingWriteBatch.writeRequests().size() == DYNAMO_DB_MAX_BATCH_SIZE) {
+          fullBatches.add(pendingWriteBatch);
+          pendingWriteBatch = null;
+        }
+      }
+    }
+
+    fullBatches.forEach(this::writeBatch);
+
+    return CompletableFuture.allOf(batchFutures.toArray(CompletableFuture[]::new))
+        .exceptionallyCompose(throwable -> {
+          // A single bad destination (an oversized item collection, for example) shouldn't repeatedly fail the other
+          // destinations that happened to share a batch with it, so retry this destination's messages on their own
+          coalescedBatchFallbackCounter.increment();
+
+          final List<CompletableFuture<Void>> fallbackFutures = new ArrayList<>();
+          writeInBatches(writeRequests, batch -> fallbackFutures.add(
+              executeTableWriteItemsUntilCompleteAsync(dbAsyncClient, Map.of(tableName, List.copyOf(batch)))));
+
+          return CompletableFuture.allOf(fallbackFutures.toArray(CompletableFuture[]::new));
+        })
+        .whenComplete((ignored, throwable) -> sample.stop(storeTimer));
+  }
+
+  private void flushPendingWriteBatch(final PendingWriteBatch batch) {
+    synchronized (pendingWriteBatchLock) {
+      if (pendingWriteBatch != batch) {
+        // The batch filled up and was written before its linger time elapsed
+        return;
+      }
+
+      pendingWriteBatch = null;
+    }
+
+    writeBatch(batch);
+  }
+
+  private void writeBatch(final PendingWriteBatch batch) {
+    coalescedBatchSizeDistributionSummary.record(batch.writeRequests().size());
+
+    executeTableWriteItemsUntilCompleteAsync(dbAsyncClient, Map.of(tableName, batch.writeRequests()))
+        .whenComplete((ignored, throwable) -> {
+          if (throwable != null) {
+            batch.future().completeExceptionally(throwable);
+          } else {
+            batch.future().complete(null);
+          }
+        });
+  }
+
   private void storeBatch(final List<MessageProtos.Envelope> messages, final UUID destinationAccountUuid,
       final byte destinationDeviceId) {
     if (messages.size() > DYNAMO_DB_MAX_BATCH_SIZE) {
       throw new IllegalArgumentException("Maximum batch size of " + DYNAMO_DB_MAX_BATCH_SIZE + " exceeded with " + messages.size() + " messages");
     }
 
+    executeTableWriteItemsUntilComplete(
+        Map.of(tableName, buildWriteRequests(messages, destinationAccountUuid, destinationDeviceId)));
+  }
+
+  private List<WriteRequest> buildWriteRequests(final List<MessageProtos.Envelope> messages,
+      final UUID destinationAccountUuid, final byte destinationDeviceId) {
+
     final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
-    List<WriteRequest> writeItems = new ArrayList<>();
+    List<WriteRequest> writeItems = new ArrayList<>(messages.size());
     for (MessageProtos.Envelope message : messages) {
       final UUID messageUuid = UUID.fromString(message.getServerGuid());
 
@@ -111,7 +225,7 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
           .build()).build());
     }
 
-    executeTableWriteItemsUntilComplete(Map.of(tableName, writeItems));
+    return writeItems;
   }
 
   public Publisher<MessageProtos.Envelope> load(final UUID destinationAccountUuid, final byte destinationDeviceId,
@@ -216,6 +330,35 @@ public class MessagesDynamoDb extends AbstractDynamoDbStore {
         }, messageDeletionExecutor);
   }
 
+  /**
+   * Deletes the given messages with batched writes. Unlike {@link #deleteMessage(UUID, byte, UUID, long)}, this method
+   * does not yield the deleted messages.
+   *
+   * @return a future that completes once all of the given messages have been deleted
+   */
+  public CompletableFuture<Void> deleteMessages(final UUID destinationAccountUuid, final byte destinationDeviceId,
+      final Map<UUID, Long> serverTimestampsByGuid) {
+
+    final Timer.Sample sample = Timer.start();
+    final AttributeValue partitionKey = convertPartitionKey(destinationAccountUuid);
+
+    final List<WriteRequest> deleteRequests = serverTimestampsByGuid.entrySet().stream()
+        .map(guidAndTimestamp -> WriteRequest.builder()
+            .deleteRequest(DeleteRequest.builder()
+                .key(Map.of(KEY_PARTITION, partitionKey,
+                    KEY_SORT, convertSortKey(destinationDeviceId, guidAndTimestamp.getValue(), guidAndTimestamp.getKey())))
+                .build())
+            .build())
+        .toList();
+
+    final List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+    writeInBatches(deleteRequests, batch -> batchFutures.add(
+        executeTableWriteItemsUntilCompleteAsync(dbAsyncClient, Map.of(tableName, List.copyOf(batch)))));
+
+    return CompletableFuture.allOf(batchFutures.toArray(CompletableFuture[]::new))
+        .whenComplete((ignored, throwable) -> sample.stop(deleteBatch));
+  }
+
   public CompletableFuture<Void> deleteAllMessagesForAccount(final UUID destinationAccountUuid) {
     final Timer.Sample sample = Timer.start();
 
@@ -10,14 +10,15 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.reactivestreams.Publisher;
@@ -70,6 +71,34 @@ public class MessagesManager {
     }
   }
 
+  /**
+   * Inserts messages for many destination devices at once.
+   *
+   * @param messages the messages to insert
+   *
+   * @return a future that completes when all messages have been inserted
+   *
+   * @see MessagesCache#insert(List)
+   */
+  public CompletableFuture<Void> insert(final List<DeviceMessage> messages) {
+    final List<DeviceMessage> messagesWithGuids = new ArrayList<>(messages.size());
+
+    for (final DeviceMessage deviceMessage : messages) {
+      final UUID messageGuid = UUID.randomUUID();
+
+      messagesWithGuids.add(new DeviceMessage(deviceMessage.destinationUuid(), deviceMessage.destinationDeviceId(),
+          deviceMessage.message().toBuilder().setServerGuid(messageGuid.toString()).build()));
+
+      if (deviceMessage.message().hasSourceUuid()
+          && !deviceMessage.destinationUuid().toString().equals(deviceMessage.message().getSourceUuid())) {
+
+        reportMessageManager.store(deviceMessage.message().getSourceUuid(), messageGuid);
+      }
+    }
+
+    return messagesCache.insert(messagesWithGuids);
+  }
+
   public boolean hasCachedMessages(final UUID destinationUuid, final byte destinationDevice) {
     return messagesCache.hasMessages(destinationUuid, destinationDevice);
   }
@@ -136,9 +165,37 @@ public class MessagesManager {
   }
 
   /**
-   * @return the number of messages successfully removed from the cache.
+   * Deletes a batch of messages for a single destination device. Messages are removed from the cache in a single
+   * operation, and any messages not found in the cache are removed from DynamoDB with batched writes.
+   *
+   * @param destinationUuid the account to which the messages were sent
+   * @param destinationDeviceId the device to which the messages were sent
+   * @param serverTimestampsByGuid the server timestamps of the messages to delete, keyed by message GUID
+   *
+   * @return a future that completes once all of the given messages have been deleted
+   */
+  public CompletableFuture<Void> delete(final UUID destinationUuid, final byte destinationDeviceId,
+      final Map<UUID, Long> serverTimestampsByGuid) {
+
+    return messagesCache.remove(destinationUuid, destinationDeviceId, List.copyOf(serverTimestampsByGuid.keySet()))
+        .thenComposeAsync(removed -> {
+          final Map<UUID, Long> uncachedServerTimestampsByGuid = new HashMap<>(serverTimestampsByGuid);
+          removed.forEach(envelope -> uncachedServerTimestampsByGuid.remove(UUID.fromString(envelope.getServerGuid())));
+
+          cacheHitByGuidMeter.mark(serverTimestampsByGuid.size() - uncachedServerTimestampsByGuid.size());
+          cacheMissByGuidMeter.mark(uncachedServerTimestampsByGuid.size());
+
+          return uncachedServerTimestampsByGuid.isEmpty()
+              ? CompletableFuture.completedFuture(null)
+              : messagesDynamoDb.deleteMessages(destinationUuid, destinationDeviceId, uncachedServerTimestampsByGuid);
+        }, messageDeletionExecutor);
+  }
+
+  /**
+   * @return a future that yields the number of messages successfully removed from the cache once the given messages
+   * have been written to DynamoDB
    */
-  public int persistMessages(
+  public CompletableFuture<Integer> persistMessages(
       final UUID destinationUuid,
       final byte destinationDeviceId,
       final List<Envelope> messages) {
@@ -147,20 +204,20 @@ public class MessagesManager {
         .filter(envelope -> !envelope.getEphemeral())
         .collect(Collectors.toList());
 
-    messagesDynamoDb.store(nonEphemeralMessages, destinationUuid, destinationDeviceId);
-
     final List<UUID> messageGuids = messages.stream().map(message -> UUID.fromString(message.getServerGuid()))
         .collect(Collectors.toList());
-    int messagesRemovedFromCache = 0;
-    try {
-      messagesRemovedFromCache = messagesCache.remove(destinationUuid, destinationDeviceId, messageGuids)
-          .get(30, TimeUnit.SECONDS).size();
-      persistMessageMeter.mark(nonEphemeralMessages.size());
-
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      logger.warn("Failed to remove messages from cache", e);
-    }
-    return messagesRemovedFromCache;
+
+    return messagesDynamoDb.storeAsync(nonEphemeralMessages, destinationUuid, destinationDeviceId)
+        .thenCompose(ignored -> messagesCache.remove(destinationUuid, destinationDeviceId, messageGuids)
+            .orTimeout(30, TimeUnit.SECONDS)
+            .thenApply(removedMessages -> {
+              persistMessageMeter.mark(nonEphemeralMessages.size());
+              return removedMessages.size();
+            })
+            .exceptionally(throwable -> {
+              logger.warn("Failed to remove messages from cache", throwable);
+              return 0;
+            }));
   }
 
   public void addMessageAvailabilityListener(
@@ -23,6 +23,13 @@ public class SingleUseECPreKeyStore extends SingleUsePreKeyStore<ECPreKey> {
     super(dynamoDbAsyncClient, tableName);
   }
 
+  protected SingleUseECPreKeyStore(final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final SingleUsePreKeyPool preKeyPool) {
+
+    super(dynamoDbAsyncClient, tableName, preKeyPool);
+  }
+
   @Override
   protected Map<String, AttributeValue> getItemFromPreKey(final UUID identifier, final byte deviceId, final ECPreKey preKey) {
     return Map.of(
@@ -20,6 +20,13 @@ public class SingleUseKEMPreKeyStore extends SingleUsePreKeyStore<KEMSignedPreKe
     super(dynamoDbAsyncClient, tableName);
   }
 
+  protected SingleUseKEMPreKeyStore(final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      final SingleUsePreKeyPool preKeyPool) {
+
+    super(dynamoDbAsyncClient, tableName, preKeyPool);
+  }
+
   @Override
   protected Map<String, AttributeValue> getItemFromPreKey(final UUID identifier, final byte deviceId, final KEMSignedPreKey signedPreKey) {
     return Map.of(
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import io.lettuce.core.SetArgs;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.util.Util;
+
+/**
+ * A single-use pre-key pool is a "hot tier" for a {@link SingleUsePreKeyStore} that holds, for each device, a set of
+ * the sort keys of that device's stored single-use pre-keys. Concurrent callers popping from the same pool receive
+ * distinct sort keys, and so don't contend for the same DynamoDB items when claiming keys. Because pools are sets,
+ * overlapping refills don't add duplicate references.
+ * <p/>
+ * The pool holds only references to keys; DynamoDB remains the durable source of truth, and a key is only considered
+ * taken once it has been removed from DynamoDB. Pools may therefore contain stale references (to keys that have already
+ * been taken or deleted), and callers must be prepared to discard them.
+ */
+public class SingleUsePreKeyPool {
+
+  private final FaultTolerantRedisCluster redisCluster;
+  private final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
+  private final String poolName;
+
+  private final Counter poolHitCounter;
+  private final Counter poolMissCounter;
+  private final Counter refillCounter;
+  private final DistributionSummary refillSizeDistributionSummary;
+
+  private static final String POP_COUNTER_NAME = name(SingleUsePreKeyPool.class, "pop");
+  private static final String REFILL_COUNTER_NAME = name(SingleUsePreKeyPool.class, "refill");
+  private static final String REFILL_SIZE_DISTRIBUTION_SUMMARY_NAME = name(SingleUsePreKeyPool.class, "refillSize");
+
+  private static final String POOL_TAG_NAME = "pool";
+  private static final String HIT_TAG_NAME = "hit";
+
+  private static final Duration POOL_TTL = Duration.ofHours(1);
+  private static final Duration REFILL_LOCK_TTL = Duration.ofSeconds(5);
+
+  /**
+   * @param redisCluster the Redis cluster in which to store pools
+   * @param dynamicConfigurationManager a dynamic configuration manager used to determine whether pools are enabled
+   * @param poolName a name for this pool, which distinguishes its Redis keys from those of other pools and is used to
+   * tag metrics
+   */
+  public SingleUsePreKeyPool(final FaultTolerantRedisCluster redisCluster,
+      final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager,
+      final String poolName) {
+
+    this.redisCluster = redisCluster;
+    this.dynamicConfigurationManager = dynamicConfigurationManager;
+    this.poolName = poolName;
+
+    this.poolHitCounter = Metrics.counter(POP_COUNTER_NAME, POOL_TAG_NAME, poolName, HIT_TAG_NAME, "true");
+    this.poolMissCounter = Metrics.counter(POP_COUNTER_NAME, POOL_TAG_NAME, poolName, HIT_TAG_NAME, "false");
+    this.refillCounter = Metrics.counter(REFILL_COUNTER_NAME, POOL_TAG_NAME, poolName);
+    this.refillSizeDistributionSummary = DistributionSummary.builder(REFILL_SIZE_DISTRIBUTION_SUMMARY_NAME)
+        .tags(POOL_TAG_NAME, poolName)
+        .publishPercentiles(0.5, 0.75, 0.95, 0.99, 0.999)
+        .distributionStatisticExpiry(Duration.ofMinutes(10))
+        .register(Metrics.globalRegistry);
+  }
+
+  boolean isEnabled() {
+    return dynamicConfigurationManager.getConfiguration().getPreKeyPoolConfiguration().isEnabled();
+  }
+
+  int getRefillBatchSize() {
+    return dynamicConfigurationManager.getConfiguration().getPreKeyPoolConfiguration().getRefillBatchSize();
+  }
+
+  /**
+   * Removes and returns an arbitrary sort key from the given device's pool.
+   *
+   * @param identifier the identifier for the account/identity with which the target device is associated
+   * @param deviceId the identifier for the device within the given account/identity
+   *
+   * @return a future that yields a sort key from the device's pool, or empty if the pool is empty
+   */
+  CompletableFuture<Optional<byte[]>> pop(final UUID identifier, final byte deviceId) {
+    return redisCluster.withBinaryCluster(connection -> connection.async().spop(getPoolKey(identifier, deviceId)))
+        .thenApply(sortKey -> {
+          (sortKey != null ? poolHitCounter : poolMissCounter).increment();
+          return Optional.ofNullable(sortKey);
+        })
+        .toCompletableFuture();
+  }
+
+  /**
+   * Attempts to acquire a short-lived lock on refilling the given device's pool. The lock is released when the holder
+   * calls {@link #refill(UUID, byte, List)} or when the lock expires.
+   *
+   * @param identifier the identifier for the account/identity with which the target device is associated
+   * @param deviceId the identifier for the device within the given account/identity
+   *
+   * @return a future that yields {@code true} if the lock was acquired or {@code false} if another caller holds it
+   */
+  CompletableFuture<Boolean> tryLockRefill(final UUID identifier, final byte deviceId) {
+    return redisCluster.withBinaryCluster(connection -> connection.async()
+            .set(getRefillLockKey(identifier, deviceId), new byte[0],
+                SetArgs.Builder.nx().px(REFILL_LOCK_TTL.toMillis())))
+        .thenApply("OK"::equals)
+        .toCompletableFuture();
+  }
+
+  /**
+   * Adds the given sort keys to the given device's pool and releases the refill lock for the device.
+   *
+   * @param identifier the identifier for the account/identity with which the target device is associated
+   * @param deviceId the identifier for the device within the given account/identity
+   * @param sortKeys the sort keys to add to the pool
+   *
+   * @return a future that completes when the pool has been refilled and the refill lock released
+   */
+  CompletableFuture<Void> refill(final UUID identifier, final byte deviceId, final List<byte[]> sortKeys) {
+    refillCounter.increment();
+    refillSizeDistributionSummary.record(sortKeys.size());
+
+    final byte[] poolKey = getPoolKey(identifier, deviceId);
+
+    final CompletableFuture<?> refillFuture = sortKeys.isEmpty()
+        ? CompletableFuture.completedFuture(null)
+        : redisCluster.withBinaryCluster(connection -> connection.async()
+            .sadd(poolKey, sortKeys.toArray(new byte[0][]))
+            .thenCompose(ignored -> connection.async().pexpire(poolKey, POOL_TTL.toMillis()))
+            .toCompletableFuture());
+
+    return refillFuture
+        .thenCompose(ignored -> redisCluster.withBinaryCluster(connection ->
+            connection.async().del(getRefillLockKey(identifier, deviceId)).toCompletableFuture()))
+        .thenRun(Util.NOOP);
+  }
+
+  /**
+   * Removes all sort keys from the given device's pool.
+   *
+   * @param identifier the identifier for the account/identity with which the target device is associated
+   * @param deviceId the identifier for the device within the given account/identity
+   *
+   * @return a future that completes when the device's pool has been cleared
+   */
+  CompletableFuture<Void> clear(final UUID identifier, final byte deviceId) {
+    return redisCluster.withBinaryCluster(connection ->
+            connection.async().del(getPoolKey(identifier, deviceId)).toCompletableFuture())
+        .thenRun(Util.NOOP);
+  }
+
+  /**
+   * Removes all sort keys from the pools of all devices associated with the given account/identity.
+   *
+   * @param identifier the identifier for the account/identity for which to clear pools
+   *
+   * @return a future that completes when all of the account/identity's pools have been cleared
+   */
+  CompletableFuture<Void> clear(final UUID identifier) {
+    final byte[][] poolKeys = Device.ALL_POSSIBLE_DEVICE_IDS.stream()
+        .map(deviceId -> getPoolKey(identifier, deviceId))
+        .toArray(byte[][]::new);
+
+    return redisCluster.withBinaryCluster(connection -> connection.async().del(poolKeys).toCompletableFuture())
+        .thenRun(Util.NOOP);
+  }
+
+  private byte[] getPoolKey(final UUID identifier, final byte deviceId) {
+    return ("single_use_pre_key_pool::" + poolName + "::{" + identifier + "}::" + deviceId)
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] getRefillLockKey(final UUID identifier, final byte deviceId) {
+    return ("single_use_pre_key_pool_refill::" + poolName + "::{" + identifier + "}::" + deviceId)
+        .getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -8,17 +8,22 @@ package org.whispersystems.textsecuregcm.storage;
 import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
 import static org.whispersystems.textsecuregcm.storage.AbstractDynamoDbStore.DYNAMO_DB_MAX_BATCH_SIZE;
 
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import org.whispersystems.textsecuregcm.entities.PreKey;
 import org.whispersystems.textsecuregcm.util.AttributeValues;
 import org.whispersystems.textsecuregcm.util.Util;
@@ -26,13 +31,19 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 /**
  * A single-use pre-key store stores single-use pre-keys of a specific type. Keys returned by a single-use pre-key
@@ -43,14 +54,24 @@ import software.amazon.awssdk.services.dynamodb.model.Select;
  * supply of single-use pre-keys (see {@link #getCount(UUID, byte)}) and upload new keys when their supply runs low. In
  * the event that a party wants to begin a session with a device that has no single-use pre-keys remaining, that party
  * may fall back to using the device's repeated-use ("last-resort") signed pre-key instead.
+ * <p/>
+ * Alongside each device's keys, a single-use pre-key store maintains a count item that is updated as keys are stored and
+ * taken, so that {@link #getCount(UUID, byte)} is a single-item read rather than a query over all of a device's keys.
+ * Count items may drift from the true number of keys (if, for example, a count update fails after a key has been
+ * taken), and so are periodically reconciled with a full count when read.
+ * <p/>
+ * A single-use pre-key store may optionally be paired with a {@link SingleUsePreKeyPool}, which hands out the sort keys
+ * of stored pre-keys to concurrent callers of {@link #take(UUID, byte)} so they don't compete to claim the same items.
  */
 public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
 
   private final DynamoDbAsyncClient dynamoDbAsyncClient;
   private final String tableName;
+  @Nullable
+  private final SingleUsePreKeyPool preKeyPool;
 
-  private final Timer storeKeyTimer = Metrics.timer(name(getClass(), "storeKey"));
   private final Timer storeKeyBatchTimer = Metrics.timer(name(getClass(), "storeKeyBatch"));
+  private final Counter unprocessedBatchWriteItemsCounter = Metrics.counter(name(getClass(), "unprocessedBatchWriteItems"));
   private final Timer getKeyCountTimer = Metrics.timer(name(getClass(), "getCount"));
   private final Timer deleteForDeviceTimer = Metrics.timer(name(getClass(), "deleteForDevice"));
   private final Timer deleteForAccountTimer = Metrics.timer(name(getClass(), "deleteForAccount"));
@@ -67,22 +88,66 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
       .distributionStatisticExpiry(Duration.ofMinutes(10))
       .register(Metrics.globalRegistry);
 
+  private final Counter stalePooledKeyCounter = Metrics.counter(name(getClass(), "stalePooledKey"));
+
+  private final String reconcileKeyCountCounterName = name(getClass(), "reconcileKeyCount");
+  private static final String RECONCILIATION_REASON_TAG_NAME = "reason";
+
+  final DistributionSummary keyCountDriftDistributionSummary = DistributionSummary
+      .builder(name(getClass(), "keyCountDrift"))
+      .publishPercentiles(0.5, 0.75, 0.95, 0.99, 0.999)
+      .distributionStatisticExpiry(Duration.ofMinutes(10))
+      .register(Metrics.globalRegistry);
+
   private final String takeKeyTimerName = name(getClass(), "takeKey");
   private static final String KEY_PRESENT_TAG_NAME = "keyPresent";
+  private static final String POOLED_TAG_NAME = "pooled";
+
+  /**
+   * The maximum number of sort keys to pop from a pool in a single call to {@link #take(UUID, byte)} before falling back
+   * to claiming a key directly from DynamoDB
+   */
+  private static final int MAX_POOLED_KEY_ATTEMPTS = 3;
 
   static final String KEY_ACCOUNT_UUID = "U";
   static final String KEY_DEVICE_ID_KEY_ID = "DK";
   static final String ATTR_PUBLIC_KEY = "P";
   static final String ATTR_SIGNATURE = "S";
+  static final String ATTR_KEY_COUNT = "C";
+  static final String ATTR_KEY_COUNT_RECONCILED = "R";
+
+  /**
+   * Count items share a partition with the keys they count, but their sort keys begin with a marker that can never be
+   * a device ID, so they're never matched by queries for a device's keys.
+   */
+  private static final long KEY_COUNT_SORT_KEY_MARKER = -1;
+
+  /**
+   * The maximum age of a count item, measured from the last time it was set to a known-accurate value, before it's
+   * reconciled with a full count of a device's keys
+   */
+  private static final Duration KEY_COUNT_RECONCILIATION_INTERVAL = Duration.ofDays(1);
+
+  private static final int MAX_CONCURRENT_BATCH_WRITES = 8;
+  private static final int MAX_BATCH_WRITE_ATTEMPTS = 8;
 
   protected SingleUsePreKeyStore(final DynamoDbAsyncClient dynamoDbAsyncClient, final String tableName) {
+    this(dynamoDbAsyncClient, tableName, null);
+  }
+
+  protected SingleUsePreKeyStore(final DynamoDbAsyncClient dynamoDbAsyncClient,
+      final String tableName,
+      @Nullable final SingleUsePreKeyPool preKeyPool) {
+
     this.dynamoDbAsyncClient = dynamoDbAsyncClient;
     this.tableName = tableName;
+    this.preKeyPool = preKeyPool;
   }
 
   /**
-   * Stores a batch of single-use pre-keys for a specific device. All previously-stored keys for the device are cleared
-   * before storing new keys.
+   * Stores a batch of single-use pre-keys for a specific device, replacing all previously-stored keys for the device.
+   * Deletions of previously-stored keys and writes of new keys are sent together in {@code BatchWriteItem} requests,
+   * and the device's key count is only written once all of those requests have finished.
    *
    * @param identifier the identifier for the account/identity with which the target device is associated
    * @param deviceId the identifier for the device within the given account/identity
@@ -94,23 +159,80 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
   public CompletableFuture<Void> store(final UUID identifier, final byte deviceId, final List<K> preKeys) {
     final Timer.Sample sample = Timer.start();
 
-    return Mono.fromFuture(() -> delete(identifier, deviceId))
-        .thenMany(
-            Flux.fromIterable(preKeys)
-                .flatMap(preKey -> Mono.fromFuture(() -> store(identifier, deviceId, preKey)), DYNAMO_DB_MAX_BATCH_SIZE))
-        .then()
-        .toFuture()
+    // Later keys with the same ID replace earlier ones, and a single batch can't contain more than one request for the
+    // same item
+    final Map<ByteBuffer, Map<String, AttributeValue>> itemsBySortKey = new LinkedHashMap<>();
+
+    for (final K preKey : preKeys) {
+      final Map<String, AttributeValue> item = getItemFromPreKey(identifier, deviceId, preKey);
+      itemsBySortKey.put(item.get(KEY_DEVICE_ID_KEY_ID).b().asByteBuffer(), item);
+    }
+
+    final Flux<WriteRequest> putRequests = Flux.fromIterable(itemsBySortKey.values())
+        .map(item -> WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+
+    // Existing keys that aren't about to be overwritten need to be deleted, and those deletions can go out in the same
+    // batches as the new keys
+    final Flux<WriteRequest> deleteRequests = Flux.from(dynamoDbAsyncClient.queryPaginator(QueryRequest.builder()
+                .tableName(tableName)
+                .keyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
+                .expressionAttributeNames(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
+                .expressionAttributeValues(Map.of(
+                    ":uuid", getPartitionKey(identifier),
+                    ":sortprefix", getSortKeyPrefix(deviceId)))
+                .projectionExpression(KEY_DEVICE_ID_KEY_ID)
+                .consistentRead(true)
+                .build())
+            .items())
+        .filter(item -> !itemsBySortKey.containsKey(item.get(KEY_DEVICE_ID_KEY_ID).b().asByteBuffer()))
+        .map(item -> WriteRequest.builder()
+            .deleteRequest(DeleteRequest.builder()
+                .key(Map.of(
+                    KEY_ACCOUNT_UUID, getPartitionKey(identifier),
+                    KEY_DEVICE_ID_KEY_ID, item.get(KEY_DEVICE_ID_KEY_ID)))
+                .build())
+            .build());
+
+    final CompletableFuture<Void> clearPoolFuture = preKeyPool != null
+        ? preKeyPool.clear(identifier, deviceId)
+        : CompletableFuture.completedFuture(null);
+
+    // The key count is an absolute value, so it's written only after every batch has landed; writing it alongside the
+    // keys could overwrite decrements from takes of keys that were already written
+    return clearPoolFuture
+        .thenCompose(ignored -> deleteRequests.concatWith(putRequests)
+            .buffer(DYNAMO_DB_MAX_BATCH_SIZE)
+            .flatMap(writeRequests -> Mono.fromFuture(() -> batchWrite(writeRequests, 0)), MAX_CONCURRENT_BATCH_WRITES)
+            .then()
+            .toFuture())
+        .thenCompose(ignored -> putKeyCount(identifier, deviceId, itemsBySortKey.size()))
         .thenRun(() -> sample.stop(storeKeyBatchTimer));
   }
 
-  private CompletableFuture<Void> store(final UUID identifier, final byte deviceId, final K preKey) {
-    final Timer.Sample sample = Timer.start();
-
-    return dynamoDbAsyncClient.putItem(PutItemRequest.builder()
-            .tableName(tableName)
-            .item(getItemFromPreKey(identifier, deviceId, preKey))
+  /**
+   * Writes a single batch of items, retrying any unprocessed items with jittered exponential backoff.
+   */
+  private CompletableFuture<Void> batchWrite(final List<WriteRequest> writeRequests, final int attempt) {
+    return dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder()
+            .requestItems(Map.of(tableName, writeRequests))
             .build())
-        .thenRun(() -> sample.stop(storeKeyTimer));
+        .thenCompose(response -> {
+          final List<WriteRequest> unprocessedItems = response.unprocessedItems().getOrDefault(tableName, List.of());
+
+          if (unprocessedItems.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+          }
+
+          unprocessedBatchWriteItemsCounter.increment(unprocessedItems.size());
+
+          if (attempt + 1 >= MAX_BATCH_WRITE_ATTEMPTS) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                unprocessedItems.size() + " unprocessed items remain after " + MAX_BATCH_WRITE_ATTEMPTS + " attempts"));
+          }
+
+          return AbstractDynamoDbStore.delayBatchWriteRetry(attempt)
+              .thenCompose(ignored -> batchWrite(unprocessedItems, attempt + 1));
+        });
   }
 
   /**
@@ -126,6 +248,106 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
    */
   public CompletableFuture<Optional<K>> take(final UUID identifier, final byte deviceId) {
     final Timer.Sample sample = Timer.start();
+    final boolean pooled = preKeyPool != null && preKeyPool.isEnabled();
+
+    return (pooled ? takeFromPool(preKeyPool, identifier, deviceId) : takeFromTable(identifier, deviceId))
+        .thenCompose(maybeKey -> maybeKey.isPresent()
+            ? decrementKeyCount(identifier, deviceId).thenApply(ignored -> maybeKey)
+            : CompletableFuture.completedFuture(maybeKey))
+        .whenComplete((maybeKey, throwable) -> sample.stop(Metrics.timer(takeKeyTimerName,
+            KEY_PRESENT_TAG_NAME, String.valueOf(maybeKey != null && maybeKey.isPresent()),
+            POOLED_TAG_NAME, String.valueOf(pooled))));
+  }
+
+  private CompletableFuture<Optional<K>> takeFromPool(final SingleUsePreKeyPool preKeyPool,
+      final UUID identifier, final byte deviceId) {
+
+    return takePooledKey(preKeyPool, identifier, deviceId, MAX_POOLED_KEY_ATTEMPTS)
+        .thenCompose(maybeKey -> {
+          if (maybeKey.isPresent()) {
+            return CompletableFuture.completedFuture(maybeKey);
+          }
+
+          // The pool is empty (or full of stale references). Only one caller at a time refills a device's pool; others
+          // claim keys directly from DynamoDB in the meantime.
+          return preKeyPool.tryLockRefill(identifier, deviceId)
+              .thenCompose(lockAcquired -> {
+                if (!lockAcquired) {
+                  return takeFromTable(identifier, deviceId);
+                }
+
+                return refillPool(preKeyPool, identifier, deviceId)
+                    .thenCompose(refilled -> refilled
+                        ? takePooledKey(preKeyPool, identifier, deviceId, MAX_POOLED_KEY_ATTEMPTS)
+                            .thenCompose(maybeRefilledKey -> maybeRefilledKey.isPresent()
+                                ? CompletableFuture.completedFuture(maybeRefilledKey)
+                                : takeFromTable(identifier, deviceId))
+                        : CompletableFuture.completedFuture(Optional.empty()));
+              });
+        });
+  }
+
+  /**
+   * Pops sort keys from the pool and tries to claim the corresponding items from DynamoDB until a key is claimed, the
+   * pool is empty, or the given number of attempts is exhausted.
+   */
+  private CompletableFuture<Optional<K>> takePooledKey(final SingleUsePreKeyPool preKeyPool,
+      final UUID identifier, final byte deviceId, final int attemptsRemaining) {
+
+    if (attemptsRemaining <= 0) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    return preKeyPool.pop(identifier, deviceId)
+        .thenCompose(maybeSortKey -> maybeSortKey
+            .map(sortKey -> dynamoDbAsyncClient.deleteItem(DeleteItemRequest.builder()
+                    .tableName(tableName)
+                    .key(Map.of(
+                        KEY_ACCOUNT_UUID, getPartitionKey(identifier),
+                        KEY_DEVICE_ID_KEY_ID, AttributeValues.fromByteArray(sortKey)))
+                    .returnValues(ReturnValue.ALL_OLD)
+                    .build())
+                .thenCompose(deleteItemResponse -> {
+                  if (deleteItemResponse.hasAttributes()) {
+                    return CompletableFuture.completedFuture(
+                        Optional.of(getPreKeyFromItem(deleteItemResponse.attributes())));
+                  }
+
+                  stalePooledKeyCounter.increment();
+                  return takePooledKey(preKeyPool, identifier, deviceId, attemptsRemaining - 1);
+                }))
+            .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty())));
+  }
+
+  /**
+   * Reads a batch of sort keys for the given device from DynamoDB and adds them to the device's pool. Callers must hold
+   * the device's refill lock.
+   *
+   * @return a future that yields {@code true} if any sort keys were added to the pool or {@code false} if the device has
+   * no stored keys
+   */
+  private CompletableFuture<Boolean> refillPool(final SingleUsePreKeyPool preKeyPool,
+      final UUID identifier, final byte deviceId) {
+
+    return dynamoDbAsyncClient.query(QueryRequest.builder()
+            .tableName(tableName)
+            .keyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
+            .expressionAttributeNames(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
+            .expressionAttributeValues(Map.of(
+                ":uuid", getPartitionKey(identifier),
+                ":sortprefix", getSortKeyPrefix(deviceId)))
+            .projectionExpression(KEY_DEVICE_ID_KEY_ID)
+            .limit(preKeyPool.getRefillBatchSize())
+            .consistentRead(false)
+            .build())
+        .thenApply(queryResponse -> queryResponse.items().stream()
+            .map(item -> item.get(KEY_DEVICE_ID_KEY_ID).b().asByteArray())
+            .toList())
+        .thenCompose(sortKeys -> preKeyPool.refill(identifier, deviceId, sortKeys)
+            .thenApply(ignored -> !sortKeys.isEmpty()));
+  }
+
+  private CompletableFuture<Optional<K>> takeFromTable(final UUID identifier, final byte deviceId) {
     final AttributeValue partitionKey = getPartitionKey(identifier);
     final AtomicInteger keysConsidered = new AtomicInteger(0);
 
@@ -154,14 +376,13 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
         .map(deleteItemResponse -> getPreKeyFromItem(deleteItemResponse.attributes()))
         .toFuture()
         .thenApply(Optional::ofNullable)
-        .whenComplete((maybeKey, throwable) -> {
-          sample.stop(Metrics.timer(takeKeyTimerName, KEY_PRESENT_TAG_NAME, String.valueOf(maybeKey != null && maybeKey.isPresent())));
-          keysConsideredForTakeDistributionSummary.record(keysConsidered.get());
-        });
+        .whenComplete((maybeKey, throwable) -> keysConsideredForTakeDistributionSummary.record(keysConsidered.get()));
   }
 
   /**
-   * Estimates the number of single-use pre-keys available for a given device.
+   * Estimates the number of single-use pre-keys available for a given device. Counts are read from the device's count
+   * item, which is reconciled with a full count of the device's keys if it's missing or hasn't been reconciled
+   * recently.
 
    * @param identifier the identifier for the account/identity with which the target device is associated
    * @param deviceId the identifier for the device within the given account/identity
@@ -172,6 +393,54 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
   public CompletableFuture<Integer> getCount(final UUID identifier, final byte deviceId) {
     final Timer.Sample sample = Timer.start();
 
+    return dynamoDbAsyncClient.getItem(GetItemRequest.builder()
+            .tableName(tableName)
+            .key(getKeyCountKey(identifier, deviceId))
+            .consistentRead(true)
+            .build())
+        .thenCompose(response -> {
+          final Optional<String> reconciliationReason;
+
+          if (!response.hasItem()) {
+            reconciliationReason = Optional.of("missing");
+          } else if (Instant.ofEpochSecond(AttributeValues.getLong(response.item(), ATTR_KEY_COUNT_RECONCILED, 0))
+              .plus(KEY_COUNT_RECONCILIATION_INTERVAL).isBefore(Instant.now())) {
+            reconciliationReason = Optional.of("expired");
+          } else {
+            reconciliationReason = Optional.empty();
+          }
+
+          if (reconciliationReason.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                Math.max(0, AttributeValues.getInt(response.item(), ATTR_KEY_COUNT, 0)));
+          }
+
+          Metrics.counter(reconcileKeyCountCounterName, RECONCILIATION_REASON_TAG_NAME, reconciliationReason.get())
+              .increment();
+
+          return countKeys(identifier, deviceId)
+              .thenCompose(keyCount -> {
+                if (response.hasItem()) {
+                  keyCountDriftDistributionSummary.record(
+                      Math.abs(AttributeValues.getInt(response.item(), ATTR_KEY_COUNT, 0) - keyCount));
+                }
+
+                return putKeyCount(identifier, deviceId, keyCount).thenApply(ignored -> keyCount);
+              });
+        })
+        .whenComplete((keyCount, throwable) -> {
+          sample.stop(getKeyCountTimer);
+
+          if (throwable == null && keyCount != null) {
+            availableKeyCountDistributionSummary.record(keyCount);
+          }
+        });
+  }
+
+  /**
+   * Counts the single-use pre-keys available for a given device by querying all of the device's keys.
+   */
+  private CompletableFuture<Integer> countKeys(final UUID identifier, final byte deviceId) {
     // Getting an accurate count from DynamoDB can be very confusing. See:
     //
     // - https://github.com/aws/aws-sdk-java/issues/693
@@ -189,14 +458,40 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
             .build()))
         .map(QueryResponse::count)
         .reduce(0, Integer::sum)
-        .toFuture()
-        .whenComplete((keyCount, throwable) -> {
-          sample.stop(getKeyCountTimer);
+        .toFuture();
+  }
 
-          if (throwable == null && keyCount != null) {
-            availableKeyCountDistributionSummary.record(keyCount);
-          }
-        });
+  private CompletableFuture<Void> putKeyCount(final UUID identifier, final byte deviceId, final int keyCount) {
+    return dynamoDbAsyncClient.putItem(PutItemRequest.builder()
+            .tableName(tableName)
+            .item(getKeyCountItem(identifier, deviceId, keyCount))
+            .build())
+        .thenRun(Util.NOOP);
+  }
+
+  private static Map<String, AttributeValue> getKeyCountItem(final UUID identifier, final byte deviceId,
+      final int keyCount) {
+
+    final Map<String, AttributeValue> item = new HashMap<>(getKeyCountKey(identifier, deviceId));
+    item.put(ATTR_KEY_COUNT, AttributeValues.fromInt(keyCount));
+    item.put(ATTR_KEY_COUNT_RECONCILED, AttributeValues.fromLong(Instant.now().getEpochSecond()));
+
+    return item;
+  }
+
+  private CompletableFuture<Void> decrementKeyCount(final UUID identifier, final byte deviceId) {
+    return dynamoDbAsyncClient.updateItem(UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(getKeyCountKey(identifier, deviceId))
+            .updateExpression("ADD #count :delta")
+            .conditionExpression("attribute_exists(#count)")
+            .expressionAttributeNames(Map.of("#count", ATTR_KEY_COUNT))
+            .expressionAttributeValues(Map.of(":delta", AttributeValues.fromInt(-1)))
+            .build())
+        .thenRun(Util.NOOP)
+        // The key has already been taken at this point, and a missing or inaccurate count will be reconciled the next
+        // time it's read, so there's nothing to be gained by failing the take
+        .exceptionally(ignored -> null);
   }
 
   /**
@@ -210,6 +505,7 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
   public CompletableFuture<Void> delete(final UUID identifier) {
     final Timer.Sample sample = Timer.start();
 
+    // This query matches the count items for all of the account's devices in addition to their keys
     return deleteItems(getPartitionKey(identifier), Flux.from(dynamoDbAsyncClient.queryPaginator(QueryRequest.builder()
             .tableName(tableName)
             .keyConditionExpression("#uuid = :uuid")
@@ -219,6 +515,9 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
             .consistentRead(true)
             .build())
         .items()))
+        .thenCompose(ignored -> preKeyPool != null
+            ? preKeyPool.clear(identifier)
+            : CompletableFuture.completedFuture(null))
         .thenRun(() -> sample.stop(deleteForAccountTimer));
   }
 
@@ -233,6 +532,7 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
   public CompletableFuture<Void> delete(final UUID identifier, final byte deviceId) {
     final Timer.Sample sample = Timer.start();
 
+    // Remove the device's count item along with its keys
     return deleteItems(getPartitionKey(identifier), Flux.from(dynamoDbAsyncClient.queryPaginator(QueryRequest.builder()
             .tableName(tableName)
             .keyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
@@ -243,7 +543,11 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
             .projectionExpression(KEY_DEVICE_ID_KEY_ID)
             .consistentRead(true)
             .build())
-        .items()))
+        .items())
+        .concatWith(Mono.just(getKeyCountKey(identifier, deviceId))))
+        .thenCompose(ignored -> preKeyPool != null
+            ? preKeyPool.clear(identifier, deviceId)
+            : CompletableFuture.completedFuture(null))
         .thenRun(() -> sample.stop(deleteForDeviceTimer));
   }
 
@@ -274,6 +578,16 @@ public abstract class SingleUsePreKeyStore<K extends PreKey<?>> {
     return AttributeValues.fromByteBuffer(byteBuffer.flip());
   }
 
+  private static Map<String, AttributeValue> getKeyCountKey(final UUID identifier, final byte deviceId) {
+    final ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[16]);
+    byteBuffer.putLong(KEY_COUNT_SORT_KEY_MARKER);
+    byteBuffer.putLong(deviceId);
+
+    return Map.of(
+        KEY_ACCOUNT_UUID, getPartitionKey(identifier),
+        KEY_DEVICE_ID_KEY_ID, AttributeValues.fromByteBuffer(byteBuffer.flip()));
+  }
+
   private static AttributeValue getSortKeyPrefix(final byte deviceId) {
     final ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[8]);
     byteBuffer.putLong(deviceId);
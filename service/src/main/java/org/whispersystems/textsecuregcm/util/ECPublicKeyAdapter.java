@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.util;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonSerializer;
@@ -32,7 +33,11 @@ public class ECPublicKeyAdapter {
         final JsonGenerator jsonGenerator,
         final SerializerProvider serializers) throws IOException {
 
-      jsonGenerator.writeString(Base64.getEncoder().encodeToString(ecPublicKey.serialize()));
+      if (jsonGenerator.canWriteBinaryNatively()) {
+        jsonGenerator.writeBinary(ecPublicKey.serialize());
+      } else {
+        jsonGenerator.writeString(Base64.getEncoder().encodeToString(ecPublicKey.serialize()));
+      }
     }
   }
 
@@ -42,10 +47,14 @@ public class ECPublicKeyAdapter {
     public ECPublicKey deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
       final byte[] ecPublicKeyBytes;
 
-      try {
-        ecPublicKeyBytes = Base64.getDecoder().decode(parser.getValueAsString());
-      } catch (final IllegalArgumentException e) {
-        throw new JsonParseException(parser, "Could not parse EC public key as a base64-encoded value", e);
+      if (parser.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT) {
+        ecPublicKeyBytes = parser.getBinaryValue();
+      } else {
+        try {
+          ecPublicKeyBytes = Base64.getDecoder().decode(parser.getValueAsString());
+        } catch (final IllegalArgumentException e) {
+          throw new JsonParseException(parser, "Could not parse EC public key as a base64-encoded value", e);
+        }
       }
 
       if (ecPublicKeyBytes.length == 0) {
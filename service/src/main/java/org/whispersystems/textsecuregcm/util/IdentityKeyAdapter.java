@@ -8,6 +8,7 @@ package org.whispersystems.textsecuregcm.util;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonSerializer;
@@ -33,7 +34,11 @@ public class IdentityKeyAdapter {
         final JsonGenerator jsonGenerator,
         final SerializerProvider serializers) throws IOException {
 
-      jsonGenerator.writeString(Base64.getEncoder().encodeToString(identityKey.serialize()));
+      if (jsonGenerator.canWriteBinaryNatively()) {
+        jsonGenerator.writeBinary(identityKey.serialize());
+      } else {
+        jsonGenerator.writeString(Base64.getEncoder().encodeToString(identityKey.serialize()));
+      }
     }
   }
 
@@ -43,10 +48,14 @@ public class IdentityKeyAdapter {
     public IdentityKey deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
       final byte[] identityKeyBytes;
 
-      try {
-        identityKeyBytes = Base64.getDecoder().decode(parser.getValueAsString());
-      } catch (final IllegalArgumentException e) {
-        throw new JsonParseException(parser, "Could not parse identity key as a base64-encoded value", e);
+      if (parser.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT) {
+        identityKeyBytes = parser.getBinaryValue();
+      } else {
+        try {
+          identityKeyBytes = Base64.getDecoder().decode(parser.getValueAsString());
+        } catch (final IllegalArgumentException e) {
+          throw new JsonParseException(parser, "Could not parse identity key as a base64-encoded value", e);
+        }
       }
 
       if (identityKeyBytes.length == 0) {
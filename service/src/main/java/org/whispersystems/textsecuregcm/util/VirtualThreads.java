@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Creates virtual-thread executors when the runtime supports them.
+ * <p>
+ * The server is compiled for a Java release that predates virtual threads, so this class locates the virtual thread
+ * API reflectively. When running on a JVM without virtual threads, {@link #isSupported()} returns {@code false} and
+ * callers are expected to fall back to platform thread pools.
+ */
+public class VirtualThreads {
+
+  @Nullable
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Indicates whether the current runtime supports virtual threads.
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that runs each task on a new virtual thread.
+   *
+   * @param namePrefix a prefix for the names of the executor's threads, which will be followed by a sequence number
+   *
+   * @return a new virtual-thread-per-task executor
+   *
+   * @throws UnsupportedOperationException if the current runtime does not support virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(final String namePrefix) {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads are not supported by this runtime");
+    }
+
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(namePrefix);
+    } catch (final RuntimeException | Error e) {
+      throw e;
+    } catch (final Throwable t) {
+      throw new IllegalStateException("Failed to create virtual thread executor", t);
+    }
+  }
+
+  /**
+   * Builds a handle equivalent to
+   * {@code namePrefix -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())}, or
+   * returns {@code null} if the virtual thread API isn't available.
+   */
+  @Nullable
+  private static MethodHandle findNewVirtualThreadPerTaskExecutor() {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      final Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+
+      final MethodHandle ofVirtual =
+          lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilderClass));
+
+      final MethodHandle name = lookup.findVirtual(virtualBuilderClass, "name",
+          MethodType.methodType(virtualBuilderClass, String.class, long.class));
+
+      final MethodHandle factory =
+          lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+
+      final MethodHandle newThreadPerTaskExecutor = lookup.findStatic(Executors.class,
+          "newThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+
+      // (String namePrefix) -> Thread.ofVirtual().name(namePrefix, 0)
+      final MethodHandle namedBuilder = MethodHandles.insertArguments(
+          MethodHandles.collectArguments(name, 0, ofVirtual), 1, 0L);
+
+      return MethodHandles.filterReturnValue(
+          MethodHandles.filterReturnValue(namedBuilder, factory.asType(
+              MethodType.methodType(ThreadFactory.class, virtualBuilderClass))),
+          newThreadPerTaskExecutor);
+    } catch (final ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the number of messages a connection may have awaiting acknowledgement from its client, and adapts that limit
+ * to the client's observed acknowledgement latency in the manner of TCP congestion control.
+ * <p>
+ * The window starts small and grows by one message per acknowledgement ("slow start") until it reaches a threshold,
+ * after which it grows by one message per window's worth of acknowledgements. If acknowledgement latency rises well
+ * above the lowest latency observed for the connection (which suggests messages are queueing somewhere between the
+ * server and the client) or a send fails, the window is halved. The window shrinks at most once per window's worth of
+ * acknowledgements so a single burst of slow responses doesn't collapse it entirely.
+ */
+class AdaptiveSendWindow {
+
+  private final int minWindow;
+  private final int maxWindow;
+
+  private int window;
+  private int slowStartThreshold;
+  private int inFlight = 0;
+
+  // Acknowledgements received since the window last grew (in congestion avoidance) or shrank
+  private int acknowledgementsSinceIncrease = 0;
+  private int acknowledgementsSinceDecrease = 0;
+
+  private long minLatencyNanos = Long.MAX_VALUE;
+  private double smoothedLatencyNanos = 0;
+
+  private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+  @VisibleForTesting
+  static final int INITIAL_WINDOW = 10;
+
+  // A smoothed latency more than this many times the minimum observed latency is treated as a sign of congestion
+  @VisibleForTesting
+  static final double LATENCY_CONGESTION_FACTOR = 2.0;
+
+  // Weight given to each new latency sample in the smoothed latency, as in TCP's smoothed RTT
+  private static final double LATENCY_SMOOTHING_FACTOR = 0.125;
+
+  AdaptiveSendWindow(final int minWindow, final int maxWindow) {
+    if (minWindow < 1 || maxWindow < minWindow) {
+      throw new IllegalArgumentException("Invalid window bounds: [" + minWindow + ", " + maxWindow + "]");
+    }
+
+    this.minWindow = minWindow;
+    this.maxWindow = maxWindow;
+    this.window = Math.max(minWindow, Math.min(INITIAL_WINDOW, maxWindow));
+    this.slowStartThreshold = maxWindow;
+  }
+
+  /**
+   * Requests permission to send a message.
+   *
+   * @return a future that completes when the message may be sent; callers must eventually call
+   * {@link #release(long, boolean)} for each completed future, or {@link #cancel(CompletableFuture)} if they no longer
+   * need the permit
+   */
+  synchronized CompletableFuture<Void> acquire() {
+    if (waiters.isEmpty() && inFlight < window) {
+      inFlight++;
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final CompletableFuture<Void> waiter = new CompletableFuture<>();
+    waiters.add(waiter);
+
+    return waiter;
+  }
+
+  /**
+   * Abandons a request for permission to send a message, releasing the permit if it had already been granted.
+   */
+  void cancel(final CompletableFuture<Void> permit) {
+    final List<CompletableFuture<Void>> grantedWaiters;
+
+    synchronized (this) {
+      if (waiters.remove(permit)) {
+        // The permit was never granted
+        return;
+      }
+
+      inFlight--;
+      grantedWaiters = grantWaiters();
+    }
+
+    grantedWaiters.forEach(waiter -> waiter.complete(null));
+  }
+
+  /**
+   * Releases a permit after a message has been acknowledged (or has failed) and adjusts the window accordingly.
+   *
+   * @param latencyNanos the time between sending the message and receiving the client's response
+   * @param success {@code true} if the client acknowledged the message or {@code false} if the send failed or timed out
+   */
+  void release(final long latencyNanos, final boolean success) {
+    final List<CompletableFuture<Void>> grantedWaiters;
+
+    synchronized (this) {
+      inFlight--;
+      acknowledgementsSinceDecrease++;
+
+      if (success) {
+        minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+        smoothedLatencyNanos = smoothedLatencyNanos == 0
+            ? latencyNanos
+            : smoothedLatencyNanos + LATENCY_SMOOTHING_FACTOR * (latencyNanos - smoothedLatencyNanos);
+      }
+
+      if (!success || smoothedLatencyNanos > minLatencyNanos * LATENCY_CONGESTION_FACTOR) {
+        decrease();
+      } else {
+        increase();
+      }
+
+      grantedWaiters = grantWaiters();
+    }
+
+    grantedWaiters.forEach(waiter -> waiter.complete(null));
+  }
+
+  synchronized int getWindow() {
+    return window;
+  }
+
+  private void increase() {
+    if (window < slowStartThreshold) {
+      window = Math.min(window + 1, maxWindow);
+    } else if (++acknowledgementsSinceIncrease >= window) {
+      acknowledgementsSinceIncrease = 0;
+      window = Math.min(window + 1, maxWindow);
+    }
+  }
+
+  private void decrease() {
+    if (acknowledgementsSinceDecrease < window) {
+      return;
+    }
+
+    acknowledgementsSinceDecrease = 0;
+    acknowledgementsSinceIncrease = 0;
+    window = Math.max(window / 2, minWindow);
+    slowStartThreshold = window;
+
+    // Forget the congested latency samples so the window can grow again once the backlog clears
+    smoothedLatencyNanos = 0;
+
+    if (window == minWindow) {
+      // The client's baseline latency may have changed (after moving to a slower network, for example), so re-learn it
+      // rather than treating the new baseline as permanent congestion
+      minLatencyNanos = Long.MAX_VALUE;
+    }
+  }
+
+  private List<CompletableFuture<Void>> grantWaiters() {
+    if (waiters.isEmpty() || inFlight >= window) {
+      return Collections.emptyList();
+    }
+
+    final List<CompletableFuture<Void>> grantedWaiters = new ArrayList<>();
+
+    while (inFlight < window && !waiters.isEmpty()) {
+      inFlight++;
+      grantedWaiters.add(waiters.poll());
+    }
+
+    return grantedWaiters;
+  }
+}
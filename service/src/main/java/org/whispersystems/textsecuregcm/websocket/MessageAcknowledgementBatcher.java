@@ -0,0 +1,178 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.whispersystems.textsecuregcm.metrics.MetricsUtil.name;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+
+/**
+ * Groups the messages acknowledged by a single connected device into batches and deletes each batch with a single
+ * call to {@link MessagesManager#delete(UUID, byte, Map)}. A batch is deleted once it reaches a maximum size or once a
+ * short linger interval has elapsed since its first acknowledgement, whichever comes first. Callers that don't expect
+ * further acknowledgements soon may {@link #flush()} the pending batch rather than waiting out the linger interval.
+ * <p>
+ * Once closed, a batcher deletes any pending acknowledgements immediately and deletes any subsequent acknowledgements
+ * (for example, responses that arrive while the connection is closing) without waiting to form a batch.
+ */
+class MessageAcknowledgementBatcher {
+
+  private final MessagesManager messagesManager;
+  private final UUID accountIdentifier;
+  private final byte deviceId;
+  private final int maxBatchSize;
+  private final Duration maxLinger;
+
+  private final Object pendingBatchLock = new Object();
+
+  @Nullable
+  private PendingBatch pendingBatch;
+
+  private boolean closed = false;
+
+  @VisibleForTesting
+  static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  @VisibleForTesting
+  static final Duration DEFAULT_MAX_LINGER = Duration.ofMillis(10);
+
+  private static final DistributionSummary BATCH_SIZE_DISTRIBUTION_SUMMARY = DistributionSummary
+      .builder(name(MessageAcknowledgementBatcher.class, "batchSize"))
+      .publishPercentiles(0.5, 0.75, 0.95)
+      .distributionStatisticExpiry(Duration.ofMinutes(10))
+      .register(Metrics.globalRegistry);
+
+  private record PendingBatch(Map<UUID, Long> serverTimestampsByGuid, CompletableFuture<Void> future) {
+  }
+
+  MessageAcknowledgementBatcher(final MessagesManager messagesManager,
+      final UUID accountIdentifier,
+      final byte deviceId) {
+
+    this(messagesManager, accountIdentifier, deviceId, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LINGER);
+  }
+
+  @VisibleForTesting
+  MessageAcknowledgementBatcher(final MessagesManager messagesManager,
+      final UUID accountIdentifier,
+      final byte deviceId,
+      final int maxBatchSize,
+      final Duration maxLinger) {
+
+    this.messagesManager = messagesManager;
+    this.accountIdentifier = accountIdentifier;
+    this.deviceId = deviceId;
+    this.maxBatchSize = maxBatchSize;
+    this.maxLinger = maxLinger;
+  }
+
+  /**
+   * Adds the given message to the pending batch of acknowledged messages.
+   *
+   * @param messageGuid the GUID of the acknowledged message
+   * @param serverTimestamp the server timestamp of the acknowledged message
+   *
+   * @return a future that completes once the batch containing the given message has been deleted
+   */
+  CompletableFuture<Void> acknowledge(final UUID messageGuid, final long serverTimestamp) {
+    final PendingBatch fullBatch;
+    final CompletableFuture<Void> future;
+
+    synchronized (pendingBatchLock) {
+      if (closed) {
+        return messagesManager.delete(accountIdentifier, deviceId, Map.of(messageGuid, serverTimestamp));
+      }
+
+      if (pendingBatch == null) {
+        final PendingBatch batch = new PendingBatch(new HashMap<>(), new CompletableFuture<>());
+        pendingBatch = batch;
+
+        CompletableFuture.delayedExecutor(maxLinger.toMillis(), TimeUnit.MILLISECONDS)
+            .execute(() -> flushPendingBatch(batch));
+      }
+
+      pendingBatch.serverTimestampsByGuid().put(messageGuid, serverTimestamp);
+      future = pendingBatch.future();
+
+      if (pendingBatch.serverTimestampsByGuid().size() >= maxBatchSize) {
+        fullBatch = pendingBatch;
+        pendingBatch = null;
+      } else {
+        fullBatch = null;
+      }
+    }
+
+    if (fullBatch != null) {
+      deleteBatch(fullBatch);
+    }
+
+    return future;
+  }
+
+  /**
+   * Deletes any pending acknowledgements immediately without waiting for the pending batch to fill or for its linger
+   * interval to elapse.
+   */
+  void flush() {
+    final PendingBatch batch;
+
+    synchronized (pendingBatchLock) {
+      batch = pendingBatch;
+      pendingBatch = null;
+    }
+
+    if (batch != null) {
+      deleteBatch(batch);
+    }
+  }
+
+  /**
+   * Deletes any pending acknowledgements immediately and stops batching subsequent acknowledgements.
+   */
+  void close() {
+    synchronized (pendingBatchLock) {
+      closed = true;
+    }
+
+    flush();
+  }
+
+  private void flushPendingBatch(final PendingBatch batch) {
+    synchronized (pendingBatchLock) {
+      if (pendingBatch != batch) {
+        // The batch filled up (or was flushed, or the batcher was closed) and was deleted before its linger time elapsed
+        return;
+      }
+
+      pendingBatch = null;
+    }
+
+    deleteBatch(batch);
+  }
+
+  private void deleteBatch(final PendingBatch batch) {
+    BATCH_SIZE_DISTRIBUTION_SUMMARY.record(batch.serverTimestampsByGuid().size());
+
+    messagesManager.delete(accountIdentifier, deviceId, batch.serverTimestampsByGuid())
+        .whenComplete((ignored, throwable) -> {
+          if (throwable != null) {
+            batch.future().completeExceptionally(throwable);
+          } else {
+            batch.future().complete(null);
+          }
+        });
+  }
+}
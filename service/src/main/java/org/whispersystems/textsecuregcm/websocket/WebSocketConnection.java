@@ -17,7 +17,9 @@ import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
@@ -32,6 +34,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 import org.apache.commons.lang3.StringUtils;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
@@ -39,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
 import org.whispersystems.textsecuregcm.controllers.MessageController;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatch;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.metrics.MessageMetrics;
@@ -90,6 +94,12 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       "sendMessages");
   private static final String SEND_MESSAGE_ERROR_COUNTER = MetricsUtil.name(WebSocketConnection.class,
       "sendMessageError");
+  private static final String SEND_WINDOW_SIZE_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "sendWindowSize");
+  private static final String DRAIN_THROUGHPUT_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "drainThroughput");
+  private static final String ENVELOPE_BATCH_SIZE_DISTRIBUTION_NAME = MetricsUtil.name(WebSocketConnection.class,
+      "envelopeBatchSize");
   private static final String STATUS_CODE_TAG = "status";
   private static final String STATUS_MESSAGE_TAG = "message";
   private static final String ERROR_TYPE_TAG = "errorType";
@@ -99,6 +109,13 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   @VisibleForTesting
   static final int MESSAGE_PUBLISHER_LIMIT_RATE = 100;
 
+  @VisibleForTesting
+  static final int MAX_ENVELOPE_BATCH_SIZE = 50;
+
+  // Stays well under the websocket's maximum binary message size to leave room for request framing
+  @VisibleForTesting
+  static final int MAX_ENVELOPE_BATCH_BYTES = 256 * 1024;
+
   @VisibleForTesting
   static final int MAX_CONSECUTIVE_RETRIES = 5;
   private static final long RETRY_DELAY_MILLIS = 1_000;
@@ -118,6 +135,9 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private final int sendFuturesTimeoutMillis;
 
   private final ScheduledExecutorService scheduledExecutorService;
+  private final MessageAcknowledgementBatcher acknowledgementBatcher;
+  private final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, MESSAGE_PUBLISHER_LIMIT_RATE);
+  private final AtomicInteger messagesAwaitingResponse = new AtomicInteger();
 
   private final Semaphore processStoredMessagesSemaphore = new Semaphore(1);
   private final AtomicReference<StoredMessageState> storedMessageState = new AtomicReference<>(
@@ -180,6 +200,8 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     this.scheduledExecutorService = scheduledExecutorService;
     this.messageDeliveryScheduler = messageDeliveryScheduler;
     this.clientReleaseManager = clientReleaseManager;
+    this.acknowledgementBatcher =
+        new MessageAcknowledgementBatcher(messagesManager, auth.getAccount().getUuid(), device.getId());
   }
 
   public void start() {
@@ -199,6 +221,9 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
       subscription.dispose();
     }
 
+    // Delete any messages the client has already acknowledged rather than waiting for the current batch to fill
+    acknowledgementBatcher.close();
+
     client.close(1000, "OK");
   }
 
@@ -211,10 +236,17 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     bytesSentMeter.mark(body.map(bytes -> bytes.length).orElse(0));
     MessageMetrics.measureAccountEnvelopeUuidMismatches(auth.getAccount(), message);
 
+    final long sendStartNanos = System.nanoTime();
+    messagesAwaitingResponse.incrementAndGet();
+
     // X-Signal-Key: false must be sent until Android stops assuming it missing means true
     return client.sendRequest("PUT", "/api/v1/message",
             List.of(HeaderUtils.X_SIGNAL_KEY + ": false", HeaderUtils.getTimestampHeader()), body)
+        .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS)
         .whenComplete((ignored, throwable) -> {
+          messagesAwaitingResponse.decrementAndGet();
+          sendWindow.release(System.nanoTime() - sendStartNanos, throwable == null);
+
           if (throwable != null) {
             sendFailuresMeter.mark();
           } else {
@@ -224,35 +256,98 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
           final CompletableFuture<Void> result;
           if (isSuccessResponse(response)) {
 
-            result = messagesManager.delete(auth.getAccount().getUuid(), device.getId(),
-                    storedMessageInfo.guid(), storedMessageInfo.serverTimestamp())
-                .thenApply(ignored -> null);
+            result = acknowledgementBatcher.acknowledge(storedMessageInfo.guid(), storedMessageInfo.serverTimestamp());
 
-            if (message.getType() != Envelope.Type.SERVER_DELIVERY_RECEIPT) {
-              recordMessageDeliveryDuration(message.getTimestamp(), device);
-              sendDeliveryReceiptFor(message);
+            // If no other responses are on their way, there's nothing to wait for; lingering would only delay this
+            // message's send future (and, with it, the end of the queue drain)
+            if (messagesAwaitingResponse.get() == 0) {
+              acknowledgementBatcher.flush();
             }
+
+            handleMessageDelivered(message);
           } else {
-              final List<Tag> tags = new ArrayList<>(
-                  List.of(
-                      Tag.of(STATUS_CODE_TAG, String.valueOf(response.getStatus())),
-                      UserAgentTagUtil.getPlatformTag(client.getUserAgent())
-                  ));
+            recordNonSuccessResponse(response);
+            result = CompletableFuture.completedFuture(null);
+          }
 
-              // TODO Remove this once we've identified the cause of message rejections from desktop clients
-              if (StringUtils.isNotBlank(response.getMessage())) {
-                tags.add(Tag.of(STATUS_MESSAGE_TAG, response.getMessage()));
-              }
+          return result;
+        });
+  }
 
-              Metrics.counter(NON_SUCCESS_RESPONSE_COUNTER_NAME, tags).increment();
+  /**
+   * Sends a batch of stored messages in a single {@code PUT /api/v1/messages} request to a client that has opted in to
+   * receiving message batches. A successful response acknowledges every message in the batch.
+   */
+  private CompletableFuture<Void> sendMessageBatch(final List<Envelope> messages) {
+    final EnvelopeBatch.Builder batchBuilder = EnvelopeBatch.newBuilder();
+    final Map<UUID, Long> serverTimestampsByGuid = new HashMap<>(messages.size());
 
-              result = CompletableFuture.completedFuture(null);
-            }
+    for (final Envelope message : messages) {
+      // clear ephemeral field from the envelope
+      batchBuilder.addEnvelopes(message.toBuilder().clearEphemeral());
+      serverTimestampsByGuid.put(UUID.fromString(message.getServerGuid()), message.getServerTimestamp());
+
+      MessageMetrics.measureAccountEnvelopeUuidMismatches(auth.getAccount(), message);
+    }
+
+    final byte[] body = batchBuilder.build().toByteArray();
+
+    sendMessageMeter.mark(messages.size());
+    sentMessageCounter.add(messages.size());
+    bytesSentMeter.mark(body.length);
+    Metrics.summary(ENVELOPE_BATCH_SIZE_DISTRIBUTION_NAME, Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent())))
+        .record(messages.size());
+
+    final long sendStartNanos = System.nanoTime();
+
+    return client.sendRequest("PUT", "/api/v1/messages", List.of(HeaderUtils.getTimestampHeader()), Optional.of(body))
+        .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS)
+        .whenComplete((ignored, throwable) -> {
+          sendWindow.release(System.nanoTime() - sendStartNanos, throwable == null);
+
+          if (throwable != null) {
+            sendFailuresMeter.mark();
+          } else {
+            messages.forEach(message -> MessageMetrics.measureOutgoingMessageLatency(message.getServerTimestamp(),
+                "websocket", client.getUserAgent(), clientReleaseManager));
+          }
+        }).thenCompose(response -> {
+          final CompletableFuture<Void> result;
+
+          if (isSuccessResponse(response)) {
+            result = messagesManager.delete(auth.getAccount().getUuid(), device.getId(), serverTimestampsByGuid);
+            messages.forEach(this::handleMessageDelivered);
+          } else {
+            recordNonSuccessResponse(response);
+            result = CompletableFuture.completedFuture(null);
+          }
 
           return result;
         });
   }
 
+  private void handleMessageDelivered(final Envelope message) {
+    if (message.getType() != Envelope.Type.SERVER_DELIVERY_RECEIPT) {
+      recordMessageDeliveryDuration(message.getTimestamp(), device);
+      sendDeliveryReceiptFor(message);
+    }
+  }
+
+  private void recordNonSuccessResponse(final WebSocketResponseMessage response) {
+    final List<Tag> tags = new ArrayList<>(
+        List.of(
+            Tag.of(STATUS_CODE_TAG, String.valueOf(response.getStatus())),
+            UserAgentTagUtil.getPlatformTag(client.getUserAgent())
+        ));
+
+    // TODO Remove this once we've identified the cause of message rejections from desktop clients
+    if (StringUtils.isNotBlank(response.getMessage())) {
+      tags.add(Tag.of(STATUS_MESSAGE_TAG, response.getMessage()));
+    }
+
+    Metrics.counter(NON_SUCCESS_RESPONSE_COUNTER_NAME, tags).increment();
+  }
+
   public static void recordMessageDeliveryDuration(long timestamp, Device messageDestinationDevice) {
     final long messageDeliveryDuration = System.currentTimeMillis() - timestamp;
     messageTime.update(messageDeliveryDuration);
@@ -355,38 +450,60 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
 
     final AtomicBoolean hasErrored = new AtomicBoolean();
 
-    final Disposable subscription = Flux.from(messages)
+    final long drainStartNanos = System.nanoTime();
+    final AtomicInteger messagesSent = new AtomicInteger();
+
+    final Flux<Envelope> envelopes = Flux.from(messages)
         .name(SEND_MESSAGES_FLUX_NAME)
         .tap(Micrometer.metrics(Metrics.globalRegistry))
-        .limitRate(MESSAGE_PUBLISHER_LIMIT_RATE)
-        .flatMapSequential(envelope ->
-            Mono.fromFuture(() -> sendMessage(envelope)
-                    .orTimeout(sendFuturesTimeoutMillis, TimeUnit.MILLISECONDS))
-                .onErrorResume(
-                    // let the first error pass through to terminate the subscription
-                    e -> {
-                      final boolean firstError = !hasErrored.getAndSet(true);
-                      measureSendMessageErrors(e, firstError);
-
-                      return !firstError;
-                    },
-                    // otherwise just emit nothing
-                    e -> Mono.empty()
-                )
-        )
+        .limitRate(MESSAGE_PUBLISHER_LIMIT_RATE);
+
+    // Clients that opt in receive their initial backlog in batches; messages that arrive once the queue has been
+    // drained are still sent one at a time so they're delivered without waiting for a batch to form
+    final boolean sendBatches = client.shouldReceiveMessageBatches() && !sentInitialQueueEmptyMessage.get();
+
+    final Flux<Integer> sentCounts = sendBatches
+        ? envelopes
+            .filter(envelope -> !discardUndeliverableStory(envelope))
+            .bufferUntil(new EnvelopeBatchBoundary(), true)
+            .flatMapSequential(batch -> handleSendErrors(
+                acquireSendPermit().then(Mono.fromFuture(() -> sendMessageBatch(batch))).thenReturn(batch.size()),
+                hasErrored))
+        : envelopes
+            .flatMapSequential(envelope -> handleSendErrors(
+                Mono.defer(() -> sendMessage(envelope)).thenReturn(1),
+                hasErrored));
+
+    final Disposable subscription = sentCounts
         .subscribeOn(messageDeliveryScheduler)
         .subscribe(
-            // no additional consumer of values - it is Flux<Void> by now
-            null,
+            messagesSent::addAndGet,
             // this first error will terminate the stream, but we may get multiple errors from in-flight messages
             queueCleared::completeExceptionally,
             // completion
-            () -> queueCleared.complete(null)
+            () -> {
+              recordDrainMetrics(messagesSent.get(), System.nanoTime() - drainStartNanos);
+              queueCleared.complete(null);
+            }
         );
 
     messageSubscription.set(subscription);
   }
 
+  private <T> Mono<T> handleSendErrors(final Mono<T> send, final AtomicBoolean hasErrored) {
+    return send.onErrorResume(
+        // let the first error pass through to terminate the subscription
+        e -> {
+          final boolean firstError = !hasErrored.getAndSet(true);
+          measureSendMessageErrors(e, firstError);
+
+          return !firstError;
+        },
+        // otherwise just emit nothing
+        e -> Mono.empty()
+    );
+  }
+
   private void measureSendMessageErrors(Throwable e, final boolean terminal) {
     final String errorType;
     if (e instanceof TimeoutException) {
@@ -405,15 +522,56 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
     Metrics.counter(SEND_MESSAGE_ERROR_COUNTER, tags).increment();
   }
 
-  private CompletableFuture<Void> sendMessage(Envelope envelope) {
-    final UUID messageGuid = UUID.fromString(envelope.getServerGuid());
+  private Mono<Void> sendMessage(Envelope envelope) {
+    if (discardUndeliverableStory(envelope)) {
+      return Mono.empty();
+    } else {
+      final UUID messageGuid = UUID.fromString(envelope.getServerGuid());
+
+      return acquireSendPermit()
+          .then(Mono.fromFuture(() ->
+              sendMessage(envelope, new StoredMessageInfo(messageGuid, envelope.getServerTimestamp()))));
+    }
+  }
 
+  /**
+   * Deletes the given message without sending it if it's a story and the client doesn't accept stories.
+   *
+   * @return {@code true} if the message was discarded or {@code false} if it should be sent to the client
+   */
+  private boolean discardUndeliverableStory(final Envelope envelope) {
     if (envelope.getStory() && !client.shouldDeliverStories()) {
-      messagesManager.delete(auth.getAccount().getUuid(), device.getId(), messageGuid, envelope.getServerTimestamp());
+      messagesManager.delete(auth.getAccount().getUuid(), device.getId(), UUID.fromString(envelope.getServerGuid()),
+          envelope.getServerTimestamp());
 
-      return CompletableFuture.completedFuture(null);
-    } else {
-      return sendMessage(envelope, new StoredMessageInfo(messageGuid, envelope.getServerTimestamp()));
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Waits until the client has few enough unacknowledged messages that another may be sent. The permit is released
+   * once the client responds to the message or the send fails or times out.
+   */
+  private Mono<Void> acquireSendPermit() {
+    return Mono.defer(() -> {
+      final CompletableFuture<Void> permit = sendWindow.acquire();
+
+      return Mono.fromFuture(permit, true)
+          .doOnCancel(() -> sendWindow.cancel(permit));
+    });
+  }
+
+  private void recordDrainMetrics(final int messagesSent, final long drainDurationNanos) {
+    final Tags tags = Tags.of(UserAgentTagUtil.getPlatformTag(client.getUserAgent()));
+
+    Metrics.summary(SEND_WINDOW_SIZE_DISTRIBUTION_NAME, tags).record(sendWindow.getWindow());
+
+    if (messagesSent > 0 && drainDurationNanos > 0) {
+      // Messages per second
+      Metrics.summary(DRAIN_THROUGHPUT_DISTRIBUTION_NAME, tags)
+          .record(messagesSent * (double) TimeUnit.SECONDS.toNanos(1) / drainDurationNanos);
     }
   }
 
@@ -482,4 +640,31 @@ public class WebSocketConnection implements MessageAvailabilityListener, Displac
   private record StoredMessageInfo(UUID guid, long serverTimestamp) {
 
   }
+
+  /**
+   * Starts a new batch whenever adding the next message would exceed the maximum number of messages or bytes per batch.
+   * A single message larger than the byte limit is sent in a batch of its own.
+   */
+  private static class EnvelopeBatchBoundary implements Predicate<Envelope> {
+
+    private int batchSize = 0;
+    private int batchBytes = 0;
+
+    @Override
+    public boolean test(final Envelope envelope) {
+      final int envelopeBytes = envelope.getSerializedSize();
+      final boolean startNewBatch = batchSize > 0 &&
+          (batchSize >= MAX_ENVELOPE_BATCH_SIZE || batchBytes + envelopeBytes > MAX_ENVELOPE_BATCH_BYTES);
+
+      if (startNewBatch) {
+        batchSize = 0;
+        batchBytes = 0;
+      }
+
+      batchSize++;
+      batchBytes += envelopeBytes;
+
+      return startNewBatch;
+    }
+  }
 }
@@ -31,6 +31,7 @@ import org.whispersystems.textsecuregcm.controllers.SecureValueRecovery2Controll
 import org.whispersystems.textsecuregcm.experiment.ExperimentEnrollmentManager;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
 import org.whispersystems.textsecuregcm.storage.Account;
@@ -39,6 +40,7 @@ import org.whispersystems.textsecuregcm.storage.Accounts;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 import org.whispersystems.textsecuregcm.storage.KeysManager;
+import org.whispersystems.textsecuregcm.storage.LocalAccountCache;
 import org.whispersystems.textsecuregcm.storage.MessagesCache;
 import org.whispersystems.textsecuregcm.storage.MessagesDynamoDb;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
@@ -106,8 +108,9 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
     Scheduler messageDeliveryScheduler = Schedulers.fromExecutorService(
         environment.lifecycle().executorService("messageDelivery-%d").maxThreads(4)
             .build());
-    ExecutorService keyspaceNotificationDispatchExecutor = environment.lifecycle()
-        .executorService(name(getClass(), "keyspaceNotification-%d")).maxThreads(4).build();
+    KeyspaceNotificationDispatcher keyspaceNotificationDispatcher =
+        new KeyspaceNotificationDispatcher(name(getClass(), "keyspaceNotification"), 4, Integer.MAX_VALUE);
+    environment.lifecycle().manage(keyspaceNotificationDispatcher);
     ExecutorService messageDeletionExecutor = environment.lifecycle()
         .executorService(name(getClass(), "messageDeletion-%d")).maxThreads(4).build();
     ExecutorService secureValueRecoveryExecutor = environment.lifecycle()
@@ -167,6 +170,7 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
         configuration.getDynamoDbTables().getKemKeys().getTableName(),
         configuration.getDynamoDbTables().getEcSignedPreKeys().getTableName(),
         configuration.getDynamoDbTables().getKemLastResortKeys().getTableName(),
+        cacheCluster,
         dynamicConfigurationManager);
     MessagesDynamoDb messagesDynamoDb = new MessagesDynamoDb(dynamoDbClient, dynamoDbAsyncClient,
         configuration.getDynamoDbTables().getMessages().getTableName(),
@@ -186,9 +190,9 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
     SecureStorageClient secureStorageClient = new SecureStorageClient(storageCredentialsGenerator,
         storageServiceExecutor, storageServiceRetryExecutor, configuration.getSecureStorageServiceConfiguration());
     ClientPresenceManager clientPresenceManager = new ClientPresenceManager(clientPresenceCluster,
-        Executors.newSingleThreadScheduledExecutor(), keyspaceNotificationDispatchExecutor);
+        Executors.newSingleThreadScheduledExecutor(), keyspaceNotificationDispatcher);
     MessagesCache messagesCache = new MessagesCache(messageInsertCacheCluster, messageReadDeleteCluster,
-        keyspaceNotificationDispatchExecutor, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC());
+        keyspaceNotificationDispatcher, messageDeliveryScheduler, messageDeletionExecutor, Clock.systemUTC());
     ProfilesManager profilesManager = new ProfilesManager(profiles, cacheCluster);
     ReportMessageDynamoDb reportMessageDynamoDb = new ReportMessageDynamoDb(dynamoDbClient,
         configuration.getDynamoDbTables().getReportMessage().getTableName(),
@@ -199,11 +203,14 @@ public class AssignUsernameCommand extends EnvironmentCommand<WhisperServerConfi
         reportMessageManager, messageDeletionExecutor);
     AccountLockManager accountLockManager = new AccountLockManager(dynamoDbClient,
         configuration.getDynamoDbTables().getDeletedAccountsLock().getTableName());
+    LocalAccountCache localAccountCache = new LocalAccountCache(cacheCluster);
     AccountsManager accountsManager = new AccountsManager(accounts, phoneNumberIdentifiers, cacheCluster,
-        accountLockManager, keys, messagesManager, profilesManager,
+        localAccountCache, accountLockManager, keys, messagesManager, profilesManager,
             secureStorageClient, secureValueRecovery2Client, clientPresenceManager,
         experimentEnrollmentManager, registrationRecoveryPasswordsManager, accountLockExecutor, Clock.systemUTC());
 
+    environment.lifecycle().manage(localAccountCache);
+
     final String usernameHash = namespace.getString("usernameHash");
     final String encryptedUsername = namespace.getString("encryptedUsername");
     final UUID accountIdentifier = UUID.fromString(namespace.getString("aci"));
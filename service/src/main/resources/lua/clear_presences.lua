@@ -0,0 +1,13 @@
+-- Clears each of the given presence keys that is still held by the given presence manager. All keys must hash to the
+-- same slot.
+local presenceUuid = ARGV[1]
+local cleared      = 0
+
+for _, presenceKey in ipairs(KEYS) do
+    if redis.call("GET", presenceKey) == presenceUuid then
+        redis.call("DEL", presenceKey)
+        cleared = cleared + 1
+    end
+end
+
+return cleared
@@ -0,0 +1,14 @@
+-- Publishes an event to the channel of the presence manager holding a presence key; returns 1 if the key was held by
+-- a presence manager or 0 otherwise
+local presenceKey          = KEYS[1]
+local managerChannelPrefix = ARGV[1]
+local event                = ARGV[2]
+
+local managerId = redis.call("GET", presenceKey)
+
+if managerId then
+    redis.call("PUBLISH", managerChannelPrefix .. managerId, event)
+    return 1
+end
+
+return 0
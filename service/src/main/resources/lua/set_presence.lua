@@ -0,0 +1,14 @@
+-- Sets a presence key and, if it was previously held by a different presence manager, publishes an event to that
+-- manager's channel to tell it that its client has connected elsewhere
+local presenceKey          = KEYS[1]
+local managerId            = ARGV[1]
+local expireSeconds        = ARGV[2]
+local managerChannelPrefix = ARGV[3]
+local displacedEvent       = ARGV[4]
+
+local previousManagerId = redis.call("GET", presenceKey)
+redis.call("SETEX", presenceKey, expireSeconds, managerId)
+
+if previousManagerId and previousManagerId ~= managerId then
+    redis.call("PUBLISH", managerChannelPrefix .. previousManagerId, displacedEvent)
+end
@@ -5,8 +5,10 @@
 -- and the deficit amount otherwise.
 -- However, 'check-only' operation doesn't modify the bucket, while 'use-if-available' (if successful)
 -- reduces the amount of available tokens by the requested amount.
-
-local bucketId = KEYS[1]
+--
+-- Any number of buckets (which must all be in the same cluster slot) may be passed as keys. The requested amount is
+-- checked against every bucket, and tokens are only used if every bucket has enough tokens; if any bucket falls short,
+-- no bucket is modified and the largest deficit is returned.
 
 local bucketSize = tonumber(ARGV[1])
 local refillRatePerMillis = tonumber(ARGV[2])
@@ -17,32 +19,40 @@ local useTokens = ARGV[5] and string.lower(ARGV[5]) == "true"
 local SIZE_FIELD = "s"
 local TIME_FIELD = "t"
 
-local changesMade = false
-local tokensRemaining
-local lastUpdateTimeMillis
-
-local tokensRemainingStr, lastUpdateTimeMillisStr = unpack(redis.call("HMGET", bucketId, SIZE_FIELD, TIME_FIELD))
-if tokensRemainingStr and lastUpdateTimeMillisStr then
-    tokensRemaining = tonumber(tokensRemainingStr)
-    lastUpdateTimeMillis = tonumber(lastUpdateTimeMillisStr)
-else
-    tokensRemaining = bucketSize
-    lastUpdateTimeMillis = currentTimeMillis
-end
+local availableAmounts = {}
+local deficit = 0
 
-local elapsedTime = currentTimeMillis - lastUpdateTimeMillis
-local availableAmount = math.min(
-    bucketSize,
-    math.floor(tokensRemaining + (elapsedTime * refillRatePerMillis))
-)
+for i, bucketId in ipairs(KEYS) do
+    local tokensRemaining
+    local lastUpdateTimeMillis
 
-if availableAmount >= requestedAmount then
-    if useTokens then
-        tokensRemaining = availableAmount - requestedAmount
+    local tokensRemainingStr, lastUpdateTimeMillisStr = unpack(redis.call("HMGET", bucketId, SIZE_FIELD, TIME_FIELD))
+    if tokensRemainingStr and lastUpdateTimeMillisStr then
+        tokensRemaining = tonumber(tokensRemainingStr)
+        lastUpdateTimeMillis = tonumber(lastUpdateTimeMillisStr)
+    else
+        tokensRemaining = bucketSize
         lastUpdateTimeMillis = currentTimeMillis
-        changesMade = true
     end
-    if changesMade then
+
+    local elapsedTime = currentTimeMillis - lastUpdateTimeMillis
+    availableAmounts[i] = math.min(
+        bucketSize,
+        math.floor(tokensRemaining + (elapsedTime * refillRatePerMillis))
+    )
+
+    if availableAmounts[i] < requestedAmount then
+        deficit = math.max(deficit, requestedAmount - availableAmounts[i])
+    end
+end
+
+if deficit > 0 then
+    return deficit
+end
+
+if useTokens then
+    for i, bucketId in ipairs(KEYS) do
+        local tokensRemaining = availableAmounts[i] - requestedAmount
         local tokensUsed = bucketSize - tokensRemaining
         -- Storing a 'full' bucket (i.e. tokensUsed == 0) is equivalent of not storing any state at all
         -- (in which case a bucket will be just initialized from the input configs as a 'full' one).
@@ -50,13 +60,12 @@ if availableAmount >= requestedAmount then
         -- or we just delete the key if the bucket is full.
         if tokensUsed > 0 then
             local ttlMillis = math.ceil(tokensUsed / refillRatePerMillis)
-            redis.call("HSET", bucketId, SIZE_FIELD, tokensRemaining, TIME_FIELD, lastUpdateTimeMillis)
+            redis.call("HSET", bucketId, SIZE_FIELD, tokensRemaining, TIME_FIELD, currentTimeMillis)
             redis.call("PEXPIRE", bucketId, ttlMillis)
         else
             redis.call("DEL", bucketId)
         end
     end
-    return 0
-else
-    return requestedAmount - availableAmount
 end
+
+return 0
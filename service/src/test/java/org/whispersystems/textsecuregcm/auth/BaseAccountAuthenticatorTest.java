@@ -177,6 +177,39 @@ class BaseAccountAuthenticatorTest {
     verify(accountsManager, never()).updateDeviceAuthentication(any(), any(), any());;
   }
 
+  @Test
+  void testAuthenticateCachedVerification() {
+    final UUID uuid = UUID.randomUUID();
+    final byte deviceId = 1;
+    final String password = "12345";
+
+    final Account account = mock(Account.class);
+    final Device device = mock(Device.class);
+    final SaltedTokenHash credentials = mock(SaltedTokenHash.class);
+
+    clock.unpin();
+    when(accountsManager.getByAccountIdentifier(uuid)).thenReturn(Optional.of(account));
+    when(account.getUuid()).thenReturn(uuid);
+    when(account.getDevice(deviceId)).thenReturn(Optional.of(device));
+    when(account.isEnabled()).thenReturn(true);
+    when(device.getId()).thenReturn(deviceId);
+    when(device.isEnabled()).thenReturn(true);
+    when(device.getAuthTokenHash()).thenReturn(credentials);
+    when(credentials.verify(password)).thenReturn(true);
+    when(credentials.getVersion()).thenReturn(SaltedTokenHash.CURRENT_VERSION);
+
+    assertThat(baseAccountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password), true))
+        .isPresent();
+
+    assertThat(baseAccountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password), true))
+        .isPresent();
+
+    assertThat(baseAccountAuthenticator.authenticate(new BasicCredentials(uuid.toString(), password + "incorrect"), true))
+        .isEmpty();
+
+    verify(credentials, times(1)).verify(password);
+  }
+
   @Test
   void testAuthenticateNonDefaultDevice() {
     final UUID uuid = UUID.randomUUID();
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.auth;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VerifiedCredentialsCacheTest {
+
+  private VerifiedCredentialsCache verifiedCredentialsCache;
+
+  private static final UUID ACCOUNT_IDENTIFIER = UUID.randomUUID();
+  private static final byte DEVICE_ID = 1;
+  private static final String TOKEN = "token";
+
+  @BeforeEach
+  void setUp() {
+    verifiedCredentialsCache = new VerifiedCredentialsCache(100, Duration.ofMinutes(1));
+  }
+
+  @Test
+  void verifyCached() {
+    final SaltedTokenHash saltedTokenHash = spy(SaltedTokenHash.generateFor(TOKEN));
+
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+
+    verify(saltedTokenHash, times(1)).verify(TOKEN);
+  }
+
+  @Test
+  void verifyIncorrectToken() {
+    final SaltedTokenHash saltedTokenHash = spy(SaltedTokenHash.generateFor(TOKEN));
+
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+    assertFalse(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN + "incorrect"));
+    assertFalse(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN + "incorrect"));
+
+    verify(saltedTokenHash, times(2)).verify(TOKEN + "incorrect");
+  }
+
+  @Test
+  void verifyChangedCredentials() {
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, SaltedTokenHash.generateFor(TOKEN), TOKEN));
+
+    final SaltedTokenHash changedSaltedTokenHash = SaltedTokenHash.generateFor("changed");
+
+    assertFalse(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, changedSaltedTokenHash, TOKEN));
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, changedSaltedTokenHash, "changed"));
+  }
+
+  @Test
+  void verifyDifferentDevice() {
+    final SaltedTokenHash saltedTokenHash = spy(SaltedTokenHash.generateFor(TOKEN));
+
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+    assertTrue(verifiedCredentialsCache.verify(ACCOUNT_IDENTIFIER, (byte) (DEVICE_ID + 1), saltedTokenHash, TOKEN));
+
+    verify(saltedTokenHash, times(2)).verify(TOKEN);
+  }
+
+  @Test
+  void verifyExpired() {
+    final VerifiedCredentialsCache expiringCache = new VerifiedCredentialsCache(100, Duration.ZERO);
+    final SaltedTokenHash saltedTokenHash = spy(SaltedTokenHash.generateFor(TOKEN));
+
+    assertTrue(expiringCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+    assertTrue(expiringCache.verify(ACCOUNT_IDENTIFIER, DEVICE_ID, saltedTokenHash, TOKEN));
+
+    verify(saltedTokenHash, times(2)).verify(TOKEN);
+  }
+}
@@ -9,15 +9,17 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.clearInvocations;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
@@ -28,13 +30,18 @@ import io.dropwizard.auth.PolymorphicAuthValueFactoryProvider;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import io.dropwizard.testing.junit5.ResourceExtension;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -54,6 +61,8 @@ import org.whispersystems.textsecuregcm.auth.OptionalAccess;
 import org.whispersystems.textsecuregcm.entities.ECPreKey;
 import org.whispersystems.textsecuregcm.entities.ECSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
+import org.whispersystems.textsecuregcm.entities.PreKeyBatchRequest;
+import org.whispersystems.textsecuregcm.entities.PreKeyBatchResponse;
 import org.whispersystems.textsecuregcm.entities.PreKeyCount;
 import org.whispersystems.textsecuregcm.entities.PreKeyResponse;
 import org.whispersystems.textsecuregcm.entities.PreKeyState;
@@ -61,6 +70,7 @@ import org.whispersystems.textsecuregcm.entities.SignedPreKey;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.identity.IdentityType;
 import org.whispersystems.textsecuregcm.identity.PniServiceIdentifier;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.limits.RateLimiter;
 import org.whispersystems.textsecuregcm.limits.RateLimiters;
 import org.whispersystems.textsecuregcm.mappers.CompletionExceptionMapper;
@@ -138,7 +148,7 @@ class KeysControllerTest {
           AuthenticatedAccount.class, DisabledPermittedAuthenticatedAccount.class)))
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
       .addResource(new ServerRejectedExceptionMapper())
-      .addResource(new KeysController(rateLimiters, KEYS, accounts))
+      .addResource(new KeysController(rateLimiters, KEYS, accounts, 1.0))
       .addResource(new RateLimitExceededExceptionMapper())
       .build();
 
@@ -228,12 +238,28 @@ class KeysControllerTest {
     when(existsAccount.getNumber()).thenReturn(EXISTS_NUMBER);
     when(existsAccount.getUnidentifiedAccessKey()).thenReturn(Optional.of("1337".getBytes()));
 
-    when(accounts.getByServiceIdentifier(any())).thenReturn(Optional.empty());
+    when(accounts.getByServiceIdentifierAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(accounts.getByServiceIdentifier(new AciServiceIdentifier(EXISTS_UUID))).thenReturn(Optional.of(existsAccount));
-    when(accounts.getByServiceIdentifier(new PniServiceIdentifier(EXISTS_PNI))).thenReturn(Optional.of(existsAccount));
+    when(accounts.getByServiceIdentifierAsync(new AciServiceIdentifier(EXISTS_UUID)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(existsAccount)));
+    when(accounts.getByServiceIdentifierAsync(new PniServiceIdentifier(EXISTS_PNI)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(existsAccount)));
+
+    when(accounts.getByServiceIdentifiersAsync(any())).thenAnswer(invocation -> {
+      final Collection<ServiceIdentifier> serviceIdentifiers = invocation.getArgument(0);
+
+      return CompletableFuture.completedFuture(serviceIdentifiers.stream()
+          .filter(serviceIdentifier -> serviceIdentifier.equals(new AciServiceIdentifier(EXISTS_UUID))
+              || serviceIdentifier.equals(new PniServiceIdentifier(EXISTS_PNI)))
+          .collect(Collectors.toMap(Function.identity(), ignored -> existsAccount)));
+    });
 
     when(rateLimiters.getPreKeysLimiter()).thenReturn(rateLimiter);
+    when(rateLimiters.getPreKeysBatchLimiter()).thenReturn(rateLimiter);
+    when(rateLimiter.validateAsync(anyString())).thenReturn(CompletableFuture.completedFuture(null));
+    when(rateLimiter.validateAsync(anyString(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+    when(rateLimiter.validateAllAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
 
     when(KEYS.store(any(), anyByte(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
     when(KEYS.getEcSignedPreKey(any(), anyByte())).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
@@ -470,9 +496,10 @@ class KeysControllerTest {
   }
 
   @Test
-  void testGetKeysRateLimited() throws RateLimitExceededException {
+  void testGetKeysRateLimited() {
     Duration retryAfter = Duration.ofSeconds(31);
-    doThrow(new RateLimitExceededException(retryAfter, true)).when(rateLimiter).validate(anyString());
+    when(rateLimiter.validateAsync(anyString()))
+        .thenReturn(CompletableFuture.failedFuture(new RateLimitExceededException(retryAfter, true)));
 
     Response result = resources.getJerseyTest()
         .target(String.format("/v2/keys/PNI:%s/*", EXISTS_PNI))
@@ -682,6 +709,121 @@ class KeysControllerTest {
   }
 
 
+  @Test
+  void validBatchRequest() {
+    when(KEYS.takeEC(any(), anyByte())).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(KEYS.takeEC(EXISTS_UUID, SAMPLE_DEVICE_ID)).thenReturn(
+        CompletableFuture.completedFuture(Optional.of(SAMPLE_KEY)));
+    when(KEYS.takeEC(EXISTS_UUID, SAMPLE_DEVICE_ID2)).thenReturn(
+        CompletableFuture.completedFuture(Optional.of(SAMPLE_KEY2)));
+    when(KEYS.takeEC(EXISTS_PNI, SAMPLE_DEVICE_ID)).thenReturn(
+        CompletableFuture.completedFuture(Optional.of(SAMPLE_KEY_PNI)));
+
+    final PreKeyBatchRequest request = new PreKeyBatchRequest(List.of(
+        new PreKeyBatchRequest.Target(new AciServiceIdentifier(EXISTS_UUID), SAMPLE_DEVICE_ID),
+        new PreKeyBatchRequest.Target(new AciServiceIdentifier(NOT_EXISTS_UUID), null),
+        new PreKeyBatchRequest.Target(new PniServiceIdentifier(EXISTS_PNI), SAMPLE_DEVICE_ID),
+        new PreKeyBatchRequest.Target(new AciServiceIdentifier(EXISTS_UUID), SAMPLE_DEVICE_ID2)));
+
+    final PreKeyBatchResponse response = resources.getJerseyTest()
+        .target("/v2/keys/batch")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .post(Entity.entity(request, MediaType.APPLICATION_JSON_TYPE), PreKeyBatchResponse.class);
+
+    assertThat(response.elements()).hasSize(2);
+
+    final PreKeyBatchResponse.Element aciElement = response.elements().get(0);
+    assertEquals(new AciServiceIdentifier(EXISTS_UUID), aciElement.identifier());
+    assertEquals(IDENTITY_KEY, aciElement.identityKey());
+    assertThat(aciElement.devices()).hasSize(2);
+    assertEquals(SAMPLE_DEVICE_ID, aciElement.devices().get(0).getDeviceId());
+    assertEquals(SAMPLE_KEY, aciElement.devices().get(0).getPreKey());
+    assertEquals(SAMPLE_DEVICE_ID2, aciElement.devices().get(1).getDeviceId());
+    assertEquals(SAMPLE_KEY2, aciElement.devices().get(1).getPreKey());
+
+    final PreKeyBatchResponse.Element pniElement = response.elements().get(1);
+    assertEquals(new PniServiceIdentifier(EXISTS_PNI), pniElement.identifier());
+    assertEquals(PNI_IDENTITY_KEY, pniElement.identityKey());
+    assertThat(pniElement.devices()).hasSize(1);
+    assertEquals(SAMPLE_KEY_PNI, pniElement.devices().get(0).getPreKey());
+    assertEquals(SAMPLE_PNI_REGISTRATION_ID, pniElement.devices().get(0).getRegistrationId());
+
+    // Requests for the same identity should share an account lookup and count once against the rate limit
+    verify(accounts).getByServiceIdentifiersAsync(Set.of(new AciServiceIdentifier(EXISTS_UUID),
+        new AciServiceIdentifier(NOT_EXISTS_UUID), new PniServiceIdentifier(EXISTS_PNI)));
+    verify(rateLimiter).validateAsync(AuthHelper.VALID_UUID + "." + Device.PRIMARY_ID, 3);
+
+    // ...but each target device should still count against the per-target limit
+    final String requesterKey = "{" + AuthHelper.VALID_UUID + "." + Device.PRIMARY_ID + "}__";
+    final Set<String> expectedPreKeysRateLimitKeys = Set.of(
+        requesterKey + EXISTS_UUID + "." + SAMPLE_DEVICE_ID,
+        requesterKey + EXISTS_UUID + "." + SAMPLE_DEVICE_ID2,
+        requesterKey + NOT_EXISTS_UUID + ".*",
+        requesterKey + EXISTS_PNI + "." + SAMPLE_DEVICE_ID);
+
+    verify(rateLimiter).validateAllAsync(argThat(keys -> new HashSet<>(keys).equals(expectedPreKeysRateLimitKeys)));
+    verify(rateLimiter, never()).validateAsync(anyString());
+
+    verify(KEYS).takeEC(EXISTS_UUID, SAMPLE_DEVICE_ID);
+    verify(KEYS).takeEC(EXISTS_UUID, SAMPLE_DEVICE_ID2);
+    verify(KEYS).takeEC(EXISTS_PNI, SAMPLE_DEVICE_ID);
+    verify(KEYS, never()).takePQ(any(), anyByte());
+  }
+
+  @Test
+  void batchRequestRateLimited() {
+    final Duration retryAfter = Duration.ofSeconds(31);
+    when(rateLimiter.validateAsync(anyString(), anyInt()))
+        .thenReturn(CompletableFuture.failedFuture(new RateLimitExceededException(retryAfter, true)));
+
+    final PreKeyBatchRequest request = new PreKeyBatchRequest(
+        List.of(new PreKeyBatchRequest.Target(new AciServiceIdentifier(EXISTS_UUID), null)));
+
+    final Response response = resources.getJerseyTest()
+        .target("/v2/keys/batch")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .post(Entity.entity(request, MediaType.APPLICATION_JSON_TYPE));
+
+    assertThat(response.getStatus()).isEqualTo(413);
+    assertThat(response.getHeaderString("Retry-After")).isEqualTo(String.valueOf(retryAfter.toSeconds()));
+    verifyNoInteractions(KEYS);
+  }
+
+  @Test
+  void batchRequestTargetRateLimited() {
+    final Duration retryAfter = Duration.ofSeconds(31);
+    when(rateLimiter.validateAllAsync(any()))
+        .thenReturn(CompletableFuture.failedFuture(new RateLimitExceededException(retryAfter, true)));
+
+    final PreKeyBatchRequest request = new PreKeyBatchRequest(
+        List.of(new PreKeyBatchRequest.Target(new AciServiceIdentifier(EXISTS_UUID), null)));
+
+    final Response response = resources.getJerseyTest()
+        .target("/v2/keys/batch")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .post(Entity.entity(request, MediaType.APPLICATION_JSON_TYPE));
+
+    assertThat(response.getStatus()).isEqualTo(413);
+    assertThat(response.getHeaderString("Retry-After")).isEqualTo(String.valueOf(retryAfter.toSeconds()));
+    verify(rateLimiter).validateAllAsync(
+        List.of("{" + AuthHelper.VALID_UUID + "." + Device.PRIMARY_ID + "}__" + EXISTS_UUID + ".*"));
+    verifyNoInteractions(KEYS);
+  }
+
+  @Test
+  void emptyBatchRequest() {
+    final Response response = resources.getJerseyTest()
+        .target("/v2/keys/batch")
+        .request()
+        .header("Authorization", AuthHelper.getAuthHeader(AuthHelper.VALID_UUID, AuthHelper.VALID_PASSWORD))
+        .post(Entity.entity(new PreKeyBatchRequest(List.of()), MediaType.APPLICATION_JSON_TYPE));
+
+    assertThat(response.getStatus()).isEqualTo(422);
+  }
+
   @Test
   void invalidRequestTestV2() {
     Response response = resources.getJerseyTest()
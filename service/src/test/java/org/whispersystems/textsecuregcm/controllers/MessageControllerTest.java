@@ -9,6 +9,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -19,7 +20,6 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.atLeastOnce;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -32,6 +32,7 @@ import static org.whispersystems.textsecuregcm.tests.util.JsonHelpers.jsonFixtur
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import io.dropwizard.auth.PolymorphicAuthValueFactoryProvider;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
@@ -52,7 +53,6 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -104,10 +104,10 @@ import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.limits.CardinalityEstimator;
 import org.whispersystems.textsecuregcm.limits.RateLimiter;
 import org.whispersystems.textsecuregcm.limits.RateLimiters;
+import org.whispersystems.textsecuregcm.mappers.CompletionExceptionMapper;
 import org.whispersystems.textsecuregcm.mappers.RateLimitExceededExceptionMapper;
 import org.whispersystems.textsecuregcm.providers.MultiRecipientMessageProvider;
 import org.whispersystems.textsecuregcm.push.MessageSender;
-import org.whispersystems.textsecuregcm.push.NotPushRegisteredException;
 import org.whispersystems.textsecuregcm.push.PushNotificationManager;
 import org.whispersystems.textsecuregcm.push.ReceiptSender;
 import org.whispersystems.textsecuregcm.spam.ReportSpamTokenProvider;
@@ -165,7 +165,7 @@ class MessageControllerTest {
   private static final RateLimiter rateLimiter = mock(RateLimiter.class);
   private static final PushNotificationManager pushNotificationManager = mock(PushNotificationManager.class);
   private static final ReportMessageManager reportMessageManager = mock(ReportMessageManager.class);
-  private static final ExecutorService multiRecipientMessageExecutor = mock(ExecutorService.class);
+  private static final ExecutorService multiRecipientMessageExecutor = MoreExecutors.newDirectExecutorService();
   private static final Scheduler messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
   private static final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
 
@@ -175,6 +175,7 @@ class MessageControllerTest {
       .addProvider(new PolymorphicAuthValueFactoryProvider.Binder<>(
           ImmutableSet.of(AuthenticatedAccount.class, DisabledPermittedAuthenticatedAccount.class)))
       .addProvider(RateLimitExceededExceptionMapper.class)
+      .addProvider(CompletionExceptionMapper.class)
       .addProvider(MultiRecipientMessageProvider.class)
       .setTestContainerFactory(new GrizzlyWebTestContainerFactory())
       .addResource(
@@ -210,6 +211,19 @@ class MessageControllerTest {
     when(accountsManager.getByServiceIdentifier(new PniServiceIdentifier(MULTI_DEVICE_PNI))).thenReturn(Optional.of(multiDeviceAccount));
     when(accountsManager.getByServiceIdentifier(new AciServiceIdentifier(INTERNATIONAL_UUID))).thenReturn(Optional.of(internationalAccount));
 
+    when(accountsManager.getByServiceIdentifierAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(accountsManager.getByServiceIdentifierAsync(new AciServiceIdentifier(SINGLE_DEVICE_UUID)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(singleDeviceAccount)));
+    when(accountsManager.getByServiceIdentifierAsync(new PniServiceIdentifier(SINGLE_DEVICE_PNI)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(singleDeviceAccount)));
+    when(accountsManager.getByServiceIdentifierAsync(new AciServiceIdentifier(MULTI_DEVICE_UUID)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(multiDeviceAccount)));
+    when(accountsManager.getByServiceIdentifierAsync(new PniServiceIdentifier(MULTI_DEVICE_PNI)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(multiDeviceAccount)));
+    when(accountsManager.getByServiceIdentifierAsync(new AciServiceIdentifier(INTERNATIONAL_UUID)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(internationalAccount)));
+
     final DynamicInboundMessageByteLimitConfiguration inboundMessageByteLimitConfiguration =
         mock(DynamicInboundMessageByteLimitConfiguration.class);
 
@@ -223,6 +237,10 @@ class MessageControllerTest {
     when(rateLimiters.getMessagesLimiter()).thenReturn(rateLimiter);
     when(rateLimiters.getStoriesLimiter()).thenReturn(rateLimiter);
     when(rateLimiters.getInboundMessageBytes()).thenReturn(rateLimiter);
+    when(rateLimiter.validateAsync(any(UUID.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+    when(messageSender.sendMessages(any(), anyBoolean()))
+        .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
   }
 
   private static Device generateTestDevice(final byte id, final int registrationId, final int pniRegistrationId,
@@ -251,8 +269,7 @@ class MessageControllerTest {
         rateLimiter,
         cardinalityEstimator,
         pushNotificationManager,
-        reportMessageManager,
-        multiRecipientMessageExecutor
+        reportMessageManager
     );
   }
 
@@ -989,19 +1006,6 @@ class MessageControllerTest {
     // set up the entity to use in our PUT request
     Entity<InputStream> entity = Entity.entity(stream, MultiRecipientMessageProvider.MEDIA_TYPE);
 
-    when(multiRecipientMessageExecutor.invokeAll(any()))
-        .thenAnswer(answer -> {
-          final List<Callable> tasks = answer.getArgument(0, List.class);
-          tasks.forEach(c -> {
-            try {
-              c.call();
-            } catch (Exception e) {
-              throw new RuntimeException(e);
-            }
-          });
-          return null;
-        });
-
     // start building the request
     Invocation.Builder bldr = resources
         .getJerseyTest()
@@ -1023,9 +1027,19 @@ class MessageControllerTest {
     Response response = bldr.put(entity);
 
     if (authorize) {
-      ArgumentCaptor<Envelope> envelopeArgumentCaptor = ArgumentCaptor.forClass(Envelope.class);
-      verify(messageSender, atLeastOnce()).sendMessage(any(), any(), envelopeArgumentCaptor.capture(), anyBoolean());
-      assertEquals(urgent, envelopeArgumentCaptor.getValue().getUrgent());
+      @SuppressWarnings("unchecked") final ArgumentCaptor<List<MessageSender.OutgoingMessage>> outgoingMessagesCaptor =
+          ArgumentCaptor.forClass(List.class);
+      verify(messageSender, atLeastOnce()).sendMessages(outgoingMessagesCaptor.capture(), anyBoolean());
+      outgoingMessagesCaptor.getValue().forEach(outgoingMessage -> {
+        assertEquals(urgent, outgoingMessage.message().getUrgent());
+
+        // version byte, then 48 bytes of per-recipient key material, then the common payload
+        final byte[] expectedContent = new byte[1 + 48 + 39];
+        expectedContent[0] = MultiRecipientMessageProvider.AMBIGUOUS_ID_VERSION_IDENTIFIER;
+        assertArrayEquals(expectedContent, outgoingMessage.message().getContent().toByteArray());
+        assertEquals(new AciServiceIdentifier(outgoingMessage.destination().getUuid()).toServiceIdentifierString(),
+            outgoingMessage.message().getDestinationUuid());
+      });
     }
 
     // We have a 2x2x2 grid of possible situations based on:
@@ -1312,21 +1326,7 @@ class MessageControllerTest {
 
   @ParameterizedTest
   @MethodSource
-  void sendMultiRecipientMessage404(final ServiceIdentifier serviceIdentifier)
-      throws NotPushRegisteredException, InterruptedException {
-
-    when(multiRecipientMessageExecutor.invokeAll(any()))
-        .thenAnswer(answer -> {
-          final List<Callable> tasks = answer.getArgument(0, List.class);
-          tasks.forEach(c -> {
-            try {
-              c.call();
-            } catch (Exception e) {
-              throw new RuntimeException(e);
-            }
-          });
-          return null;
-        });
+  void sendMultiRecipientMessage404(final ServiceIdentifier serviceIdentifier) {
 
     final List<Recipient> recipients = List.of(
         new Recipient(serviceIdentifier, MULTI_DEVICE_ID1, MULTI_DEVICE_REG_ID1, new byte[48]),
@@ -1352,8 +1352,8 @@ class MessageControllerTest {
         .header(HttpHeaders.USER_AGENT, "FIXME")
         .header(OptionalAccess.UNIDENTIFIED, Base64.getEncoder().encodeToString(UNIDENTIFIED_ACCESS_BYTES));
 
-    doThrow(NotPushRegisteredException.class)
-        .when(messageSender).sendMessage(any(), any(), any(), anyBoolean());
+    when(messageSender.sendMessages(any(), anyBoolean()))
+        .thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0)));
 
     // make the PUT request
     final SendMultiRecipientMessageResponse response = invocationBuilder.put(entity, SendMultiRecipientMessageResponse.class);
@@ -1370,13 +1370,13 @@ class MessageControllerTest {
   private void checkBadMultiRecipientResponse(Response response, int expectedCode) throws Exception {
     assertThat("Unexpected response", response.getStatus(), is(equalTo(expectedCode)));
     verify(messageSender, never()).sendMessage(any(), any(), any(), anyBoolean());
-    verify(multiRecipientMessageExecutor, never()).invokeAll(any());
+    verify(messageSender, never()).sendMessages(any(), anyBoolean());
   }
 
   private void checkGoodMultiRecipientResponse(Response response, int expectedCount) throws Exception {
     assertThat("Unexpected response", response.getStatus(), is(equalTo(200)));
-    ArgumentCaptor<List<Callable<Void>>> captor = ArgumentCaptor.forClass(List.class);
-    verify(multiRecipientMessageExecutor, times(1)).invokeAll(captor.capture());
+    ArgumentCaptor<List<MessageSender.OutgoingMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(messageSender, times(1)).sendMessages(captor.capture(), anyBoolean());
     assert (captor.getValue().size() == expectedCount);
     SendMultiRecipientMessageResponse smrmr = response.readEntity(SendMultiRecipientMessageResponse.class);
     assert (smrmr.uuids404().isEmpty());
@@ -1426,8 +1426,7 @@ class MessageControllerTest {
   private static void roundTripVarint(byte expected, byte[] bytes) throws Exception {
     ByteBuffer bb = ByteBuffer.wrap(bytes);
     writePayloadDeviceId(bb, expected);
-    InputStream stream = new ByteArrayInputStream(bytes, 0, bb.position());
-    long got = MultiRecipientMessageProvider.readVarint(stream);
+    long got = MultiRecipientMessageProvider.readVarint(ByteBuffer.wrap(bytes, 0, bb.position()));
     assertEquals(expected, got, String.format("encoded as: %s", Arrays.toString(bytes)));
   }
 
@@ -9,7 +9,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.whispersystems.textsecuregcm.grpc.GrpcTestUtils.assertStatusException;
 
@@ -33,7 +36,9 @@ import org.signal.chat.common.EcSignedPreKey;
 import org.signal.chat.common.KemSignedPreKey;
 import org.signal.chat.common.ServiceIdentifier;
 import org.signal.chat.keys.CheckIdentityKeyRequest;
+import org.signal.chat.keys.GetPreKeysAnonymousBatchRequest;
 import org.signal.chat.keys.GetPreKeysAnonymousRequest;
+import org.signal.chat.keys.GetPreKeysBatchResponse;
 import org.signal.chat.keys.GetPreKeysRequest;
 import org.signal.chat.keys.GetPreKeysResponse;
 import org.signal.chat.keys.KeysAnonymousGrpc;
@@ -135,6 +140,96 @@ class KeysAnonymousGrpcServiceTest extends SimpleBaseGrpcTest<KeysAnonymousGrpcS
     assertEquals(expectedResponse, response);
   }
 
+  @Test
+  void getPreKeysBatch() {
+    final ECKeyPair identityKeyPair = Curve.generateKeyPair();
+    final IdentityKey identityKey = new IdentityKey(identityKeyPair.getPublicKey());
+
+    final UUID identifier = UUID.randomUUID();
+    final UUID otherIdentifier = UUID.randomUUID();
+
+    final byte[] unidentifiedAccessKey = new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH];
+    new SecureRandom().nextBytes(unidentifiedAccessKey);
+
+    final byte[] otherUnidentifiedAccessKey = new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH];
+    new SecureRandom().nextBytes(otherUnidentifiedAccessKey);
+
+    final Device targetDevice = mock(Device.class);
+    when(targetDevice.getId()).thenReturn(Device.PRIMARY_ID);
+    when(targetDevice.isEnabled()).thenReturn(true);
+
+    final Account targetAccount = mock(Account.class);
+    when(targetAccount.getDevice(Device.PRIMARY_ID)).thenReturn(Optional.of(targetDevice));
+    when(targetAccount.getUnidentifiedAccessKey()).thenReturn(Optional.of(unidentifiedAccessKey));
+    when(targetAccount.getIdentifier(IdentityType.ACI)).thenReturn(identifier);
+    when(targetAccount.getIdentityKey(IdentityType.ACI)).thenReturn(identityKey);
+
+    final Account otherTargetAccount = mock(Account.class);
+    when(otherTargetAccount.getUnidentifiedAccessKey()).thenReturn(Optional.of(otherUnidentifiedAccessKey));
+
+    when(accountsManager.getByServiceIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(
+            new AciServiceIdentifier(identifier), targetAccount,
+            new AciServiceIdentifier(otherIdentifier), otherTargetAccount)));
+
+    final ECSignedPreKey ecSignedPreKey = KeysHelper.signedECPreKey(2, identityKeyPair);
+
+    when(keysManager.takeEC(identifier, Device.PRIMARY_ID)).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(keysManager.takePQ(identifier, Device.PRIMARY_ID)).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(targetDevice.getSignedPreKey(IdentityType.ACI)).thenReturn(ecSignedPreKey);
+
+    final ServiceIdentifier grpcTargetIdentifier = ServiceIdentifier.newBuilder()
+        .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+        .setUuid(UUIDUtil.toByteString(identifier))
+        .build();
+
+    // The second target presents the wrong unidentified access key and should be omitted from the response
+    final GetPreKeysBatchResponse response = unauthenticatedServiceStub().getPreKeysBatch(
+        GetPreKeysAnonymousBatchRequest.newBuilder()
+            .addRequests(GetPreKeysAnonymousRequest.newBuilder()
+                .setUnidentifiedAccessKey(ByteString.copyFrom(unidentifiedAccessKey))
+                .setRequest(GetPreKeysRequest.newBuilder()
+                    .setTargetIdentifier(grpcTargetIdentifier)
+                    .setDeviceId(Device.PRIMARY_ID)
+                    .build())
+                .build())
+            .addRequests(GetPreKeysAnonymousRequest.newBuilder()
+                .setUnidentifiedAccessKey(ByteString.copyFrom(unidentifiedAccessKey))
+                .setRequest(GetPreKeysRequest.newBuilder()
+                    .setTargetIdentifier(ServiceIdentifier.newBuilder()
+                        .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+                        .setUuid(UUIDUtil.toByteString(otherIdentifier))
+                        .build())
+                    .build())
+                .build())
+            .build());
+
+    final GetPreKeysBatchResponse expectedResponse = GetPreKeysBatchResponse.newBuilder()
+        .addPreKeys(GetPreKeysBatchResponse.TargetPreKeys.newBuilder()
+            .setTargetIdentifier(grpcTargetIdentifier)
+            .setPreKeys(GetPreKeysResponse.newBuilder()
+                .setIdentityKey(ByteString.copyFrom(identityKey.serialize()))
+                .putPreKeys(Device.PRIMARY_ID, GetPreKeysResponse.PreKeyBundle.newBuilder()
+                    .setEcSignedPreKey(EcSignedPreKey.newBuilder()
+                        .setKeyId(ecSignedPreKey.keyId())
+                        .setPublicKey(ByteString.copyFrom(ecSignedPreKey.serializedPublicKey()))
+                        .setSignature(ByteString.copyFrom(ecSignedPreKey.signature()))
+                        .build())
+                    .build())
+                .build())
+            .build())
+        .build();
+
+    assertEquals(expectedResponse, response);
+    verify(keysManager, never()).takeEC(eq(otherIdentifier), anyByte());
+  }
+
+  @Test
+  void getPreKeysBatchEmpty() {
+    assertStatusException(Status.INVALID_ARGUMENT, () -> unauthenticatedServiceStub().getPreKeysBatch(
+        GetPreKeysAnonymousBatchRequest.newBuilder().build()));
+  }
+
   @Test
   void getPreKeysIncorrectUnidentifiedAccessKey() {
     final Account targetAccount = mock(Account.class);
@@ -9,6 +9,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -25,9 +26,11 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
@@ -45,6 +48,8 @@ import org.signal.chat.common.KemSignedPreKey;
 import org.signal.chat.common.ServiceIdentifier;
 import org.signal.chat.keys.GetPreKeyCountRequest;
 import org.signal.chat.keys.GetPreKeyCountResponse;
+import org.signal.chat.keys.GetPreKeysBatchRequest;
+import org.signal.chat.keys.GetPreKeysBatchResponse;
 import org.signal.chat.keys.GetPreKeysRequest;
 import org.signal.chat.keys.GetPreKeysResponse;
 import org.signal.chat.keys.KeysGrpc;
@@ -88,6 +93,9 @@ class KeysGrpcServiceTest extends SimpleBaseGrpcTest<KeysGrpcService, KeysGrpc.K
   @Mock
   private RateLimiter preKeysRateLimiter;
 
+  @Mock
+  private RateLimiter preKeysBatchRateLimiter;
+
   @Mock
   private Device authenticatedDevice;
 
@@ -97,7 +105,12 @@ class KeysGrpcServiceTest extends SimpleBaseGrpcTest<KeysGrpcService, KeysGrpc.K
     final RateLimiters rateLimiters = mock(RateLimiters.class);
     when(rateLimiters.getPreKeysLimiter()).thenReturn(preKeysRateLimiter);
 
+    when(rateLimiters.getPreKeysBatchLimiter()).thenReturn(preKeysBatchRateLimiter);
+
     when(preKeysRateLimiter.validateReactive(anyString())).thenReturn(Mono.empty());
+    when(preKeysRateLimiter.validateAllReactive(any())).thenReturn(Mono.empty());
+    when(preKeysBatchRateLimiter.validateAsync(anyString(), anyInt()))
+        .thenReturn(CompletableFuture.completedFuture(null));
 
     when(authenticatedDevice.getId()).thenReturn(AUTHENTICATED_DEVICE_ID);
 
@@ -641,4 +654,126 @@ class KeysGrpcServiceTest extends SimpleBaseGrpcTest<KeysGrpcService, KeysGrpc.K
         .build()));
     verifyNoInteractions(accountsManager);
   }
+
+  @Test
+  void getPreKeysBatch() {
+    final ECKeyPair identityKeyPair = Curve.generateKeyPair();
+    final IdentityKey identityKey = new IdentityKey(identityKeyPair.getPublicKey());
+    final UUID identifier = UUID.randomUUID();
+    final UUID missingIdentifier = UUID.randomUUID();
+
+    final byte deviceId = 1;
+    final ECPreKey ecOneTimePreKey = new ECPreKey(1, Curve.generateKeyPair().getPublicKey());
+    final ECSignedPreKey ecSignedPreKey = KeysHelper.signedECPreKey(3, identityKeyPair);
+
+    final Device device = mock(Device.class);
+    when(device.getId()).thenReturn(deviceId);
+    when(device.isEnabled()).thenReturn(true);
+    when(device.getSignedPreKey(IdentityType.ACI)).thenReturn(ecSignedPreKey);
+
+    final Account targetAccount = mock(Account.class);
+    when(targetAccount.getIdentifier(IdentityType.ACI)).thenReturn(identifier);
+    when(targetAccount.getIdentityKey(IdentityType.ACI)).thenReturn(identityKey);
+    when(targetAccount.getDevice(deviceId)).thenReturn(Optional.of(device));
+
+    when(accountsManager.getByServiceIdentifiersAsync(any()))
+        .thenReturn(CompletableFuture.completedFuture(Map.of(new AciServiceIdentifier(identifier), targetAccount)));
+
+    when(keysManager.takeEC(identifier, deviceId)).thenReturn(CompletableFuture.completedFuture(Optional.of(ecOneTimePreKey)));
+    when(keysManager.takePQ(identifier, deviceId)).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    final ServiceIdentifier grpcTargetIdentifier = ServiceIdentifier.newBuilder()
+        .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+        .setUuid(UUIDUtil.toByteString(identifier))
+        .build();
+
+    final GetPreKeysBatchResponse response = authenticatedServiceStub().getPreKeysBatch(GetPreKeysBatchRequest.newBuilder()
+        .addRequests(GetPreKeysRequest.newBuilder()
+            .setTargetIdentifier(grpcTargetIdentifier)
+            .setDeviceId(deviceId)
+            .build())
+        .addRequests(GetPreKeysRequest.newBuilder()
+            .setTargetIdentifier(ServiceIdentifier.newBuilder()
+                .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+                .setUuid(UUIDUtil.toByteString(missingIdentifier))
+                .build())
+            .build())
+        .build());
+
+    final GetPreKeysBatchResponse expectedResponse = GetPreKeysBatchResponse.newBuilder()
+        .addPreKeys(GetPreKeysBatchResponse.TargetPreKeys.newBuilder()
+            .setTargetIdentifier(grpcTargetIdentifier)
+            .setPreKeys(GetPreKeysResponse.newBuilder()
+                .setIdentityKey(ByteString.copyFrom(identityKey.serialize()))
+                .putPreKeys(deviceId, GetPreKeysResponse.PreKeyBundle.newBuilder()
+                    .setEcSignedPreKey(EcSignedPreKey.newBuilder()
+                        .setKeyId(ecSignedPreKey.keyId())
+                        .setPublicKey(ByteString.copyFrom(ecSignedPreKey.serializedPublicKey()))
+                        .setSignature(ByteString.copyFrom(ecSignedPreKey.signature()))
+                        .build())
+                    .setEcOneTimePreKey(EcPreKey.newBuilder()
+                        .setKeyId(ecOneTimePreKey.keyId())
+                        .setPublicKey(ByteString.copyFrom(ecOneTimePreKey.serializedPublicKey()))
+                        .build())
+                    .build())
+                .build())
+            .build())
+        .build();
+
+    assertEquals(expectedResponse, response);
+
+    verify(preKeysBatchRateLimiter).validateAsync(AUTHENTICATED_ACI + "." + AUTHENTICATED_DEVICE_ID, 2);
+    final String requesterKey = "{" + AUTHENTICATED_ACI + "." + AUTHENTICATED_DEVICE_ID + "}__";
+    final Set<String> expectedPreKeysRateLimitKeys =
+        Set.of(requesterKey + identifier + "." + deviceId, requesterKey + missingIdentifier + ".0");
+
+    verify(preKeysRateLimiter).validateAllReactive(
+        argThat(keys -> new HashSet<>(keys).equals(expectedPreKeysRateLimitKeys)));
+    verify(accountsManager).getByServiceIdentifiersAsync(
+        Set.of(new AciServiceIdentifier(identifier), new AciServiceIdentifier(missingIdentifier)));
+  }
+
+  @Test
+  void getPreKeysBatchEmpty() {
+    assertStatusException(Status.INVALID_ARGUMENT,
+        () -> authenticatedServiceStub().getPreKeysBatch(GetPreKeysBatchRequest.newBuilder().build()));
+
+    verifyNoInteractions(accountsManager);
+  }
+
+  @Test
+  void getPreKeysBatchRateLimited() {
+    final Duration retryAfterDuration = Duration.ofMinutes(7);
+    when(preKeysBatchRateLimiter.validateAsync(anyString(), anyInt()))
+        .thenReturn(CompletableFuture.failedFuture(new RateLimitExceededException(retryAfterDuration, false)));
+
+    assertRateLimitExceeded(retryAfterDuration, () -> authenticatedServiceStub().getPreKeysBatch(GetPreKeysBatchRequest.newBuilder()
+        .addRequests(GetPreKeysRequest.newBuilder()
+            .setTargetIdentifier(ServiceIdentifier.newBuilder()
+                .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+                .setUuid(UUIDUtil.toByteString(UUID.randomUUID()))
+                .build())
+            .build())
+        .build()));
+
+    verifyNoInteractions(accountsManager);
+  }
+
+  @Test
+  void getPreKeysBatchTargetRateLimited() {
+    final Duration retryAfterDuration = Duration.ofMinutes(7);
+    when(preKeysRateLimiter.validateAllReactive(any()))
+        .thenReturn(Mono.error(new RateLimitExceededException(retryAfterDuration, false)));
+
+    assertRateLimitExceeded(retryAfterDuration, () -> authenticatedServiceStub().getPreKeysBatch(GetPreKeysBatchRequest.newBuilder()
+        .addRequests(GetPreKeysRequest.newBuilder()
+            .setTargetIdentifier(ServiceIdentifier.newBuilder()
+                .setIdentityType(org.signal.chat.common.IdentityType.IDENTITY_TYPE_ACI)
+                .setUuid(UUIDUtil.toByteString(UUID.randomUUID()))
+                .build())
+            .build())
+        .build()));
+
+    verifyNoInteractions(accountsManager);
+  }
 }
@@ -6,6 +6,7 @@
 package org.whispersystems.textsecuregcm.limits;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -20,6 +21,7 @@ import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
@@ -69,6 +71,30 @@ public class RateLimitersLuaScriptTest {
     assertThrows(RateLimitExceededException.class, () -> rateLimiter.validate("test", 25));
   }
 
+  @Test
+  public void testValidateAllWithEmbeddedRedis() throws Exception {
+    final RateLimiters.For descriptor = RateLimiters.For.REGISTRATION;
+    final FaultTolerantRedisCluster redisCluster = REDIS_CLUSTER_EXTENSION.getRedisCluster();
+    final RateLimiters limiters = new RateLimiters(
+        Map.of(descriptor.id(), new RateLimiterConfig(60, Duration.ofSeconds(1))),
+        dynamicConfig,
+        RateLimiters.defaultScript(redisCluster),
+        redisCluster,
+        Clock.systemUTC());
+
+    final RateLimiter rateLimiter = limiters.forDescriptor(descriptor);
+    rateLimiter.validate("{test}a", 50);
+
+    // one exhausted bucket should fail the whole check without using tokens from any other bucket
+    final CompletionException completionException = assertThrows(CompletionException.class,
+        () -> rateLimiter.validateAllAsync(List.of("{test}a", "{test}b"), 25).toCompletableFuture().join());
+    assertInstanceOf(RateLimitExceededException.class, completionException.getCause());
+
+    rateLimiter.validate("{test}b", 60);
+    assertThrows(IllegalArgumentException.class,
+        () -> rateLimiter.validateAllAsync(List.of("{test}a", "{other}b")));
+  }
+
   @Test
   public void testTtl() throws Exception {
     final RateLimiters.For descriptor = RateLimiters.For.REGISTRATION;
@@ -6,13 +6,21 @@
 package org.whispersystems.textsecuregcm.providers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
+import com.google.protobuf.ByteString;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.stream.Stream;
+import javax.ws.rs.BadRequestException;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.whispersystems.textsecuregcm.entities.MultiRecipientMessage;
 
 public class MultiRecipientMessageProviderTest {
 
@@ -34,8 +42,43 @@ public class MultiRecipientMessageProviderTest {
   @ParameterizedTest
   @MethodSource("readU16TestCases")
   void testReadU16(int expectedValue, byte[] input) throws Exception {
-    try (final ByteArrayInputStream stream = new ByteArrayInputStream(input)) {
-      assertThat(MultiRecipientMessageProvider.readU16(stream)).isEqualTo(expectedValue);
-    }
+    final ByteBuffer buffer = ByteBuffer.wrap(input);
+
+    assertThat(MultiRecipientMessageProvider.readU16(buffer)).isEqualTo(expectedValue);
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test
+  void testReadU16Truncated() {
+    assertThatThrownBy(() -> MultiRecipientMessageProvider.readU16(ByteBuffer.wrap(new byte[]{(byte) 0xFF})))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void testReadFromOversizedCommonPayload() {
+    final byte[] body = new byte[2 + MultiRecipientMessageProvider.MAX_MESSAGE_SIZE + 1];
+    body[0] = MultiRecipientMessageProvider.EXPLICIT_ID_VERSION_IDENTIFIER;
+    body[1] = 0; // no recipients
+
+    assertThatThrownBy(() -> new MultiRecipientMessageProvider()
+        .readFrom(null, null, null, null, null, new ByteArrayInputStream(body)))
+        .isInstanceOf(BadRequestException.class);
+  }
+
+  @Test
+  void testReadFromCommonPayload() throws Exception {
+    final byte[] commonPayload = new byte[64];
+    Arrays.fill(commonPayload, (byte) 0x7F);
+
+    final byte[] body = new byte[2 + commonPayload.length];
+    body[0] = MultiRecipientMessageProvider.EXPLICIT_ID_VERSION_IDENTIFIER;
+    body[1] = 0; // no recipients
+    System.arraycopy(commonPayload, 0, body, 2, commonPayload.length);
+
+    final MultiRecipientMessage message = new MultiRecipientMessageProvider()
+        .readFrom(null, null, null, null, null, new ByteArrayInputStream(body));
+
+    assertThat(message.recipients()).isEmpty();
+    assertThat(message.commonPayload()).isEqualTo(ByteString.copyFrom(commonPayload));
   }
 }
@@ -16,10 +16,12 @@ import static org.mockito.Mockito.mock;
 import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
 import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -30,7 +32,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 class ClientPresenceManagerTest {
 
@@ -38,6 +42,7 @@ class ClientPresenceManagerTest {
   static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
   private ScheduledExecutorService presenceRenewalExecutorService;
+  private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
   private ClientPresenceManager clientPresenceManager;
 
   private static final DisplacedPresenceListener NO_OP = connectedElsewhere -> {
@@ -54,9 +59,10 @@ class ClientPresenceManagerTest {
     });
 
     presenceRenewalExecutorService = Executors.newSingleThreadScheduledExecutor();
+    keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 1, 1_000);
     clientPresenceManager = new ClientPresenceManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
         presenceRenewalExecutorService,
-        presenceRenewalExecutorService);
+        keyspaceNotificationDispatcher);
   }
 
   @AfterEach
@@ -64,6 +70,8 @@ class ClientPresenceManagerTest {
     presenceRenewalExecutorService.shutdown();
     presenceRenewalExecutorService.awaitTermination(1, TimeUnit.MINUTES);
 
+    keyspaceNotificationDispatcher.stop();
+
     try {
       clientPresenceManager.stop();
     } catch (final Exception e) {
@@ -84,6 +92,71 @@ class ClientPresenceManagerTest {
     assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
   }
 
+  @Test
+  void testGetPresentClients() {
+    final UUID presentAccountUuid = UUID.randomUUID();
+    final UUID absentAccountUuid = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    final UUID remotelyPresentAccountUuid = UUID.randomUUID();
+
+    clientPresenceManager.setPresent(presentAccountUuid, deviceId, NO_OP);
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> connection.sync()
+        .set(ClientPresenceManager.getPresenceKey(remotelyPresentAccountUuid, deviceId), "another-manager"));
+
+    assertEquals(Set.of(new Pair<>(presentAccountUuid, deviceId), new Pair<>(remotelyPresentAccountUuid, deviceId)),
+        clientPresenceManager.getPresentClients(List.of(
+            new Pair<>(presentAccountUuid, deviceId),
+            new Pair<>(remotelyPresentAccountUuid, deviceId),
+            new Pair<>(presentAccountUuid, (byte) (deviceId + 1)),
+            new Pair<>(absentAccountUuid, deviceId))).join());
+
+    assertEquals(Collections.emptySet(), clientPresenceManager.getPresentClients(Collections.emptyList()).join());
+  }
+
+  @Test
+  void testIsPresentLocalClient() {
+    final UUID accountUuid = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+
+    // Locally-present clients should be found without consulting the presence cluster
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().del(ClientPresenceManager.getPresenceKey(accountUuid, deviceId)));
+
+    assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
+    assertTrue(clientPresenceManager.isPresentAsync(accountUuid, deviceId).join());
+    assertEquals(Set.of(new Pair<>(accountUuid, deviceId)),
+        clientPresenceManager.getPresentClients(List.of(new Pair<>(accountUuid, deviceId))).join());
+  }
+
+  @Test
+  void testIsPresentAsync() {
+    final UUID localAccountUuid = UUID.randomUUID();
+    final UUID remoteAccountUuid = UUID.randomUUID();
+    final UUID absentAccountUuid = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    clientPresenceManager.setPresent(localAccountUuid, deviceId, NO_OP);
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().set(ClientPresenceManager.getPresenceKey(remoteAccountUuid, deviceId), "another-manager"));
+
+    final List<CompletableFuture<Boolean>> remoteFutures = new ArrayList<>();
+    final List<CompletableFuture<Boolean>> absentFutures = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      remoteFutures.add(clientPresenceManager.isPresentAsync(remoteAccountUuid, deviceId));
+      absentFutures.add(clientPresenceManager.isPresentAsync(absentAccountUuid, deviceId));
+    }
+
+    assertTrue(clientPresenceManager.isPresentAsync(localAccountUuid, deviceId).join());
+    remoteFutures.forEach(future -> assertTrue(future.join()));
+    absentFutures.forEach(future -> assertFalse(future.join()));
+  }
+
   @Test
   void testIsLocallyPresent() {
     final UUID accountUuid = UUID.randomUUID();
@@ -207,6 +280,36 @@ class ClientPresenceManagerTest {
             .sismember(ClientPresenceManager.MANAGER_SET_KEY, missingPeerId)));
   }
 
+  @Test
+  void testPruneMissingPeersMultipleBatches() {
+    final String missingPeerId = UUID.randomUUID().toString();
+
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().sadd(ClientPresenceManager.MANAGER_SET_KEY, missingPeerId));
+
+    final List<String> prunedPresenceKeys = new ArrayList<>();
+
+    for (int i = 0; i < ClientPresenceManager.PRUNE_CLIENTS_BATCH_SIZE + 1; i++) {
+      prunedPresenceKeys.add(addClientPresence(missingPeerId));
+    }
+
+    // A client that has since connected to a different host shouldn't have its presence cleared
+    final String displacedPresenceKey = addClientPresence(missingPeerId);
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().set(displacedPresenceKey, UUID.randomUUID().toString()));
+
+    clientPresenceManager.pruneMissingPeers();
+
+    assertEquals(0, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(
+        connection -> connection.sync().exists(prunedPresenceKeys.toArray(new String[0]))));
+
+    assertEquals(1, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(
+        connection -> connection.sync().exists(displacedPresenceKey)));
+
+    assertEquals(0, (long) REDIS_CLUSTER_EXTENSION.getRedisCluster().withCluster(
+        connection -> connection.sync().exists(ClientPresenceManager.getConnectedClientSetKey(missingPeerId))));
+  }
+
   @Test
   void testInitialPresenceExpiration() {
     final UUID accountUuid = UUID.randomUUID();
@@ -254,7 +357,9 @@ class ClientPresenceManagerTest {
     final UUID accountUuid = UUID.randomUUID();
     final byte deviceId = 1;
 
-    clientPresenceManager.setPresent(accountUuid, deviceId, NO_OP);
+    // Set presence directly rather than via the presence manager so the client isn't considered locally present
+    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection ->
+        connection.sync().set(ClientPresenceManager.getPresenceKey(accountUuid, deviceId), "another-manager"));
 
     assertTrue(clientPresenceManager.isPresent(accountUuid, deviceId));
 
@@ -265,13 +370,15 @@ class ClientPresenceManagerTest {
     assertFalse(clientPresenceManager.isPresent(accountUuid, deviceId));
   }
 
-  private void addClientPresence(final String managerId) {
+  private String addClientPresence(final String managerId) {
     final String clientPresenceKey = ClientPresenceManager.getPresenceKey(UUID.randomUUID(), (byte) 7);
 
     REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
       connection.sync().set(clientPresenceKey, managerId);
       connection.sync().sadd(ClientPresenceManager.getConnectedClientSetKey(managerId), clientPresenceKey);
     });
+
+    return clientPresenceKey;
   }
 
   @Test
@@ -315,6 +422,9 @@ class ClientPresenceManagerTest {
     private ClientPresenceManager server1;
     private ClientPresenceManager server2;
 
+    private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher1;
+    private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher2;
+
     @BeforeEach
     void setup() throws Exception {
 
@@ -324,23 +434,26 @@ class ClientPresenceManagerTest {
       });
 
       final ScheduledExecutorService scheduledExecutorService1 = mock(ScheduledExecutorService.class);
-      final ExecutorService keyspaceNotificationExecutorService1 = Executors.newSingleThreadExecutor();
+      keyspaceNotificationDispatcher1 = new KeyspaceNotificationDispatcher("test1", 1, 1_000);
       server1 = new ClientPresenceManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          scheduledExecutorService1, keyspaceNotificationExecutorService1);
+          scheduledExecutorService1, keyspaceNotificationDispatcher1);
 
       final ScheduledExecutorService scheduledExecutorService2 = mock(ScheduledExecutorService.class);
-      final ExecutorService keyspaceNotificationExecutorService2 = Executors.newSingleThreadExecutor();
+      keyspaceNotificationDispatcher2 = new KeyspaceNotificationDispatcher("test2", 1, 1_000);
       server2 = new ClientPresenceManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          scheduledExecutorService2, keyspaceNotificationExecutorService2);
+          scheduledExecutorService2, keyspaceNotificationDispatcher2);
 
       server1.start();
       server2.start();
     }
 
     @AfterEach
-    void teardown() {
+    void teardown() throws Exception {
       server2.stop();
       server1.stop();
+
+      keyspaceNotificationDispatcher2.stop();
+      keyspaceNotificationDispatcher1.stop();
     }
 
     @Test
@@ -385,4 +498,119 @@ class ClientPresenceManagerTest {
       assertTimeoutPreemptively(Duration.ofSeconds(10), displaced::join);
     }
   }
+
+  @Nested
+  class NodeChannelMultiServerTest {
+
+    private ClientPresenceManager server1;
+    private ClientPresenceManager server2;
+
+    private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher1;
+    private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher2;
+
+    @BeforeEach
+    void setup() throws Exception {
+
+      REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(connection -> {
+        connection.sync().flushall();
+        // Node channel events must work without any help from keyspace notifications
+        connection.sync().upstream().commands().configSet("notify-keyspace-events", "");
+      });
+
+      keyspaceNotificationDispatcher1 = new KeyspaceNotificationDispatcher("test1", 1, 1_000);
+      server1 = new ClientPresenceManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+          mock(ScheduledExecutorService.class), keyspaceNotificationDispatcher1, ClientEventNotificationMode.NODE_CHANNEL);
+
+      keyspaceNotificationDispatcher2 = new KeyspaceNotificationDispatcher("test2", 1, 1_000);
+      server2 = new ClientPresenceManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+          mock(ScheduledExecutorService.class), keyspaceNotificationDispatcher2, ClientEventNotificationMode.NODE_CHANNEL);
+
+      server1.start();
+      server2.start();
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+      server2.stop();
+      server1.stop();
+
+      keyspaceNotificationDispatcher2.stop();
+      keyspaceNotificationDispatcher1.stop();
+    }
+
+    @Test
+    void testSetPresentRemotely() {
+      final UUID uuid1 = UUID.randomUUID();
+      final byte deviceId = 1;
+
+      final CompletableFuture<Boolean> displaced = new CompletableFuture<>();
+      server1.setPresent(uuid1, deviceId, displaced::complete);
+
+      server2.setPresent(uuid1, deviceId, connectedElsewhere -> {});
+
+      assertTrue(assertTimeoutPreemptively(Duration.ofSeconds(10), displaced::join));
+      assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+        while (server1.isLocallyPresent(uuid1, deviceId)) {
+          Thread.sleep(10);
+        }
+      });
+
+      assertTrue(server2.isLocallyPresent(uuid1, deviceId));
+      assertTrue(server1.isPresent(uuid1, deviceId));
+    }
+
+    @Test
+    void testDisconnectPresenceRemotely() {
+      final UUID uuid1 = UUID.randomUUID();
+      final byte deviceId = 1;
+
+      final CompletableFuture<Boolean> displaced = new CompletableFuture<>();
+      server1.setPresent(uuid1, deviceId, displaced::complete);
+
+      server2.disconnectPresence(uuid1, deviceId);
+
+      assertFalse(assertTimeoutPreemptively(Duration.ofSeconds(10), displaced::join));
+    }
+
+    @Test
+    void testNotifyNewMessagesAvailable() {
+      final UUID localUuid = UUID.randomUUID();
+      final UUID remoteUuid = UUID.randomUUID();
+      final byte deviceId = 1;
+
+      final CompletableFuture<Pair<UUID, Byte>> localEvent = new CompletableFuture<>();
+      final CompletableFuture<Pair<UUID, Byte>> remoteEvent = new CompletableFuture<>();
+      final CompletableFuture<Pair<UUID, Byte>> persistedEvent = new CompletableFuture<>();
+
+      server1.addClientEventListener(new ClientEventListener() {
+        @Override
+        public void handleNewMessagesAvailable(final UUID accountUuid, final byte deviceId) {
+          (accountUuid.equals(localUuid) ? localEvent : remoteEvent).complete(new Pair<>(accountUuid, deviceId));
+        }
+
+        @Override
+        public void handleMessagesPersisted(final UUID accountUuid, final byte deviceId) {
+          persistedEvent.complete(new Pair<>(accountUuid, deviceId));
+        }
+      });
+
+      server1.setPresent(localUuid, deviceId, NO_OP);
+      server1.setPresent(remoteUuid, deviceId, NO_OP);
+
+      // Clients connected to the same server should be notified without a round trip through Redis
+      server1.notifyNewMessagesAvailable(localUuid, deviceId);
+      assertEquals(new Pair<>(localUuid, deviceId), localEvent.getNow(null));
+
+      server2.notifyNewMessagesAvailable(List.of(new Pair<>(remoteUuid, deviceId),
+          new Pair<>(UUID.randomUUID(), deviceId)));
+
+      server2.notifyMessagesPersisted(remoteUuid, deviceId);
+
+      assertEquals(new Pair<>(remoteUuid, deviceId),
+          assertTimeoutPreemptively(Duration.ofSeconds(10), () -> remoteEvent.join()));
+
+      assertEquals(new Pair<>(remoteUuid, deviceId),
+          assertTimeoutPreemptively(Duration.ofSeconds(10), () -> persistedEvent.join()));
+    }
+  }
 }
@@ -10,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyByte;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
@@ -20,7 +21,10 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -28,7 +32,9 @@ import org.mockito.ArgumentCaptor;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.storage.DeviceMessage;
 import org.whispersystems.textsecuregcm.storage.MessagesManager;
+import org.whispersystems.textsecuregcm.util.Pair;
 
 class MessageSenderTest {
 
@@ -77,6 +83,7 @@ class MessageSenderTest {
 
     assertTrue(envelopeArgumentCaptor.getValue().getEphemeral());
 
+    verify(clientPresenceManager).notifyNewMessagesAvailable(ACCOUNT_UUID, DEVICE_ID);
     verifyNoInteractions(pushNotificationManager);
   }
 
@@ -88,6 +95,7 @@ class MessageSenderTest {
     messageSender.sendMessage(account, device, message, true);
 
     verify(messagesManager, never()).insert(any(), anyByte(), any());
+    verify(clientPresenceManager, never()).notifyNewMessagesAvailable(any(), anyByte());
     verifyNoInteractions(pushNotificationManager);
   }
 
@@ -105,6 +113,7 @@ class MessageSenderTest {
 
     assertFalse(envelopeArgumentCaptor.getValue().getEphemeral());
     assertEquals(message, envelopeArgumentCaptor.getValue());
+    verify(clientPresenceManager).notifyNewMessagesAvailable(ACCOUNT_UUID, DEVICE_ID);
     verifyNoInteractions(pushNotificationManager);
   }
 
@@ -116,6 +125,7 @@ class MessageSenderTest {
     messageSender.sendMessage(account, device, message, false);
 
     verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
+    verify(clientPresenceManager, never()).notifyNewMessagesAvailable(any(), anyByte());
     verify(pushNotificationManager).sendNewMessageNotification(account, device.getId(), message.getUrgent());
   }
 
@@ -142,6 +152,86 @@ class MessageSenderTest {
     verify(messagesManager).insert(ACCOUNT_UUID, DEVICE_ID, message);
   }
 
+  @Test
+  void testSendMessagesOnline() {
+    final Account absentAccount = mock(Account.class);
+    final Device absentDevice = mock(Device.class);
+    final UUID absentAccountUuid = UUID.randomUUID();
+
+    when(absentAccount.getUuid()).thenReturn(absentAccountUuid);
+    when(absentDevice.getId()).thenReturn(DEVICE_ID);
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(absentDevice.getGcmId()).thenReturn("gcm-id");
+
+    when(clientPresenceManager.getPresentClients(any()))
+        .thenReturn(CompletableFuture.completedFuture(Set.of(new Pair<>(ACCOUNT_UUID, DEVICE_ID))));
+    when(messagesManager.insert(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+    final List<MessageSender.OutgoingMessage> undeliverableMessages = messageSender.sendMessages(List.of(
+        new MessageSender.OutgoingMessage(account, device, message),
+        new MessageSender.OutgoingMessage(absentAccount, absentDevice, generateRandomMessage())), true).join();
+
+    assertTrue(undeliverableMessages.isEmpty());
+
+    @SuppressWarnings("unchecked") final ArgumentCaptor<List<DeviceMessage>> deviceMessagesCaptor =
+        ArgumentCaptor.forClass(List.class);
+
+    verify(messagesManager).insert(deviceMessagesCaptor.capture());
+
+    assertEquals(1, deviceMessagesCaptor.getValue().size());
+    assertEquals(ACCOUNT_UUID, deviceMessagesCaptor.getValue().get(0).destinationUuid());
+    assertTrue(deviceMessagesCaptor.getValue().get(0).message().getEphemeral());
+
+    verifyNoInteractions(pushNotificationManager);
+  }
+
+  @Test
+  void testSendMessages() throws NotPushRegisteredException {
+    final Account absentAccount = mock(Account.class);
+    final Device absentDevice = mock(Device.class);
+    final UUID absentAccountUuid = UUID.randomUUID();
+    final MessageProtos.Envelope absentMessage = generateRandomMessage();
+
+    final Account unregisteredAccount = mock(Account.class);
+    final Device unregisteredDevice = mock(Device.class);
+    final UUID unregisteredAccountUuid = UUID.randomUUID();
+    final MessageProtos.Envelope unregisteredMessage = generateRandomMessage();
+
+    when(absentAccount.getUuid()).thenReturn(absentAccountUuid);
+    when(absentDevice.getId()).thenReturn(DEVICE_ID);
+    when(unregisteredAccount.getUuid()).thenReturn(unregisteredAccountUuid);
+    when(unregisteredDevice.getId()).thenReturn(DEVICE_ID);
+    when(device.getGcmId()).thenReturn("gcm-id");
+    when(absentDevice.getApnId()).thenReturn("apn-id");
+    when(unregisteredDevice.getGcmId()).thenReturn("gcm-id");
+
+    when(clientPresenceManager.getPresentClients(any()))
+        .thenReturn(CompletableFuture.completedFuture(Set.of(new Pair<>(ACCOUNT_UUID, DEVICE_ID))));
+    when(messagesManager.insert(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+    doThrow(NotPushRegisteredException.class)
+        .when(pushNotificationManager).sendNewMessageNotification(unregisteredAccount, DEVICE_ID, unregisteredMessage.getUrgent());
+
+    final MessageSender.OutgoingMessage unregisteredOutgoingMessage =
+        new MessageSender.OutgoingMessage(unregisteredAccount, unregisteredDevice, unregisteredMessage);
+
+    final List<MessageSender.OutgoingMessage> undeliverableMessages = messageSender.sendMessages(List.of(
+        new MessageSender.OutgoingMessage(account, device, message),
+        new MessageSender.OutgoingMessage(absentAccount, absentDevice, absentMessage),
+        unregisteredOutgoingMessage), false).join();
+
+    assertEquals(List.of(unregisteredOutgoingMessage), undeliverableMessages);
+
+    verify(messagesManager).insert(List.of(
+        new DeviceMessage(ACCOUNT_UUID, DEVICE_ID, message),
+        new DeviceMessage(absentAccountUuid, DEVICE_ID, absentMessage),
+        new DeviceMessage(unregisteredAccountUuid, DEVICE_ID, unregisteredMessage)));
+
+    verify(clientPresenceManager).notifyNewMessagesAvailable(Set.of(new Pair<>(ACCOUNT_UUID, DEVICE_ID)));
+    verify(pushNotificationManager, never()).sendNewMessageNotification(eq(account), anyByte(), anyBoolean());
+    verify(pushNotificationManager).sendNewMessageNotification(absentAccount, DEVICE_ID, absentMessage.getUrgent());
+  }
+
   private MessageProtos.Envelope generateRandomMessage() {
     return MessageProtos.Envelope.newBuilder()
         .setTimestamp(System.currentTimeMillis())
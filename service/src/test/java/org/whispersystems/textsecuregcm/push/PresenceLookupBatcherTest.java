@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.push;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Test;
+
+class PresenceLookupBatcherTest {
+
+  @Test
+  void testCoalesceLookups() {
+    final List<Set<String>> batches = new ArrayList<>();
+    final List<CompletableFuture<Set<String>>> batchFutures = new ArrayList<>();
+
+    final PresenceLookupBatcher batcher = new PresenceLookupBatcher(presenceKeys -> {
+      batches.add(Set.copyOf(presenceKeys));
+
+      final CompletableFuture<Set<String>> batchFuture = new CompletableFuture<>();
+      batchFutures.add(batchFuture);
+
+      return batchFuture;
+    });
+
+    final CompletableFuture<Boolean> firstFuture = batcher.isPresent("a");
+
+    // The first lookup should be sent immediately; the rest should wait for it to finish
+    final CompletableFuture<Boolean> secondFuture = batcher.isPresent("b");
+    final CompletableFuture<Boolean> thirdFuture = batcher.isPresent("c");
+    assertSame(secondFuture, batcher.isPresent("b"));
+
+    assertEquals(List.of(Set.of("a")), batches);
+
+    batchFutures.get(0).complete(Set.of("a"));
+
+    assertTrue(firstFuture.join());
+    assertEquals(List.of(Set.of("a"), Set.of("b", "c")), batches);
+    assertFalse(secondFuture.isDone());
+
+    batchFutures.get(1).complete(Set.of("c"));
+
+    assertFalse(secondFuture.join());
+    assertTrue(thirdFuture.join());
+
+    // With no batch in flight, the next lookup should be sent immediately
+    batcher.isPresent("d");
+    assertEquals(List.of(Set.of("a"), Set.of("b", "c"), Set.of("d")), batches);
+  }
+
+  @Test
+  void testLookupFailure() {
+    final PresenceLookupBatcher batcher = new PresenceLookupBatcher(presenceKeys -> {
+      if (presenceKeys.contains("a")) {
+        throw new RuntimeException("OH NO");
+      }
+
+      return CompletableFuture.completedFuture(Set.of("b"));
+    });
+
+    assertThrows(CompletionException.class, () -> batcher.isPresent("a").join());
+
+    // A failed batch shouldn't prevent later lookups
+    assertTrue(batcher.isPresent("b").join());
+  }
+}
@@ -6,41 +6,67 @@
 package org.whispersystems.textsecuregcm.push;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.Optional;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicPushLatencyConfiguration;
 import org.whispersystems.textsecuregcm.push.PushLatencyManager.PushRecord;
 import org.whispersystems.textsecuregcm.push.PushLatencyManager.PushType;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import org.whispersystems.textsecuregcm.storage.ClientReleaseManager;
+import org.whispersystems.textsecuregcm.storage.DynamicConfigurationManager;
 
 class PushLatencyManagerTest {
 
   @RegisterExtension
   static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
+  private DynamicPushLatencyConfiguration pushLatencyConfiguration;
+  private DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager;
+
+  @BeforeEach
+  void setUp() {
+    pushLatencyConfiguration = mock(DynamicPushLatencyConfiguration.class);
+    when(pushLatencyConfiguration.getSampleRate()).thenReturn(1.0);
+
+    final DynamicConfiguration dynamicConfiguration = mock(DynamicConfiguration.class);
+    when(dynamicConfiguration.getPushLatencyConfiguration()).thenReturn(pushLatencyConfiguration);
+
+    //noinspection unchecked
+    dynamicConfigurationManager = mock(DynamicConfigurationManager.class);
+    when(dynamicConfigurationManager.getConfiguration()).thenReturn(dynamicConfiguration);
+  }
+
   @ParameterizedTest
   @MethodSource
   void testTakeRecord(final boolean isVoip, final boolean isUrgent) throws ExecutionException, InterruptedException {
     final UUID accountUuid = UUID.randomUUID();
     final byte deviceId = 1;
 
-    final Instant pushTimestamp = Instant.now();
+    final Instant pushTimestamp = Instant.now().truncatedTo(ChronoUnit.MILLIS);
 
     final PushLatencyManager pushLatencyManager = new PushLatencyManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        mock(ClientReleaseManager.class), Clock.fixed(pushTimestamp, ZoneId.systemDefault()));
+        mock(ClientReleaseManager.class), dynamicConfigurationManager,
+        Clock.fixed(pushTimestamp, ZoneId.systemDefault()));
 
     assertNull(pushLatencyManager.takePushRecord(accountUuid, deviceId).get());
 
@@ -51,7 +77,7 @@ class PushLatencyManagerTest {
     assertNotNull(pushRecord);
     assertEquals(pushTimestamp, pushRecord.timestamp());
     assertEquals(isVoip ? PushType.VOIP : PushType.STANDARD, pushRecord.pushType());
-    assertEquals(Optional.of(isUrgent), pushRecord.urgent());
+    assertEquals(isUrgent, pushRecord.urgent());
 
     assertNull(pushLatencyManager.takePushRecord(accountUuid, deviceId).get());
   }
@@ -64,4 +90,48 @@ class PushLatencyManagerTest {
         Arguments.of(false, false)
     );
   }
+
+  @ParameterizedTest
+  @MethodSource("testTakeRecord")
+  void testEncodeDecodePushRecord(final boolean isVoip, final boolean isUrgent) {
+    final PushRecord pushRecord = new PushRecord(Instant.now().truncatedTo(ChronoUnit.MILLIS),
+        isVoip ? PushType.VOIP : PushType.STANDARD, isUrgent);
+
+    assertEquals(pushRecord, PushLatencyManager.decodePushRecord(PushLatencyManager.encodePushRecord(pushRecord)));
+  }
+
+  @Test
+  void testDecodeInvalidPushRecord() {
+    assertNull(PushLatencyManager.decodePushRecord(null));
+    assertNull(PushLatencyManager.decodePushRecord(new byte[3]));
+  }
+
+  @Test
+  void testSampling() throws ExecutionException, InterruptedException {
+    final PushLatencyManager pushLatencyManager = new PushLatencyManager(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        mock(ClientReleaseManager.class), dynamicConfigurationManager);
+
+    final UUID accountUuid = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    when(pushLatencyConfiguration.getSampleRate()).thenReturn(0.0);
+    assertFalse(pushLatencyManager.isSampled(accountUuid, deviceId));
+
+    pushLatencyManager.recordPushSent(accountUuid, deviceId, false, true);
+    assertNull(pushLatencyManager.takePushRecord(accountUuid, deviceId).get());
+
+    when(pushLatencyConfiguration.getSampleRate()).thenReturn(1.0);
+    assertTrue(pushLatencyManager.isSampled(accountUuid, deviceId));
+
+    when(pushLatencyConfiguration.getSampleRate()).thenReturn(0.5);
+
+    final long sampledDevices = IntStream.range(0, 10_000)
+        .filter(ignored -> pushLatencyManager.isSampled(UUID.randomUUID(), deviceId))
+        .count();
+
+    assertTrue(sampledDevices > 4_000 && sampledDevices < 6_000);
+
+    // Sampling decisions should be stable for a given device
+    assertEquals(pushLatencyManager.isSampled(accountUuid, deviceId), pushLatencyManager.isSampled(accountUuid, deviceId));
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.redis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KeyspaceNotificationDispatcherTest {
+
+  private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
+
+  @BeforeEach
+  void setUp() {
+    keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 4, 1_000);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    keyspaceNotificationDispatcher.stop();
+  }
+
+  @Test
+  void testDispatchOrderedByKey() {
+    final List<String> keys = List.of("a", "b", "c", "d", "e", "f", "g", "h");
+    final int notificationsPerKey = 100;
+
+    final Map<String, List<Integer>> handledNotificationsByKey = new ConcurrentHashMap<>();
+    final CountDownLatch allNotificationsHandled = new CountDownLatch(keys.size() * notificationsPerKey);
+
+    for (int i = 0; i < notificationsPerKey; i++) {
+      final int notification = i;
+
+      for (final String key : keys) {
+        keyspaceNotificationDispatcher.dispatch(key, () -> {
+          handledNotificationsByKey.computeIfAbsent(key, ignored -> new ArrayList<>()).add(notification);
+          allNotificationsHandled.countDown();
+        });
+      }
+    }
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> allNotificationsHandled.await());
+
+    final List<Integer> expectedNotifications = IntStream.range(0, notificationsPerKey).boxed().toList();
+
+    for (final String key : keys) {
+      assertEquals(expectedNotifications, handledNotificationsByKey.get(key));
+    }
+  }
+
+  @Test
+  void testDispatchAfterStop() throws InterruptedException {
+    keyspaceNotificationDispatcher.stop();
+
+    assertThrows(RejectedExecutionException.class, () -> keyspaceNotificationDispatcher.dispatch("a", () -> {}));
+  }
+}
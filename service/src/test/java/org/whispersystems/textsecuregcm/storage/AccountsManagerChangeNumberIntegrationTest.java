@@ -117,6 +117,7 @@ class AccountsManagerChangeNumberIntegrationTest {
           accounts,
           phoneNumberIdentifiers,
           CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+          new LocalAccountCache(CACHE_CLUSTER_EXTENSION.getRedisCluster()),
           accountLockManager,
           keysManager,
           messagesManager,
@@ -50,7 +50,6 @@ import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import org.whispersystems.textsecuregcm.tests.util.DevicesHelper;
-import org.whispersystems.textsecuregcm.tests.util.JsonHelpers;
 import org.whispersystems.textsecuregcm.tests.util.RedisClusterHelper;
 import org.whispersystems.textsecuregcm.util.Pair;
 
@@ -70,6 +69,7 @@ class AccountsManagerConcurrentModificationIntegrationTest {
   private AccountsManager accountsManager;
 
   private RedisAdvancedClusterCommands<String, String> commands;
+  private RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands;
 
   private Executor mutationExecutor = new ThreadPoolExecutor(20, 20, 5, TimeUnit.SECONDS, new LinkedBlockingDeque<>(20));
 
@@ -93,6 +93,9 @@ class AccountsManagerConcurrentModificationIntegrationTest {
       //noinspection unchecked
       commands = mock(RedisAdvancedClusterCommands.class);
 
+      //noinspection unchecked
+      binaryCommands = mock(RedisAdvancedClusterCommands.class);
+
       final AccountLockManager accountLockManager = mock(AccountLockManager.class);
 
       doAnswer(invocation -> {
@@ -116,7 +119,8 @@ class AccountsManagerConcurrentModificationIntegrationTest {
       accountsManager = new AccountsManager(
           accounts,
           phoneNumberIdentifiers,
-          RedisClusterHelper.builder().stringCommands(commands).build(),
+          RedisClusterHelper.builder().stringCommands(commands).binaryCommands(binaryCommands).build(),
+          mock(LocalAccountCache.class),
           accountLockManager,
           mock(KeysManager.class),
           mock(MessagesManager.class),
@@ -172,7 +176,7 @@ class AccountsManagerConcurrentModificationIntegrationTest {
     final Account managerAccount = accountsManager.getByAccountIdentifier(uuid).orElseThrow();
     final Account dynamoAccount = accounts.getByAccountIdentifier(uuid).orElseThrow();
 
-    final Account redisAccount = getLastAccountFromRedisMock(commands);
+    final Account redisAccount = getLastAccountFromRedisMock(binaryCommands, uuid);
 
     Stream.of(
         new Pair<>("manager", managerAccount),
@@ -184,12 +188,13 @@ class AccountsManagerConcurrentModificationIntegrationTest {
             unrestrictedUnidentifiedAccess, lastSeen));
   }
 
-  private Account getLastAccountFromRedisMock(RedisAdvancedClusterCommands<String, String> commands) throws IOException {
-    ArgumentCaptor<String> redisSetArgumentCapture = ArgumentCaptor.forClass(String.class);
+  private Account getLastAccountFromRedisMock(RedisAdvancedClusterCommands<byte[], byte[]> commands, final UUID uuid) {
+    ArgumentCaptor<byte[]> redisSetArgumentCapture = ArgumentCaptor.forClass(byte[].class);
 
-    verify(commands, atLeast(20)).setex(anyString(), anyLong(), redisSetArgumentCapture.capture());
+    // Expect at least one write of the account entity for each of the concurrent modifications
+    verify(commands, atLeast(8)).setex(any(), anyLong(), redisSetArgumentCapture.capture());
 
-    return JsonHelpers.fromJson(redisSetArgumentCapture.getValue(), Account.class);
+    return CachedAccountEncoding.read(redisSetArgumentCapture.getValue(), uuid).orElseThrow();
   }
 
   private void verifyAccount(final String name, final Account account, final boolean discoverableByPhoneNumber, final String currentProfileVersion, final IdentityKey identityKey, final byte[] unidentifiedAccessKey, final String pin, final String clientRegistrationLock, final boolean unrestrictedUnidentifiedAccess, final long lastSeen) {
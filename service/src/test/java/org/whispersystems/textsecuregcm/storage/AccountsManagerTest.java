@@ -12,6 +12,7 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
@@ -28,6 +29,7 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisException;
 import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
 import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
@@ -36,6 +38,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
@@ -43,6 +46,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -57,6 +61,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentMatchers;
 import org.mockito.stubbing.Answer;
 import org.signal.libsignal.protocol.IdentityKey;
 import org.signal.libsignal.protocol.ecc.Curve;
@@ -71,6 +76,7 @@ import org.whispersystems.textsecuregcm.experiment.ExperimentEnrollmentManager;
 import org.whispersystems.textsecuregcm.identity.AciServiceIdentifier;
 import org.whispersystems.textsecuregcm.identity.IdentityType;
 import org.whispersystems.textsecuregcm.identity.PniServiceIdentifier;
+import org.whispersystems.textsecuregcm.identity.ServiceIdentifier;
 import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
 import org.whispersystems.textsecuregcm.securestorage.SecureStorageClient;
 import org.whispersystems.textsecuregcm.securevaluerecovery.SecureValueRecovery2Client;
@@ -105,6 +111,8 @@ class AccountsManagerTest {
 
   private RedisAdvancedClusterCommands<String, String> commands;
   private RedisAdvancedClusterAsyncCommands<String, String> asyncCommands;
+  private RedisAdvancedClusterCommands<byte[], byte[]> binaryCommands;
+  private RedisAdvancedClusterAsyncCommands<byte[], byte[]> binaryAsyncCommands;
   private AccountsManager accountsManager;
 
   private static final Answer<?> ACCOUNT_UPDATE_ANSWER = (answer) -> {
@@ -141,6 +149,14 @@ class AccountsManagerTest {
     when(asyncCommands.get(any())).thenReturn(MockRedisFuture.completedFuture(null));
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
+    //noinspection unchecked
+    binaryCommands = mock(RedisAdvancedClusterCommands.class);
+
+    //noinspection unchecked
+    binaryAsyncCommands = mock(RedisAdvancedClusterAsyncCommands.class);
+    when(binaryAsyncCommands.get(any())).thenReturn(MockRedisFuture.completedFuture(null));
+    when(binaryAsyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
+
     when(accounts.updateAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
     when(accounts.delete(any())).thenReturn(CompletableFuture.completedFuture(null));
 
@@ -210,7 +226,10 @@ class AccountsManagerTest {
         RedisClusterHelper.builder()
             .stringCommands(commands)
             .stringAsyncCommands(asyncCommands)
+            .binaryCommands(binaryCommands)
+            .binaryAsyncCommands(binaryAsyncCommands)
             .build(),
+        mock(LocalAccountCache.class),
         accountLockManager,
         keysManager,
         messagesManager,
@@ -230,8 +249,8 @@ class AccountsManagerTest {
     final UUID pni = UUID.randomUUID();
 
     when(commands.get(eq("AccountMap::" + pni))).thenReturn(aci.toString());
-    when(commands.get(eq("Account3::" + aci))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(aci)))).thenReturn(
+        ("{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}").getBytes(StandardCharsets.UTF_8));
 
     assertTrue(accountsManager.getByServiceIdentifier(new AciServiceIdentifier(aci)).isPresent());
     assertTrue(accountsManager.getByServiceIdentifier(new PniServiceIdentifier(pni)).isPresent());
@@ -245,8 +264,8 @@ class AccountsManagerTest {
     final UUID pni = UUID.randomUUID();
 
     when(asyncCommands.get(eq("AccountMap::" + pni))).thenReturn(MockRedisFuture.completedFuture(aci.toString()));
-    when(asyncCommands.get(eq("Account3::" + aci))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(aci)))).thenReturn(MockRedisFuture.completedFuture(
+        ("{\"number\": \"+14152222222\", \"pni\": \"" + pni + "\"}").getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -262,13 +281,74 @@ class AccountsManagerTest {
     assertFalse(accountsManager.getByServiceIdentifierAsync(new PniServiceIdentifier(aci)).join().isPresent());
   }
 
+  @Test
+  void testGetByServiceIdentifiersAsync() {
+    final UUID cachedAci = UUID.randomUUID();
+    final UUID cachedPni = UUID.randomUUID();
+    final UUID uncachedAci = UUID.randomUUID();
+    final UUID uncachedPni = UUID.randomUUID();
+    final UUID missingAci = UUID.randomUUID();
+
+    final Account uncachedAccount = AccountsHelper.generateTestAccount("+14152222223", uncachedAci, UUID.randomUUID(),
+        new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
+
+    when(asyncCommands.mget(ArgumentMatchers.<String>any())).thenAnswer(invocation ->
+        MockRedisFuture.completedFuture(Arrays.stream(invocation.getArguments())
+            .map(key -> key.equals("AccountMap::" + cachedPni)
+                ? KeyValue.just((String) key, cachedAci.toString())
+                : KeyValue.<String, String>empty((String) key))
+            .toList()));
+
+    when(binaryAsyncCommands.mget(ArgumentMatchers.<byte[]>any())).thenAnswer(invocation ->
+        MockRedisFuture.completedFuture(Arrays.stream(invocation.getArguments())
+            .map(key -> Arrays.equals((byte[]) key, getAccountEntityKey(cachedAci))
+                ? KeyValue.just((byte[]) key,
+                ("{\"number\": \"+14152222222\", \"pni\": \"" + cachedPni + "\"}").getBytes(StandardCharsets.UTF_8))
+                : KeyValue.<byte[], byte[]>empty((byte[]) key))
+            .toList()));
+
+    when(accounts.getByAccountIdentifierAsync(uncachedAci))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(uncachedAccount)));
+
+    when(accounts.getByAccountIdentifierAsync(missingAci))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    when(accounts.getByPhoneNumberIdentifierAsync(uncachedPni))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    final Map<ServiceIdentifier, Account> accountsByServiceIdentifier =
+        accountsManager.getByServiceIdentifiersAsync(List.of(
+            new AciServiceIdentifier(cachedAci),
+            new PniServiceIdentifier(cachedPni),
+            new AciServiceIdentifier(uncachedAci),
+            new PniServiceIdentifier(uncachedPni),
+            new AciServiceIdentifier(missingAci))).join();
+
+    assertEquals(Set.of(new AciServiceIdentifier(cachedAci), new PniServiceIdentifier(cachedPni),
+        new AciServiceIdentifier(uncachedAci)), accountsByServiceIdentifier.keySet());
+
+    assertEquals(cachedAci, accountsByServiceIdentifier.get(new AciServiceIdentifier(cachedAci)).getUuid());
+    assertEquals(cachedAci, accountsByServiceIdentifier.get(new PniServiceIdentifier(cachedPni)).getUuid());
+    assertSame(uncachedAccount, accountsByServiceIdentifier.get(new AciServiceIdentifier(uncachedAci)));
+
+    // All cached accounts should be fetched with a single multi-key read
+    verify(binaryAsyncCommands).mget(ArgumentMatchers.<byte[]>any());
+    verify(binaryAsyncCommands, never()).get(any());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uncachedAci)), anyLong(), any());
+
+    verify(accounts).getByAccountIdentifierAsync(uncachedAci);
+    verify(accounts).getByAccountIdentifierAsync(missingAci);
+    verify(accounts).getByPhoneNumberIdentifierAsync(uncachedPni);
+    verifyNoMoreInteractions(accounts);
+  }
+
   @Test
   void testGetAccountByNumberInCache() {
     UUID uuid = UUID.randomUUID();
 
     when(commands.get(eq("AccountMap::+14152222222"))).thenReturn(uuid.toString());
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8));
 
     Optional<Account> account = accountsManager.getByE164("+14152222222");
 
@@ -277,7 +357,7 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(commands, times(1)).get(eq("AccountMap::+14152222222"));
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(commands);
 
     verifyNoInteractions(accounts);
@@ -290,8 +370,8 @@ class AccountsManagerTest {
     when(asyncCommands.get(eq("AccountMap::+14152222222")))
         .thenReturn(MockRedisFuture.completedFuture(uuid.toString()));
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -302,7 +382,7 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(asyncCommands).get(eq("AccountMap::+14152222222"));
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
 
     verifyNoInteractions(accounts);
@@ -312,8 +392,8 @@ class AccountsManagerTest {
   void testGetAccountByUuidInCache() {
     UUID uuid = UUID.randomUUID();
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8));
 
     Optional<Account> account = accountsManager.getByAccountIdentifier(uuid);
 
@@ -322,7 +402,7 @@ class AccountsManagerTest {
     assertEquals(account.get().getUuid(), uuid);
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(commands);
 
     verifyNoInteractions(accounts);
@@ -332,8 +412,8 @@ class AccountsManagerTest {
   void testGetAccountByUuidInCacheAsync() {
     UUID uuid = UUID.randomUUID();
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -344,7 +424,7 @@ class AccountsManagerTest {
     assertEquals(account.get().getUuid(), uuid);
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
-    verify(asyncCommands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
 
     verifyNoInteractions(accounts);
@@ -356,8 +436,8 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
 
     when(commands.get(eq("AccountMap::" + pni))).thenReturn(uuid.toString());
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}");
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8));
 
     Optional<Account> account = accountsManager.getByPhoneNumberIdentifier(pni);
 
@@ -366,7 +446,7 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(commands).get(eq("AccountMap::" + pni));
-    verify(commands).get(eq("Account3::" + uuid));
+    verify(binaryCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(commands);
 
     verifyNoInteractions(accounts);
@@ -380,8 +460,8 @@ class AccountsManagerTest {
     when(asyncCommands.get(eq("AccountMap::" + pni)))
         .thenReturn(MockRedisFuture.completedFuture(uuid.toString()));
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
-        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}"));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
+        "{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\"}".getBytes(StandardCharsets.UTF_8)));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
 
@@ -392,7 +472,7 @@ class AccountsManagerTest {
     assertEquals(UUID.fromString("de24dc73-fbd8-41be-a7d5-764c70d9da7e"), account.get().getPhoneNumberIdentifier());
 
     verify(asyncCommands).get(eq("AccountMap::" + pni));
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
 
     verifyNoInteractions(accounts);
@@ -404,9 +484,9 @@ class AccountsManagerTest {
     when(asyncCommands.get(eq("UAccountMap::" + BASE_64_URL_USERNAME_HASH_1)))
         .thenReturn(MockRedisFuture.completedFuture(uuid.toString()));
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(
         String.format("{\"number\": \"+14152222222\", \"pni\": \"de24dc73-fbd8-41be-a7d5-764c70d9da7e\", \"usernameHash\": \"%s\"}",
-            BASE_64_URL_USERNAME_HASH_1)));
+            BASE_64_URL_USERNAME_HASH_1).getBytes(StandardCharsets.UTF_8)));
 
     Optional<Account> account = accountsManager.getByUsernameHash(USERNAME_HASH_1).join();
 
@@ -416,7 +496,7 @@ class AccountsManagerTest {
     assertArrayEquals(USERNAME_HASH_1, account.get().getUsernameHash().get());
 
     verify(asyncCommands).get(eq("UAccountMap::" + BASE_64_URL_USERNAME_HASH_1));
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verifyNoMoreInteractions(asyncCommands);
 
     verifyNoInteractions(accounts);
@@ -439,7 +519,7 @@ class AccountsManagerTest {
     verify(commands, times(1)).get(eq("AccountMap::+14152222222"));
     verify(commands, times(1)).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts, times(1)).getByE164(eq("+14152222222"));
@@ -465,7 +545,7 @@ class AccountsManagerTest {
     verify(asyncCommands).get(eq("AccountMap::+14152222222"));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByE164Async(eq("+14152222222"));
@@ -478,7 +558,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
     when(accounts.getByAccountIdentifier(eq(uuid))).thenReturn(Optional.of(account));
 
     Optional<Account> retrieved = accountsManager.getByAccountIdentifier(uuid);
@@ -486,10 +566,10 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verify(commands, times(1)).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts, times(1)).getByAccountIdentifier(eq(uuid));
@@ -502,7 +582,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(MockRedisFuture.completedFuture(null));
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(MockRedisFuture.completedFuture(null));
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
     when(accounts.getByAccountIdentifierAsync(eq(uuid)))
         .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
@@ -512,10 +592,10 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByAccountIdentifierAsync(eq(uuid));
@@ -540,7 +620,7 @@ class AccountsManagerTest {
     verify(commands).get(eq("AccountMap::" + pni));
     verify(commands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
     verify(commands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(commands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts).getByPhoneNumberIdentifier(pni);
@@ -567,7 +647,7 @@ class AccountsManagerTest {
     verify(asyncCommands).get(eq("AccountMap::" + pni));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByPhoneNumberIdentifierAsync(pni);
@@ -596,7 +676,7 @@ class AccountsManagerTest {
     verify(asyncCommands).setex(eq("UAccountMap::" + BASE_64_URL_USERNAME_HASH_1), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + account.getPhoneNumberIdentifier()), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByUsernameHash(USERNAME_HASH_1);
@@ -620,7 +700,7 @@ class AccountsManagerTest {
     verify(commands, times(1)).get(eq("AccountMap::+14152222222"));
     verify(commands, times(1)).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts, times(1)).getByE164(eq("+14152222222"));
@@ -648,7 +728,7 @@ class AccountsManagerTest {
     verify(asyncCommands).get(eq("AccountMap::+14152222222"));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByE164Async(eq("+14152222222"));
@@ -661,7 +741,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenThrow(new RedisException("Connection lost!"));
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenThrow(new RedisException("Connection lost!"));
     when(accounts.getByAccountIdentifier(eq(uuid))).thenReturn(Optional.of(account));
 
     Optional<Account> retrieved = accountsManager.getByAccountIdentifier(uuid);
@@ -669,10 +749,10 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(commands, times(1)).get(eq("Account3::" + uuid));
+    verify(binaryCommands, times(1)).get(aryEq(getAccountEntityKey(uuid)));
     verify(commands, times(1)).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(commands, times(1)).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(commands, times(1)).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands, times(1)).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts, times(1)).getByAccountIdentifier(eq(uuid));
@@ -685,7 +765,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid)))
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid))))
         .thenReturn(MockRedisFuture.failedFuture(new RedisException("Connection lost!")));
 
     when(asyncCommands.setex(any(), anyLong(), any())).thenReturn(MockRedisFuture.completedFuture("OK"));
@@ -698,10 +778,10 @@ class AccountsManagerTest {
     assertTrue(retrieved.isPresent());
     assertSame(retrieved.get(), account);
 
-    verify(asyncCommands).get(eq("Account3::" + uuid));
+    verify(binaryAsyncCommands).get(aryEq(getAccountEntityKey(uuid)));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByAccountIdentifierAsync(eq(uuid));
@@ -726,7 +806,7 @@ class AccountsManagerTest {
     verify(commands).get(eq("AccountMap::" + pni));
     verify(commands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
     verify(commands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(commands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(commands);
 
     verify(accounts).getByPhoneNumberIdentifier(pni);
@@ -756,7 +836,7 @@ class AccountsManagerTest {
     verify(asyncCommands).get(eq("AccountMap::" + pni));
     verify(asyncCommands).setex(eq("AccountMap::" + pni), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByPhoneNumberIdentifierAsync(pni);
@@ -785,7 +865,7 @@ class AccountsManagerTest {
     verify(asyncCommands).setex(eq("UAccountMap::" + BASE_64_URL_USERNAME_HASH_1), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::" + account.getPhoneNumberIdentifier()), anyLong(), eq(uuid.toString()));
     verify(asyncCommands).setex(eq("AccountMap::+14152222222"), anyLong(), eq(uuid.toString()));
-    verify(asyncCommands).setex(eq("Account3::" + uuid), anyLong(), anyString());
+    verify(binaryAsyncCommands).setex(aryEq(getAccountEntityKey(uuid)), anyLong(), any());
     verifyNoMoreInteractions(asyncCommands);
 
     verify(accounts).getByUsernameHash(USERNAME_HASH_1);
@@ -798,7 +878,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
 
     when(accounts.getByAccountIdentifier(uuid)).thenReturn(
         Optional.of(AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH])));
@@ -824,7 +904,7 @@ class AccountsManagerTest {
     UUID pni = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(asyncCommands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryAsyncCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
 
     when(accounts.getByAccountIdentifierAsync(uuid)).thenReturn(CompletableFuture.completedFuture(
         Optional.of(AccountsHelper.generateTestAccount("+14152222222", uuid, pni, new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]))));
@@ -850,7 +930,7 @@ class AccountsManagerTest {
     UUID uuid = UUID.randomUUID();
     Account account = AccountsHelper.generateTestAccount("+14152222222", uuid, UUID.randomUUID(), new ArrayList<>(), new byte[UnidentifiedAccessUtil.UNIDENTIFIED_ACCESS_KEY_LENGTH]);
 
-    when(commands.get(eq("Account3::" + uuid))).thenReturn(null);
+    when(binaryCommands.get(aryEq(getAccountEntityKey(uuid)))).thenReturn(null);
     when(accounts.getByAccountIdentifier(uuid)).thenReturn(Optional.empty())
         .thenReturn(Optional.of(account));
     when(accounts.create(any())).thenThrow(ContestedOptimisticLockException.class);
@@ -1572,4 +1652,8 @@ class AccountsManagerTest {
 
     return device;
   }
+
+  private static byte[] getAccountEntityKey(final UUID uuid) {
+    return ("Account3::" + uuid).getBytes(StandardCharsets.UTF_8);
+  }
 }
@@ -126,6 +126,7 @@ class AccountsManagerUsernameIntegrationTest {
         accounts,
         phoneNumberIdentifiers,
         CACHE_CLUSTER_EXTENSION.getRedisCluster(),
+        new LocalAccountCache(CACHE_CLUSTER_EXTENSION.getRedisCluster()),
         accountLockManager,
         mock(KeysManager.class),
         mock(MessagesManager.class),
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.whispersystems.textsecuregcm.identity.IdentityType;
+import org.whispersystems.textsecuregcm.util.SystemMapper;
+
+class CachedAccountEncodingTest {
+
+  private static final UUID ACCOUNT_UUID = UUID.fromString("111111-1111-1111-1111-111111111111");
+
+  private Account account;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (InputStream inputStream = getClass().getResourceAsStream(
+        "AccountsManagerTest-testJsonRoundTripSerialization.json")) {
+
+      Objects.requireNonNull(inputStream);
+      account = CachedAccountEncoding.read(inputStream.readAllBytes(), ACCOUNT_UUID).orElseThrow();
+    }
+  }
+
+  @Test
+  void readJson() throws Exception {
+    final byte[] encoded = CachedAccountEncoding.writeJson(account).getBytes(StandardCharsets.UTF_8);
+    final Account parsedAccount = CachedAccountEncoding.read(encoded, ACCOUNT_UUID).orElseThrow();
+
+    assertEquals(ACCOUNT_UUID, parsedAccount.getUuid());
+    assertEquals(CachedAccountEncoding.writeJson(account), CachedAccountEncoding.writeJson(parsedAccount));
+  }
+
+  @Test
+  void readBinary() throws Exception {
+    final byte[] encoded = CachedAccountEncoding.writeBinary(account);
+    final Account parsedAccount = CachedAccountEncoding.read(encoded, ACCOUNT_UUID).orElseThrow();
+
+    assertEquals(CachedAccountEncoding.BINARY_VERSION_CBOR, encoded[0]);
+    assertEquals(ACCOUNT_UUID, parsedAccount.getUuid());
+    assertEquals(CachedAccountEncoding.writeJson(account), CachedAccountEncoding.writeJson(parsedAccount));
+
+    assertTrue(encoded.length < CachedAccountEncoding.writeJson(account).getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test
+  void writeBinaryStoresRawBytes() throws Exception {
+    final byte[] encoded = CachedAccountEncoding.writeBinary(account);
+    final String identityKeyBase64 = Base64.getEncoder().encodeToString(account.getIdentityKey(IdentityType.ACI).serialize());
+
+    assertFalse(new String(encoded, StandardCharsets.ISO_8859_1).contains(identityKeyBase64));
+  }
+
+  @Test
+  void readBinaryWithBase64Fields() throws Exception {
+    // Binary-encoded accounts may carry binary fields as base64 strings, just like the JSON form
+    final byte[] cbor = SystemMapper.cborMapper().writeValueAsBytes(
+        SystemMapper.jsonMapper().readTree(CachedAccountEncoding.writeJson(account)));
+
+    final byte[] encoded = new byte[cbor.length + 1];
+    encoded[0] = CachedAccountEncoding.BINARY_VERSION_CBOR;
+    System.arraycopy(cbor, 0, encoded, 1, cbor.length);
+
+    final Account parsedAccount = CachedAccountEncoding.read(encoded, ACCOUNT_UUID).orElseThrow();
+
+    assertEquals(CachedAccountEncoding.writeJson(account), CachedAccountEncoding.writeJson(parsedAccount));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "[]", "\u0002{}", "{"})
+  void readMalformed(final String encoded) {
+    assertEquals(Optional.empty(),
+        CachedAccountEncoding.read(encoded.getBytes(StandardCharsets.UTF_8), ACCOUNT_UUID));
+  }
+
+  @Test
+  void readNull() {
+    assertEquals(Optional.empty(), CachedAccountEncoding.read(null, ACCOUNT_UUID));
+  }
+}
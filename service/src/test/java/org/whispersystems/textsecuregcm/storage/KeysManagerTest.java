@@ -12,6 +12,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -24,21 +25,27 @@ import org.signal.libsignal.protocol.ecc.Curve;
 import org.signal.libsignal.protocol.ecc.ECKeyPair;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicECPreKeyMigrationConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicPreKeyPoolConfiguration;
 import org.whispersystems.textsecuregcm.entities.ECPreKey;
 import org.whispersystems.textsecuregcm.entities.ECSignedPreKey;
 import org.whispersystems.textsecuregcm.entities.KEMSignedPreKey;
+import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import org.whispersystems.textsecuregcm.tests.util.KeysHelper;
 
 class KeysManagerTest {
 
   private DynamicECPreKeyMigrationConfiguration ecPreKeyMigrationConfiguration;
+  private DynamicPreKeyPoolConfiguration preKeyPoolConfiguration;
   private KeysManager keysManager;
 
   @RegisterExtension
   static final DynamoDbExtension DYNAMO_DB_EXTENSION = new DynamoDbExtension(
       Tables.EC_KEYS, Tables.PQ_KEYS, Tables.REPEATED_USE_EC_SIGNED_PRE_KEYS, Tables.REPEATED_USE_KEM_SIGNED_PRE_KEYS);
 
+  @RegisterExtension
+  static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
+
   private static final UUID ACCOUNT_UUID = UUID.randomUUID();
   private static final byte DEVICE_ID = 1;
 
@@ -55,12 +62,18 @@ class KeysManagerTest {
     when(ecPreKeyMigrationConfiguration.storeEcSignedPreKeys()).thenReturn(true);
     when(ecPreKeyMigrationConfiguration.deleteEcSignedPreKeys()).thenReturn(true);
 
+    preKeyPoolConfiguration = mock(DynamicPreKeyPoolConfiguration.class);
+    when(dynamicConfiguration.getPreKeyPoolConfiguration()).thenReturn(preKeyPoolConfiguration);
+    when(preKeyPoolConfiguration.isEnabled()).thenReturn(false);
+    when(preKeyPoolConfiguration.getRefillBatchSize()).thenReturn(2);
+
     keysManager = new KeysManager(
         DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(),
         Tables.EC_KEYS.tableName(),
         Tables.PQ_KEYS.tableName(),
         Tables.REPEATED_USE_EC_SIGNED_PRE_KEYS.tableName(),
         Tables.REPEATED_USE_KEM_SIGNED_PRE_KEYS.tableName(),
+        REDIS_CLUSTER_EXTENSION.getRedisCluster(),
         dynamicConfigurationManager);
   }
 
@@ -150,6 +163,44 @@ class KeysManagerTest {
     assertEquals(0, keysManager.getPqCount(ACCOUNT_UUID, DEVICE_ID).join());
   }
 
+  @Test
+  void testTakeFromPool() {
+    when(preKeyPoolConfiguration.isEnabled()).thenReturn(true);
+
+    assertEquals(Optional.empty(), keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join());
+
+    final List<ECPreKey> preKeys = List.of(generateTestPreKey(1), generateTestPreKey(2), generateTestPreKey(3));
+    keysManager.store(ACCOUNT_UUID, DEVICE_ID, preKeys, null, null, null).join();
+
+    // The pool refills two keys at a time, so this should exercise both popping from the pool and refilling it
+    final Set<ECPreKey> takenKeys = new HashSet<>();
+
+    for (int i = 0; i < preKeys.size(); i++) {
+      takenKeys.add(keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join().orElseThrow());
+    }
+
+    assertEquals(Set.copyOf(preKeys), takenKeys);
+    assertEquals(Optional.empty(), keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join());
+    assertEquals(0, keysManager.getEcCount(ACCOUNT_UUID, DEVICE_ID).join());
+  }
+
+  @Test
+  void testTakeFromPoolAfterReplacement() {
+    when(preKeyPoolConfiguration.isEnabled()).thenReturn(true);
+
+    keysManager.store(ACCOUNT_UUID, DEVICE_ID, List.of(generateTestPreKey(1), generateTestPreKey(2)), null, null, null)
+        .join();
+
+    // Fill the pool, then replace the keys it refers to
+    keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join();
+
+    final ECPreKey replacementKey = generateTestPreKey(7);
+    keysManager.store(ACCOUNT_UUID, DEVICE_ID, List.of(replacementKey), null, null, null).join();
+
+    assertEquals(Optional.of(replacementKey), keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join());
+    assertEquals(Optional.empty(), keysManager.takeEC(ACCOUNT_UUID, DEVICE_ID).join());
+  }
+
   @Test
   void testGetCount() {
     assertEquals(0, keysManager.getEcCount(ACCOUNT_UUID, DEVICE_ID).join());
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+
+class LocalAccountCacheTest {
+
+  @RegisterExtension
+  static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
+
+  private LocalAccountCache localAccountCache;
+  private LocalAccountCache remoteAccountCache;
+
+  private static final byte[] SERIALIZED_ACCOUNT = "{\"number\":\"+18005551234\"}".getBytes(StandardCharsets.UTF_8);
+
+  @BeforeEach
+  void setUp() {
+    localAccountCache = new LocalAccountCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(), 100, Duration.ofMinutes(1),
+        Clock.systemUTC());
+
+    remoteAccountCache = new LocalAccountCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(), 100, Duration.ofMinutes(1),
+        Clock.systemUTC());
+
+    localAccountCache.start();
+    remoteAccountCache.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    localAccountCache.stop();
+    remoteAccountCache.stop();
+  }
+
+  @Test
+  void getPut() {
+    final UUID uuid = UUID.randomUUID();
+
+    assertEquals(Optional.empty(), localAccountCache.get(uuid));
+
+    localAccountCache.put(uuid, SERIALIZED_ACCOUNT, localAccountCache.getGeneration(uuid));
+    assertArrayEquals(SERIALIZED_ACCOUNT, localAccountCache.get(uuid).orElseThrow());
+  }
+
+  @Test
+  void putAfterInvalidation() {
+    final UUID uuid = UUID.randomUUID();
+    final long generation = localAccountCache.getGeneration(uuid);
+
+    localAccountCache.invalidate(uuid);
+    localAccountCache.put(uuid, SERIALIZED_ACCOUNT, generation);
+
+    assertEquals(Optional.empty(), localAccountCache.get(uuid));
+  }
+
+  @Test
+  void putExpired() {
+    final LocalAccountCache expiringAccountCache =
+        new LocalAccountCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(), 100, Duration.ZERO, Clock.systemUTC());
+
+    final UUID uuid = UUID.randomUUID();
+
+    expiringAccountCache.put(uuid, SERIALIZED_ACCOUNT, expiringAccountCache.getGeneration(uuid));
+    assertEquals(Optional.empty(), expiringAccountCache.get(uuid));
+  }
+
+  @Test
+  void invalidateRemote() {
+    final UUID uuid = UUID.randomUUID();
+
+    localAccountCache.put(uuid, SERIALIZED_ACCOUNT, localAccountCache.getGeneration(uuid));
+    remoteAccountCache.put(uuid, SERIALIZED_ACCOUNT, remoteAccountCache.getGeneration(uuid));
+
+    localAccountCache.invalidate(uuid);
+    assertEquals(Optional.empty(), localAccountCache.get(uuid));
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      while (remoteAccountCache.get(uuid).isPresent()) {
+        Thread.sleep(10);
+      }
+    });
+
+    assertTrue(remoteAccountCache.get(uuid).isEmpty());
+  }
+}
@@ -13,7 +13,6 @@ import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import io.lettuce.core.cluster.SlotHash;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
@@ -21,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -32,6 +32,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import reactor.core.scheduler.Scheduler;
@@ -47,7 +49,7 @@ class MessagePersisterIntegrationTest {
   @RegisterExtension
   static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
-  private ExecutorService notificationExecutorService;
+  private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
   private Scheduler messageDeliveryScheduler;
   private ExecutorService messageDeletionExecutorService;
   private MessagesCache messagesCache;
@@ -75,14 +77,15 @@ class MessagePersisterIntegrationTest {
         DYNAMO_DB_EXTENSION.getDynamoDbAsyncClient(), Tables.MESSAGES.tableName(), Duration.ofDays(14),
         messageDeletionExecutorService);
     final AccountsManager accountsManager = mock(AccountsManager.class);
+    final ClientPresenceManager clientPresenceManager = mock(ClientPresenceManager.class);
 
-    notificationExecutorService = Executors.newSingleThreadExecutor();
+    keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 1, 1_000);
     messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        REDIS_CLUSTER_EXTENSION.getRedisCluster(), notificationExecutorService,
+        REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher,
         messageDeliveryScheduler, messageDeletionExecutorService, Clock.systemUTC());
     messagesManager = new MessagesManager(messagesDynamoDb, messagesCache, mock(ReportMessageManager.class),
         messageDeletionExecutorService);
-    messagePersister = new MessagePersister(messagesCache, messagesManager, accountsManager,
+    messagePersister = new MessagePersister(messagesCache, messagesManager, accountsManager, clientPresenceManager,
         dynamicConfigurationManager, PERSIST_DELAY, 1);
 
     account = mock(Account.class);
@@ -91,7 +94,8 @@ class MessagePersisterIntegrationTest {
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(accountUuid);
-    when(accountsManager.getByAccountIdentifier(accountUuid)).thenReturn(Optional.of(account));
+    when(accountsManager.getByAccountIdentifierAsync(accountUuid))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
 
     when(dynamicConfigurationManager.getConfiguration()).thenReturn(new DynamicConfiguration());
 
@@ -100,8 +104,7 @@ class MessagePersisterIntegrationTest {
 
   @AfterEach
   void tearDown() throws Exception {
-    notificationExecutorService.shutdown();
-    notificationExecutorService.awaitTermination(15, TimeUnit.SECONDS);
+    keyspaceNotificationDispatcher.stop();
 
     messageDeletionExecutorService.shutdown();
     messageDeletionExecutorService.awaitTermination(15, TimeUnit.SECONDS);
@@ -128,11 +131,6 @@ class MessagePersisterIntegrationTest {
         expectedMessages.add(message);
       }
 
-      REDIS_CLUSTER_EXTENSION.getRedisCluster()
-          .useCluster(connection -> connection.sync().set(MessagesCache.NEXT_SLOT_TO_PERSIST_KEY,
-              String.valueOf(
-                  SlotHash.getSlot(MessagesCache.getMessageQueueKey(account.getUuid(), Device.PRIMARY_ID)) - 1)));
-
       final AtomicBoolean messagesPersisted = new AtomicBoolean(false);
 
       messagesManager.addMessageAvailabilityListener(account.getUuid(), Device.PRIMARY_ID,
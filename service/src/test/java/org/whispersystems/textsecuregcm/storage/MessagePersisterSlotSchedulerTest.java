@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.protobuf.ByteString;
+import io.lettuce.core.cluster.SlotHash;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
+import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+import org.whispersystems.textsecuregcm.util.TestClock;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+class MessagePersisterSlotSchedulerTest {
+
+  @RegisterExtension
+  static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
+
+  private ExecutorService sharedExecutorService;
+  private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
+  private Scheduler messageDeliveryScheduler;
+  private MessagesCache messagesCache;
+  private TestClock clock;
+
+  private MessagePersisterSlotScheduler slotScheduler;
+
+  private static final Duration PERSIST_DELAY = Duration.ofMinutes(5);
+
+  @BeforeEach
+  void setUp() throws Exception {
+    sharedExecutorService = Executors.newSingleThreadExecutor();
+    keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 1, 1_000);
+    messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
+    messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+        REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher, messageDeliveryScheduler,
+        sharedExecutorService, Clock.systemUTC());
+
+    clock = TestClock.pinned(Instant.now());
+    // Consider only the single most-behind slot so claims are deterministic
+    slotScheduler = new MessagePersisterSlotScheduler(messagesCache, PERSIST_DELAY, clock, 1);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    sharedExecutorService.shutdown();
+    sharedExecutorService.awaitTermination(1, TimeUnit.SECONDS);
+
+    keyspaceNotificationDispatcher.stop();
+
+    messageDeliveryScheduler.dispose();
+  }
+
+  @Test
+  void claimNextSlotMostBehindFirst() {
+    final int mostBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(3)));
+    final int lessBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(2)));
+    insertMessage(clock.instant());
+
+    slotScheduler.refreshBacklog();
+
+    assertEquals(OptionalInt.of(mostBehindSlot), slotScheduler.claimNextSlot());
+    assertEquals(OptionalInt.of(lessBehindSlot), slotScheduler.claimNextSlot());
+    assertEquals(OptionalInt.empty(), slotScheduler.claimNextSlot());
+  }
+
+  @Test
+  void claimNextSlotAmongMostBehind() {
+    final int mostBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(4)));
+    final int lessBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(3)));
+    insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(2)));
+
+    final MessagePersisterSlotScheduler randomizedSlotScheduler =
+        new MessagePersisterSlotScheduler(messagesCache, PERSIST_DELAY, clock, 2);
+
+    randomizedSlotScheduler.refreshBacklog();
+
+    assertThat(randomizedSlotScheduler.claimNextSlot().orElseThrow()).isIn(mostBehindSlot, lessBehindSlot);
+  }
+
+  @Test
+  void releaseSlotFailureBacksOffSlot() {
+    final int mostBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(3)));
+    final int lessBehindSlot = insertMessage(clock.instant().minus(PERSIST_DELAY.multipliedBy(2)));
+
+    slotScheduler.refreshBacklog();
+
+    assertEquals(OptionalInt.of(mostBehindSlot), slotScheduler.claimNextSlot());
+    slotScheduler.releaseSlot(mostBehindSlot, true);
+
+    assertEquals(OptionalInt.of(lessBehindSlot), slotScheduler.claimNextSlot());
+    assertEquals(OptionalInt.empty(), slotScheduler.claimNextSlot());
+
+    clock.pin(clock.instant().plus(MessagePersisterSlotScheduler.getBackoff(1)));
+
+    assertEquals(OptionalInt.of(mostBehindSlot), slotScheduler.claimNextSlot());
+  }
+
+  @Test
+  void getPollInterval() {
+    assertEquals(MessagePersisterSlotScheduler.MIN_POLL_INTERVAL, slotScheduler.getPollInterval());
+
+    slotScheduler.refreshBacklog();
+    assertEquals(MessagePersisterSlotScheduler.MAX_POLL_INTERVAL, slotScheduler.getPollInterval());
+
+    insertMessage(clock.instant().minus(PERSIST_DELAY).plusSeconds(1));
+    slotScheduler.refreshBacklog();
+    assertEquals(Duration.ofSeconds(1), slotScheduler.getPollInterval());
+  }
+
+  @Test
+  void getBackoff() {
+    assertEquals(MessagePersisterSlotScheduler.MIN_BACKOFF, MessagePersisterSlotScheduler.getBackoff(1));
+    assertEquals(MessagePersisterSlotScheduler.MIN_BACKOFF.multipliedBy(2), MessagePersisterSlotScheduler.getBackoff(2));
+    assertEquals(MessagePersisterSlotScheduler.MAX_BACKOFF, MessagePersisterSlotScheduler.getBackoff(1_000));
+  }
+
+  private int insertMessage(final Instant serverTimestamp) {
+    final UUID accountUuid = UUID.randomUUID();
+    final byte deviceId = Device.PRIMARY_ID;
+    final UUID messageGuid = UUID.randomUUID();
+
+    messagesCache.insert(messageGuid, accountUuid, deviceId, MessageProtos.Envelope.newBuilder()
+        .setTimestamp(serverTimestamp.toEpochMilli())
+        .setServerTimestamp(serverTimestamp.toEpochMilli())
+        .setContent(ByteString.copyFromUtf8("test"))
+        .setType(MessageProtos.Envelope.Type.CIPHERTEXT)
+        .setServerGuid(messageGuid.toString())
+        .build());
+
+    return SlotHash.getSlot(MessagesCache.getMessageQueueKey(accountUuid, deviceId));
+  }
+}
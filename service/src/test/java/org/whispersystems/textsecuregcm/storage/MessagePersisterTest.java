@@ -6,7 +6,6 @@
 package org.whispersystems.textsecuregcm.storage;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyByte;
@@ -28,6 +27,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -41,9 +41,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.push.ClientPresenceManager;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 class MessagePersisterTest {
 
@@ -51,12 +54,14 @@ class MessagePersisterTest {
   static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
   private ExecutorService sharedExecutorService;
+  private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
   private ScheduledExecutorService resubscribeRetryExecutorService;
   private Scheduler messageDeliveryScheduler;
   private MessagesCache messagesCache;
   private MessagesDynamoDb messagesDynamoDb;
   private MessagePersister messagePersister;
   private AccountsManager accountsManager;
+  private ClientPresenceManager clientPresenceManager;
   private MessagesManager messagesManager;
 
   private static final UUID DESTINATION_ACCOUNT_UUID = UUID.randomUUID();
@@ -74,20 +79,23 @@ class MessagePersisterTest {
 
     messagesDynamoDb = mock(MessagesDynamoDb.class);
     accountsManager = mock(AccountsManager.class);
+    clientPresenceManager = mock(ClientPresenceManager.class);
 
     final Account account = mock(Account.class);
 
-    when(accountsManager.getByAccountIdentifier(DESTINATION_ACCOUNT_UUID)).thenReturn(Optional.of(account));
+    when(accountsManager.getByAccountIdentifierAsync(DESTINATION_ACCOUNT_UUID))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
     when(account.getNumber()).thenReturn(DESTINATION_ACCOUNT_NUMBER);
     when(dynamicConfigurationManager.getConfiguration()).thenReturn(new DynamicConfiguration());
 
     sharedExecutorService = Executors.newSingleThreadExecutor();
+    keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 1, 1_000);
     resubscribeRetryExecutorService = Executors.newSingleThreadScheduledExecutor();
     messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
     messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-        REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler,
+        REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher, messageDeliveryScheduler,
         sharedExecutorService, Clock.systemUTC());
-    messagePersister = new MessagePersister(messagesCache, messagesManager, accountsManager,
+    messagePersister = new MessagePersister(messagesCache, messagesManager, accountsManager, clientPresenceManager,
         dynamicConfigurationManager, PERSIST_DELAY, 1);
 
     when(messagesManager.persistMessages(any(UUID.class), anyByte(), any())).thenAnswer(invocation -> {
@@ -101,7 +109,7 @@ class MessagePersisterTest {
         messagesCache.remove(destinationUuid, destinationDeviceId, UUID.fromString(message.getServerGuid())).get();
       }
 
-      return messages.size();
+      return CompletableFuture.completedFuture(messages.size());
     });
   }
 
@@ -110,54 +118,54 @@ class MessagePersisterTest {
     sharedExecutorService.shutdown();
     sharedExecutorService.awaitTermination(1, TimeUnit.SECONDS);
 
+    keyspaceNotificationDispatcher.stop();
+
     messageDeliveryScheduler.dispose();
     resubscribeRetryExecutorService.shutdown();
     resubscribeRetryExecutorService.awaitTermination(1, TimeUnit.SECONDS);
   }
 
   @Test
-  void testPersistNextQueuesNoQueues() {
-    messagePersister.persistNextQueues(Instant.now());
+  void testPersistQueuesNoQueues() {
+    messagePersister.persistQueues(7, Instant.now());
 
-    verify(accountsManager, never()).getByAccountIdentifier(any(UUID.class));
+    verify(accountsManager, never()).getByAccountIdentifierAsync(any(UUID.class));
   }
 
   @Test
-  void testPersistNextQueuesSingleQueue() {
+  void testPersistQueuesSingleQueue() {
     final String queueName = new String(
         MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
     final int messageCount = (MessagePersister.MESSAGE_BATCH_LIMIT * 3) + 7;
     final Instant now = Instant.now();
 
     insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
-    setNextSlotToPersist(SlotHash.getSlot(queueName));
-
-    messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+    messagePersister.persistQueues(SlotHash.getSlot(queueName), now.plus(messagePersister.getPersistDelay()));
 
     final ArgumentCaptor<List<MessageProtos.Envelope>> messagesCaptor = ArgumentCaptor.forClass(List.class);
 
     verify(messagesDynamoDb, atLeastOnce()).store(messagesCaptor.capture(), eq(DESTINATION_ACCOUNT_UUID),
         eq(DESTINATION_DEVICE_ID));
     assertEquals(messageCount, messagesCaptor.getAllValues().stream().mapToInt(List::size).sum());
+
+    verify(clientPresenceManager).notifyMessagesPersisted(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID);
   }
 
   @Test
-  void testPersistNextQueuesSingleQueueTooSoon() {
+  void testPersistQueuesSingleQueueTooSoon() {
     final String queueName = new String(
         MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
     final int messageCount = (MessagePersister.MESSAGE_BATCH_LIMIT * 3) + 7;
     final Instant now = Instant.now();
 
     insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
-    setNextSlotToPersist(SlotHash.getSlot(queueName));
-
-    messagePersister.persistNextQueues(now);
+    messagePersister.persistQueues(SlotHash.getSlot(queueName), now);
 
     verify(messagesDynamoDb, never()).store(any(), any(), anyByte());
   }
 
   @Test
-  void testPersistNextQueuesMultiplePages() {
+  void testPersistQueuesMultiplePages() {
     final int slot = 7;
     final int queueCount = (MessagePersister.QUEUE_BATCH_LIMIT * 3) + 7;
     final int messagesPerQueue = 10;
@@ -165,21 +173,21 @@ class MessagePersisterTest {
 
     for (int i = 0; i < queueCount; i++) {
       final String queueName = generateRandomQueueNameForSlot(slot);
-      final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queueName);
-      final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queueName);
+      final byte[] queueKey = queueName.getBytes(StandardCharsets.UTF_8);
+      final UUID accountUuid = MessagesCache.getAccountUuidFromQueueName(queueKey);
+      final byte deviceId = MessagesCache.getDeviceIdFromQueueName(queueKey);
       final String accountNumber = "+1" + RandomStringUtils.randomNumeric(10);
 
       final Account account = mock(Account.class);
 
-      when(accountsManager.getByAccountIdentifier(accountUuid)).thenReturn(Optional.of(account));
+      when(accountsManager.getByAccountIdentifierAsync(accountUuid))
+          .thenReturn(CompletableFuture.completedFuture(Optional.of(account)));
       when(account.getNumber()).thenReturn(accountNumber);
 
       insertMessages(accountUuid, deviceId, messagesPerQueue, now);
     }
 
-    setNextSlotToPersist(slot);
-
-    messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+    messagePersister.persistQueues(slot, now.plus(messagePersister.getPersistDelay()));
 
     final ArgumentCaptor<List<MessageProtos.Envelope>> messagesCaptor = ArgumentCaptor.forClass(List.class);
 
@@ -195,35 +203,36 @@ class MessagePersisterTest {
     final Instant now = Instant.now();
 
     insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
-    setNextSlotToPersist(SlotHash.getSlot(queueName));
-
     doAnswer((Answer<Void>) invocation -> {
       throw new RuntimeException("OH NO.");
     }).when(messagesDynamoDb).store(any(), eq(DESTINATION_ACCOUNT_UUID), eq(DESTINATION_DEVICE_ID));
 
-    messagePersister.persistNextQueues(now.plus(messagePersister.getPersistDelay()));
+    final MessagePersister.SlotPersistenceResult result =
+        messagePersister.persistQueues(SlotHash.getSlot(queueName), now.plus(messagePersister.getPersistDelay()));
 
-    assertEquals(List.of(queueName),
-        messagesCache.getQueuesToPersist(SlotHash.getSlot(queueName),
-            Instant.now().plus(messagePersister.getPersistDelay()), 1));
+    assertEquals(new MessagePersister.SlotPersistenceResult(1, 1), result);
+    final List<byte[]> queuesToPersist = messagesCache.getQueuesToPersist(SlotHash.getSlot(queueName),
+        Instant.now().plus(messagePersister.getPersistDelay()), 1).block();
+
+    assertEquals(1, queuesToPersist.size());
+    assertEquals(queueName, new String(queuesToPersist.get(0), StandardCharsets.UTF_8));
   }
 
   @Test
   void testPersistQueueRetryLoop() {
-    final String queueName = new String(
-        MessagesCache.getMessageQueueKey(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID), StandardCharsets.UTF_8);
     final int messageCount = (MessagePersister.MESSAGE_BATCH_LIMIT * 3) + 7;
     final Instant now = Instant.now();
 
     insertMessages(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID, messageCount, now);
-    setNextSlotToPersist(SlotHash.getSlot(queueName));
 
     // returning `0` indicates something not working correctly
-    when(messagesManager.persistMessages(any(UUID.class), anyByte(), anyList())).thenReturn(0);
+    when(messagesManager.persistMessages(any(UUID.class), anyByte(), anyList()))
+        .thenReturn(CompletableFuture.completedFuture(0));
 
     assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
-        assertThrows(MessagePersistenceException.class,
-            () -> messagePersister.persistQueue(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID)));
+        StepVerifier.create(messagePersister.persistQueue(DESTINATION_ACCOUNT_UUID, DESTINATION_DEVICE_ID))
+            .expectError(MessagePersistenceException.class)
+            .verify());
   }
 
   @SuppressWarnings("SameParameterValue")
@@ -261,9 +270,4 @@ class MessagePersisterTest {
     }
   }
 
-  private void setNextSlotToPersist(final int nextSlot) {
-    REDIS_CLUSTER_EXTENSION.getRedisCluster().useCluster(
-        connection -> connection.sync().set(MessagesCache.NEXT_SLOT_TO_PERSIST_KEY, String.valueOf(nextSlot - 1)));
-  }
-
 }
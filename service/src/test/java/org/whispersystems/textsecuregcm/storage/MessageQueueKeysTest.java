@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.lettuce.core.cluster.SlotHash;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.whispersystems.textsecuregcm.util.RedisClusterUtil;
+
+class MessageQueueKeysTest {
+
+  @ParameterizedTest
+  @ValueSource(bytes = {1, 7, 10, 99, 127})
+  void forDevice(final byte deviceId) {
+    final UUID accountUuid = UUID.randomUUID();
+    final String queueName = accountUuid + "::" + deviceId;
+
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(accountUuid, deviceId);
+
+    assertEquals(SlotHash.getSlot(queueName), keys.slot());
+    assertArrayEquals(bytes("user_queue::{" + queueName + "}"), keys.queueKey());
+    assertArrayEquals(bytes("user_queue_metadata::{" + queueName + "}"), keys.queueMetadataKey());
+    assertArrayEquals(bytes("user_queue_persisting::{" + queueName + "}"), keys.persistInProgressKey());
+    assertArrayEquals(bytes("user_queue_index::{" + RedisClusterUtil.getMinimalHashTag(keys.slot()) + "}"),
+        keys.queueIndexKey());
+  }
+
+  @ParameterizedTest
+  @ValueSource(bytes = {1, 7, 10, 99, 127})
+  void getAccountUuidAndDeviceId(final byte deviceId) {
+    final UUID accountUuid = UUID.randomUUID();
+    final MessageQueueKeys keys = MessageQueueKeys.forDevice(accountUuid, deviceId);
+
+    assertEquals(accountUuid, MessageQueueKeys.getAccountUuid(keys.queueKey()));
+    assertEquals(deviceId, MessageQueueKeys.getDeviceId(keys.queueKey()));
+
+    assertEquals(accountUuid, MessageQueueKeys.getAccountUuid(keys.persistInProgressKey()));
+    assertEquals(deviceId, MessageQueueKeys.getDeviceId(keys.persistInProgressKey()));
+
+    final byte[] uppercaseKey = bytes("user_queue::{" + accountUuid.toString().toUpperCase() + "::" + deviceId + "}");
+    assertEquals(accountUuid, MessageQueueKeys.getAccountUuid(uppercaseKey));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "",
+      "user_queue::",
+      "user_queue::{}",
+      "user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff}",
+      "user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff::}",
+      "user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff::x}",
+      "user_queue::{1b363a31-a429-4fb6-8959-984a025e72ff::128}",
+      "user_queue::{1b363a31xa429-4fb6-8959-984a025e72ff::7}",
+      "user_queue::{1b363a31-a429-4fb6-8959-984a025e72fg::7}",
+  })
+  void getDeviceIdMalformed(final String queueKey) {
+    assertThrows(IllegalArgumentException.class, () -> {
+      MessageQueueKeys.getAccountUuid(bytes(queueKey));
+      MessageQueueKeys.getDeviceId(bytes(queueKey));
+    });
+  }
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
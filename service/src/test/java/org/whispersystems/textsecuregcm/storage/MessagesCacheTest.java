@@ -58,7 +58,9 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.reactivestreams.Publisher;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
+import org.whispersystems.textsecuregcm.push.ClientEventNotificationMode;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
+import org.whispersystems.textsecuregcm.redis.KeyspaceNotificationDispatcher;
 import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
 import org.whispersystems.textsecuregcm.tests.util.RedisClusterHelper;
 import reactor.core.publisher.Flux;
@@ -79,6 +81,7 @@ class MessagesCacheTest {
     static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
 
     private ExecutorService sharedExecutorService;
+    private KeyspaceNotificationDispatcher keyspaceNotificationDispatcher;
     private ScheduledExecutorService resubscribeRetryExecutorService;
     private Scheduler messageDeliveryScheduler;
     private MessagesCache messagesCache;
@@ -96,10 +99,12 @@ class MessagesCacheTest {
       });
 
       sharedExecutorService = Executors.newSingleThreadExecutor();
+      keyspaceNotificationDispatcher = new KeyspaceNotificationDispatcher("test", 1, 1_000);
       resubscribeRetryExecutorService = Executors.newSingleThreadScheduledExecutor();
       messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
       messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, Clock.systemUTC());
+          REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher, messageDeliveryScheduler,
+          sharedExecutorService, Clock.systemUTC());
 
       messagesCache.start();
     }
@@ -111,6 +116,8 @@ class MessagesCacheTest {
       sharedExecutorService.shutdown();
       sharedExecutorService.awaitTermination(1, TimeUnit.SECONDS);
 
+      keyspaceNotificationDispatcher.stop();
+
       messageDeliveryScheduler.dispose();
       resubscribeRetryExecutorService.shutdown();
       resubscribeRetryExecutorService.awaitTermination(1, TimeUnit.SECONDS);
@@ -124,6 +131,33 @@ class MessagesCacheTest {
           generateRandomMessage(messageGuid, sealedSender)) > 0);
     }
 
+    @Test
+    void testInsertBatch() {
+      final List<DeviceMessage> deviceMessages = new ArrayList<>();
+
+      for (int i = 0; i < 100; i++) {
+        final UUID messageGuid = UUID.randomUUID();
+        deviceMessages.add(new DeviceMessage(UUID.randomUUID(), DESTINATION_DEVICE_ID,
+            generateRandomMessage(messageGuid, i % 2 == 0)));
+      }
+
+      // Include a second message for one of the destinations to make sure messages to the same queue are inserted in order
+      deviceMessages.add(new DeviceMessage(deviceMessages.get(0).destinationUuid(), DESTINATION_DEVICE_ID,
+          generateRandomMessage(UUID.randomUUID(), true)));
+
+      messagesCache.insert(deviceMessages).join();
+
+      final DeviceMessage firstDeviceMessage = deviceMessages.get(0);
+
+      assertEquals(List.of(firstDeviceMessage.message(), deviceMessages.get(deviceMessages.size() - 1).message()),
+          get(firstDeviceMessage.destinationUuid(), DESTINATION_DEVICE_ID, 10));
+
+      for (final DeviceMessage deviceMessage : deviceMessages.subList(1, deviceMessages.size() - 1)) {
+        assertEquals(List.of(deviceMessage.message()),
+            get(deviceMessage.destinationUuid(), deviceMessage.destinationDeviceId(), 10));
+      }
+    }
+
     @Test
     void testDoubleInsertGuid() {
       final UUID duplicateGuid = UUID.randomUUID();
@@ -187,7 +221,7 @@ class MessagesCacheTest {
 
       assertEquals(messagesToRemove, removedMessages);
       assertEquals(messagesToPreserve,
-          messagesCache.getMessagesToPersist(DESTINATION_UUID, DESTINATION_DEVICE_ID, messageCount));
+          messagesCache.getMessagesToPersist(DESTINATION_UUID, DESTINATION_DEVICE_ID, messageCount).block());
     }
 
     @Test
@@ -272,7 +306,8 @@ class MessagesCacheTest {
       }
 
       final MessagesCache messagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
-          REDIS_CLUSTER_EXTENSION.getRedisCluster(), sharedExecutorService, messageDeliveryScheduler, sharedExecutorService, cacheClock);
+          REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher, messageDeliveryScheduler,
+          sharedExecutorService, cacheClock);
 
       final List<MessageProtos.Envelope> actualMessages = Flux.from(
               messagesCache.get(DESTINATION_UUID, DESTINATION_DEVICE_ID))
@@ -350,16 +385,14 @@ class MessagesCacheTest {
     void testGetAccountFromQueueName() {
       assertEquals(DESTINATION_UUID,
           MessagesCache.getAccountUuidFromQueueName(
-              new String(MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID),
-                  StandardCharsets.UTF_8)));
+              MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID)));
     }
 
     @Test
     void testGetDeviceIdFromQueueName() {
       assertEquals(DESTINATION_DEVICE_ID,
           MessagesCache.getDeviceIdFromQueueName(
-              new String(MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID),
-                  StandardCharsets.UTF_8)));
+              MessagesCache.getMessageQueueKey(DESTINATION_UUID, DESTINATION_DEVICE_ID)));
     }
 
     @Test
@@ -378,9 +411,9 @@ class MessagesCacheTest {
           generateRandomMessage(messageGuid, sealedSender));
       final int slot = SlotHash.getSlot(DESTINATION_UUID + "::" + DESTINATION_DEVICE_ID);
 
-      assertTrue(messagesCache.getQueuesToPersist(slot + 1, Instant.now().plusSeconds(60), 100).isEmpty());
+      assertTrue(messagesCache.getQueuesToPersist(slot + 1, Instant.now().plusSeconds(60), 100).block().isEmpty());
 
-      final List<String> queues = messagesCache.getQueuesToPersist(slot, Instant.now().plusSeconds(60), 100);
+      final List<byte[]> queues = messagesCache.getQueuesToPersist(slot, Instant.now().plusSeconds(60), 100).block();
 
       assertEquals(1, queues.size());
       assertEquals(DESTINATION_UUID, MessagesCache.getAccountUuidFromQueueName(queues.get(0)));
@@ -448,8 +481,8 @@ class MessagesCacheTest {
       assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
         messagesCache.addMessageAvailabilityListener(DESTINATION_UUID, DESTINATION_DEVICE_ID, listener);
 
-        messagesCache.lockQueueForPersistence(DESTINATION_UUID, DESTINATION_DEVICE_ID);
-        messagesCache.unlockQueueForPersistence(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+        messagesCache.lockQueueForPersistence(DESTINATION_UUID, DESTINATION_DEVICE_ID).block();
+        messagesCache.unlockQueueForPersistence(DESTINATION_UUID, DESTINATION_DEVICE_ID).block();
 
         synchronized (notified) {
           while (!notified.get()) {
@@ -497,6 +530,39 @@ class MessagesCacheTest {
       }
     }
 
+    @Test
+    void testNotifyListenerClientEvents() throws Exception {
+      final MessagesCache nodeChannelMessagesCache = new MessagesCache(REDIS_CLUSTER_EXTENSION.getRedisCluster(),
+          REDIS_CLUSTER_EXTENSION.getRedisCluster(), keyspaceNotificationDispatcher, messageDeliveryScheduler,
+          sharedExecutorService, Clock.systemUTC(), ClientEventNotificationMode.NODE_CHANNEL);
+
+      final CompletableFuture<Void> newMessagesAvailable = new CompletableFuture<>();
+      final CompletableFuture<Void> messagesPersisted = new CompletableFuture<>();
+
+      nodeChannelMessagesCache.addMessageAvailabilityListener(DESTINATION_UUID, DESTINATION_DEVICE_ID,
+          new MessageAvailabilityListener() {
+            @Override
+            public boolean handleNewMessagesAvailable() {
+              newMessagesAvailable.complete(null);
+              return true;
+            }
+
+            @Override
+            public boolean handleMessagesPersisted() {
+              messagesPersisted.complete(null);
+              return true;
+            }
+          });
+
+      nodeChannelMessagesCache.handleNewMessagesAvailable(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+      nodeChannelMessagesCache.handleMessagesPersisted(DESTINATION_UUID, DESTINATION_DEVICE_ID);
+
+      assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+        newMessagesAvailable.join();
+        messagesPersisted.join();
+      });
+    }
+
     @Test
     void testAvailabilityListenerResponses() {
       final NewMessagesAvailabilityClosedListener listener1 = new NewMessagesAvailabilityClosedListener(
@@ -512,10 +578,13 @@ class MessagesCacheTest {
 
         listener1.firstMessageHandled.get();
 
-        // Avoid a race condition by blocking on the message handled future *and* the current notification executor task—
-        // the notification executor task includes unsubscribing `listener1`, and, if we don’t wait, sometimes
+        // Avoid a race condition by blocking on the message handled future *and* the current notification dispatcher
+        // task—the notification dispatcher task includes unsubscribing `listener1`, and, if we don’t wait, sometimes
         // `listener2` will get subscribed before `listener1` is cleaned up
-        sharedExecutorService.submit(() -> listener1.firstMessageHandled.get()).get();
+        final CompletableFuture<Void> firstNotificationHandled = new CompletableFuture<>();
+        keyspaceNotificationDispatcher.dispatch(MessagesCache.getQueueName(DESTINATION_UUID, DESTINATION_DEVICE_ID),
+            () -> firstNotificationHandled.complete(null));
+        firstNotificationHandled.get();
 
         final UUID messageGuid2 = UUID.randomUUID();
         messagesCache.insert(messageGuid2, DESTINATION_UUID, DESTINATION_DEVICE_ID,
@@ -561,7 +630,7 @@ class MessagesCacheTest {
 
       messageDeliveryScheduler = Schedulers.newBoundedElastic(10, 10_000, "messageDelivery");
 
-      messagesCache = new MessagesCache(mockCluster, mockCluster, mock(ExecutorService.class),
+      messagesCache = new MessagesCache(mockCluster, mockCluster, mock(KeyspaceNotificationDispatcher.class),
           messageDeliveryScheduler, Executors.newSingleThreadExecutor(), Clock.systemUTC());
     }
 
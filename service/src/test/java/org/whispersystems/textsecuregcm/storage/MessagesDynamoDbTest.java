@@ -6,14 +6,22 @@
 package org.whispersystems.textsecuregcm.storage;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.google.protobuf.ByteString;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -24,12 +32,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.reactivestreams.Publisher;
 import org.whispersystems.textsecuregcm.entities.MessageProtos;
 import org.whispersystems.textsecuregcm.storage.DynamoDbExtensionSchema.Tables;
 import org.whispersystems.textsecuregcm.tests.util.MessageHelper;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
 
 class MessagesDynamoDbTest {
 
@@ -112,6 +124,83 @@ class MessagesDynamoDbTest {
     assertThat(messagesStored).element(2).isEqualTo(MESSAGE2);
   }
 
+  @Test
+  void testStoreAsync() {
+    final UUID destinationUuid = UUID.randomUUID();
+    final byte destinationDeviceId = (byte) (random.nextInt(Device.MAXIMUM_DEVICE_ID) + 1);
+    final int messageCount = (MessagesDynamoDb.DYNAMO_DB_MAX_BATCH_SIZE * 2) + 7;
+
+    final List<MessageProtos.Envelope> messages = new ArrayList<>(messageCount);
+    for (int i = 0; i < messageCount; i++) {
+      messages.add(MessageHelper.createMessage(UUID.randomUUID(), Device.PRIMARY_ID, destinationUuid, (i + 1L) * 1000,
+          "message " + i));
+    }
+
+    messagesDynamoDb.storeAsync(messages, destinationUuid, destinationDeviceId).join();
+
+    assertThat(load(destinationUuid, destinationDeviceId, messageCount)).containsExactlyInAnyOrderElementsOf(messages);
+  }
+
+  @Test
+  void testStoreAsyncMultipleDestinations() {
+    final int destinationCount = 40;
+    final int messagesPerDestination = 3;
+
+    final Map<UUID, List<MessageProtos.Envelope>> messagesByDestination = new HashMap<>();
+
+    for (int i = 0; i < destinationCount; i++) {
+      final UUID destinationUuid = UUID.randomUUID();
+      final List<MessageProtos.Envelope> messages = new ArrayList<>(messagesPerDestination);
+
+      for (int j = 0; j < messagesPerDestination; j++) {
+        messages.add(MessageHelper.createMessage(UUID.randomUUID(), Device.PRIMARY_ID, destinationUuid, (j + 1L) * 1000,
+            "message " + j));
+      }
+
+      messagesByDestination.put(destinationUuid, messages);
+    }
+
+    CompletableFuture.allOf(messagesByDestination.entrySet().stream()
+            .map(entry -> messagesDynamoDb.storeAsync(entry.getValue(), entry.getKey(), Device.PRIMARY_ID))
+            .toArray(CompletableFuture[]::new))
+        .join();
+
+    messagesByDestination.forEach((destinationUuid, messages) ->
+        assertThat(load(destinationUuid, Device.PRIMARY_ID, messagesPerDestination))
+            .containsExactlyInAnyOrderElementsOf(messages));
+  }
+
+  @Test
+  void testStoreAsyncCoalescesBatches() {
+    final DynamoDbAsyncClient dynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
+    when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+    final MessagesDynamoDb coalescingMessagesDynamoDb = new MessagesDynamoDb(DYNAMO_DB_EXTENSION.getDynamoDbClient(),
+        dynamoDbAsyncClient, Tables.MESSAGES.tableName(), Duration.ofDays(14), messageDeletionExecutorService);
+
+    final int destinationCount = MessagesDynamoDb.DYNAMO_DB_MAX_BATCH_SIZE * 2;
+    final List<CompletableFuture<Void>> storeFutures = new ArrayList<>(destinationCount);
+
+    for (int i = 0; i < destinationCount; i++) {
+      final UUID destinationUuid = UUID.randomUUID();
+
+      storeFutures.add(coalescingMessagesDynamoDb.storeAsync(
+          List.of(MessageHelper.createMessage(UUID.randomUUID(), Device.PRIMARY_ID, destinationUuid, 1000, "message")),
+          destinationUuid, Device.PRIMARY_ID));
+    }
+
+    CompletableFuture.allOf(storeFutures.toArray(CompletableFuture[]::new)).join();
+
+    final ArgumentCaptor<BatchWriteItemRequest> requestCaptor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+    verify(dynamoDbAsyncClient, atMost(destinationCount / 5)).batchWriteItem(requestCaptor.capture());
+
+    assertThat(requestCaptor.getAllValues().stream()
+        .mapToInt(request -> request.requestItems().get(Tables.MESSAGES.tableName()).size())
+        .sum())
+        .isEqualTo(destinationCount);
+  }
+
   @ParameterizedTest
   @ValueSource(ints = {10, 100, 100, 1_000, 3_000})
   void testLoadManyAfterInsert(final int messageCount) {
@@ -301,6 +390,32 @@ class MessagesDynamoDbTest {
         .isEmpty();
   }
 
+  @Test
+  void testDeleteMessages() throws Exception {
+    final UUID destinationUuid = UUID.randomUUID();
+    final int messageCount = 60;
+
+    final List<MessageProtos.Envelope> messages = new ArrayList<>(messageCount);
+    for (int i = 0; i < messageCount; i++) {
+      messages.add(MessageHelper.createMessage(UUID.randomUUID(), Device.PRIMARY_ID, destinationUuid, (i + 1L) * 1000,
+          "message " + i));
+    }
+
+    messagesDynamoDb.store(messages, destinationUuid, Device.PRIMARY_ID);
+
+    // Delete enough messages to span multiple batches, plus one message that doesn't exist
+    final Map<UUID, Long> serverTimestampsByGuid = new HashMap<>();
+    messages.subList(0, 40).forEach(message ->
+        serverTimestampsByGuid.put(UUID.fromString(message.getServerGuid()), message.getServerTimestamp()));
+    serverTimestampsByGuid.put(UUID.randomUUID(), 1L);
+
+    messagesDynamoDb.deleteMessages(destinationUuid, Device.PRIMARY_ID, serverTimestampsByGuid)
+        .get(5, TimeUnit.SECONDS);
+
+    assertThat(load(destinationUuid, Device.PRIMARY_ID, MessagesDynamoDb.RESULT_SET_CHUNK_SIZE))
+        .containsExactlyInAnyOrderElementsOf(messages.subList(40, messageCount));
+  }
+
   private List<MessageProtos.Envelope> load(final UUID destinationUuid, final byte destinationDeviceId,
       final int count) {
     return Flux.from(messagesDynamoDb.load(destinationUuid, destinationDeviceId, count))
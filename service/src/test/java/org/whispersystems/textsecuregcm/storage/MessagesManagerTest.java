@@ -6,12 +6,19 @@
 package org.whispersystems.textsecuregcm.storage;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import org.junit.jupiter.api.Test;
 import org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
@@ -46,4 +53,39 @@ class MessagesManagerTest {
 
     verifyNoMoreInteractions(reportMessageManager);
   }
+
+  @Test
+  void deleteBatch() {
+    final UUID destinationUuid = UUID.randomUUID();
+    final UUID cachedMessageGuid = UUID.randomUUID();
+    final UUID persistedMessageGuid = UUID.randomUUID();
+
+    when(messagesCache.remove(eq(destinationUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenReturn(CompletableFuture.completedFuture(List.of(Envelope.newBuilder()
+            .setServerGuid(cachedMessageGuid.toString())
+            .build())));
+
+    when(messagesDynamoDb.deleteMessages(any(), anyByte(), any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    messagesManager.delete(destinationUuid, Device.PRIMARY_ID,
+        Map.of(cachedMessageGuid, 1L, persistedMessageGuid, 2L)).join();
+
+    verify(messagesDynamoDb).deleteMessages(destinationUuid, Device.PRIMARY_ID, Map.of(persistedMessageGuid, 2L));
+  }
+
+  @Test
+  void deleteBatchAllCached() {
+    final UUID destinationUuid = UUID.randomUUID();
+    final UUID cachedMessageGuid = UUID.randomUUID();
+
+    when(messagesCache.remove(eq(destinationUuid), eq(Device.PRIMARY_ID), anyList()))
+        .thenReturn(CompletableFuture.completedFuture(List.of(Envelope.newBuilder()
+            .setServerGuid(cachedMessageGuid.toString())
+            .build())));
+
+    messagesManager.delete(destinationUuid, Device.PRIMARY_ID, Map.of(cachedMessageGuid, 1L)).join();
+
+    verifyNoInteractions(messagesDynamoDb);
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicConfiguration;
+import org.whispersystems.textsecuregcm.configuration.dynamic.DynamicPreKeyPoolConfiguration;
+import org.whispersystems.textsecuregcm.redis.RedisClusterExtension;
+
+class SingleUsePreKeyPoolTest {
+
+  @RegisterExtension
+  static final RedisClusterExtension REDIS_CLUSTER_EXTENSION = RedisClusterExtension.builder().build();
+
+  private SingleUsePreKeyPool preKeyPool;
+
+  private static final UUID ACCOUNT_UUID = UUID.randomUUID();
+  private static final byte DEVICE_ID = 1;
+
+  @BeforeEach
+  void setUp() {
+    final DynamicConfiguration dynamicConfiguration = mock(DynamicConfiguration.class);
+    when(dynamicConfiguration.getPreKeyPoolConfiguration()).thenReturn(new DynamicPreKeyPoolConfiguration());
+
+    //noinspection unchecked
+    final DynamicConfigurationManager<DynamicConfiguration> dynamicConfigurationManager =
+        mock(DynamicConfigurationManager.class);
+
+    when(dynamicConfigurationManager.getConfiguration()).thenReturn(dynamicConfiguration);
+
+    preKeyPool = new SingleUsePreKeyPool(REDIS_CLUSTER_EXTENSION.getRedisCluster(), dynamicConfigurationManager, "test");
+  }
+
+  @Test
+  void testRefillAndPop() {
+    assertEquals(Optional.empty(), preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join());
+
+    final byte[] firstSortKey = {1, 2, 3};
+    final byte[] secondSortKey = {4, 5, 6};
+
+    assertTrue(preKeyPool.tryLockRefill(ACCOUNT_UUID, DEVICE_ID).join());
+    preKeyPool.refill(ACCOUNT_UUID, DEVICE_ID, List.of(firstSortKey, secondSortKey)).join();
+
+    // Refilling with a sort key that's already in the pool shouldn't add a duplicate
+    assertTrue(preKeyPool.tryLockRefill(ACCOUNT_UUID, DEVICE_ID).join());
+    preKeyPool.refill(ACCOUNT_UUID, DEVICE_ID, List.of(secondSortKey)).join();
+
+    final Set<ByteBuffer> poppedSortKeys = new HashSet<>();
+    poppedSortKeys.add(ByteBuffer.wrap(preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join().orElseThrow()));
+    poppedSortKeys.add(ByteBuffer.wrap(preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join().orElseThrow()));
+
+    assertEquals(Set.of(ByteBuffer.wrap(firstSortKey), ByteBuffer.wrap(secondSortKey)), poppedSortKeys);
+    assertEquals(Optional.empty(), preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join());
+  }
+
+  @Test
+  void testRefillLock() {
+    assertTrue(preKeyPool.tryLockRefill(ACCOUNT_UUID, DEVICE_ID).join());
+    assertFalse(preKeyPool.tryLockRefill(ACCOUNT_UUID, DEVICE_ID).join());
+
+    // Locks are per-device
+    assertTrue(preKeyPool.tryLockRefill(ACCOUNT_UUID, (byte) (DEVICE_ID + 1)).join());
+
+    preKeyPool.refill(ACCOUNT_UUID, DEVICE_ID, List.of()).join();
+    assertTrue(preKeyPool.tryLockRefill(ACCOUNT_UUID, DEVICE_ID).join());
+  }
+
+  @Test
+  void testClear() {
+    final byte otherDeviceId = DEVICE_ID + 1;
+
+    preKeyPool.refill(ACCOUNT_UUID, DEVICE_ID, List.of(new byte[]{1})).join();
+    preKeyPool.refill(ACCOUNT_UUID, otherDeviceId, List.of(new byte[]{2})).join();
+
+    preKeyPool.clear(ACCOUNT_UUID, DEVICE_ID).join();
+    assertEquals(Optional.empty(), preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join());
+
+    preKeyPool.refill(ACCOUNT_UUID, DEVICE_ID, List.of(new byte[]{1})).join();
+    preKeyPool.clear(ACCOUNT_UUID).join();
+
+    assertEquals(Optional.empty(), preKeyPool.pop(ACCOUNT_UUID, DEVICE_ID).join());
+    assertEquals(Optional.empty(), preKeyPool.pop(ACCOUNT_UUID, otherDeviceId).join());
+  }
+}
@@ -7,10 +7,15 @@ package org.whispersystems.textsecuregcm.storage;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
 import org.whispersystems.textsecuregcm.entities.PreKey;
@@ -64,6 +69,82 @@ abstract class SingleUsePreKeyStoreTest<K extends PreKey<?>> {
     assertEquals(KEY_COUNT, preKeyStore.getCount(accountIdentifier, deviceId).join());
   }
 
+  @Test
+  void storeReplacesExistingKeys() {
+    final SingleUsePreKeyStore<K> preKeyStore = getPreKeyStore();
+
+    final UUID accountIdentifier = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    final List<K> originalKeys = new ArrayList<>(KEY_COUNT);
+
+    for (int i = 0; i < KEY_COUNT; i++) {
+      originalKeys.add(generatePreKey(i));
+    }
+
+    preKeyStore.store(accountIdentifier, deviceId, originalKeys).join();
+
+    // Overlap the original key IDs so some existing keys are overwritten and others deleted
+    final List<K> replacementKeys = new ArrayList<>(KEY_COUNT);
+
+    for (int i = KEY_COUNT / 2; i < KEY_COUNT + KEY_COUNT / 2; i++) {
+      replacementKeys.add(generatePreKey(i));
+    }
+
+    preKeyStore.store(accountIdentifier, deviceId, replacementKeys).join();
+
+    assertEquals(KEY_COUNT, preKeyStore.getCount(accountIdentifier, deviceId).join());
+
+    final Set<K> takenKeys = new HashSet<>();
+
+    for (int i = 0; i < KEY_COUNT; i++) {
+      takenKeys.add(preKeyStore.take(accountIdentifier, deviceId).join().orElseThrow());
+    }
+
+    assertEquals(new HashSet<>(replacementKeys), takenKeys);
+    assertEquals(Optional.empty(), preKeyStore.take(accountIdentifier, deviceId).join());
+  }
+
+  @Test
+  void getBatchWriteRetryDelay() {
+    for (int attempt = 0; attempt < 32; attempt++) {
+      final Duration delay = AbstractDynamoDbStore.getBatchWriteRetryDelay(attempt);
+
+      assertFalse(delay.isNegative());
+      assertTrue(delay.compareTo(Duration.ofSeconds(1)) <= 0);
+    }
+  }
+
+  @Test
+  void getCountAfterTakeAndReplace() {
+    final SingleUsePreKeyStore<K> preKeyStore = getPreKeyStore();
+
+    final UUID accountIdentifier = UUID.randomUUID();
+    final byte deviceId = 1;
+
+    final List<K> preKeys = new ArrayList<>(KEY_COUNT);
+
+    for (int i = 0; i < KEY_COUNT; i++) {
+      preKeys.add(generatePreKey(i));
+    }
+
+    preKeyStore.store(accountIdentifier, deviceId, preKeys).join();
+
+    preKeyStore.take(accountIdentifier, deviceId).join();
+    preKeyStore.take(accountIdentifier, deviceId).join();
+
+    assertEquals(KEY_COUNT - 2, preKeyStore.getCount(accountIdentifier, deviceId).join());
+
+    preKeyStore.store(accountIdentifier, deviceId, preKeys.subList(0, 10)).join();
+
+    assertEquals(10, preKeyStore.getCount(accountIdentifier, deviceId).join());
+
+    // Taking a key from a device with no keys shouldn't drive the count negative
+    preKeyStore.store(accountIdentifier, deviceId, List.of()).join();
+    assertEquals(Optional.empty(), preKeyStore.take(accountIdentifier, deviceId).join());
+    assertEquals(0, preKeyStore.getCount(accountIdentifier, deviceId).join());
+  }
+
   @Test
   void deleteSingleDevice() {
     final SingleUsePreKeyStore<K> preKeyStore = getPreKeyStore();
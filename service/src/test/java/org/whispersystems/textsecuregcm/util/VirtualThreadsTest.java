@@ -0,0 +1,41 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  void newVirtualThreadPerTaskExecutor() throws Exception {
+    assumeTrue(VirtualThreads.isSupported());
+
+    final ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("test-");
+
+    try {
+      final Thread thread = executor.submit(Thread::currentThread).get();
+
+      assertTrue(thread.getName().startsWith("test-"));
+      assertEquals(true, Thread.class.getMethod("isVirtual").invoke(thread));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void newVirtualThreadPerTaskExecutorUnsupported() {
+    assumeFalse(VirtualThreads.isSupported());
+
+    assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.newVirtualThreadPerTaskExecutor("test-"));
+  }
+}
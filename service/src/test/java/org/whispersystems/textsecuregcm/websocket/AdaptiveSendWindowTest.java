@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveSendWindowTest {
+
+  private static final long BASE_LATENCY_NANOS = 50_000_000;
+
+  @Test
+  void acquireWithinWindow() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 100);
+
+    final List<CompletableFuture<Void>> permits = acquire(sendWindow, AdaptiveSendWindow.INITIAL_WINDOW + 1);
+
+    permits.subList(0, AdaptiveSendWindow.INITIAL_WINDOW).forEach(permit -> assertTrue(permit.isDone()));
+
+    final CompletableFuture<Void> waitingPermit = permits.get(AdaptiveSendWindow.INITIAL_WINDOW);
+    assertFalse(waitingPermit.isDone());
+
+    sendWindow.release(BASE_LATENCY_NANOS, true);
+    assertTrue(waitingPermit.isDone());
+  }
+
+  @Test
+  void slowStart() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 100);
+
+    for (int i = 0; i < 20; i++) {
+      sendWindow.acquire();
+      sendWindow.release(BASE_LATENCY_NANOS, true);
+    }
+
+    assertEquals(AdaptiveSendWindow.INITIAL_WINDOW + 20, sendWindow.getWindow());
+  }
+
+  @Test
+  void maxWindow() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 16);
+
+    for (int i = 0; i < 100; i++) {
+      sendWindow.acquire();
+      sendWindow.release(BASE_LATENCY_NANOS, true);
+    }
+
+    assertEquals(16, sendWindow.getWindow());
+  }
+
+  @Test
+  void decreaseOnFailure() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 100);
+    final int initialWindow = sendWindow.getWindow();
+
+    acquire(sendWindow, initialWindow);
+
+    // The window shrinks at most once per window's worth of responses
+    for (int i = 0; i < initialWindow; i++) {
+      sendWindow.release(0, false);
+    }
+
+    assertEquals(initialWindow / 2, sendWindow.getWindow());
+  }
+
+  @Test
+  void decreaseOnLatency() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 100);
+
+    sendWindow.acquire();
+    sendWindow.release(BASE_LATENCY_NANOS, true);
+
+    final int window = sendWindow.getWindow();
+
+    for (int i = 0; i < 100 && sendWindow.getWindow() >= window; i++) {
+      sendWindow.acquire();
+      sendWindow.release(BASE_LATENCY_NANOS * 10, true);
+    }
+
+    assertTrue(sendWindow.getWindow() < window);
+  }
+
+  @Test
+  void minWindow() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(4, 100);
+
+    for (int i = 0; i < 100; i++) {
+      sendWindow.acquire();
+      sendWindow.release(0, false);
+    }
+
+    assertEquals(4, sendWindow.getWindow());
+  }
+
+  @Test
+  void cancel() {
+    final AdaptiveSendWindow sendWindow = new AdaptiveSendWindow(1, 1);
+
+    final CompletableFuture<Void> grantedPermit = sendWindow.acquire();
+    final CompletableFuture<Void> cancelledPermit = sendWindow.acquire();
+    final CompletableFuture<Void> waitingPermit = sendWindow.acquire();
+
+    assertTrue(grantedPermit.isDone());
+    assertFalse(cancelledPermit.isDone());
+
+    // Cancelling a permit that was never granted shouldn't free up any space in the window
+    sendWindow.cancel(cancelledPermit);
+    assertFalse(waitingPermit.isDone());
+
+    // Cancelling a granted permit, on the other hand, should make room for the next waiter
+    sendWindow.cancel(grantedPermit);
+    assertTrue(waitingPermit.isDone());
+    assertFalse(cancelledPermit.isDone());
+
+    assertEquals(1, sendWindow.getWindow());
+  }
+
+  @Test
+  void invalidBounds() {
+    assertThrows(IllegalArgumentException.class, () -> new AdaptiveSendWindow(0, 10));
+    assertThrows(IllegalArgumentException.class, () -> new AdaptiveSendWindow(10, 5));
+  }
+
+  private static List<CompletableFuture<Void>> acquire(final AdaptiveSendWindow sendWindow, final int count) {
+    final List<CompletableFuture<Void>> permits = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      permits.add(sendWindow.acquire());
+    }
+
+    return permits;
+  }
+}
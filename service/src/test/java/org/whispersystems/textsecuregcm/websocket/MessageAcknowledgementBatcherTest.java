@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.textsecuregcm.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.textsecuregcm.storage.MessagesManager;
+
+class MessageAcknowledgementBatcherTest {
+
+  private MessagesManager messagesManager;
+
+  private static final UUID ACCOUNT_IDENTIFIER = UUID.randomUUID();
+  private static final byte DEVICE_ID = 1;
+
+  @BeforeEach
+  void setUp() {
+    messagesManager = mock(MessagesManager.class);
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
+  }
+
+  @Test
+  void acknowledgeFullBatch() {
+    final MessageAcknowledgementBatcher batcher =
+        new MessageAcknowledgementBatcher(messagesManager, ACCOUNT_IDENTIFIER, DEVICE_ID, 2, Duration.ofMinutes(1));
+
+    final UUID firstGuid = UUID.randomUUID();
+    final UUID secondGuid = UUID.randomUUID();
+
+    final CompletableFuture<Void> firstFuture = batcher.acknowledge(firstGuid, 1);
+    assertFalse(firstFuture.isDone());
+    verify(messagesManager, never()).delete(any(), anyByte(), anyMap());
+
+    final CompletableFuture<Void> secondFuture = batcher.acknowledge(secondGuid, 2);
+
+    verify(messagesManager).delete(ACCOUNT_IDENTIFIER, DEVICE_ID, Map.of(firstGuid, 1L, secondGuid, 2L));
+    assertTrue(firstFuture.isDone());
+    assertTrue(secondFuture.isDone());
+  }
+
+  @Test
+  void acknowledgeLinger() {
+    final MessageAcknowledgementBatcher batcher =
+        new MessageAcknowledgementBatcher(messagesManager, ACCOUNT_IDENTIFIER, DEVICE_ID, 100, Duration.ofMillis(10));
+
+    final UUID messageGuid = UUID.randomUUID();
+
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> batcher.acknowledge(messageGuid, 1).join());
+    verify(messagesManager).delete(ACCOUNT_IDENTIFIER, DEVICE_ID, Map.of(messageGuid, 1L));
+  }
+
+  @Test
+  void acknowledgeDeleteFailure() {
+    when(messagesManager.delete(any(), anyByte(), anyMap()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("OH NO")));
+
+    final MessageAcknowledgementBatcher batcher =
+        new MessageAcknowledgementBatcher(messagesManager, ACCOUNT_IDENTIFIER, DEVICE_ID, 1, Duration.ofMinutes(1));
+
+    assertTrue(batcher.acknowledge(UUID.randomUUID(), 1).isCompletedExceptionally());
+  }
+
+  @Test
+  void flush() {
+    final MessageAcknowledgementBatcher batcher =
+        new MessageAcknowledgementBatcher(messagesManager, ACCOUNT_IDENTIFIER, DEVICE_ID, 100, Duration.ofMinutes(1));
+
+    final UUID messageGuid = UUID.randomUUID();
+    final CompletableFuture<Void> future = batcher.acknowledge(messageGuid, 1);
+    assertFalse(future.isDone());
+
+    batcher.flush();
+
+    verify(messagesManager).delete(ACCOUNT_IDENTIFIER, DEVICE_ID, Map.of(messageGuid, 1L));
+    assertTrue(future.isDone());
+
+    // Flushing doesn't stop subsequent acknowledgements from being batched
+    assertFalse(batcher.acknowledge(UUID.randomUUID(), 2).isDone());
+  }
+
+  @Test
+  void close() {
+    final MessageAcknowledgementBatcher batcher =
+        new MessageAcknowledgementBatcher(messagesManager, ACCOUNT_IDENTIFIER, DEVICE_ID, 100, Duration.ofMinutes(1));
+
+    final UUID pendingGuid = UUID.randomUUID();
+    final CompletableFuture<Void> pendingFuture = batcher.acknowledge(pendingGuid, 1);
+
+    batcher.close();
+
+    verify(messagesManager).delete(ACCOUNT_IDENTIFIER, DEVICE_ID, Map.of(pendingGuid, 1L));
+    assertTrue(pendingFuture.isDone());
+
+    // Acknowledgements that arrive after the batcher has closed should be deleted immediately
+    final UUID lateGuid = UUID.randomUUID();
+    assertTrue(batcher.acknowledge(lateGuid, 2).isDone());
+    verify(messagesManager, timeout(1_000)).delete(ACCOUNT_IDENTIFIER, DEVICE_ID, Map.of(lateGuid, 2L));
+  }
+}
@@ -11,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
@@ -20,11 +21,13 @@ import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.whispersystems.textsecuregcm.entities.MessageProtos.Envelope;
+import static org.whispersystems.textsecuregcm.entities.MessageProtos.EnvelopeBatch;
 
 import com.google.common.net.HttpHeaders;
 import com.google.protobuf.ByteString;
@@ -45,11 +48,13 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.stubbing.Answer;
 import org.whispersystems.textsecuregcm.auth.AccountAuthenticator;
 import org.whispersystems.textsecuregcm.auth.AuthenticatedAccount;
@@ -179,8 +184,7 @@ class WebSocketConnectionTest {
     when(accountsManager.getByE164("sender1")).thenReturn(Optional.of(sender1));
     when(accountsManager.getByE164("sender2")).thenReturn(Optional.empty());
 
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
     String userAgent = HttpHeaders.USER_AGENT;
 
@@ -214,8 +218,8 @@ class WebSocketConnectionTest {
     futures.get(0).completeExceptionally(new IOException());
     futures.get(2).completeExceptionally(new IOException());
 
-    verify(messagesManager, times(1)).delete(eq(accountUuid), eq(deviceId),
-        eq(UUID.fromString(outgoingMessages.get(1).getServerGuid())), eq(outgoingMessages.get(1).getServerTimestamp()));
+    verify(messagesManager, timeout(1_000)).delete(eq(accountUuid), eq(deviceId),
+        eq(Map.of(UUID.fromString(outgoingMessages.get(1).getServerGuid()), outgoingMessages.get(1).getServerTimestamp())));
     verify(receiptSender, times(1)).sendReceipt(eq(new AciServiceIdentifier(accountUuid)), eq(deviceId), eq(new AciServiceIdentifier(senderOneUuid)),
         eq(2222L));
 
@@ -224,11 +228,74 @@ class WebSocketConnectionTest {
   }
 
   @Test
-  public void testOnlineSend() {
+  void testOpenWithMessageBatches() throws InvalidProtocolBufferException {
+    final UUID accountUuid = UUID.randomUUID();
+    final byte deviceId = 2;
+
+    when(device.getId()).thenReturn(deviceId);
+    when(account.getUuid()).thenReturn(accountUuid);
+
+    final List<Envelope> outgoingMessages = Stream.iterate(1, i -> i + 1)
+        .limit(WebSocketConnection.MAX_ENVELOPE_BATCH_SIZE + 1)
+        .map(i -> createMessage(UUID.randomUUID(), accountUuid, i, "message " + i))
+        .toList();
+
+    final Envelope story = createMessage(UUID.randomUUID(), accountUuid, 0, "story").toBuilder()
+        .setStory(true)
+        .build();
+
+    when(messagesManager.getMessagesForDeviceReactive(accountUuid, deviceId, false))
+        .thenReturn(Flux.concat(Flux.just(story), Flux.fromIterable(outgoingMessages)));
+
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
+
+    final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
+    when(successResponse.getStatus()).thenReturn(200);
+
     final WebSocketClient client = mock(WebSocketClient.class);
+    when(client.isOpen()).thenReturn(true);
+    when(client.shouldReceiveMessageBatches()).thenReturn(true);
+    when(client.shouldDeliverStories()).thenReturn(false);
+    when(client.sendRequest(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
+
     final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
         retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
+    connection.start();
+
+    @SuppressWarnings("unchecked") final ArgumentCaptor<Optional<byte[]>> bodyCaptor =
+        ArgumentCaptor.forClass(Optional.class);
+
+    verify(client, timeout(1_000)).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(), eq(Optional.empty()));
+    verify(client, times(2)).sendRequest(eq("PUT"), eq("/api/v1/messages"), any(), bodyCaptor.capture());
+    verify(client, never()).sendRequest(eq("PUT"), eq("/api/v1/message"), any(), any());
+
+    final List<Envelope> firstBatch = EnvelopeBatch.parseFrom(bodyCaptor.getAllValues().get(0).orElseThrow())
+        .getEnvelopesList();
+
+    final List<Envelope> secondBatch = EnvelopeBatch.parseFrom(bodyCaptor.getAllValues().get(1).orElseThrow())
+        .getEnvelopesList();
+
+    assertEquals(outgoingMessages.subList(0, WebSocketConnection.MAX_ENVELOPE_BATCH_SIZE), firstBatch);
+    assertEquals(outgoingMessages.subList(WebSocketConnection.MAX_ENVELOPE_BATCH_SIZE, outgoingMessages.size()),
+        secondBatch);
+
+    // Each batch should be acknowledged as a whole, and the undeliverable story discarded without being sent
+    for (final List<Envelope> batch : List.of(firstBatch, secondBatch)) {
+      verify(messagesManager, timeout(1_000)).delete(accountUuid, deviceId, batch.stream()
+          .collect(Collectors.toMap(envelope -> UUID.fromString(envelope.getServerGuid()), Envelope::getServerTimestamp)));
+    }
+
+    verify(messagesManager).delete(accountUuid, deviceId, UUID.fromString(story.getServerGuid()),
+        story.getServerTimestamp());
+
+    verify(receiptSender, times(outgoingMessages.size())).sendReceipt(any(), anyByte(), any(), anyLong());
+  }
+
+  @Test
+  public void testOnlineSend() {
+    final WebSocketClient client = mock(WebSocketClient.class);
+
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
@@ -236,12 +303,18 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
         .thenReturn(Flux.empty())
         .thenReturn(Flux.just(createMessage(UUID.randomUUID(), UUID.randomUUID(), 1111, "first")))
         .thenReturn(Flux.just(createMessage(UUID.randomUUID(), UUID.randomUUID(), 2222, "second")))
         .thenReturn(Flux.empty());
 
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyMap()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
 
@@ -327,8 +400,7 @@ class WebSocketConnectionTest {
     when(accountsManager.getByE164("sender1")).thenReturn(Optional.of(sender1));
     when(accountsManager.getByE164("sender2")).thenReturn(Optional.empty());
 
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
     String userAgent = HttpHeaders.USER_AGENT;
 
@@ -370,14 +442,15 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessageConcurrency() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     when(account.getNumber()).thenReturn("+18005551234");
     when(account.getUuid()).thenReturn(UUID.randomUUID());
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     final AtomicBoolean threadWaiting = new AtomicBoolean(false);
     final AtomicBoolean returnMessageList = new AtomicBoolean(false);
 
@@ -435,8 +508,6 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessagesMultiplePages() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     when(account.getNumber()).thenReturn("+18005551234");
     final UUID accountUuid = UUID.randomUUID();
@@ -444,6 +515,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     final List<Envelope> firstPageMessages =
         List.of(createMessage(UUID.randomUUID(), UUID.randomUUID(), 1111, "first"),
             createMessage(UUID.randomUUID(), UUID.randomUUID(), 2222, "second"));
@@ -454,7 +528,7 @@ class WebSocketConnectionTest {
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), eq(false)))
         .thenReturn(Flux.fromStream(Stream.concat(firstPageMessages.stream(), secondPageMessages.stream())));
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(), any()))
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyMap()))
         .thenReturn(CompletableFuture.completedFuture(null));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -487,8 +561,6 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessagesContainsSenderUuid() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     when(account.getNumber()).thenReturn("+18005551234");
     final UUID accountUuid = UUID.randomUUID();
@@ -496,6 +568,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     final UUID senderUuid = UUID.randomUUID();
     final List<Envelope> messages = List.of(
         createMessage(senderUuid, UUID.randomUUID(), 1111L, "message the first"));
@@ -504,7 +579,7 @@ class WebSocketConnectionTest {
         .thenReturn(Flux.fromIterable(messages))
         .thenReturn(Flux.empty());
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(UUID.class), any()))
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyMap()))
         .thenReturn(CompletableFuture.completedFuture(null));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -549,8 +624,6 @@ class WebSocketConnectionTest {
   @Test
   void testProcessStoredMessagesSingleEmptyCall() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     final UUID accountUuid = UUID.randomUUID();
 
@@ -559,6 +632,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
         .thenReturn(Flux.empty());
 
@@ -578,8 +654,6 @@ class WebSocketConnectionTest {
   @Test
   public void testRequeryOnStateMismatch() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
     final UUID accountUuid = UUID.randomUUID();
 
     when(account.getNumber()).thenReturn("+18005551234");
@@ -587,6 +661,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     final List<Envelope> firstPageMessages =
         List.of(createMessage(UUID.randomUUID(), UUID.randomUUID(), 1111, "first"),
             createMessage(UUID.randomUUID(), UUID.randomUUID(), 2222, "second"));
@@ -599,7 +676,7 @@ class WebSocketConnectionTest {
         .thenReturn(Flux.fromIterable(secondPageMessages))
         .thenReturn(Flux.empty());
 
-    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), any(), any()))
+    when(messagesManager.delete(eq(accountUuid), eq(Device.PRIMARY_ID), anyMap()))
         .thenReturn(CompletableFuture.completedFuture(null));
 
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
@@ -626,7 +703,8 @@ class WebSocketConnectionTest {
       queueEmptyLatch.await();
     });
 
-    verify(client, times(firstPageMessages.size() + secondPageMessages.size())).sendRequest(eq("PUT"),
+    // Acknowledged messages are deleted asynchronously, so the second page may be processed on another thread
+    verify(client, timeout(1_000).times(firstPageMessages.size() + secondPageMessages.size())).sendRequest(eq("PUT"),
         eq("/api/v1/message"), any(List.class), any(Optional.class));
     verify(client).sendRequest(eq("PUT"), eq("/api/v1/queue/empty"), any(List.class), eq(Optional.empty()));
   }
@@ -634,8 +712,6 @@ class WebSocketConnectionTest {
   @Test
   void testProcessCachedMessagesOnly() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     final UUID accountUuid = UUID.randomUUID();
 
@@ -644,6 +720,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
         .thenReturn(Flux.empty());
 
@@ -666,8 +745,6 @@ class WebSocketConnectionTest {
   @Test
   void testProcessDatabaseMessagesAfterPersist() {
     final WebSocketClient client = mock(WebSocketClient.class);
-    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
-        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
 
     final UUID accountUuid = UUID.randomUUID();
 
@@ -676,6 +753,9 @@ class WebSocketConnectionTest {
     when(device.getId()).thenReturn(Device.PRIMARY_ID);
     when(client.isOpen()).thenReturn(true);
 
+    final WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
+        retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
+
     when(messagesManager.getMessagesForDeviceReactive(eq(accountUuid), eq(Device.PRIMARY_ID), anyBoolean()))
         .thenReturn(Flux.empty());
 
@@ -768,8 +848,7 @@ class WebSocketConnectionTest {
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
     when(client.sendRequest(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
     WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
         retrySchedulingExecutor, messageDeliveryScheduler, clientReleaseManager);
@@ -825,8 +904,7 @@ class WebSocketConnectionTest {
     final WebSocketResponseMessage successResponse = mock(WebSocketResponseMessage.class);
     when(successResponse.getStatus()).thenReturn(200);
     when(client.sendRequest(any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(successResponse));
-    when(messagesManager.delete(any(), anyByte(), any(), any())).thenReturn(
-        CompletableFuture.completedFuture(Optional.empty()));
+    when(messagesManager.delete(any(), anyByte(), anyMap())).thenReturn(CompletableFuture.completedFuture(null));
 
     WebSocketConnection connection = new WebSocketConnection(receiptSender, messagesManager, auth, device, client,
         retrySchedulingExecutor, Schedulers.immediate(), clientReleaseManager);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of reusable buffers into which Jersey writes websocket response bodies. Buffers that have grown
+ * beyond a maximum retained capacity (to hold an unusually large response, for example) are discarded rather than
+ * returned to the pool so a few large responses can't pin a large amount of memory.
+ */
+class ResponseBodyBufferPool {
+
+  private final BlockingQueue<ResponseBodyBuffer> buffers;
+  private final int maxRetainedCapacity;
+
+  private static final int INITIAL_BUFFER_CAPACITY = 1024;
+
+  static class ResponseBodyBuffer extends ByteArrayOutputStream {
+
+    private ResponseBodyBuffer() {
+      super(INITIAL_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Returns the buffer's backing array; only the first {@link #size()} bytes are meaningful, and the array's contents
+     * may change once the buffer has been released back to its pool.
+     */
+    byte[] getBuffer() {
+      return buf;
+    }
+
+    private int capacity() {
+      return buf.length;
+    }
+  }
+
+  ResponseBodyBufferPool(final int maxPooledBuffers, final int maxRetainedCapacity) {
+    this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    this.maxRetainedCapacity = maxRetainedCapacity;
+  }
+
+  ResponseBodyBuffer acquire() {
+    final ResponseBodyBuffer buffer = buffers.poll();
+    return buffer != null ? buffer : new ResponseBodyBuffer();
+  }
+
+  void release(final ResponseBodyBuffer buffer) {
+    if (buffer.capacity() <= maxRetainedCapacity) {
+      buffer.reset();
+
+      // If the pool is already full, just let the buffer get garbage-collected
+      buffers.offer(buffer);
+    }
+  }
+}
@@ -27,6 +27,12 @@ public class WebSocketClient {
 
   private static final Logger logger = LoggerFactory.getLogger(WebSocketClient.class);
 
+  /**
+   * Upgrade request header with which a client advertises that it can receive many stored messages in a single request
+   * while draining its message queue.
+   */
+  public static final String X_SIGNAL_RECEIVE_MESSAGE_BATCHES = "X-Signal-Receive-Message-Batches";
+
   private final Session                                                session;
   private final RemoteEndpoint                                         remoteEndpoint;
   private final WebSocketMessageFactory                                messageFactory;
@@ -96,6 +102,10 @@ public class WebSocketClient {
     return Stories.parseReceiveStoriesHeader(value);
   }
 
+  public boolean shouldReceiveMessageBatches() {
+    return "true".equals(session.getUpgradeRequest().getHeader(X_SIGNAL_RECEIVE_MESSAGE_BATCHES));
+  }
+
   public void hardDisconnectQuietly() {
     try {
       session.disconnect();
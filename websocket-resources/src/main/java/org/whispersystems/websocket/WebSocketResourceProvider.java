@@ -16,6 +16,7 @@ import org.glassfish.jersey.server.ContainerRequest;
 import org.glassfish.jersey.server.ContainerResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.websocket.ResponseBodyBufferPool.ResponseBodyBuffer;
 import org.whispersystems.websocket.logging.WebsocketRequestLog;
 import org.whispersystems.websocket.messages.InvalidMessageException;
 import org.whispersystems.websocket.messages.WebSocketMessage;
@@ -29,11 +30,11 @@ import org.whispersystems.websocket.setup.WebSocketConnectListener;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.security.Principal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -42,6 +43,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
@@ -63,13 +66,18 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   private final WebsocketRequestLog                requestLog;
   private final long                               idleTimeoutMillis;
   private final String                             remoteAddress;
+  private final Optional<Executor>                 requestExecutor;
 
-  private Session                 session;
-  private RemoteEndpoint          remoteEndpoint;
-  private WebSocketSessionContext context;
+  private Session                   session;
+  private RemoteEndpoint            remoteEndpoint;
+  private WebSocketSessionContext   context;
+  private Map<String, List<String>> upgradeRequestHeaders;
 
   private static final Set<String> EXCLUDED_UPGRADE_REQUEST_HEADERS = Set.of("connection", "upgrade");
 
+  // Response buffers are shared by all sessions; most responses are small, so only retain modestly-sized buffers
+  private static final ResponseBodyBufferPool RESPONSE_BODY_BUFFER_POOL = new ResponseBodyBufferPool(1024, 16 * 1024);
+
   public WebSocketResourceProvider(String                             remoteAddress,
                                    ApplicationHandler                 jerseyHandler,
                                    WebsocketRequestLog                requestLog,
@@ -77,6 +85,19 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
                                    WebSocketMessageFactory            messageFactory,
                                    Optional<WebSocketConnectListener> connectListener,
                                    long                               idleTimeoutMillis)
+  {
+    this(remoteAddress, jerseyHandler, requestLog, authenticated, messageFactory, connectListener, idleTimeoutMillis,
+        Optional.empty());
+  }
+
+  public WebSocketResourceProvider(String                             remoteAddress,
+                                   ApplicationHandler                 jerseyHandler,
+                                   WebsocketRequestLog                requestLog,
+                                   T                                  authenticated,
+                                   WebSocketMessageFactory            messageFactory,
+                                   Optional<WebSocketConnectListener> connectListener,
+                                   long                               idleTimeoutMillis,
+                                   Optional<Executor>                 requestExecutor)
   {
     this.remoteAddress     = remoteAddress;
     this.jerseyHandler     = jerseyHandler;
@@ -85,6 +106,7 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     this.messageFactory    = messageFactory;
     this.connectListener   = connectListener;
     this.idleTimeoutMillis = idleTimeoutMillis;
+    this.requestExecutor   = requestExecutor;
   }
 
   @Override
@@ -95,6 +117,9 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     this.context.setAuthenticated(authenticated);
     this.session.setIdleTimeout(idleTimeoutMillis);
 
+    // Upgrade request headers can't change over the life of a session, so filter them once rather than per request
+    this.upgradeRequestHeaders = getFilteredUpgradeRequestHeaders(session.getUpgradeRequest().getHeaders());
+
     connectListener.ifPresent(listener -> listener.onWebSocketConnect(this.context));
   }
 
@@ -158,14 +183,27 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
   }
 
   private void handleRequest(WebSocketRequestMessage requestMessage) {
+    if (requestExecutor.isPresent()) {
+      try {
+        requestExecutor.get().execute(() -> dispatchRequest(requestMessage));
+      } catch (final RejectedExecutionException e) {
+        logger.debug("Request executor rejected websocket request", e);
+        sendErrorResponse(requestMessage, Response.status(503).build());
+      }
+    } else {
+      dispatchRequest(requestMessage);
+    }
+  }
+
+  private void dispatchRequest(WebSocketRequestMessage requestMessage) {
     ContainerRequest containerRequest = new ContainerRequest(null, URI.create(requestMessage.getPath()), requestMessage.getVerb(), new WebSocketSecurityContext(new ContextPrincipal(context)), new MapPropertiesDelegate(new HashMap<>()), jerseyHandler.getConfiguration());
-    containerRequest.headers(getCombinedHeaders(session.getUpgradeRequest().getHeaders(), requestMessage.getHeaders()));
+    containerRequest.headers(combineHeaders(upgradeRequestHeaders, requestMessage.getHeaders()));
 
     if (requestMessage.getBody().isPresent()) {
       containerRequest.setEntityStream(new ByteArrayInputStream(requestMessage.getBody().get()));
     }
 
-    ByteArrayOutputStream                responseBody     = new ByteArrayOutputStream();
+    ResponseBodyBuffer                   responseBody     = RESPONSE_BODY_BUFFER_POOL.acquire();
     CompletableFuture<ContainerResponse> responseFuture   = (CompletableFuture<ContainerResponse>) jerseyHandler.apply(containerRequest, responseBody);
 
     responseFuture.thenAccept(response -> {
@@ -176,20 +214,42 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
       sendErrorResponse(requestMessage, Response.status(500).build());
       requestLog.log(remoteAddress, containerRequest, new ContainerResponse(containerRequest, Response.status(500).build()));
       return null;
-    });
+    }).whenComplete((ignored, throwable) -> RESPONSE_BODY_BUFFER_POOL.release(responseBody));
   }
 
   @VisibleForTesting
   static Map<String, List<String>> getCombinedHeaders(final Map<String, List<String>> upgradeRequestHeaders, final Map<String, String> requestMessageHeaders) {
-    final Map<String, List<String>> combinedHeaders = new HashMap<>();
+    return combineHeaders(getFilteredUpgradeRequestHeaders(upgradeRequestHeaders), requestMessageHeaders);
+  }
+
+  @VisibleForTesting
+  static Map<String, List<String>> getFilteredUpgradeRequestHeaders(final Map<String, List<String>> upgradeRequestHeaders) {
+    final Map<String, List<String>> filteredHeaders = new HashMap<>();
+
+    for (final Map.Entry<String, List<String>> entry : upgradeRequestHeaders.entrySet()) {
+      if (shouldIncludeUpgradeRequestHeader(entry.getKey())) {
+        filteredHeaders.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    return Collections.unmodifiableMap(filteredHeaders);
+  }
 
-    upgradeRequestHeaders.entrySet().stream()
-        .filter(entry -> shouldIncludeUpgradeRequestHeader(entry.getKey()))
-        .forEach(entry -> combinedHeaders.put(entry.getKey(), entry.getValue()));
+  private static Map<String, List<String>> combineHeaders(final Map<String, List<String>> filteredUpgradeRequestHeaders, final Map<String, String> requestMessageHeaders) {
+    if (requestMessageHeaders.isEmpty()) {
+      return filteredUpgradeRequestHeaders;
+    }
+
+    final Map<String, List<String>> combinedHeaders =
+        new HashMap<>(filteredUpgradeRequestHeaders.size() + requestMessageHeaders.size());
 
-    requestMessageHeaders.entrySet().stream()
-        .filter(entry -> shouldIncludeRequestMessageHeader(entry.getKey()))
-        .forEach(entry -> combinedHeaders.put(entry.getKey(), List.of(entry.getValue())));
+    combinedHeaders.putAll(filteredUpgradeRequestHeaders);
+
+    for (final Map.Entry<String, String> entry : requestMessageHeaders.entrySet()) {
+      if (shouldIncludeRequestMessageHeader(entry.getKey())) {
+        combinedHeaders.put(entry.getKey(), List.of(entry.getValue()));
+      }
+    }
 
     return combinedHeaders;
   }
@@ -216,19 +276,14 @@ public class WebSocketResourceProvider<T extends Principal> implements WebSocket
     session.close(status, message);
   }
 
-  private void sendResponse(WebSocketRequestMessage requestMessage, ContainerResponse response, ByteArrayOutputStream responseBody) {
+  private void sendResponse(WebSocketRequestMessage requestMessage, ContainerResponse response, ResponseBodyBuffer responseBody) {
     if (requestMessage.hasRequestId()) {
-      byte[] body = responseBody.toByteArray();
-
-      if (body.length <= 0) {
-        body = null;
-      }
-
+      // Read the body straight out of the pooled buffer rather than copying it to an intermediate array first
       byte[] responseBytes = messageFactory.createResponse(requestMessage.getRequestId(),
                                                            response.getStatus(),
                                                            response.getStatusInfo().getReasonPhrase(),
                                                            getHeaderList(response.getStringHeaders()),
-                                                           Optional.ofNullable(body))
+                                                           responseBody.getBuffer(), 0, responseBody.size())
                                            .toByteArray();
 
       remoteEndpoint.sendBytesByFuture(ByteBuffer.wrap(responseBytes));
@@ -71,7 +71,8 @@ public class WebSocketResourceProviderFactory<T extends Principal> extends WebSo
           authenticated,
           this.environment.getMessageFactory(),
           ofNullable(this.environment.getConnectListener()),
-          this.environment.getIdleTimeoutMillis());
+          this.environment.getIdleTimeoutMillis(),
+          ofNullable(this.environment.getRequestExecutor()));
     } catch (AuthenticationException | IOException e) {
       logger.warn("Authentication failure", e);
       try {
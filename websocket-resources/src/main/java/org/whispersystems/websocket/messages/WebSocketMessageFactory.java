@@ -23,4 +23,12 @@ public interface WebSocketMessageFactory {
                                          List<String> headers,
                                          Optional<byte[]> body);
 
+  /**
+   * Creates a response whose body is the given range of the given array, or a response with no body if the range is
+   * empty. Implementations must not retain a reference to the array after returning.
+   */
+  public WebSocketMessage createResponse(long requestId, int status, String message,
+                                         List<String> headers,
+                                         byte[] body, int bodyOffset, int bodyLength);
+
 }
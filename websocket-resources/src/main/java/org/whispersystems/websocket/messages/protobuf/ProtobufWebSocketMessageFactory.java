@@ -55,15 +55,24 @@ public class ProtobufWebSocketMessageFactory implements WebSocketMessageFactory
 
   @Override
   public WebSocketMessage createResponse(long requestId, int status, String messageString, List<String> headers, Optional<byte[]> body) {
+    return buildResponse(requestId, status, messageString, headers, body.map(ByteString::copyFrom));
+  }
+
+  @Override
+  public WebSocketMessage createResponse(long requestId, int status, String messageString, List<String> headers,
+                                         byte[] body, int bodyOffset, int bodyLength) {
+    return buildResponse(requestId, status, messageString, headers,
+        bodyLength > 0 ? Optional.of(ByteString.copyFrom(body, bodyOffset, bodyLength)) : Optional.empty());
+  }
+
+  private WebSocketMessage buildResponse(long requestId, int status, String messageString, List<String> headers, Optional<ByteString> body) {
     SubProtocol.WebSocketResponseMessage.Builder responseMessage =
         SubProtocol.WebSocketResponseMessage.newBuilder()
                                             .setId(requestId)
                                             .setStatus(status)
                                             .setMessage(messageString);
 
-    if (body.isPresent()) {
-      responseMessage.setBody(ByteString.copyFrom(body.get()));
-    }
+    body.ifPresent(responseMessage::setBody);
 
     if (headers != null) {
       responseMessage.addAllHeaders(headers);
@@ -16,6 +16,7 @@ import org.whispersystems.websocket.messages.protobuf.ProtobufWebSocketMessageFa
 
 import javax.validation.Validator;
 import java.security.Principal;
+import java.util.concurrent.Executor;
 
 public class WebSocketEnvironment<T extends Principal> {
 
@@ -28,6 +29,7 @@ public class WebSocketEnvironment<T extends Principal> {
   private WebSocketAuthenticator<T> authenticator;
   private WebSocketMessageFactory   messageFactory;
   private WebSocketConnectListener  connectListener;
+  private Executor                  requestExecutor;
 
   public WebSocketEnvironment(Environment environment, WebSocketConfiguration configuration) {
     this(environment, configuration, 60000);
@@ -89,4 +91,16 @@ public class WebSocketEnvironment<T extends Principal> {
   public void setConnectListener(WebSocketConnectListener connectListener) {
     this.connectListener = connectListener;
   }
+
+  public Executor getRequestExecutor() {
+    return requestExecutor;
+  }
+
+  /**
+   * Sets an executor on which incoming websocket requests are dispatched to Jersey resources. If no executor is set,
+   * requests are dispatched on the Jetty thread that read them from the websocket.
+   */
+  public void setRequestExecutor(Executor requestExecutor) {
+    this.requestExecutor = requestExecutor;
+  }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+package org.whispersystems.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.whispersystems.websocket.ResponseBodyBufferPool.ResponseBodyBuffer;
+
+class ResponseBodyBufferPoolTest {
+
+  @Test
+  void testReuse() {
+    final ResponseBodyBufferPool pool = new ResponseBodyBufferPool(1, 4096);
+
+    final ResponseBodyBuffer buffer = pool.acquire();
+    buffer.writeBytes("hello world!".getBytes());
+    pool.release(buffer);
+
+    final ResponseBodyBuffer reusedBuffer = pool.acquire();
+    assertThat(reusedBuffer).isSameAs(buffer);
+    assertThat(reusedBuffer.size()).isZero();
+
+    // The pool is empty again, so the next buffer should be new
+    assertThat(pool.acquire()).isNotSameAs(buffer);
+  }
+
+  @Test
+  void testDiscardLargeBuffers() {
+    final ResponseBodyBufferPool pool = new ResponseBodyBufferPool(1, 4096);
+
+    final ResponseBodyBuffer buffer = pool.acquire();
+    final byte[] largeBody = new byte[8192];
+    Arrays.fill(largeBody, (byte) 'a');
+    buffer.writeBytes(largeBody);
+
+    assertThat(buffer.size()).isEqualTo(largeBody.length);
+    assertThat(Arrays.copyOf(buffer.getBuffer(), buffer.size())).isEqualTo(largeBody);
+
+    pool.release(buffer);
+
+    assertThat(pool.acquire()).isNotSameAs(buffer);
+  }
+
+  @Test
+  void testPoolFull() {
+    final ResponseBodyBufferPool pool = new ResponseBodyBufferPool(1, 4096);
+
+    final ResponseBodyBuffer firstBuffer = pool.acquire();
+    final ResponseBodyBuffer secondBuffer = pool.acquire();
+
+    pool.release(firstBuffer);
+    pool.release(secondBuffer);
+
+    assertThat(pool.acquire()).isSameAs(firstBuffer);
+    assertThat(pool.acquire()).isNotSameAs(secondBuffer);
+  }
+}
@@ -11,6 +11,7 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
@@ -224,6 +226,141 @@ class WebSocketResourceProviderTest {
     assertThat(responseMessageContainer.getResponse().hasBody()).isFalse();
   }
 
+  @Test
+  void testUpgradeRequestHeadersCombinedWithRequestHeaders() {
+    ApplicationHandler applicationHandler = mock(ApplicationHandler.class);
+    WebsocketRequestLog requestLog = mock(WebsocketRequestLog.class);
+    WebSocketResourceProvider<TestPrincipal> provider = new WebSocketResourceProvider<>("127.0.0.1", applicationHandler,
+        requestLog, new TestPrincipal("foo"), new ProtobufWebSocketMessageFactory(), Optional.empty(), 30000);
+
+    Session session = mock(Session.class);
+    RemoteEndpoint remoteEndpoint = mock(RemoteEndpoint.class);
+    UpgradeRequest request = mock(UpgradeRequest.class);
+
+    when(session.getUpgradeRequest()).thenReturn(request);
+    when(session.getRemote()).thenReturn(remoteEndpoint);
+    when(request.getHeaders()).thenReturn(Map.of(
+        "Upgrade", List.of("websocket"),
+        "X-Forwarded-For", List.of("127.0.0.1"),
+        HttpHeaders.USER_AGENT, List.of("Upgrade request user agent")));
+
+    ContainerResponse response = mock(ContainerResponse.class);
+    when(response.getStatus()).thenReturn(204);
+    when(response.getStatusInfo()).thenReturn(Response.Status.NO_CONTENT);
+
+    when(applicationHandler.apply(any(ContainerRequest.class), any(OutputStream.class)))
+        .thenReturn(CompletableFuture.completedFuture(response));
+
+    provider.onWebSocketConnect(session);
+
+    byte[] firstMessage = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(111L), "GET", "/bar",
+        new LinkedList<>(), Optional.empty()).toByteArray();
+
+    byte[] secondMessage = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(112L), "GET", "/bar",
+        List.of("X-Forwarded-For:192.168.0.1", "X-Test:test"),
+        Optional.empty()).toByteArray();
+
+    provider.onWebSocketBinary(firstMessage, 0, firstMessage.length);
+    provider.onWebSocketBinary(secondMessage, 0, secondMessage.length);
+
+    ArgumentCaptor<ContainerRequest> requestCaptor = ArgumentCaptor.forClass(ContainerRequest.class);
+    verify(applicationHandler, times(2)).apply(requestCaptor.capture(), any(OutputStream.class));
+
+    // Upgrade request headers should only be read once per session
+    verify(request).getHeaders();
+
+    final ContainerRequest firstRequest = requestCaptor.getAllValues().get(0);
+    assertThat(firstRequest.getRequestHeader("Upgrade")).isNull();
+    assertThat(firstRequest.getRequestHeader("X-Forwarded-For")).containsExactly("127.0.0.1");
+    assertThat(firstRequest.getRequestHeader(HttpHeaders.USER_AGENT)).containsExactly("Upgrade request user agent");
+
+    final ContainerRequest secondRequest = requestCaptor.getAllValues().get(1);
+    assertThat(secondRequest.getRequestHeader("Upgrade")).isNull();
+    assertThat(secondRequest.getRequestHeader("X-Forwarded-For")).containsExactly("127.0.0.1");
+    assertThat(secondRequest.getRequestHeader(HttpHeaders.USER_AGENT)).containsExactly("Upgrade request user agent");
+    assertThat(secondRequest.getRequestHeader("X-Test")).containsExactly("test");
+
+    verify(remoteEndpoint, times(2)).sendBytesByFuture(any(ByteBuffer.class));
+  }
+
+  @Test
+  void testRequestExecutor() throws Exception {
+    ApplicationHandler applicationHandler = mock(ApplicationHandler.class);
+    WebsocketRequestLog requestLog = mock(WebsocketRequestLog.class);
+    List<Runnable> pendingTasks = new LinkedList<>();
+
+    WebSocketResourceProvider<TestPrincipal> provider = new WebSocketResourceProvider<>("127.0.0.1", applicationHandler,
+        requestLog, new TestPrincipal("foo"), new ProtobufWebSocketMessageFactory(), Optional.empty(), 30000,
+        Optional.of(pendingTasks::add));
+
+    Session session = mock(Session.class);
+    RemoteEndpoint remoteEndpoint = mock(RemoteEndpoint.class);
+    UpgradeRequest request = mock(UpgradeRequest.class);
+
+    when(session.getUpgradeRequest()).thenReturn(request);
+    when(session.getRemote()).thenReturn(remoteEndpoint);
+
+    ContainerResponse response = mock(ContainerResponse.class);
+    when(response.getStatus()).thenReturn(204);
+    when(response.getStatusInfo()).thenReturn(Response.Status.NO_CONTENT);
+
+    when(applicationHandler.apply(any(ContainerRequest.class), any(OutputStream.class)))
+        .thenReturn(CompletableFuture.completedFuture(response));
+
+    provider.onWebSocketConnect(session);
+
+    byte[] message = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(111L), "GET", "/bar",
+        new LinkedList<>(), Optional.empty()).toByteArray();
+
+    provider.onWebSocketBinary(message, 0, message.length);
+
+    // The request should be dispatched on the request executor rather than the calling thread
+    verify(applicationHandler, never()).apply(any(ContainerRequest.class), any(OutputStream.class));
+    assertThat(pendingTasks).hasSize(1);
+
+    pendingTasks.forEach(Runnable::run);
+
+    ArgumentCaptor<ByteBuffer> responseCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+
+    verify(applicationHandler).apply(any(ContainerRequest.class), any(OutputStream.class));
+    verify(remoteEndpoint).sendBytesByFuture(responseCaptor.capture());
+
+    assertThat(getResponse(responseCaptor).getStatus()).isEqualTo(204);
+  }
+
+  @Test
+  void testRequestExecutorRejected() throws Exception {
+    ApplicationHandler applicationHandler = mock(ApplicationHandler.class);
+    WebsocketRequestLog requestLog = mock(WebsocketRequestLog.class);
+
+    WebSocketResourceProvider<TestPrincipal> provider = new WebSocketResourceProvider<>("127.0.0.1", applicationHandler,
+        requestLog, new TestPrincipal("foo"), new ProtobufWebSocketMessageFactory(), Optional.empty(), 30000,
+        Optional.of(task -> {
+          throw new RejectedExecutionException();
+        }));
+
+    Session session = mock(Session.class);
+    RemoteEndpoint remoteEndpoint = mock(RemoteEndpoint.class);
+    UpgradeRequest request = mock(UpgradeRequest.class);
+
+    when(session.getUpgradeRequest()).thenReturn(request);
+    when(session.getRemote()).thenReturn(remoteEndpoint);
+
+    provider.onWebSocketConnect(session);
+
+    byte[] message = new ProtobufWebSocketMessageFactory().createRequest(Optional.of(111L), "GET", "/bar",
+        new LinkedList<>(), Optional.empty()).toByteArray();
+
+    provider.onWebSocketBinary(message, 0, message.length);
+
+    ArgumentCaptor<ByteBuffer> responseCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+
+    verify(applicationHandler, never()).apply(any(ContainerRequest.class), any(OutputStream.class));
+    verify(remoteEndpoint).sendBytesByFuture(responseCaptor.capture());
+
+    assertThat(getResponse(responseCaptor).getStatus()).isEqualTo(503);
+  }
+
   @Test
   void testActualRouteMessageSuccess() throws InvalidProtocolBufferException {
     ResourceConfig resourceConfig = new DropwizardResourceConfig();